@@ -13,6 +13,7 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import org.datatransferproject.api.launcher.Monitor;
 import org.datatransferproject.spi.transfer.idempotentexecutor.IdempotentImportExecutor;
+import org.datatransferproject.spi.transfer.idempotentexecutor.StoredValueSizeRecorder;
 import org.datatransferproject.types.transfer.errors.ErrorDetail;
 
 import java.io.IOException;
@@ -22,6 +23,7 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.Callable;
+import javax.annotation.Nullable;
 
 import static java.lang.String.format;
 
@@ -38,6 +40,7 @@ public class GoogleCloudIdempotentImportExecutor implements IdempotentImportExec
   private final Datastore datastore;
   private final Monitor monitor;
   private final ObjectMapper objectMapper;
+  @Nullable private final StoredValueSizeRecorder sizeRecorder;
 
   // These are all variables corresponding to the job state. Only initialized when setJobId() is called
   private Map<String, Serializable> knownValues;
@@ -46,8 +49,14 @@ public class GoogleCloudIdempotentImportExecutor implements IdempotentImportExec
   private String jobIdPrefix;
 
   public GoogleCloudIdempotentImportExecutor(Datastore datastore, Monitor monitor) {
+    this(datastore, monitor, null);
+  }
+
+  public GoogleCloudIdempotentImportExecutor(
+      Datastore datastore, Monitor monitor, @Nullable StoredValueSizeRecorder sizeRecorder) {
     this.datastore = datastore;
     this.monitor = monitor;
+    this.sizeRecorder = sizeRecorder;
     this.objectMapper = new ObjectMapper();
     this.objectMapper.registerModule(new JavaTimeModule());
     this.objectMapper.registerSubtypes(ErrorDetail.class);
@@ -101,6 +110,9 @@ public class GoogleCloudIdempotentImportExecutor implements IdempotentImportExec
       throws IOException {
     // private Map<String, Serializable> knownValues;
     knownValues.put(idempotentId, result);
+    if (sizeRecorder != null) {
+      sizeRecorder.record(result);
+    }
 
     try {
       Transaction transaction = datastore.newTransaction();
@@ -8,6 +8,7 @@ import org.datatransferproject.api.launcher.ExtensionContext;
 import org.datatransferproject.api.launcher.Monitor;
 import org.datatransferproject.spi.transfer.idempotentexecutor.IdempotentImportExecutor;
 import org.datatransferproject.spi.transfer.idempotentexecutor.IdempotentImportExecutorExtension;
+import org.datatransferproject.spi.transfer.idempotentexecutor.StoredValueSizeRecorder;
 
 public class GoogleCloudIdempotentImportExecutorExtension implements
     IdempotentImportExecutorExtension {
@@ -18,7 +19,11 @@ public class GoogleCloudIdempotentImportExecutorExtension implements
   public IdempotentImportExecutor getIdempotentImportExecutor(ExtensionContext extensionContext) {
     Monitor monitor = extensionContext.getMonitor();
     try {
-      return new GoogleCloudIdempotentImportExecutor(getDatastore(), monitor);
+      return new GoogleCloudIdempotentImportExecutor(
+          getDatastore(),
+          monitor,
+          StoredValueSizeRecorder.create(
+              GoogleCloudIdempotentImportExecutor.class.getSimpleName(), extensionContext));
     } catch (IOException e) {
       monitor.severe(() -> "Error initializing datastore: " + e);
       throw new IllegalStateException(e);
@@ -1,34 +1,50 @@
 package org.datatransferproject.cloud.microsoft.cosmos;
 
-import static com.microsoft.azure.storage.table.TableQuery.generateFilterCondition;
-
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
 import com.microsoft.azure.storage.CloudStorageAccount;
 import com.microsoft.azure.storage.StorageException;
 import com.microsoft.azure.storage.blob.CloudBlobClient;
 import com.microsoft.azure.storage.blob.CloudBlobContainer;
 import com.microsoft.azure.storage.blob.CloudBlockBlob;
-import com.microsoft.azure.storage.table.CloudTable;
 import com.microsoft.azure.storage.table.CloudTableClient;
-import com.microsoft.azure.storage.table.TableOperation;
-import com.microsoft.azure.storage.table.TableQuery;
-import com.microsoft.azure.storage.table.TableResult;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URISyntaxException;
 import java.security.InvalidKeyException;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Iterator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import org.datatransferproject.cloud.microsoft.cosmos.TableBackend.Write;
 import org.datatransferproject.spi.cloud.storage.JobStoreWithValidator;
 import org.datatransferproject.spi.cloud.types.JobAuthorization;
 import org.datatransferproject.spi.cloud.types.PortabilityJob;
 import org.datatransferproject.types.common.models.DataModel;
 import org.datatransferproject.types.transfer.errors.ErrorDetail;
 
-/** Uses the Azure Cosmos DB Table Storage API to persist job data. */
+/**
+ * Uses the Azure Cosmos DB Table Storage API to persist job data.
+ *
+ * <p>Job updates that are validated against the previous version of the job are optimistic: the
+ * job is replaced only if its ETag is still that of the version that was validated, otherwise it
+ * is read and validated again. The version last read or written by this store is remembered, so
+ * the usual find-then-update sequence of {@link JobStoreWithValidator} costs no extra read; an
+ * update that fails validation against the remembered version is validated again against the
+ * current one. Writes
+ * that touch several entities of a job, such as counts and removal of its data, are sent as entity
+ * group transactions.
+ */
 public class AzureTableStore extends JobStoreWithValidator {
   private static final String COSMOS_CONNECTION_TEMPLATE =
       "DefaultEndpointsProtocol=https;AccountName=%s;AccountKey=%s;TableEndpoint=%s;";
@@ -38,20 +54,39 @@ public class AzureTableStore extends JobStoreWithValidator {
 
   private static final String JOB_TABLE = "DP_JOBS";
   private static final String JOB_DATA_TABLE = "DP_JOB_DATA";
+  // Counts are stored as job data, under keys no data model is stored with
+  private static final String COUNTS_KEY_PREFIX = "@count:";
 
   private static final String BLOB_CONTAINER =
       "dataportability"; // Azure rules: The container name must be lowercase
   private static final int UNKNOWN_LENGTH = -1;
 
-  private final TableStoreConfiguration configuration;
+  // Number of times a conditional write is retried after losing a race with another writer
+  private static final int MAX_WRITE_ATTEMPTS = 5;
+  private static final long MAX_KNOWN_JOB_VERSIONS = 256;
+  private static final long KNOWN_JOB_VERSION_EXPIRY_MINUTES = 10;
 
-  private CloudTableClient tableClient;
+  private final TableStoreConfiguration configuration;
+  // Mapping of job id -> the version of the job entity last read or written, with its ETag
+  private final Cache<UUID, DataWrapper> knownJobVersions =
+      CacheBuilder.newBuilder()
+          .maximumSize(MAX_KNOWN_JOB_VERSIONS)
+          .expireAfterWrite(KNOWN_JOB_VERSION_EXPIRY_MINUTES, TimeUnit.MINUTES)
+          .build();
+
+  private TableBackend tables;
   private CloudBlobClient blobClient;
 
   public AzureTableStore(TableStoreConfiguration configuration) {
     this.configuration = configuration;
   }
 
+  @VisibleForTesting
+  AzureTableStore(TableStoreConfiguration configuration, TableBackend tables) {
+    this.configuration = configuration;
+    this.tables = tables;
+  }
+
   public void init() {
     try {
       String endpoint = String.format(ENDPOINT_TEMPLATE, configuration.getAccountName());
@@ -63,11 +98,12 @@ public class AzureTableStore extends JobStoreWithValidator {
                   configuration.getAccountName(),
                   configuration.getAccountKey(),
                   endpoint));
-      tableClient = cosmosAccount.createCloudTableClient();
+      CloudTableClient tableClient = cosmosAccount.createCloudTableClient();
 
       // Create the tables if the do not exist
       tableClient.getTableReference(JOB_TABLE).createIfNotExists();
       tableClient.getTableReference(JOB_DATA_TABLE).createIfNotExists();
+      tables = new CloudTableBackend(tableClient);
 
       CloudStorageAccount blobAccount =
           CloudStorageAccount.parse(
@@ -90,13 +126,13 @@ public class AzureTableStore extends JobStoreWithValidator {
 
     Preconditions.checkNotNull(job, "Job is null");
 
+    DataWrapper wrapper = createJobWrapper(jobId, job);
     try {
-
-      create(jobId.toString(), JOB_TABLE, job.jobAuthorization().state().name(), job);
-
-    } catch (JsonProcessingException e) {
+      tables.execute(JOB_TABLE, ImmutableList.of(Write.insert(wrapper)));
+    } catch (StorageException | URISyntaxException e) {
       throw new IOException("Error creating job: " + jobId, e);
     }
+    rememberJobVersion(jobId, wrapper);
   }
 
   @Override
@@ -112,33 +148,65 @@ public class AzureTableStore extends JobStoreWithValidator {
 
     Preconditions.checkNotNull(job, "Job is null");
 
-    try {
-
-      CloudTable table = tableClient.getTableReference(JOB_TABLE);
+    DataWrapper wrapper = createJobWrapper(jobId, job);
+    if (validator == null) {
+      // Without a validator any version may be replaced, as long as the job exists
+      wrapper.setEtag(TableBackend.ANY_ETAG);
+      try {
+        tables.execute(JOB_TABLE, ImmutableList.of(Write.replace(wrapper)));
+      } catch (StorageException e) {
+        if (e.getHttpStatusCode() == TableBackend.NOT_FOUND) {
+          throw new IOException("Could not find record for jobId: " + jobId, e);
+        }
+        throw new IOException("Error updating job: " + jobId, e);
+      } catch (URISyntaxException e) {
+        throw new IOException("Error updating job: " + jobId, e);
+      }
+      rememberJobVersion(jobId, wrapper);
+      return;
+    }
 
-      String serializedJob = configuration.getMapper().writeValueAsString(job);
-      DataWrapper wrapper =
-          new DataWrapper(
-              configuration.getPartitionKey(),
-              jobId.toString(),
-              job.jobAuthorization().state().name(),
-              serializedJob);
-
-      if (validator != null) {
-        PortabilityJob previousJob = findJob(jobId);
-        if (previousJob == null) {
+    DataWrapper previous = knownJobVersions.getIfPresent(jobId);
+    for (int attempt = 0; attempt < MAX_WRITE_ATTEMPTS; attempt++) {
+      boolean remembered = previous != null;
+      if (!remembered) {
+        previous = retrieveJob(jobId);
+        if (previous == null) {
           throw new IOException("Could not find record for jobId: " + jobId);
         }
-
-        validator.validate(previousJob, job);
       }
 
-      TableOperation insert = TableOperation.insertOrReplace(wrapper);
-      table.execute(insert);
+      try {
+        validator.validate(deserializeJob(previous), job);
+      } catch (IllegalStateException e) {
+        if (!remembered) {
+          throw e;
+        }
+        // The remembered version may be out of date, so only the current version can fail the
+        // update
+        knownJobVersions.invalidate(jobId);
+        previous = null;
+        continue;
+      }
 
-    } catch (JsonProcessingException | StorageException | URISyntaxException e) {
-      throw new IOException("Error updating job: " + jobId, e);
+      wrapper.setEtag(previous.getEtag());
+      try {
+        tables.execute(JOB_TABLE, ImmutableList.of(Write.replace(wrapper)));
+        rememberJobVersion(jobId, wrapper);
+        return;
+      } catch (StorageException e) {
+        if (e.getHttpStatusCode() != TableBackend.PRECONDITION_FAILED
+            && e.getHttpStatusCode() != TableBackend.NOT_FOUND) {
+          throw new IOException("Error updating job: " + jobId, e);
+        }
+        // The job changed since it was validated, so validate the current version instead
+        knownJobVersions.invalidate(jobId);
+        previous = null;
+      } catch (URISyntaxException e) {
+        throw new IOException("Error updating job: " + jobId, e);
+      }
     }
+    throw new IOException("Job was modified concurrently too many times: " + jobId);
   }
 
   @Override
@@ -151,52 +219,151 @@ public class AzureTableStore extends JobStoreWithValidator {
   public PortabilityJob findJob(UUID jobId) {
     Preconditions.checkNotNull(jobId, "Job id is null");
     try {
-
-      CloudTable table = tableClient.getTableReference(JOB_TABLE);
-
-      TableOperation retrieve =
-          TableOperation.retrieve(
-              configuration.getPartitionKey(), jobId.toString(), DataWrapper.class);
-      TableResult result = table.execute(retrieve);
-      DataWrapper wrapper = result.getResultAsType();
-      return configuration.getMapper().readValue(wrapper.getSerialized(), PortabilityJob.class);
-    } catch (StorageException | URISyntaxException | IOException e) {
+      DataWrapper wrapper = retrieveJob(jobId);
+      return wrapper == null ? null : deserializeJob(wrapper);
+    } catch (IOException e) {
       throw new MicrosoftStorageException("Error finding job: " + jobId, e);
     }
   }
 
+  /** Removes the job, and the data and counts stored for it. */
   @Override
   public void remove(UUID jobId) throws IOException {
     Preconditions.checkNotNull(jobId, "Job id is null");
-    remove(jobId, JOB_TABLE);
+    knownJobVersions.invalidate(jobId);
+    try {
+      DataWrapper job =
+          new DataWrapper(configuration.getPartitionKey(), jobId.toString(), null, null);
+      job.setEtag(TableBackend.ANY_ETAG);
+      tables.execute(JOB_TABLE, ImmutableList.of(Write.delete(job)));
+
+      List<Write> deletes = new ArrayList<>();
+      for (DataWrapper data :
+          tables.queryByRowKeyPrefix(
+              JOB_DATA_TABLE, configuration.getPartitionKey(), jobId.toString() + "-")) {
+        deletes.add(Write.delete(data));
+      }
+      for (List<Write> batch : Lists.partition(deletes, TableBackend.MAX_BATCH_SIZE)) {
+        tables.execute(JOB_DATA_TABLE, batch);
+      }
+    } catch (StorageException | URISyntaxException e) {
+      throw new IOException("Error removing data for job: " + jobId, e);
+    }
   }
 
   @Override
   public <T extends DataModel> void create(UUID jobId, String key, T model) {
     try {
-      create(createRowKey(jobId, key), JOB_DATA_TABLE, null, model);
-    } catch (IOException e) {
-      throw new MicrosoftStorageException("Error creating job: " + jobId, e);
+      DataWrapper wrapper = createDataWrapper(createRowKey(jobId, key), model);
+      tables.execute(JOB_DATA_TABLE, ImmutableList.of(Write.insert(wrapper)));
+    } catch (StorageException | URISyntaxException | JsonProcessingException e) {
+      throw new MicrosoftStorageException("Error creating data for job: " + jobId, e);
     }
   }
 
+  /**
+   * Replaces the data stored under {@code key}, which must already exist. The data API carries no
+   * version, so the last update wins.
+   */
   @Override
   public <T extends DataModel> void update(UUID jobId, String key, T model) {
-    // TODO: implement update functionality
-    throw new UnsupportedOperationException("Implement update functionality. ");
+    try {
+      DataWrapper wrapper = createDataWrapper(createRowKey(jobId, key), model);
+      wrapper.setEtag(TableBackend.ANY_ETAG);
+      tables.execute(JOB_DATA_TABLE, ImmutableList.of(Write.replace(wrapper)));
+    } catch (StorageException | URISyntaxException | JsonProcessingException e) {
+      throw new MicrosoftStorageException("Error updating data for job: " + jobId, e);
+    }
   }
 
   @Override
   public <T extends DataModel> T findData(UUID jobId, String key, Class<T> type) {
-    return find(type, createRowKey(jobId, key), JOB_DATA_TABLE);
+    String rowKey = createRowKey(jobId, key);
+    try {
+      DataWrapper wrapper =
+          tables.retrieve(JOB_DATA_TABLE, configuration.getPartitionKey(), rowKey);
+      return wrapper == null
+          ? null
+          : configuration.getMapper().readValue(wrapper.getSerialized(), type);
+    } catch (StorageException | IOException | URISyntaxException e) {
+      throw new MicrosoftStorageException("Error finding data for rowKey: " + rowKey, e);
+    }
   }
 
   @Override
   public void removeData(UUID jobId, String key) {
+    DataWrapper wrapper =
+        new DataWrapper(configuration.getPartitionKey(), createRowKey(jobId, key), null, null);
+    wrapper.setEtag(TableBackend.ANY_ETAG);
     try {
-      remove(jobId, JOB_DATA_TABLE);
-    } catch (IOException e) {
-      throw new MicrosoftStorageException("Unable to remove data for job: " + jobId);
+      tables.execute(JOB_DATA_TABLE, ImmutableList.of(Write.delete(wrapper)));
+    } catch (StorageException | URISyntaxException e) {
+      throw new MicrosoftStorageException("Unable to remove data for job: " + jobId, e);
+    }
+  }
+
+  /**
+   * Adds {@code newCounts} to the job's counts in a single transaction, which is retried if any of
+   * the counts was changed concurrently.
+   */
+  @Override
+  public void addCounts(UUID jobId, Map<String, Integer> newCounts) throws IOException {
+    if (newCounts == null || newCounts.isEmpty()) {
+      return;
+    }
+    Preconditions.checkArgument(
+        newCounts.size() <= TableBackend.MAX_BATCH_SIZE, "Too many counts: %s", newCounts.size());
+    try {
+      for (int attempt = 0; attempt < MAX_WRITE_ATTEMPTS; attempt++) {
+        Map<String, DataWrapper> current = new HashMap<>();
+        for (DataWrapper count : queryCounts(jobId)) {
+          current.put(count.getRowKey(), count);
+        }
+
+        List<Write> writes = new ArrayList<>(newCounts.size());
+        for (Map.Entry<String, Integer> newCount : newCounts.entrySet()) {
+          String rowKey = createRowKey(jobId, COUNTS_KEY_PREFIX + newCount.getKey());
+          DataWrapper previous = current.get(rowKey);
+          int count = newCount.getValue();
+          if (previous == null) {
+            writes.add(Write.insert(newCountWrapper(rowKey, count)));
+          } else {
+            DataWrapper updated =
+                newCountWrapper(rowKey, Integer.parseInt(previous.getSerialized()) + count);
+            updated.setEtag(previous.getEtag());
+            writes.add(Write.replace(updated));
+          }
+        }
+
+        try {
+          tables.execute(JOB_DATA_TABLE, writes);
+          return;
+        } catch (StorageException e) {
+          if (e.getHttpStatusCode() != TableBackend.PRECONDITION_FAILED
+              && e.getHttpStatusCode() != TableBackend.CONFLICT) {
+            throw e;
+          }
+          // Another writer added to the same counts, start again from the new values
+        }
+      }
+    } catch (StorageException | URISyntaxException e) {
+      throw new IOException("Error adding counts for job: " + jobId, e);
+    }
+    throw new IOException("Counts were modified concurrently too many times: " + jobId);
+  }
+
+  @Override
+  public Map<String, Integer> getCounts(UUID jobId) {
+    try {
+      int prefixLength = createRowKey(jobId, COUNTS_KEY_PREFIX).length();
+      ImmutableMap.Builder<String, Integer> counts = ImmutableMap.builder();
+      for (DataWrapper count : queryCounts(jobId)) {
+        counts.put(
+            count.getRowKey().substring(prefixLength), Integer.parseInt(count.getSerialized()));
+      }
+      return counts.build();
+    } catch (StorageException | URISyntaxException e) {
+      throw new MicrosoftStorageException("Error finding counts for job: " + jobId, e);
     }
   }
 
@@ -225,79 +392,68 @@ public class AzureTableStore extends JobStoreWithValidator {
   @Override
   public UUID findFirst(JobAuthorization.State jobState) {
     try {
-      String partitionFilter =
-          generateFilterCondition(
-              "PartitionKey", TableQuery.QueryComparisons.EQUAL, configuration.getPartitionKey());
-      String stateFilter =
-          generateFilterCondition(
-              "State",
-              TableQuery.QueryComparisons.EQUAL,
-              jobState.name()); // properties are converted to capitalized by the storage API
-
-      String combinedFilter =
-          TableQuery.combineFilters(partitionFilter, TableQuery.Operators.AND, stateFilter);
-
-      TableQuery<DataWrapper> query =
-          TableQuery.from(DataWrapper.class).where(combinedFilter).take(1);
-
-      CloudTable table = tableClient.getTableReference(JOB_TABLE);
-      Iterator<DataWrapper> iter = table.execute(query).iterator();
-      if (!iter.hasNext()) {
-        return null;
-      }
-      return UUID.fromString(iter.next().getRowKey());
+      DataWrapper wrapper =
+          tables.findFirstByState(JOB_TABLE, configuration.getPartitionKey(), jobState.name());
+      return wrapper == null ? null : UUID.fromString(wrapper.getRowKey());
     } catch (StorageException | URISyntaxException e) {
       throw new MicrosoftStorageException("Error finding first job", e);
     }
   }
 
-  private void create(String rowKey, String tableName, String state, Object type)
-      throws IOException {
+  /** Reads the job entity and remembers it as the latest known version. */
+  private DataWrapper retrieveJob(UUID jobId) throws IOException {
     try {
-
-      CloudTable table = tableClient.getTableReference(tableName);
-
-      String serializedJob = configuration.getMapper().writeValueAsString(type);
       DataWrapper wrapper =
-          new DataWrapper(
-              configuration.getPartitionKey(), rowKey, state, serializedJob); // job id used as key
-      TableOperation insert = TableOperation.insert(wrapper);
-      table.execute(insert);
-    } catch (JsonProcessingException | StorageException | URISyntaxException e) {
-      throw new IOException("Error creating data for rowKey: " + rowKey, e);
+          tables.retrieve(JOB_TABLE, configuration.getPartitionKey(), jobId.toString());
+      if (wrapper != null) {
+        rememberJobVersion(jobId, wrapper);
+      }
+      return wrapper;
+    } catch (StorageException | URISyntaxException e) {
+      throw new IOException("Error finding job: " + jobId, e);
     }
   }
 
-  private void remove(UUID jobId, String tableName) throws IOException {
-    try {
+  private void rememberJobVersion(UUID jobId, DataWrapper wrapper) {
+    // Without an ETag the version can't be used as a condition, so it isn't worth keeping
+    if (wrapper.getEtag() == null || TableBackend.ANY_ETAG.equals(wrapper.getEtag())) {
+      knownJobVersions.invalidate(jobId);
+    } else {
+      knownJobVersions.put(jobId, wrapper);
+    }
+  }
 
-      CloudTable table = tableClient.getTableReference(tableName);
-      TableOperation retrieve =
-          TableOperation.retrieve(
-              configuration.getPartitionKey(), jobId.toString(), DataWrapper.class);
-      TableResult result = table.execute(retrieve);
-      DataWrapper wrapper = result.getResultAsType();
+  private PortabilityJob deserializeJob(DataWrapper wrapper) throws IOException {
+    return configuration.getMapper().readValue(wrapper.getSerialized(), PortabilityJob.class);
+  }
 
-      TableOperation delete = TableOperation.delete(wrapper);
-      table.execute(delete);
+  private DataWrapper createJobWrapper(UUID jobId, PortabilityJob job) throws IOException {
+    return new DataWrapper(
+        configuration.getPartitionKey(),
+        jobId.toString(), // job id used as key
+        job.jobAuthorization().state().name(),
+        configuration.getMapper().writeValueAsString(job));
+  }
 
-    } catch (StorageException | URISyntaxException e) {
-      throw new IOException("Error removing data for job: " + jobId, e);
-    }
+  private DataWrapper createDataWrapper(String rowKey, Object model)
+      throws JsonProcessingException {
+    return new DataWrapper(
+        configuration.getPartitionKey(),
+        rowKey,
+        null,
+        configuration.getMapper().writeValueAsString(model));
   }
 
-  private <T> T find(Class<T> type, String rowKey, String tableName) {
-    try {
+  private DataWrapper newCountWrapper(String rowKey, int count) {
+    return new DataWrapper(
+        configuration.getPartitionKey(), rowKey, null, Integer.toString(count));
+  }
 
-      CloudTable table = tableClient.getTableReference(tableName);
-      TableOperation retrieve =
-          TableOperation.retrieve(configuration.getPartitionKey(), rowKey, DataWrapper.class);
-      TableResult result = table.execute(retrieve);
-      DataWrapper wrapper = result.getResultAsType();
-      return configuration.getMapper().readValue(wrapper.getSerialized(), type);
-    } catch (StorageException | IOException | URISyntaxException e) {
-      throw new MicrosoftStorageException("Error finding data for rowKey: " + rowKey, e);
-    }
+  private List<DataWrapper> queryCounts(UUID jobId) throws StorageException, URISyntaxException {
+    return tables.queryByRowKeyPrefix(
+        JOB_DATA_TABLE,
+        configuration.getPartitionKey(),
+        createRowKey(jobId, COUNTS_KEY_PREFIX));
   }
 
   private static String createRowKey(UUID jobId, String key) {
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2019 The Data Transfer Project Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.datatransferproject.cloud.microsoft.cosmos;
+
+import static com.microsoft.azure.storage.table.TableQuery.combineFilters;
+import static com.microsoft.azure.storage.table.TableQuery.generateFilterCondition;
+
+import com.google.common.base.Preconditions;
+import com.microsoft.azure.storage.StorageException;
+import com.microsoft.azure.storage.table.CloudTable;
+import com.microsoft.azure.storage.table.CloudTableClient;
+import com.microsoft.azure.storage.table.TableBatchOperation;
+import com.microsoft.azure.storage.table.TableOperation;
+import com.microsoft.azure.storage.table.TableQuery;
+import com.microsoft.azure.storage.table.TableQuery.Operators;
+import com.microsoft.azure.storage.table.TableQuery.QueryComparisons;
+import com.microsoft.azure.storage.table.TableResult;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/** A {@link TableBackend} backed by the Azure Table service. */
+class CloudTableBackend implements TableBackend {
+  private final CloudTableClient tableClient;
+
+  CloudTableBackend(CloudTableClient tableClient) {
+    this.tableClient = tableClient;
+  }
+
+  @Override
+  public DataWrapper retrieve(String tableName, String partitionKey, String rowKey)
+      throws StorageException, URISyntaxException {
+    TableResult result =
+        getTable(tableName)
+            .execute(TableOperation.retrieve(partitionKey, rowKey, DataWrapper.class));
+    return result.getResultAsType();
+  }
+
+  @Override
+  public List<DataWrapper> queryByRowKeyPrefix(
+      String tableName, String partitionKey, String rowKeyPrefix)
+      throws StorageException, URISyntaxException {
+    // Row keys with the prefix sort between the prefix itself and the prefix with its last
+    // character incremented
+    char last = rowKeyPrefix.charAt(rowKeyPrefix.length() - 1);
+    String upperBound = rowKeyPrefix.substring(0, rowKeyPrefix.length() - 1) + (char) (last + 1);
+    String rowKeyFilter =
+        combineFilters(
+            generateFilterCondition("RowKey", QueryComparisons.GREATER_THAN_OR_EQUAL, rowKeyPrefix),
+            Operators.AND,
+            generateFilterCondition("RowKey", QueryComparisons.LESS_THAN, upperBound));
+    TableQuery<DataWrapper> query =
+        TableQuery.from(DataWrapper.class)
+            .where(combineFilters(partitionFilter(partitionKey), Operators.AND, rowKeyFilter));
+
+    List<DataWrapper> entities = new ArrayList<>();
+    for (DataWrapper entity : getTable(tableName).execute(query)) {
+      entities.add(entity);
+    }
+    return entities;
+  }
+
+  @Override
+  public DataWrapper findFirstByState(String tableName, String partitionKey, String state)
+      throws StorageException, URISyntaxException {
+    String stateFilter =
+        generateFilterCondition(
+            "State",
+            QueryComparisons.EQUAL,
+            state); // properties are converted to capitalized by the storage API
+    TableQuery<DataWrapper> query =
+        TableQuery.from(DataWrapper.class)
+            .where(combineFilters(partitionFilter(partitionKey), Operators.AND, stateFilter))
+            .take(1);
+
+    Iterator<DataWrapper> iter = getTable(tableName).execute(query).iterator();
+    return iter.hasNext() ? iter.next() : null;
+  }
+
+  @Override
+  public void execute(String tableName, List<Write> writes)
+      throws StorageException, URISyntaxException {
+    Preconditions.checkArgument(
+        !writes.isEmpty() && writes.size() <= MAX_BATCH_SIZE,
+        "Between 1 and %s writes can be applied together, got %s",
+        MAX_BATCH_SIZE,
+        writes.size());
+    CloudTable table = getTable(tableName);
+    if (writes.size() == 1) {
+      // A batch of one costs the same round trip, but with a larger request and response
+      TableResult result = table.execute(toOperation(writes.get(0)));
+      writes.get(0).getEntity().setEtag(result.getEtag());
+      return;
+    }
+    TableBatchOperation batch = new TableBatchOperation();
+    for (Write write : writes) {
+      batch.add(toOperation(write));
+    }
+    List<TableResult> results = table.execute(batch);
+    for (int i = 0; i < writes.size(); i++) {
+      writes.get(i).getEntity().setEtag(results.get(i).getEtag());
+    }
+  }
+
+  private CloudTable getTable(String tableName) throws StorageException, URISyntaxException {
+    return tableClient.getTableReference(tableName);
+  }
+
+  private static String partitionFilter(String partitionKey) {
+    return generateFilterCondition("PartitionKey", QueryComparisons.EQUAL, partitionKey);
+  }
+
+  private static TableOperation toOperation(Write write) {
+    switch (write.getKind()) {
+      case INSERT:
+        return TableOperation.insert(write.getEntity());
+      case REPLACE:
+        // Replace and delete send the entity's ETag as an If-Match condition
+        return TableOperation.replace(write.getEntity());
+      case DELETE:
+        return TableOperation.delete(write.getEntity());
+      default:
+        throw new AssertionError("Unknown write " + write.getKind());
+    }
+  }
+}
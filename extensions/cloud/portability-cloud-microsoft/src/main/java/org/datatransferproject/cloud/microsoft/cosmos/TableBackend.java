@@ -0,0 +1,98 @@
+/*
+ * Copyright 2019 The Data Transfer Project Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.datatransferproject.cloud.microsoft.cosmos;
+
+import com.microsoft.azure.storage.StorageException;
+import java.net.URISyntaxException;
+import java.util.List;
+import javax.annotation.Nullable;
+
+/**
+ * The table operations {@link AzureTableStore} relies on, so that the store can be exercised
+ * against an in-process table in tests.
+ *
+ * <p>Writes are conditional on the entity's ETag, following the Table service: a replace or delete
+ * of an entity whose ETag is not {@link #ANY_ETAG} fails with {@link #PRECONDITION_FAILED} if the
+ * stored entity has changed since it was read, a replace or delete of a missing entity fails with
+ * {@link #NOT_FOUND}, and an insert of an existing entity fails with {@link #CONFLICT}.
+ */
+interface TableBackend {
+  String ANY_ETAG = "*";
+  // The Table service allows at most 100 operations in a single entity group transaction
+  int MAX_BATCH_SIZE = 100;
+
+  int NOT_FOUND = 404;
+  int CONFLICT = 409;
+  int PRECONDITION_FAILED = 412;
+
+  /** Returns the entity with the given keys, with its ETag set, or null if there is none. */
+  @Nullable
+  DataWrapper retrieve(String tableName, String partitionKey, String rowKey)
+      throws StorageException, URISyntaxException;
+
+  /** Returns the entities of the partition whose row key starts with {@code rowKeyPrefix}. */
+  List<DataWrapper> queryByRowKeyPrefix(String tableName, String partitionKey, String rowKeyPrefix)
+      throws StorageException, URISyntaxException;
+
+  /** Returns any one entity of the partition in the given state, or null if there is none. */
+  @Nullable
+  DataWrapper findFirstByState(String tableName, String partitionKey, String state)
+      throws StorageException, URISyntaxException;
+
+  /**
+   * Applies {@code writes}, at most {@link #MAX_BATCH_SIZE} to entities of a single partition, as
+   * one transaction: either all of them succeed or none do. The ETags of written entities are
+   * updated to their new values.
+   */
+  void execute(String tableName, List<Write> writes) throws StorageException, URISyntaxException;
+
+  /** A write of a single entity. */
+  final class Write {
+    enum Kind {
+      INSERT,
+      REPLACE,
+      DELETE
+    }
+
+    private final Kind kind;
+    private final DataWrapper entity;
+
+    private Write(Kind kind, DataWrapper entity) {
+      this.kind = kind;
+      this.entity = entity;
+    }
+
+    static Write insert(DataWrapper entity) {
+      return new Write(Kind.INSERT, entity);
+    }
+
+    static Write replace(DataWrapper entity) {
+      return new Write(Kind.REPLACE, entity);
+    }
+
+    static Write delete(DataWrapper entity) {
+      return new Write(Kind.DELETE, entity);
+    }
+
+    Kind getKind() {
+      return kind;
+    }
+
+    DataWrapper getEntity() {
+      return entity;
+    }
+  }
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright 2019 The Data Transfer Project Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.datatransferproject.cloud.microsoft.cosmos;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableMap;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.UUID;
+import org.datatransferproject.spi.cloud.types.JobAuthorization;
+import org.datatransferproject.spi.cloud.types.PortabilityJob;
+import org.datatransferproject.spi.cloud.types.PortabilityJob.State;
+import org.datatransferproject.test.types.ObjectMapperFactory;
+import org.datatransferproject.types.common.models.photos.PhotoAlbum;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Tests {@link AzureTableStore} against an in-process table, see {@link FakeTableBackend}. */
+public class AzureTableStoreTest {
+  private static final String JOB_TABLE = "DP_JOBS";
+  private static final String JOB_DATA_TABLE = "DP_JOB_DATA";
+
+  private final UUID jobId = UUID.randomUUID();
+  private FakeTableBackend tables;
+  private TableStoreConfiguration configuration;
+  private AzureTableStore store;
+
+  @Before
+  public void setUp() {
+    tables = new FakeTableBackend();
+    configuration =
+        TableStoreConfiguration.Builder.newInstance()
+            .accountName("account")
+            .accountKey("key")
+            .blobKey("blobKey")
+            .partitionKey("partition")
+            .mapper(ObjectMapperFactory.createObjectMapper())
+            .build();
+    store = new AzureTableStore(configuration, tables);
+  }
+
+  @Test
+  public void claimJob_afterFindJob_readsOnce() throws IOException {
+    store.createJob(jobId, createJob(JobAuthorization.State.CREDS_AVAILABLE));
+    AzureTableStore worker = new AzureTableStore(configuration, tables);
+
+    PortabilityJob job = worker.findJob(jobId);
+    worker.claimJob(jobId, claim(job));
+
+    assertThat(tables.getReads()).isEqualTo(1);
+    assertThat(store.findJob(jobId).jobAuthorization().state())
+        .isEqualTo(JobAuthorization.State.CREDS_ENCRYPTION_KEY_GENERATED);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void claimJob_revalidatesAgainstConcurrentClaim() throws IOException {
+    store.createJob(jobId, createJob(JobAuthorization.State.CREDS_AVAILABLE));
+    AzureTableStore firstWorker = new AzureTableStore(configuration, tables);
+    AzureTableStore secondWorker = new AzureTableStore(configuration, tables);
+    PortabilityJob seenByFirst = firstWorker.findJob(jobId);
+    PortabilityJob seenBySecond = secondWorker.findJob(jobId);
+
+    firstWorker.claimJob(jobId, claim(seenByFirst));
+    // The second worker's copy of the job is out of date, so its claim is validated again
+    secondWorker.claimJob(jobId, claim(seenBySecond));
+  }
+
+  @Test
+  public void claimJob_revalidatesOutOfDateVersionBeforeFailing() throws IOException {
+    store.createJob(jobId, createJob(JobAuthorization.State.INITIAL));
+    AzureTableStore worker = new AzureTableStore(configuration, tables);
+    worker.findJob(jobId);
+
+    // The job becomes claimable after the worker last read it
+    store.updateJob(jobId, createJob(JobAuthorization.State.CREDS_AVAILABLE));
+    worker.claimJob(jobId, claim(store.findJob(jobId)));
+
+    assertThat(store.findJob(jobId).jobAuthorization().state())
+        .isEqualTo(JobAuthorization.State.CREDS_ENCRYPTION_KEY_GENERATED);
+  }
+
+  @Test
+  public void updateJob_withoutValidator_replacesJob() throws IOException {
+    store.createJob(jobId, createJob(JobAuthorization.State.INITIAL));
+
+    store.updateJob(
+        jobId,
+        createJob(JobAuthorization.State.INITIAL).toBuilder().setState(State.IN_PROGRESS).build());
+
+    assertThat(store.findJob(jobId).state()).isEqualTo(State.IN_PROGRESS);
+  }
+
+  @Test(expected = IOException.class)
+  public void updateJob_missingJob_fails() throws IOException {
+    store.updateJob(jobId, createJob(JobAuthorization.State.INITIAL));
+  }
+
+  @Test
+  public void findJob_missingJob_returnsNull() {
+    assertThat(store.findJob(jobId)).isNull();
+  }
+
+  @Test
+  public void findFirst_returnsJobInState() throws IOException {
+    store.createJob(jobId, createJob(JobAuthorization.State.CREDS_AVAILABLE));
+
+    assertThat(store.findFirst(JobAuthorization.State.CREDS_AVAILABLE)).isEqualTo(jobId);
+    assertThat(store.findFirst(JobAuthorization.State.CREDS_STORED)).isNull();
+  }
+
+  @Test
+  public void updateData_replacesData() {
+    store.create(jobId, "album", new PhotoAlbum("id", "name", "description"));
+
+    store.update(jobId, "album", new PhotoAlbum("id", "new name", "description"));
+
+    assertThat(store.findData(jobId, "album", PhotoAlbum.class).getName()).isEqualTo("new name");
+  }
+
+  @Test(expected = MicrosoftStorageException.class)
+  public void updateData_missingData_fails() {
+    store.update(jobId, "album", new PhotoAlbum("id", "name", "description"));
+  }
+
+  @Test
+  public void removeData_removesOnlyThatKey() {
+    store.create(jobId, "first", new PhotoAlbum("1", "first", null));
+    store.create(jobId, "second", new PhotoAlbum("2", "second", null));
+
+    store.removeData(jobId, "first");
+
+    assertThat(store.findData(jobId, "first", PhotoAlbum.class)).isNull();
+    assertThat(store.findData(jobId, "second", PhotoAlbum.class).getName()).isEqualTo("second");
+  }
+
+  @Test
+  public void addCounts_accumulatesInOneTransaction() throws IOException {
+    store.addCounts(jobId, ImmutableMap.of("PHOTOS", 2, "ALBUMS", 1));
+    int writeRequests = tables.getWriteRequests();
+
+    store.addCounts(jobId, ImmutableMap.of("PHOTOS", 3, "VIDEOS", 4));
+
+    assertThat(tables.getWriteRequests()).isEqualTo(writeRequests + 1);
+    assertThat(store.getCounts(jobId)).containsExactly("PHOTOS", 5, "ALBUMS", 1, "VIDEOS", 4);
+  }
+
+  @Test
+  public void remove_removesJobDataInBatches() throws IOException {
+    UUID otherJobId = UUID.randomUUID();
+    store.createJob(jobId, createJob(JobAuthorization.State.INITIAL));
+    for (int i = 0; i < 150; i++) {
+      store.create(jobId, "album" + i, new PhotoAlbum("id" + i, "name", null));
+    }
+    store.addCounts(jobId, ImmutableMap.of("ALBUMS", 150));
+    store.create(otherJobId, "album", new PhotoAlbum("id", "name", null));
+    int writeRequests = tables.getWriteRequests();
+
+    store.remove(jobId);
+
+    // One request for the job, then two transactions for its 151 data entities
+    assertThat(tables.getWriteRequests()).isEqualTo(writeRequests + 3);
+    assertThat(tables.size(JOB_TABLE)).isEqualTo(0);
+    assertThat(tables.size(JOB_DATA_TABLE)).isEqualTo(1);
+    assertThat(store.findData(otherJobId, "album", PhotoAlbum.class)).isNotNull();
+  }
+
+  private static PortabilityJob createJob(JobAuthorization.State authState) {
+    return PortabilityJob.builder()
+        .setState(State.NEW)
+        .setExportService("fooService")
+        .setImportService("barService")
+        .setTransferDataType("PHOTOS")
+        .setCreatedTimestamp(Instant.now())
+        .setLastUpdateTimestamp(Instant.now())
+        .setAndValidateJobAuthorization(
+            JobAuthorization.builder()
+                .setState(authState)
+                .setSessionSecretKey("foo")
+                .build())
+        .build();
+  }
+
+  private static PortabilityJob claim(PortabilityJob job) {
+    return job.toBuilder()
+        .setAndValidateJobAuthorization(
+            job.jobAuthorization()
+                .toBuilder()
+                .setState(JobAuthorization.State.CREDS_ENCRYPTION_KEY_GENERATED)
+                .setAuthPublicKey("public key")
+                .build())
+        .build();
+  }
+}
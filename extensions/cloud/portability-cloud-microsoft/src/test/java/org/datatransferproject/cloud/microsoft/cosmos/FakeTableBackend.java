@@ -0,0 +1,144 @@
+/*
+ * Copyright 2019 The Data Transfer Project Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.datatransferproject.cloud.microsoft.cosmos;
+
+import com.google.common.base.Preconditions;
+import com.microsoft.azure.storage.StorageException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * An in-process {@link TableBackend} following the Table service's rules for conditional writes
+ * and entity group transactions. It counts requests, so tests can check round trips.
+ */
+class FakeTableBackend implements TableBackend {
+  // Separates the partition key from the row key, and sorts before any other character
+  private static final char KEY_SEPARATOR = '\u0000';
+
+  private final Map<String, TreeMap<String, DataWrapper>> tables = new HashMap<>();
+  private long lastEtag;
+  private int reads;
+  private int writeRequests;
+
+  @Override
+  public synchronized DataWrapper retrieve(String tableName, String partitionKey, String rowKey) {
+    reads++;
+    return copy(getTable(tableName).get(key(partitionKey, rowKey)));
+  }
+
+  @Override
+  public synchronized List<DataWrapper> queryByRowKeyPrefix(
+      String tableName, String partitionKey, String rowKeyPrefix) {
+    reads++;
+    String from = key(partitionKey, rowKeyPrefix);
+    String to = key(partitionKey, rowKeyPrefix + Character.MAX_VALUE);
+    List<DataWrapper> entities = new ArrayList<>();
+    for (DataWrapper entity : getTable(tableName).subMap(from, to).values()) {
+      entities.add(copy(entity));
+    }
+    return entities;
+  }
+
+  @Override
+  public synchronized DataWrapper findFirstByState(
+      String tableName, String partitionKey, String state) {
+    reads++;
+    for (DataWrapper entity : getTable(tableName).values()) {
+      if (entity.getPartitionKey().equals(partitionKey) && state.equals(entity.getState())) {
+        return copy(entity);
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public synchronized void execute(String tableName, List<Write> writes) throws StorageException {
+    Preconditions.checkArgument(!writes.isEmpty() && writes.size() <= MAX_BATCH_SIZE);
+    writeRequests++;
+    TreeMap<String, DataWrapper> table = getTable(tableName);
+    String partitionKey = writes.get(0).getEntity().getPartitionKey();
+
+    // Check every write first, so that a failed transaction leaves the table untouched
+    for (Write write : writes) {
+      DataWrapper entity = write.getEntity();
+      Preconditions.checkArgument(
+          entity.getPartitionKey().equals(partitionKey), "Transactions span a single partition");
+      DataWrapper stored = table.get(key(entity.getPartitionKey(), entity.getRowKey()));
+      if (write.getKind() == Write.Kind.INSERT) {
+        if (stored != null) {
+          throw failure("EntityAlreadyExists", CONFLICT);
+        }
+      } else if (stored == null) {
+        throw failure("ResourceNotFound", NOT_FOUND);
+      } else if (!ANY_ETAG.equals(entity.getEtag())
+          && !stored.getEtag().equals(entity.getEtag())) {
+        throw failure("UpdateConditionNotSatisfied", PRECONDITION_FAILED);
+      }
+    }
+
+    for (Write write : writes) {
+      DataWrapper entity = write.getEntity();
+      String key = key(entity.getPartitionKey(), entity.getRowKey());
+      if (write.getKind() == Write.Kind.DELETE) {
+        table.remove(key);
+      } else {
+        entity.setEtag("W/\"" + ++lastEtag + "\"");
+        table.put(key, copy(entity));
+      }
+    }
+  }
+
+  synchronized int getReads() {
+    return reads;
+  }
+
+  synchronized int getWriteRequests() {
+    return writeRequests;
+  }
+
+  synchronized int size(String tableName) {
+    return getTable(tableName).size();
+  }
+
+  private TreeMap<String, DataWrapper> getTable(String tableName) {
+    return tables.computeIfAbsent(tableName, name -> new TreeMap<>());
+  }
+
+  private static String key(String partitionKey, String rowKey) {
+    return partitionKey + KEY_SEPARATOR + rowKey;
+  }
+
+  private static DataWrapper copy(DataWrapper entity) {
+    if (entity == null) {
+      return null;
+    }
+    DataWrapper copy =
+        new DataWrapper(
+            entity.getPartitionKey(),
+            entity.getRowKey(),
+            entity.getState(),
+            entity.getSerialized());
+    copy.setEtag(entity.getEtag());
+    return copy;
+  }
+
+  private static StorageException failure(String errorCode, int statusCode) {
+    return new StorageException(errorCode, errorCode, statusCode, null, null);
+  }
+}
@@ -34,6 +34,7 @@ import org.datatransferproject.transfer.deezer.model.PlaylistDetails;
 import org.datatransferproject.transfer.deezer.model.PlaylistSummary;
 import org.datatransferproject.transfer.deezer.model.PlaylistsResponse;
 import org.datatransferproject.transfer.deezer.model.Track;
+import org.datatransferproject.transfer.deezer.model.TrackCollection;
 import org.datatransferproject.transfer.deezer.model.User;
 import org.datatransferproject.types.transfer.serviceconfig.TransferServiceConfig;
 
@@ -44,6 +45,8 @@ import java.net.URLEncoder;
 import java.util.Collection;
 import java.util.Map;
 
+import static java.lang.String.format;
+
 /**
  * A utility wrapper for interacting with the Deezer Api.
  *
@@ -113,6 +116,18 @@ public class DeezerApi {
     return makeRequest(BASE_URL + "/2.0/track/isrc:" + isrc, Track.class);
   }
 
+  /** Returns the best match for a track with the given title and artist, or null if none. */
+  public Track searchTrack(String title, String artist) throws IOException {
+    String query = format("artist:\"%s\" track:\"%s\"", artist, title);
+    TrackCollection results = makeRequest(
+        BASE_URL + "/search/track?limit=1&q=" + URLEncoder.encode(query, "UTF8"),
+        TrackCollection.class);
+    if (results.getTracks() == null || results.getTracks().length == 0) {
+      return null;
+    }
+    return results.getTracks()[0];
+  }
+
   private String makePostRequest(String url, Map<String, String> params) throws IOException {
     HttpRequestFactory requestFactory = httpTransport.createRequestFactory();
     StringBuilder extraArgs = new StringBuilder();
@@ -149,7 +164,9 @@ public class DeezerApi {
     HttpRequestFactory requestFactory = httpTransport.createRequestFactory();
     HttpRequest getRequest =
         requestFactory.buildGetRequest(
-            new GenericUrl(url + "?output=json&access_token=" + accessToken));
+            new GenericUrl(url
+                + (url.contains("?") ? "&" : "?")
+                + "output=json&access_token=" + accessToken));
     perUserRateLimiter.acquire();
     HttpResponse response = getRequest.execute();
     int statusCode = response.getStatusCode();
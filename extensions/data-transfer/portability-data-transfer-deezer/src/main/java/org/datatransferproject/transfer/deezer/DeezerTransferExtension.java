@@ -18,7 +18,9 @@ package org.datatransferproject.transfer.deezer;
 import com.google.api.client.http.HttpTransport;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.datatransferproject.api.launcher.ExtensionContext;
+import org.datatransferproject.api.launcher.MetricRecorder;
 import org.datatransferproject.api.launcher.Monitor;
 import org.datatransferproject.spi.transfer.extension.TransferExtension;
 import org.datatransferproject.spi.transfer.provider.Exporter;
@@ -29,6 +31,8 @@ import org.datatransferproject.types.common.models.playlists.PlaylistContainerRe
 import org.datatransferproject.types.transfer.auth.TokensAndUrlAuthData;
 import org.datatransferproject.types.transfer.serviceconfig.TransferServiceConfig;
 
+import java.util.concurrent.Executors;
+
 
 public class DeezerTransferExtension implements TransferExtension {
   private static final ImmutableList<String> SUPPORTED_DATA_TYPES = ImmutableList.of("PLAYLISTS");
@@ -72,7 +76,17 @@ public class DeezerTransferExtension implements TransferExtension {
     TransferServiceConfig transferServiceConfig = context.getService(TransferServiceConfig.class);
 
     exporter = new DeezerPlaylistExporter(monitor, httpTransport, transferServiceConfig);
-    importer = new DeezerPlaylistImporter(monitor, httpTransport, transferServiceConfig);
+    importer = new DeezerPlaylistImporter(
+        monitor,
+        httpTransport,
+        transferServiceConfig,
+        context.getService(MetricRecorder.class),
+        Executors.newFixedThreadPool(
+            context.getSetting("deezerTrackLookupThreads", 4),
+            new ThreadFactoryBuilder()
+                .setNameFormat("deezer-lookup-%d")
+                .setDaemon(true)
+                .build()));
     initialized = true;
   }
 }
@@ -19,8 +19,12 @@ package org.datatransferproject.transfer.deezer.playlists;
 
 import com.google.api.client.http.HttpTransport;
 import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.datatransferproject.api.launcher.MetricRecorder;
 import org.datatransferproject.api.launcher.Monitor;
 import org.datatransferproject.spi.transfer.idempotentexecutor.IdempotentImportExecutor;
+import org.datatransferproject.spi.transfer.idempotentexecutor.IdempotentKey;
 import org.datatransferproject.spi.transfer.provider.ImportResult;
 import org.datatransferproject.spi.transfer.provider.Importer;
 import org.datatransferproject.transfer.deezer.DeezerApi;
@@ -34,29 +38,72 @@ import org.datatransferproject.types.transfer.auth.TokensAndUrlAuthData;
 import org.datatransferproject.types.transfer.serviceconfig.TransferServiceConfig;
 
 import java.io.IOException;
+import java.text.Normalizer;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
 
-import static com.google.common.base.Preconditions.checkArgument;
 import static java.lang.String.format;
 
 /**
  * Imports playlists into Deezer.
+ *
+ * <p>Tracks are resolved by ISRC, or by title and artist when there is no ISRC. Lookups for a
+ * playlist are sent concurrently on the supplied executor; they all go through the user's rate
+ * limiter, so concurrency only hides request latency and never exceeds the rate budget. Results,
+ * including tracks Deezer doesn't have, are cached for the duration of a job, since the same track
+ * often appears in several playlists. Whether each lookup was served from the cache, and whether
+ * it found a track, is recorded under {@link #TRACK_CACHE_HIT_TAG} and {@link
+ * #TRACK_RESOLVED_TAG}.
  **/
 public class DeezerPlaylistImporter
     implements Importer<TokensAndUrlAuthData, PlaylistContainerResource> {
+  private static final String TRACK_CACHE_HIT_TAG = "deezer_track_cache_hit";
+  private static final String TRACK_RESOLVED_TAG = "deezer_track_resolved";
+  private static final String DATA_TYPE = "PLAYLISTS";
+  // Upper bound on the number of jobs whose lookups are held at any one time
+  private static final long MAX_CACHED_JOBS = 16;
+  private static final long TRACK_CACHE_EXPIRY_HOURS = 1;
+  private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+  private static final Pattern NON_ALPHANUMERIC = Pattern.compile("[^\\p{L}\\p{N}]+");
+
   private final Monitor monitor;
   private final HttpTransport httpTransport;
   private final TransferServiceConfig transferServiceConfig;
+  private final MetricRecorder metricRecorder;
+  private final ExecutorService lookupExecutor;
+  // Mapping of job id -> (track key -> Deezer track id, empty if there is no such track)
+  private final Cache<UUID, Map<String, Optional<Long>>> trackIds =
+      CacheBuilder.newBuilder()
+          .maximumSize(MAX_CACHED_JOBS)
+          .expireAfterAccess(TRACK_CACHE_EXPIRY_HOURS, TimeUnit.HOURS)
+          .build();
 
+  /**
+   * @param lookupExecutor executor on which track lookups are sent, its size bounds the number of
+   *     lookups in flight at once
+   */
   public DeezerPlaylistImporter(
       Monitor monitor,
       HttpTransport httpTransport,
-      TransferServiceConfig transferServiceConfig) {
+      TransferServiceConfig transferServiceConfig,
+      MetricRecorder metricRecorder,
+      ExecutorService lookupExecutor) {
     this.monitor = monitor;
     this.httpTransport = httpTransport;
     this.transferServiceConfig = transferServiceConfig;
+    this.metricRecorder = metricRecorder;
+    this.lookupExecutor = lookupExecutor;
   }
 
   @Override
@@ -69,8 +116,9 @@ public class DeezerPlaylistImporter
         authData.getAccessToken(),
         httpTransport,
         transferServiceConfig);
+    Map<String, Optional<Long>> jobTrackIds = trackIds.get(jobId, ConcurrentHashMap::new);
     for (MusicPlaylist playlist : data.getLists()) {
-      createPlaylist(idempotentExecutor, api, playlist);
+      createPlaylist(idempotentExecutor, api, jobTrackIds, playlist);
     }
     return ImportResult.OK;
   }
@@ -78,8 +126,16 @@ public class DeezerPlaylistImporter
   private void createPlaylist(
       IdempotentImportExecutor idempotentExecutor,
       DeezerApi api,
+      Map<String, Optional<Long>> jobTrackIds,
       MusicPlaylist playlist)
       throws Exception {
+    // Pages of tracks belong to a playlist created by an earlier page
+    if (playlist.isTracksOnly() && !idempotentExecutor.isKeyCached(playlist.getIdentifier())) {
+      monitor.info(
+          () -> "Skipping tracks for playlist " + playlist.getIdentifier()
+              + " since it wasn't imported");
+      return;
+    }
     Long newPlaylistId = idempotentExecutor.executeAndSwallowIOExceptions(
         playlist.getIdentifier(),
         playlist.getHeadline(),
@@ -89,16 +145,50 @@ public class DeezerPlaylistImporter
       // Playlist couldn't be created error will be reported to user.
       return;
     }
-    List<Long> ids = new ArrayList<>();
+
+    // Send a lookup for every track whose key isn't cached yet, then record them in order
+    List<PendingTrack> pending = new ArrayList<>(playlist.getTrack().size());
+    Map<String, Future<Optional<Long>>> lookups = new HashMap<>();
     for (MusicRecording track : playlist.getTrack()) {
-      Long newSongId = idempotentExecutor.executeAndSwallowIOExceptions(
-          newPlaylistId + "-" + track.hashCode(),
-          "Track: " + track + " in " + playlist.getHeadline(),
-          () -> lookupTrack(api, track));
-      ids.add(newSongId);
+      IdempotentKey idempotentKey = IdempotentKey.of(
+          String.valueOf(newPlaylistId),
+          track.getIdentifier(),
+          track.getHeadline(),
+          track.getIsrcCode());
+      String trackKey = trackKey(track);
+      Future<Optional<Long>> lookup = null;
+      if (!idempotentExecutor.isKeyCached(idempotentKey) && trackKey != null) {
+        if (!jobTrackIds.containsKey(trackKey)) {
+          lookup = lookups.get(trackKey);
+        }
+        boolean hit = jobTrackIds.containsKey(trackKey) || lookup != null;
+        if (!hit) {
+          lookup = lookupExecutor.submit(() -> lookupTrack(api, track));
+          lookups.put(trackKey, lookup);
+        }
+        metricRecorder.recordMetric(DATA_TYPE, TRACK_CACHE_HIT_TAG, hit);
+      }
+      pending.add(new PendingTrack(track, idempotentKey, trackKey, lookup));
+    }
+
+    // The idempotent executor and the job's cache are only updated from this thread
+    List<Long> ids = new ArrayList<>();
+    for (PendingTrack track : pending) {
+      Long newSongId = recordTrack(idempotentExecutor, jobTrackIds, playlist, track);
+      if (newSongId != null) {
+        ids.add(newSongId);
+      }
+    }
+    if (ids.isEmpty()) {
+      // None of the tracks could be resolved, they are reported as failed items of their own
+      return;
     }
+    // A playlist's tracks may arrive over several pages, each page is inserted on its own
+    List<String> insertKeyParts = new ArrayList<>(ids.size() + 1);
+    insertKeyParts.add(String.valueOf(newPlaylistId));
+    ids.forEach(id -> insertKeyParts.add(String.valueOf(id)));
     idempotentExecutor.executeAndSwallowIOExceptions(
-        newPlaylistId + "-tracks",
+        IdempotentKey.of(insertKeyParts.toArray(new String[0])),
         "Playlist: " + playlist.getHeadline(),
         () -> {
           Error insertResponse = api.insertTracksInPlaylist(newPlaylistId, ids);
@@ -111,6 +201,57 @@ public class DeezerPlaylistImporter
     );
   }
 
+  /**
+   * Records the outcome of looking up {@code pending} with the idempotent executor, returning the
+   * Deezer track id, or null if the track couldn't be resolved.
+   */
+  private Long recordTrack(
+      IdempotentImportExecutor idempotentExecutor,
+      Map<String, Optional<Long>> jobTrackIds,
+      MusicPlaylist playlist,
+      PendingTrack pending)
+      throws Exception {
+    if (idempotentExecutor.isKeyCached(pending.idempotentKey)) {
+      return idempotentExecutor.getCachedValue(pending.idempotentKey);
+    }
+    MusicRecording track = pending.track;
+    Optional<Long> trackId = null;
+    IOException failure = null;
+    if (pending.trackKey == null) {
+      failure = new IOException("ISRC code or title and artist are required: " + track);
+    } else if (pending.lookup == null) {
+      trackId = jobTrackIds.get(pending.trackKey);
+    } else {
+      try {
+        trackId = pending.lookup.get();
+        jobTrackIds.put(pending.trackKey, trackId);
+      } catch (ExecutionException e) {
+        if (!(e.getCause() instanceof IOException)) {
+          throw e;
+        }
+        failure = (IOException) e.getCause();
+      }
+    }
+    if (trackId != null) {
+      metricRecorder.recordMetric(DATA_TYPE, TRACK_RESOLVED_TAG, trackId.isPresent());
+      if (!trackId.isPresent()) {
+        failure = new IOException("Couldn't find matching Deezer track for: " + track);
+      }
+    }
+
+    IOException cause = failure;
+    Optional<Long> result = trackId;
+    return idempotentExecutor.executeAndSwallowIOExceptions(
+        pending.idempotentKey,
+        "Track: " + track + " in " + playlist.getHeadline(),
+        () -> {
+          if (cause != null) {
+            throw cause;
+          }
+          return result.get();
+        });
+  }
+
   private Long createPlaylist(DeezerApi api, MusicPlaylist playlist) {
     try {
       InsertResponse createResponse = api.createPlaylist("Imported - " + playlist.getHeadline());
@@ -129,12 +270,65 @@ public class DeezerPlaylistImporter
     }
   }
 
-  private Long lookupTrack(DeezerApi api, MusicRecording track) throws IOException {
-    checkArgument(!Strings.isNullOrEmpty(track.getIsrcCode()), "IRCS code is required");
-    Track foundTrack = api.lookupTrackByIsrc(track.getIsrcCode());
-    if (foundTrack == null) {
-      throw new IllegalArgumentException("Couldn't find matching Deezer track for: " + track);
+  /** Looks up the Deezer track for {@code track}, which must have a {@link #trackKey}. */
+  private static Optional<Long> lookupTrack(DeezerApi api, MusicRecording track)
+      throws IOException {
+    Track foundTrack;
+    if (!Strings.isNullOrEmpty(track.getIsrcCode())) {
+      foundTrack = api.lookupTrackByIsrc(track.getIsrcCode().trim());
+    } else {
+      foundTrack = api.searchTrack(track.getHeadline(), track.getByArtist().getHeadline());
+    }
+    // Deezer answers unknown ISRCs with an error object, which has no track id
+    if (foundTrack == null || foundTrack.getId() == 0) {
+      return Optional.empty();
+    }
+    return Optional.of(foundTrack.getId());
+  }
+
+  /**
+   * Returns the key under which the lookup for {@code track} is cached: its ISRC, or its
+   * normalized title and artist when it has no ISRC. Returns null if the track has neither.
+   */
+  private static String trackKey(MusicRecording track) {
+    if (!Strings.isNullOrEmpty(track.getIsrcCode())) {
+      return "isrc:" + track.getIsrcCode().trim().toUpperCase(Locale.ROOT);
+    }
+    String title = normalize(track.getHeadline());
+    String artist = track.getByArtist() == null ? "" : normalize(track.getByArtist().getHeadline());
+    if (title.isEmpty() || artist.isEmpty()) {
+      return null;
+    }
+    return "title:" + title + "|artist:" + artist;
+  }
+
+  /** Lower-cases {@code value} and drops accents and punctuation, collapsing them to spaces. */
+  private static String normalize(String value) {
+    if (value == null) {
+      return "";
+    }
+    String decomposed = Normalizer.normalize(value, Normalizer.Form.NFKD);
+    String stripped = DIACRITICS.matcher(decomposed).replaceAll("");
+    return NON_ALPHANUMERIC.matcher(stripped.toLowerCase(Locale.ROOT)).replaceAll(" ").trim();
+  }
+
+  /** A track of the playlist being imported, with the lookup sent for it if any. */
+  private static final class PendingTrack {
+    private final MusicRecording track;
+    private final IdempotentKey idempotentKey;
+    private final String trackKey;
+    // Null when the track is already imported, has no key, or its key is in the job's cache
+    private final Future<Optional<Long>> lookup;
+
+    private PendingTrack(
+        MusicRecording track,
+        IdempotentKey idempotentKey,
+        String trackKey,
+        Future<Optional<Long>> lookup) {
+      this.track = track;
+      this.idempotentKey = idempotentKey;
+      this.trackKey = trackKey;
+      this.lookup = lookup;
     }
-    return foundTrack.getId();
   }
 }
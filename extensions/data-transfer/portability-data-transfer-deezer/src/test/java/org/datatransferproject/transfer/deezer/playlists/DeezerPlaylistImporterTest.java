@@ -0,0 +1,247 @@
+/*
+ * Copyright 2019 The Data Transfer Project Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.datatransferproject.transfer.deezer.playlists;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.api.client.http.LowLevelHttpRequest;
+import com.google.api.client.http.LowLevelHttpResponse;
+import com.google.api.client.testing.http.MockHttpTransport;
+import com.google.api.client.testing.http.MockLowLevelHttpRequest;
+import com.google.api.client.testing.http.MockLowLevelHttpResponse;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import org.datatransferproject.api.launcher.MetricRecorder;
+import org.datatransferproject.api.launcher.Monitor;
+import org.datatransferproject.test.types.FakeIdempotentImportExecutor;
+import org.datatransferproject.types.common.models.playlists.MusicGroup;
+import org.datatransferproject.types.common.models.playlists.MusicPlaylist;
+import org.datatransferproject.types.common.models.playlists.MusicRecording;
+import org.datatransferproject.types.common.models.playlists.PlaylistContainerResource;
+import org.datatransferproject.types.transfer.auth.TokensAndUrlAuthData;
+import org.datatransferproject.types.transfer.serviceconfig.TransferServiceConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DeezerPlaylistImporterTest {
+  private static final UUID JOB_ID = UUID.randomUUID();
+  private static final TokensAndUrlAuthData AUTH_DATA =
+      new TokensAndUrlAuthData("accessToken", null, null);
+  // Deezer track id for each ISRC Deezer knows about
+  private static final Map<String, Long> DEEZER_TRACKS =
+      ImmutableMap.of("ISRC1", 1L, "ISRC2", 2L, "ISRC3", 3L);
+
+  // Urls of the requests sent, without their query
+  private final List<String> requests = Collections.synchronizedList(new ArrayList<>());
+  // The songs of each tracks insert, in order
+  private final List<String> insertedSongs = Collections.synchronizedList(new ArrayList<>());
+  private final List<Boolean> cacheHits = Collections.synchronizedList(new ArrayList<>());
+  private final List<Boolean> resolved = Collections.synchronizedList(new ArrayList<>());
+  private final AtomicLong nextPlaylistId = new AtomicLong(100);
+  // Counted down by every ISRC lookup, which then waits for it to reach zero
+  private CountDownLatch lookupLatch = new CountDownLatch(0);
+  private ExecutorService lookupExecutor;
+  private DeezerPlaylistImporter importer;
+  private FakeIdempotentImportExecutor executor;
+
+  @Before
+  public void setUp() {
+    lookupExecutor = Executors.newFixedThreadPool(2);
+    importer =
+        new DeezerPlaylistImporter(
+            new Monitor() {},
+            new FakeDeezerTransport(),
+            TransferServiceConfig.getDefaultInstance(),
+            new RecordingMetricRecorder(),
+            lookupExecutor);
+    executor = new FakeIdempotentImportExecutor();
+  }
+
+  @After
+  public void tearDown() {
+    lookupExecutor.shutdownNow();
+  }
+
+  @Test
+  public void lookupsOfPlaylistAreSentConcurrently() throws Exception {
+    // Each lookup only answers once both have been sent, so sequential lookups would time out
+    lookupLatch = new CountDownLatch(2);
+
+    importPlaylists(playlist("p1", "First", track("ISRC1"), track("ISRC2")));
+
+    assertThat(insertedSongs).containsExactly("1,2");
+    assertThat(resolved).containsExactly(true, true);
+  }
+
+  @Test
+  public void lookupsAreCachedForJob() throws Exception {
+    importPlaylists(playlist("p1", "First", track("ISRC1"), track("ISRC2")));
+    // The same track twice in another playlist of the same job
+    importPlaylists(playlist("p2", "Second", track("ISRC1"), track("isrc1 ")));
+
+    assertThat(lookups()).containsExactly("ISRC1", "ISRC2");
+    assertThat(cacheHits).containsExactly(false, false, true, true).inOrder();
+    assertThat(insertedSongs).containsExactly("1,2", "1,1").inOrder();
+  }
+
+  @Test
+  public void unknownTrackIsReportedAndNotInserted() throws Exception {
+    importPlaylists(playlist("p1", "First", track("UNKNOWN")));
+
+    assertThat(resolved).containsExactly(false);
+    // Nothing was resolved, so nothing is inserted
+    assertThat(insertedSongs).isEmpty();
+  }
+
+  @Test
+  public void trackPagesOfPlaylistAreInsertedSeparately() throws Exception {
+    importPlaylists(playlist("p1", "First", track("ISRC1")));
+    importPlaylists(MusicPlaylist.tracksOf("p1", ImmutableList.of(track("ISRC2"))));
+    importPlaylists(MusicPlaylist.tracksOf("p1", ImmutableList.of(track("ISRC3"))));
+
+    assertThat(requests.stream().filter(url -> url.endsWith("/user/me/playlists")).count())
+        .isEqualTo(1L);
+    assertThat(insertedSongs).containsExactly("1", "2", "3").inOrder();
+  }
+
+  @Test
+  public void retriedPageIsNotInsertedAgain() throws Exception {
+    importPlaylists(playlist("p1", "First", track("ISRC1"), track("ISRC2")));
+    importPlaylists(playlist("p1", "First", track("ISRC1"), track("ISRC2")));
+
+    assertThat(insertedSongs).containsExactly("1,2");
+  }
+
+  @Test
+  public void trackPageOfPlaylistNotImportedIsSkipped() throws Exception {
+    importPlaylists(MusicPlaylist.tracksOf("p1", ImmutableList.of(track("ISRC1"))));
+
+    assertThat(requests).isEmpty();
+  }
+
+  private void importPlaylists(MusicPlaylist... playlists) throws Exception {
+    importer.importItem(
+        JOB_ID,
+        executor,
+        AUTH_DATA,
+        new PlaylistContainerResource(ImmutableList.copyOf(playlists)));
+  }
+
+  private List<String> lookups() {
+    return requests.stream()
+        .filter(url -> url.contains("/track/isrc:"))
+        .map(url -> url.substring(url.indexOf("isrc:") + "isrc:".length()))
+        .collect(Collectors.toList());
+  }
+
+  private static MusicPlaylist playlist(String id, String name, MusicRecording... tracks) {
+    return new MusicPlaylist(id, name, ImmutableList.copyOf(tracks));
+  }
+
+  private static MusicRecording track(String isrc) {
+    return new MusicRecording(
+        "track-" + isrc, "Song " + isrc, isrc, null, new MusicGroup("Artist"));
+  }
+
+  /** Answers Deezer API requests from {@link #DEEZER_TRACKS}. */
+  private class FakeDeezerTransport extends MockHttpTransport {
+    @Override
+    public LowLevelHttpRequest buildRequest(String method, String url) {
+      return new MockLowLevelHttpRequest(url) {
+        @Override
+        public LowLevelHttpResponse execute() {
+          String path = url.substring(0, url.indexOf('?'));
+          requests.add(path);
+          return new MockLowLevelHttpResponse().setContent(respond(path, url));
+        }
+      };
+    }
+
+    private String respond(String path, String url) {
+      if (path.endsWith("/user/me/playlists")) {
+        return "{\"id\": " + nextPlaylistId.getAndIncrement() + "}";
+      }
+      if (path.matches(".*/playlist/\\d+/tracks")) {
+        insertedSongs.add(queryParameter(url, "songs"));
+        return "true";
+      }
+      if (path.contains("/track/isrc:")) {
+        lookupLatch.countDown();
+        try {
+          if (!lookupLatch.await(10, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("Lookups were not sent concurrently");
+          }
+        } catch (InterruptedException e) {
+          throw new IllegalStateException(e);
+        }
+        Long trackId = DEEZER_TRACKS.get(path.substring(path.indexOf("isrc:") + "isrc:".length()));
+        // Deezer answers unknown ISRCs with an error object
+        return trackId == null
+            ? "{\"error\": {\"type\": \"DataException\", \"message\": \"no data\", \"code\": 800}}"
+            : "{\"id\": " + trackId + "}";
+      }
+      throw new IllegalArgumentException("Unexpected request: " + url);
+    }
+
+    private String queryParameter(String url, String name) {
+      for (String parameter : url.substring(url.indexOf('?') + 1).split("&")) {
+        if (parameter.startsWith(name + "=")) {
+          try {
+            return URLDecoder.decode(parameter.substring(name.length() + 1), "UTF-8");
+          } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+          }
+        }
+      }
+      return null;
+    }
+  }
+
+  private class RecordingMetricRecorder implements MetricRecorder {
+    @Override
+    public void recordMetric(String dataType, String tag) {}
+
+    @Override
+    public void recordMetric(String dataType, String tag, boolean bool) {
+      if (tag.equals("deezer_track_cache_hit")) {
+        cacheHits.add(bool);
+      } else if (tag.equals("deezer_track_resolved")) {
+        resolved.add(bool);
+      }
+    }
+
+    @Override
+    public void recordMetric(String dataType, String tag, Duration duration) {}
+
+    @Override
+    public void recordMetric(String dataType, String tag, int value) {}
+  }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2019 The Data Transfer Project Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.datatransferproject.datatransfer.google.photos;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import org.datatransferproject.spi.transfer.types.ContainedIdIndex;
+import org.datatransferproject.spi.transfer.types.TempPhotosData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the cost of filtering one page of albumless media against the ids of media contained
+ * in albums, for a synthetic library where every item is in some album.
+ *
+ * <p>{@code jsonPerPage} is what {@link GooglePhotosExporter} used to do for every page: parse the
+ * whole stored {@link TempPhotosData}. {@code binaryIndexPerPage} is the cost of the first page on
+ * a worker, which reads the stored {@link ContainedIdIndex}, and {@code cachedIndexPerPage} is the
+ * cost of every page after that.
+ *
+ * <p>Run with {@code ./gradlew :extensions:data-transfer:portability-data-transfer-google:jmh}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+public class ContainedMediaIndexBenchmark {
+  // The page size the exporter asks the Photos Library API for
+  private static final int PAGE_SIZE = 100;
+
+  @Param("500000")
+  private int librarySize;
+
+  private final ObjectMapper objectMapper = new ObjectMapper();
+  private byte[] storedJson;
+  private byte[] storedIndex;
+  private ContainedIdIndex cachedIndex;
+  private String[] page;
+
+  @Setup
+  public void setUp() throws IOException {
+    UUID jobId = UUID.randomUUID();
+    TempPhotosData tempPhotosData = new TempPhotosData(jobId);
+    ContainedIdIndex.Builder builder = ContainedIdIndex.builder();
+    String[] library = new String[librarySize];
+    for (int i = 0; i < librarySize; i++) {
+      library[i] = mediaItemId(i);
+      tempPhotosData.addContainedPhotoId(library[i]);
+      builder.add(library[i]);
+    }
+    storedJson = objectMapper.writeValueAsBytes(tempPhotosData);
+    cachedIndex = builder.build();
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    cachedIndex.writeTo(out);
+    storedIndex = out.toByteArray();
+
+    // Half of each page is contained in an album, the other half is not
+    Random random = new Random(42);
+    page = new String[PAGE_SIZE];
+    for (int i = 0; i < PAGE_SIZE; i++) {
+      page[i] =
+          i % 2 == 0 ? library[random.nextInt(librarySize)] : mediaItemId(librarySize + i);
+    }
+  }
+
+  @Benchmark
+  public int jsonPerPage() throws IOException {
+    TempPhotosData tempPhotosData =
+        objectMapper.readValue(new ByteArrayInputStream(storedJson), TempPhotosData.class);
+    int albumless = 0;
+    for (String id : page) {
+      if (!tempPhotosData.isContainedPhotoId(id)) {
+        albumless++;
+      }
+    }
+    return albumless;
+  }
+
+  @Benchmark
+  public int binaryIndexPerPage() throws IOException {
+    return countAlbumless(ContainedIdIndex.readFrom(new ByteArrayInputStream(storedIndex)));
+  }
+
+  @Benchmark
+  public int cachedIndexPerPage() {
+    return countAlbumless(cachedIndex);
+  }
+
+  private int countAlbumless(ContainedIdIndex index) {
+    int albumless = 0;
+    for (String id : page) {
+      if (!index.contains(id)) {
+        albumless++;
+      }
+    }
+    return albumless;
+  }
+
+  // Media item ids from the Photos Library API are opaque strings of around 100 characters
+  private static String mediaItemId(int i) {
+    return String.format("AKLr%096d", i);
+  }
+}
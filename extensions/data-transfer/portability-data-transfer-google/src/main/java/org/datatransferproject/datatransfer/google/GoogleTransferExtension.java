@@ -5,7 +5,13 @@ import com.google.api.client.json.JsonFactory;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import org.datatransferproject.api.launcher.ExtensionContext;
 import org.datatransferproject.api.launcher.Monitor;
 import org.datatransferproject.datatransfer.google.calendar.GoogleCalendarExporter;
@@ -118,10 +124,41 @@ public class GoogleTransferExtension implements TransferExtension {
     // 初始化所有导入数据的类信息
     ImmutableMap.Builder<String, Importer> importerBuilder = ImmutableMap.builder();
     importerBuilder.put("BLOBS", new DriveImporter(credentialFactory, jobStore, monitor));
-    importerBuilder.put("CONTACTS", new GoogleContactsImporter(credentialFactory));
-    importerBuilder.put("CALENDAR", new GoogleCalendarImporter(credentialFactory));
-    importerBuilder.put("MAIL", new GoogleMailImporter(credentialFactory, monitor));
-    importerBuilder.put("TASKS", new GoogleTasksImporter(credentialFactory));
+    importerBuilder.put(
+        "CONTACTS",
+        new GoogleContactsImporter(
+            credentialFactory,
+            context.getSetting("googleContactsImportBatchSize", 50),
+            Executors.newFixedThreadPool(
+                context.getSetting("googleContactsImportThreads", 2),
+                new ThreadFactoryBuilder()
+                    .setNameFormat("contacts-import-%d")
+                    .setDaemon(true)
+                    .build())));
+    importerBuilder.put(
+        "CALENDAR",
+        new GoogleCalendarImporter(
+            credentialFactory,
+            context.getSetting("googleCalendarImportBatchSize", 25),
+            Executors.newFixedThreadPool(
+                context.getSetting("googleCalendarImportThreads", 2),
+                new ThreadFactoryBuilder()
+                    .setNameFormat("calendar-import-%d")
+                    .setDaemon(true)
+                    .build())));
+    importerBuilder.put(
+        "MAIL",
+        new GoogleMailImporter(
+            credentialFactory,
+            context.getSetting("googleMailImportBatchSize", 20),
+            Executors.newFixedThreadPool(
+                context.getSetting("googleMailImportThreads", 2),
+                new ThreadFactoryBuilder().setNameFormat("gmail-import-%d").setDaemon(true).build()),
+            monitor));
+    importerBuilder.put(
+        "TASKS",
+        new GoogleTasksImporter(
+            credentialFactory, context.getSetting("googleTasksImportBatchSize", 50)));
     importerBuilder.put(
         "PHOTOS",
         new GooglePhotosImporter(
@@ -130,22 +167,98 @@ public class GoogleTransferExtension implements TransferExtension {
             jsonFactory,
             monitor,
             context.getSetting("googleWritesPerSecond", 1.0)));
-    importerBuilder.put("VIDEOS", new GoogleVideosImporter(appCredentials, jobStore, monitor));
+    importerBuilder.put(
+        "VIDEOS",
+        new GoogleVideosImporter(
+            appCredentials,
+            jobStore,
+            monitor,
+            Executors.newFixedThreadPool(
+                Math.max(1, context.getSetting("googleVideosUploadThreads", 2)),
+                new ThreadFactoryBuilder()
+                    .setNameFormat("videos-upload-%d")
+                    .setDaemon(true)
+                    .build()),
+            context.getSetting("googleVideosTempDiskBudgetMb", 4096) * 1024L * 1024L));
     importerMap = importerBuilder.build();
 
     // 初始化所有导出信息的类信息
     ImmutableMap.Builder<String, Exporter> exporterBuilder = ImmutableMap.builder();
     exporterBuilder.put("BLOBS", new DriveExporter(credentialFactory, jobStore, monitor));
     exporterBuilder.put("CONTACTS", new GoogleContactsExporter(credentialFactory));
-    exporterBuilder.put("CALENDAR", new GoogleCalendarExporter(credentialFactory));
-    exporterBuilder.put("MAIL", new GoogleMailExporter(credentialFactory));
+    exporterBuilder.put(
+        "CALENDAR",
+        new GoogleCalendarExporter(
+            credentialFactory,
+            context.getSetting("googleCalendarEventPageSize", 250),
+            context.getSetting("googleCalendarFetchesPerUser", 3),
+            createCalendarFetchExecutor(context.getSetting("googleCalendarFetchThreads", 4)),
+            monitor));
+    exporterBuilder.put(
+        "MAIL",
+        new GoogleMailExporter(
+            credentialFactory,
+            context.getSetting("googleMailPageSize", 50),
+            context.getSetting("googleMailBatchFetch", true),
+            createMailPrefetchExecutor(context.getSetting("googleMailPrefetchThreads", 1)),
+            monitor));
     exporterBuilder.put("SOCIAL-POSTS", new GooglePlusExporter(credentialFactory));
-    exporterBuilder.put("TASKS", new GoogleTasksExporter(credentialFactory, monitor));
-    exporterBuilder.put("PHOTOS", new GooglePhotosExporter(credentialFactory, jobStore, jsonFactory, monitor));
+    exporterBuilder.put(
+        "TASKS",
+        new GoogleTasksExporter(
+            credentialFactory,
+            context.getSetting("googleTasksExportPageSize", GoogleTasksExporter.MAX_PAGE_SIZE),
+            monitor));
+    exporterBuilder.put(
+        "PHOTOS",
+        new GooglePhotosExporter(
+            credentialFactory,
+            jobStore,
+            jsonFactory,
+            context.getSetting("googlePhotosAlbumScansPerJob", 4),
+            createPhotosScanExecutor(context.getSetting("googlePhotosScanThreads", 8)),
+            monitor));
     exporterBuilder.put("VIDEOS", new GoogleVideosExporter(credentialFactory, jsonFactory));
 
     exporterMap = exporterBuilder.build();
 
     initialized = true;
   }
+
+  /** Returns the executor on which calendar events are fetched ahead of time, or null. */
+  private static ExecutorService createCalendarFetchExecutor(int threads) {
+    if (threads <= 0) {
+      return null;
+    }
+    // Each job bounds its own queued fetches, see GoogleCalendarExporter
+    return Executors.newFixedThreadPool(
+        threads,
+        new ThreadFactoryBuilder().setNameFormat("calendar-fetch-%d").setDaemon(true).build());
+  }
+
+  /** Returns the executor on which media contained in albums are indexed, or null. */
+  private static ExecutorService createPhotosScanExecutor(int threads) {
+    if (threads <= 0) {
+      return null;
+    }
+    // Each job bounds its own concurrent album scans, see GooglePhotosExporter
+    return Executors.newFixedThreadPool(
+        threads,
+        new ThreadFactoryBuilder().setNameFormat("photos-scan-%d").setDaemon(true).build());
+  }
+
+  /** Returns a bounded executor for listing the next page of mail, or null if disabled. */
+  private static ExecutorService createMailPrefetchExecutor(int threads) {
+    if (threads <= 0) {
+      return null;
+    }
+    // Rejected prefetches are harmless, the page is listed when it is requested instead
+    return new ThreadPoolExecutor(
+        threads,
+        threads,
+        0L,
+        TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(threads),
+        new ThreadFactoryBuilder().setNameFormat("gmail-prefetch-%d").setDaemon(true).build());
+  }
 }
@@ -10,6 +10,9 @@ import com.google.api.services.calendar.model.EventDateTime;
 import com.google.api.services.calendar.model.Events;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.datatransferproject.api.launcher.Monitor;
 import org.datatransferproject.datatransfer.google.common.GoogleCredentialFactory;
 import org.datatransferproject.datatransfer.google.common.GoogleStaticObjects;
 import org.datatransferproject.spi.transfer.provider.ExportResult;
@@ -31,30 +34,110 @@ import java.io.IOException;
 import java.time.LocalDate;
 import java.time.OffsetDateTime;
 import java.time.ZoneId;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
+import javax.annotation.Nullable;
 
 import static org.datatransferproject.datatransfer.google.common.GoogleStaticObjects.CALENDAR_TOKEN_PREFIX;
 import static org.datatransferproject.datatransfer.google.common.GoogleStaticObjects.EVENT_TOKEN_PREFIX;
 
-
+/**
+ * Exports calendars and their events from Google Calendar.
+ *
+ * <p>Calendars are exported first, with one container resource per calendar for its events. When a
+ * fetch executor is supplied, the first event pages of the job's calendars, and the next page of
+ * the calendar being exported, are fetched ahead of time and concurrently. A job never has more
+ * than {@code fetchesPerUser} such fetches in flight, so one user's export cannot use up the
+ * API quota of the others.
+ */
 public class GoogleCalendarExporter implements
     Exporter<TokensAndUrlAuthData, CalendarContainerResource> {
+  // The largest number of events the API returns per page
+  @VisibleForTesting static final int MAX_PAGE_SIZE = 2500;
+  // The API's default number of events per page
+  private static final int DEFAULT_PAGE_SIZE = 250;
+  // Only the attributes read by convertToCalendarEventModel are downloaded
+  @VisibleForTesting
+  static final String EVENT_FIELDS =
+      "nextPageToken,items(description,summary,attendees(displayName,email,optional),"
+          + "location,start,end,recurrence)";
+  private static final String CALENDAR_FIELDS = "nextPageToken,items(id,summary,description)";
+  // Upper bound on the number of jobs holding prefetched pages at any one time
+  private static final long MAX_PREFETCHING_JOBS = 16;
+  // Pages that are never picked up, e.g. because the job failed, are dropped after this long
+  private static final long PREFETCH_EXPIRY_MINUTES = 10;
 
   private final GoogleCredentialFactory credentialFactory;
+  private final int maxResults;
+  private final int fetchesPerUser;
+  @Nullable private final ExecutorService fetchExecutor;
+  private final Monitor monitor;
+  private final Cache<UUID, JobPrefetches> prefetches =
+      CacheBuilder.newBuilder()
+          .maximumSize(MAX_PREFETCHING_JOBS)
+          .expireAfterAccess(PREFETCH_EXPIRY_MINUTES, TimeUnit.MINUTES)
+          .<UUID, JobPrefetches>removalListener(
+              notification -> {
+                if (notification.wasEvicted()) {
+                  notification.getValue().pages.values().forEach(page -> page.cancel(true));
+                }
+              })
+          .build();
   private volatile Calendar calendarInterface;
 
-  public GoogleCalendarExporter(GoogleCredentialFactory credentialFactory) {
-    this(credentialFactory, null); // Lazily initialized later on
+  /**
+   * @param maxResults the number of events exported per call, at most {@link #MAX_PAGE_SIZE}
+   * @param fetchesPerUser the number of event pages a job may fetch ahead of time concurrently
+   * @param fetchExecutor executor on which event pages are fetched ahead of time, or null to fetch
+   *     each page on demand
+   */
+  public GoogleCalendarExporter(
+      GoogleCredentialFactory credentialFactory,
+      int maxResults,
+      int fetchesPerUser,
+      @Nullable ExecutorService fetchExecutor,
+      Monitor monitor) {
+    // calendarInterface lazily initialized later on
+    this(credentialFactory, null, maxResults, fetchesPerUser, fetchExecutor, monitor);
   }
 
   @VisibleForTesting
   GoogleCalendarExporter(GoogleCredentialFactory credentialFactory, Calendar calendarInterface) {
+    this(credentialFactory, calendarInterface, DEFAULT_PAGE_SIZE, 0, null, new Monitor() {});
+  }
+
+  @VisibleForTesting
+  GoogleCalendarExporter(
+      GoogleCredentialFactory credentialFactory,
+      Calendar calendarInterface,
+      int maxResults,
+      int fetchesPerUser,
+      @Nullable ExecutorService fetchExecutor,
+      Monitor monitor) {
+    Preconditions.checkArgument(
+        maxResults > 0 && maxResults <= MAX_PAGE_SIZE,
+        "maxResults must be between 1 and %s, was %s",
+        MAX_PAGE_SIZE,
+        maxResults);
     this.credentialFactory = credentialFactory;
     this.calendarInterface = calendarInterface;
+    this.maxResults = maxResults;
+    this.fetchesPerUser = fetchesPerUser;
+    this.fetchExecutor = fetchesPerUser > 0 ? fetchExecutor : null;
+    this.monitor = monitor;
   }
 
   private static CalendarAttendeeModel transformToModelAttendee(EventAttendee attendee) {
@@ -136,19 +219,20 @@ public class GoogleCalendarExporter implements
   public ExportResult<CalendarContainerResource> export(
       UUID jobId, TokensAndUrlAuthData authData, Optional<ExportInformation> exportInformation) {
     if (!exportInformation.isPresent()) {
-      return exportCalendars(authData, Optional.empty());
+      return exportCalendars(jobId, authData, Optional.empty());
     } else {
       StringPaginationToken paginationToken =
           (StringPaginationToken) exportInformation.get().getPaginationData();
       if (paginationToken != null && paginationToken.getToken().startsWith(CALENDAR_TOKEN_PREFIX)) {
         // Next thing to export is more calendars
-        return exportCalendars(authData, Optional.of(paginationToken));
+        return exportCalendars(jobId, authData, Optional.of(paginationToken));
       } else {
         // Next thing to export is events
         IdOnlyContainerResource idOnlyContainerResource =
             (IdOnlyContainerResource) exportInformation.get().getContainerResource();
         Optional<PaginationData> pageData = Optional.ofNullable(paginationToken);
-        return getCalendarEvents(authData,
+        return getCalendarEvents(jobId,
+            authData,
             idOnlyContainerResource.getId(),
             pageData);
       }
@@ -156,13 +240,14 @@ public class GoogleCalendarExporter implements
   }
 
   private ExportResult<CalendarContainerResource> exportCalendars(
-      TokensAndUrlAuthData authData, Optional<PaginationData> pageData) {
+      UUID jobId, TokensAndUrlAuthData authData, Optional<PaginationData> pageData) {
     Calendar.CalendarList.List listRequest;
     CalendarList listResult;
 
     // Get calendar information
     try {
       listRequest = getOrCreateCalendarInterface(authData).calendarList().list();
+      listRequest.setFields(CALENDAR_FIELDS);
 
       if (pageData.isPresent()) {
         StringPaginationToken paginationToken = (StringPaginationToken) pageData.get();
@@ -198,6 +283,17 @@ public class GoogleCalendarExporter implements
     CalendarContainerResource calendarContainerResource =
         new CalendarContainerResource(calendarModels, null);
 
+    if (fetchExecutor != null && !calendarModels.isEmpty()) {
+      Calendar calendar = getOrCreateCalendarInterface(authData);
+      JobPrefetches jobPrefetches = getJobPrefetches(jobId);
+      synchronized (jobPrefetches) {
+        for (CalendarModel model : calendarModels) {
+          jobPrefetches.pendingCalendars.add(model.getId());
+        }
+      }
+      prefetchPendingCalendars(jobPrefetches, calendar);
+    }
+
     // Get result type
     ExportResult.ResultType resultType = ResultType.CONTINUE;
     if (calendarModels.isEmpty()) {
@@ -208,31 +304,33 @@ public class GoogleCalendarExporter implements
   }
 
   private ExportResult<CalendarContainerResource> getCalendarEvents(
-      TokensAndUrlAuthData authData, String id, Optional<PaginationData> pageData) {
-    Calendar.Events.List listRequest;
-    Events listResult;
+      UUID jobId, TokensAndUrlAuthData authData, String id, Optional<PaginationData> pageData) {
+    Calendar calendar = getOrCreateCalendarInterface(authData);
+    String pageToken = null;
+    if (pageData.isPresent()) {
+      StringPaginationToken paginationToken = (StringPaginationToken) pageData.get();
+      Preconditions.checkState(
+          paginationToken.getToken().startsWith(EVENT_TOKEN_PREFIX), "Token is not applicable");
+      pageToken = paginationToken.getToken().substring(EVENT_TOKEN_PREFIX.length());
+    }
 
     // Get event information
+    Events listResult;
     try {
-      listRequest =
-          getOrCreateCalendarInterface(authData)
-              .events()
-              .list(id)
-              .setMaxAttendees(GoogleStaticObjects.MAX_ATTENDEES);
-      if (pageData.isPresent()) {
-        StringPaginationToken paginationToken = (StringPaginationToken) pageData.get();
-        Preconditions.checkState(
-            paginationToken.getToken().startsWith(EVENT_TOKEN_PREFIX), "Token is not applicable");
-        listRequest.setPageToken(
-            ((StringPaginationToken) pageData.get())
-                .getToken()
-                .substring(EVENT_TOKEN_PREFIX.length()));
-      }
-      listResult = listRequest.execute();
+      listResult = listEvents(jobId, calendar, id, pageToken);
     } catch (IOException e) {
       return new ExportResult<>(e);
     }
 
+    if (fetchExecutor != null) {
+      JobPrefetches jobPrefetches = getJobPrefetches(jobId);
+      // Fetch the next page of this calendar first, then make up the budget with other calendars
+      if (listResult.getNextPageToken() != null) {
+        prefetch(jobPrefetches, calendar, id, listResult.getNextPageToken());
+      }
+      prefetchPendingCalendars(jobPrefetches, calendar);
+    }
+
     // Set up continuation data
     PaginationData nextPageData = null;
     if (listResult.getNextPageToken() != null) {
@@ -258,6 +356,113 @@ public class GoogleCalendarExporter implements
     return new ExportResult<>(resultType, calendarContainerResource, continuationData);
   }
 
+  /**
+   * Returns the given page of events, using the page fetched ahead of time for this job if there
+   * is one and it was fetched successfully.
+   */
+  private Events listEvents(
+      UUID jobId, Calendar calendar, String calendarId, @Nullable String pageToken)
+      throws IOException {
+    JobPrefetches jobPrefetches = fetchExecutor == null ? null : prefetches.getIfPresent(jobId);
+    if (jobPrefetches != null) {
+      Future<Events> prefetched;
+      synchronized (jobPrefetches) {
+        // A calendar fetched on demand no longer needs its first page fetched ahead of time
+        jobPrefetches.pendingCalendars.remove(calendarId);
+        prefetched = jobPrefetches.pages.remove(pageKey(calendarId, pageToken));
+      }
+      if (prefetched != null) {
+        try {
+          return prefetched.get();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new IOException("Interrupted waiting for prefetched events", e);
+        } catch (ExecutionException e) {
+          monitor.debug(
+              () -> "Prefetching events failed, listing them again for job " + jobId,
+              e.getCause());
+        }
+      }
+    }
+    return newEventsRequest(calendar, calendarId, pageToken).execute();
+  }
+
+  private Calendar.Events.List newEventsRequest(
+      Calendar calendar, String calendarId, @Nullable String pageToken) throws IOException {
+    Calendar.Events.List listRequest =
+        calendar.events().list(calendarId).setMaxAttendees(GoogleStaticObjects.MAX_ATTENDEES);
+    listRequest.setMaxResults(maxResults);
+    listRequest.setFields(EVENT_FIELDS);
+    if (pageToken != null) {
+      listRequest.setPageToken(pageToken);
+    }
+    return listRequest;
+  }
+
+  private JobPrefetches getJobPrefetches(UUID jobId) {
+    try {
+      return prefetches.get(jobId, () -> new JobPrefetches(fetchesPerUser));
+    } catch (ExecutionException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /** Fetches the first page of events of pending calendars while the job's budget allows. */
+  private void prefetchPendingCalendars(JobPrefetches jobPrefetches, Calendar calendar) {
+    while (true) {
+      String calendarId;
+      synchronized (jobPrefetches) {
+        calendarId = jobPrefetches.pendingCalendars.peek();
+      }
+      if (calendarId == null || !prefetch(jobPrefetches, calendar, calendarId, null)) {
+        return;
+      }
+      synchronized (jobPrefetches) {
+        jobPrefetches.pendingCalendars.remove(calendarId);
+      }
+    }
+  }
+
+  /**
+   * Starts fetching the given page of events if the job has budget left, returning whether the
+   * page is being fetched.
+   */
+  private boolean prefetch(
+      JobPrefetches jobPrefetches, Calendar calendar, String calendarId, String pageToken) {
+    String key = pageKey(calendarId, pageToken);
+    synchronized (jobPrefetches) {
+      // Fetched pages are held until they're exported, so they count against the budget as well
+      if (jobPrefetches.pages.containsKey(key)
+          || jobPrefetches.pages.size() >= 2 * fetchesPerUser) {
+        return jobPrefetches.pages.containsKey(key);
+      }
+      if (!jobPrefetches.inFlight.tryAcquire()) {
+        return false;
+      }
+      try {
+        jobPrefetches.pages.put(
+            key,
+            fetchExecutor.submit(
+                () -> {
+                  try {
+                    return newEventsRequest(calendar, calendarId, pageToken).execute();
+                  } finally {
+                    jobPrefetches.inFlight.release();
+                  }
+                }));
+        return true;
+      } catch (RejectedExecutionException e) {
+        jobPrefetches.inFlight.release();
+        monitor.debug(() -> "Not prefetching events of " + calendarId + ", executor is full");
+        return false;
+      }
+    }
+  }
+
+  private static String pageKey(String calendarId, @Nullable String pageToken) {
+    return pageToken == null ? calendarId : calendarId + "/" + pageToken;
+  }
+
   private Calendar getOrCreateCalendarInterface(TokensAndUrlAuthData authData) {
     return calendarInterface == null ? makeCalendarInterface(authData) : calendarInterface;
   }
@@ -269,4 +474,17 @@ public class GoogleCalendarExporter implements
         .setApplicationName(GoogleStaticObjects.APP_NAME)
         .build();
   }
+
+  /** The event pages fetched ahead of time for one job. */
+  private static final class JobPrefetches {
+    // Calendars whose first page of events hasn't been requested yet
+    private final Deque<String> pendingCalendars = new ArrayDeque<>();
+    // Mapping of calendar id and page token -> the page
+    private final Map<String, Future<Events>> pages = new ConcurrentHashMap<>();
+    private final Semaphore inFlight;
+
+    private JobPrefetches(int fetchesPerUser) {
+      this.inFlight = new Semaphore(fetchesPerUser);
+    }
+  }
 }
@@ -7,6 +7,8 @@ import com.google.api.services.calendar.model.Event;
 import com.google.api.services.calendar.model.EventAttendee;
 import com.google.api.services.calendar.model.EventDateTime;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.MoreExecutors;
+import org.datatransferproject.datatransfer.google.common.GoogleBatch;
 import org.datatransferproject.datatransfer.google.common.GoogleCredentialFactory;
 import org.datatransferproject.datatransfer.google.common.GoogleStaticObjects;
 import org.datatransferproject.spi.transfer.idempotentexecutor.IdempotentImportExecutor;
@@ -19,25 +21,57 @@ import org.datatransferproject.types.common.models.calendar.CalendarModel;
 import org.datatransferproject.types.transfer.auth.TokensAndUrlAuthData;
 
 import java.io.IOException;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
 import java.util.stream.Collectors;
 
+/**
+ * Imports calendars and their events into Google Calendar.
+ *
+ * <p>Events are inserted with batch requests of up to {@code batchSize} events of the same
+ * calendar. Batches for all the calendars of a page are sent concurrently on the supplied
+ * executor. Each event keeps its own idempotent id, so events already imported are skipped on
+ * resume and a failed event does not fail the rest of its batch.
+ */
 public class GoogleCalendarImporter implements
     Importer<TokensAndUrlAuthData, CalendarContainerResource> {
+  // Events per batch; kept well under the API limit so one rejected batch loses little work
+  @VisibleForTesting static final int MAX_BATCH_SIZE = 50;
 
   private final GoogleCredentialFactory credentialFactory;
+  private final int batchSize;
+  private final ExecutorService batchExecutor;
   private volatile Calendar calendarInterface;
 
-  public GoogleCalendarImporter(GoogleCredentialFactory credentialFactory) {
+  /**
+   * @param batchSize the number of events inserted per batch request, 1 inserts each event with
+   *     its own request
+   * @param batchExecutor executor on which batch requests are sent
+   */
+  public GoogleCalendarImporter(
+      GoogleCredentialFactory credentialFactory, int batchSize, ExecutorService batchExecutor) {
     // calendarInterface lazily initialized for each request
-    this(credentialFactory, null);
+    this(credentialFactory, null, batchSize, batchExecutor);
   }
 
   @VisibleForTesting
   GoogleCalendarImporter(GoogleCredentialFactory credentialFactory,
       Calendar calendarInterface) {
+    this(credentialFactory, calendarInterface, 1, MoreExecutors.newDirectExecutorService());
+  }
+
+  @VisibleForTesting
+  GoogleCalendarImporter(
+      GoogleCredentialFactory credentialFactory,
+      Calendar calendarInterface,
+      int batchSize,
+      ExecutorService batchExecutor) {
     this.credentialFactory = credentialFactory;
     this.calendarInterface = calendarInterface;
+    this.batchSize = GoogleBatch.checkBatchSize(batchSize, MAX_BATCH_SIZE);
+    this.batchExecutor = batchExecutor;
   }
 
   private static EventAttendee transformToEventAttendee(CalendarAttendeeModel attendee) {
@@ -102,15 +136,44 @@ public class GoogleCalendarImporter implements
           calendarModel.getName(),
           () -> importSingleCalendar(authData, calendarModel));
     }
-    for (CalendarEventModel eventModel : data.getEvents()) {
-      idempotentExecutor.executeAndSwallowIOExceptions(
-          Integer.toString(eventModel.hashCode()),
-          eventModel.getNotes(),
-          () -> importSingleEvent(idempotentExecutor, authData, eventModel));
+
+    // If the calendar isn't cached that means the calendar create failed
+    Map<String, List<CalendarEventModel>> pendingByCalendar =
+        GoogleBatch.pendingByContainer(
+            idempotentExecutor,
+            data.getEvents(),
+            CalendarEventModel::getCalendarId,
+            GoogleCalendarImporter::getEventId);
+
+    // Send every batch first, the idempotent executor is then updated from this thread only
+    Calendar calendar = getOrCreateCalendarInterface(authData);
+    GoogleBatch.Sender<CalendarEventModel, Event> sender =
+        GoogleBatch.sender(
+            batchExecutor,
+            calendar,
+            batchSize,
+            (eventModel, outcome) ->
+                idempotentExecutor.executeAndSwallowIOExceptions(
+                    getEventId(eventModel), eventModel.getNotes(), outcome::get, Event::getId));
+    try {
+      for (Map.Entry<String, List<CalendarEventModel>> entry : pendingByCalendar.entrySet()) {
+        String newCalendarId = idempotentExecutor.getCachedValue(entry.getKey());
+        sender.add(
+            entry.getValue(),
+            eventModel ->
+                calendar.events().insert(newCalendarId, convertToGoogleCalendarEvent(eventModel)));
+      }
+    } catch (RuntimeException e) {
+      throw sender.recordAllOnFailure(e);
     }
+    sender.recordAll();
     return ImportResult.OK;
   }
 
+  private static String getEventId(CalendarEventModel eventModel) {
+    return Integer.toString(eventModel.hashCode());
+  }
+
   @VisibleForTesting
   String importSingleCalendar(TokensAndUrlAuthData authData, CalendarModel calendarModel)
       throws IOException {
@@ -123,20 +186,6 @@ public class GoogleCalendarImporter implements
     return id;
   }
 
-  @VisibleForTesting
-  String importSingleEvent(IdempotentImportExecutor idempotentImportExecutor,
-      TokensAndUrlAuthData authData,
-      CalendarEventModel eventModel)
-      throws IOException {
-    Event event = convertToGoogleCalendarEvent(eventModel);
-    String newCalendarId = idempotentImportExecutor.getCachedValue(eventModel.getCalendarId());
-    return getOrCreateCalendarInterface(authData)
-        .events()
-        .insert(newCalendarId, event)
-        .execute()
-        .getId();
-  }
-
   private Calendar getOrCreateCalendarInterface(TokensAndUrlAuthData authData) {
     return calendarInterface == null ? makeCalendarInterface(authData) : calendarInterface;
   }
@@ -0,0 +1,362 @@
+/*
+ * Copyright 2019 The Data Transfer Project Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.datatransferproject.datatransfer.google.common;
+
+import com.google.api.client.googleapis.batch.BatchRequest;
+import com.google.api.client.googleapis.batch.json.JsonBatchCallback;
+import com.google.api.client.googleapis.json.GoogleJsonError;
+import com.google.api.client.googleapis.services.AbstractGoogleClient;
+import com.google.api.client.googleapis.services.json.AbstractGoogleJsonClientRequest;
+import com.google.api.client.http.HttpHeaders;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.MoreExecutors;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import org.datatransferproject.spi.transfer.idempotentexecutor.IdempotentImportExecutor;
+
+/**
+ * A batch request to a Google API with one request per item, and the outcome of each request.
+ *
+ * <p>Importers send a batch, usually on an executor, and then {@link #record} the outcome of every
+ * item from the importing thread, typically with the idempotent executor. A request that fails
+ * only fails its own item, and a batch that fails as a whole fails each of its items with the same
+ * cause, so every item always has an outcome. Importers that send several batches per page use a
+ * {@link Sender}, which keeps track of the batches that still have to be recorded.
+ *
+ * @param <I> the type of the items being sent
+ * @param <R> the type of the response to each request
+ */
+public final class GoogleBatch<I, R> {
+  private final List<I> items;
+  private final Future<List<Outcome<R>>> outcomes;
+
+  private GoogleBatch(List<I> items, Future<List<Outcome<R>>> outcomes) {
+    this.items = items;
+    this.outcomes = outcomes;
+  }
+
+  /** Sends a request for each of {@code items} as a single batch request on this thread. */
+  public static <I, R> GoogleBatch<I, R> send(
+      AbstractGoogleClient client, List<I> items, RequestFactory<I, R> requestFactory) {
+    return submit(MoreExecutors.newDirectExecutorService(), client, items, requestFactory);
+  }
+
+  /** Sends a request for each of {@code items} as a single batch request on {@code executor}. */
+  public static <I, R> GoogleBatch<I, R> submit(
+      ExecutorService executor,
+      AbstractGoogleClient client,
+      List<I> items,
+      RequestFactory<I, R> requestFactory) {
+    List<I> batchItems = ImmutableList.copyOf(items);
+    return new GoogleBatch<>(
+        batchItems, executor.submit(() -> execute(client, batchItems, requestFactory)));
+  }
+
+  /**
+   * Sends a request for each of {@code items} on its own, outside of the batch endpoint, on {@code
+   * executor}.
+   */
+  private static <I, R> GoogleBatch<I, R> submitEach(
+      ExecutorService executor, List<I> items, RequestFactory<I, R> requestFactory) {
+    List<I> batchItems = ImmutableList.copyOf(items);
+    return new GoogleBatch<>(
+        batchItems, executor.submit(() -> executeEach(batchItems, requestFactory)));
+  }
+
+  /**
+   * Returns a sender of batches of up to {@code batchSize} items on {@code executor}, whose
+   * outcomes are passed to {@code recorder}.
+   */
+  public static <I, R> Sender<I, R> sender(
+      ExecutorService executor,
+      AbstractGoogleClient client,
+      int batchSize,
+      OutcomeRecorder<I, R> recorder) {
+    return new Sender<>(executor, client, batchSize, recorder);
+  }
+
+  /** Checks that {@code batchSize} is between 1 and {@code maxBatchSize} and returns it. */
+  public static int checkBatchSize(int batchSize, int maxBatchSize) {
+    Preconditions.checkArgument(
+        batchSize > 0 && batchSize <= maxBatchSize,
+        "batchSize must be between 1 and %s, was %s",
+        maxBatchSize,
+        batchSize);
+    return batchSize;
+  }
+
+  /**
+   * Returns the items that still have to be imported, in the order they were given. Items imported
+   * by an earlier attempt are skipped, as are repeats within {@code items}.
+   */
+  public static <T> List<T> pending(
+      IdempotentImportExecutor idempotentExecutor,
+      Collection<T> items,
+      Function<? super T, String> idempotentId) {
+    Map<String, T> pending = new LinkedHashMap<>();
+    for (T item : items) {
+      String id = idempotentId.apply(item);
+      if (!idempotentExecutor.isKeyCached(id)) {
+        pending.putIfAbsent(id, item);
+      }
+    }
+    return new ArrayList<>(pending.values());
+  }
+
+  /**
+   * Returns the {@link #pending} items grouped by the idempotent id of their container, in the
+   * order the containers first appear. Items whose container isn't cached are skipped too, as that
+   * means the container could not be created.
+   */
+  public static <T> Map<String, List<T>> pendingByContainer(
+      IdempotentImportExecutor idempotentExecutor,
+      Collection<T> items,
+      Function<? super T, String> containerId,
+      Function<? super T, String> idempotentId) {
+    Map<String, List<T>> pendingByContainer = new LinkedHashMap<>();
+    for (T item : pending(idempotentExecutor, items, idempotentId)) {
+      String container = containerId.apply(item);
+      if (idempotentExecutor.isKeyCached(container)) {
+        pendingByContainer.computeIfAbsent(container, id -> new ArrayList<>()).add(item);
+      }
+    }
+    return pendingByContainer;
+  }
+
+  /**
+   * Waits for the batch to complete and passes each item with its outcome to {@code recorder}, in
+   * the order the items were given.
+   */
+  public void record(OutcomeRecorder<I, R> recorder) throws Exception {
+    List<Outcome<R>> results;
+    try {
+      results = outcomes.get();
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof Exception) {
+        throw (Exception) e.getCause();
+      }
+      throw e;
+    }
+    for (int i = 0; i < items.size(); i++) {
+      recorder.record(items.get(i), results.get(i));
+    }
+  }
+
+  /**
+   * Records every batch in {@code batches}, removing them from the queue. If recording a batch
+   * fails, the remaining batches are still recorded before the first failure is thrown, so items
+   * that were created are never left unrecorded.
+   */
+  public static <I, R> void recordAll(
+      Queue<GoogleBatch<I, R>> batches, OutcomeRecorder<I, R> recorder) throws Exception {
+    Exception failure = null;
+    while (!batches.isEmpty()) {
+      try {
+        batches.remove().record(recorder);
+      } catch (Exception e) {
+        if (failure == null) {
+          failure = e;
+        } else {
+          failure.addSuppressed(e);
+        }
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  private static <I, R> List<Outcome<R>> execute(
+      AbstractGoogleClient client, List<I> items, RequestFactory<I, R> requestFactory) {
+    List<Outcome<R>> results = new ArrayList<>(items.size());
+    List<Outcome<R>> queued = new ArrayList<>(items.size());
+    try {
+      BatchRequest request = client.batch();
+      for (I item : items) {
+        Outcome<R> outcome = new Outcome<>();
+        results.add(outcome);
+        try {
+          requestFactory.newRequest(item).queue(request, outcome.callback());
+          queued.add(outcome);
+        } catch (IOException | RuntimeException e) {
+          // This item can't be sent, the rest of the batch still can
+          outcome.failure = e instanceof IOException ? (IOException) e : new IOException(e);
+        }
+      }
+      if (!queued.isEmpty()) {
+        // Callbacks are invoked on this thread before execute returns
+        request.execute();
+      }
+      for (Outcome<R> outcome : queued) {
+        if (!outcome.isComplete()) {
+          outcome.failure = new IOException("No response in batch");
+        }
+      }
+    } catch (IOException | RuntimeException e) {
+      // The whole batch failed, so every item without a response is reported with the same cause
+      IOException cause = e instanceof IOException ? (IOException) e : new IOException(e);
+      for (Outcome<R> outcome : queued) {
+        if (!outcome.isComplete()) {
+          outcome.failure = cause;
+        }
+      }
+      for (int i = results.size(); i < items.size(); i++) {
+        Outcome<R> outcome = new Outcome<>();
+        outcome.failure = cause;
+        results.add(outcome);
+      }
+    }
+    return results;
+  }
+
+  private static <I, R> List<Outcome<R>> executeEach(
+      List<I> items, RequestFactory<I, R> requestFactory) {
+    List<Outcome<R>> results = new ArrayList<>(items.size());
+    for (I item : items) {
+      Outcome<R> outcome = new Outcome<>();
+      try {
+        outcome.response = requestFactory.newRequest(item).execute();
+      } catch (IOException | RuntimeException e) {
+        outcome.failure = e instanceof IOException ? (IOException) e : new IOException(e);
+      }
+      results.add(outcome);
+    }
+    return results;
+  }
+
+  /**
+   * Sends the batches of an import and records their outcomes on the importing thread.
+   *
+   * <p>Every batch that was sent has to be recorded, even if the import fails part way, as its
+   * items may have been created. Importers call {@link #recordAll} once everything has been sent,
+   * and throw {@link #recordAllOnFailure} if sending fails.
+   */
+  public static final class Sender<I, R> {
+    private final ExecutorService executor;
+    private final AbstractGoogleClient client;
+    private final int batchSize;
+    private final OutcomeRecorder<I, R> recorder;
+    private final Queue<GoogleBatch<I, R>> sent = new ArrayDeque<>();
+
+    private Sender(
+        ExecutorService executor,
+        AbstractGoogleClient client,
+        int batchSize,
+        OutcomeRecorder<I, R> recorder) {
+      this.executor = executor;
+      this.client = client;
+      this.batchSize = batchSize;
+      this.recorder = recorder;
+    }
+
+    /**
+     * Sends {@code items} in batches of up to the batch size. With a batch size of 1 each item is
+     * sent with its own request instead.
+     */
+    public void add(List<I> items, RequestFactory<I, R> requestFactory) {
+      for (List<I> batch : Lists.partition(items, batchSize)) {
+        sent.add(
+            batchSize == 1
+                ? submitEach(executor, batch, requestFactory)
+                : submit(executor, client, batch, requestFactory));
+      }
+    }
+
+    /**
+     * Records the oldest batches until at most {@code maxUnrecorded} remain, bounding the number of
+     * items held for large imports.
+     */
+    public void recordUntil(int maxUnrecorded) throws Exception {
+      while (sent.size() > maxUnrecorded) {
+        sent.remove().record(recorder);
+      }
+    }
+
+    /** Records every batch sent so far, see {@link GoogleBatch#recordAll}. */
+    public void recordAll() throws Exception {
+      GoogleBatch.recordAll(sent, recorder);
+    }
+
+    /**
+     * Records every batch sent so far after {@code failure} ended the import, and returns {@code
+     * failure} to be thrown, with any failure to record suppressed in it.
+     */
+    public <E extends Exception> E recordAllOnFailure(E failure) {
+      try {
+        recordAll();
+      } catch (Exception recordFailure) {
+        failure.addSuppressed(recordFailure);
+      }
+      return failure;
+    }
+  }
+
+  /** Creates the request that is sent for one item. */
+  public interface RequestFactory<I, R> {
+    AbstractGoogleJsonClientRequest<R> newRequest(I item) throws IOException;
+  }
+
+  /** Receives the outcome of one item of a batch. */
+  public interface OutcomeRecorder<I, R> {
+    void record(I item, Outcome<R> outcome) throws Exception;
+  }
+
+  /** The result of sending one item as part of a batch. */
+  public static final class Outcome<R> {
+    private R response;
+    private IOException failure;
+
+    private Outcome() {}
+
+    /** Returns the response to the item's request, or throws the reason it failed. */
+    public R get() throws IOException {
+      if (failure != null) {
+        throw failure;
+      }
+      return response;
+    }
+
+    private boolean isComplete() {
+      return response != null || failure != null;
+    }
+
+    private JsonBatchCallback<R> callback() {
+      return new JsonBatchCallback<R>() {
+        @Override
+        public void onSuccess(R result, HttpHeaders responseHeaders) {
+          response = result;
+        }
+
+        @Override
+        public void onFailure(GoogleJsonError error, HttpHeaders responseHeaders) {
+          failure = new IOException(error.getMessage());
+        }
+      };
+    }
+  }
+}
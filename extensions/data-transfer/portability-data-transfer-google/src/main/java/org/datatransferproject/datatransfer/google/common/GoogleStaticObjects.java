@@ -49,4 +49,10 @@ public final class GoogleStaticObjects {
   public static final int VCARD_PRIMARY_PREF = 1;
   public static final String SOURCE_PARAM_NAME_TYPE = "Source_type";
   public static final String CONTACT_SOURCE_TYPE = "CONTACT";
+
+  /**
+   * Static values used for Gmail
+   */
+  // Gmail accepts up to 100 calls per batch, but larger batches are more likely to be rate limited
+  public static final int GMAIL_MAX_BATCH_SIZE = 50;
 }
@@ -29,6 +29,7 @@ import com.google.api.services.people.v1.model.PersonResponse;
 import com.google.api.services.people.v1.model.PhoneNumber;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
+import ezvcard.Ezvcard;
 import ezvcard.VCard;
 import ezvcard.io.json.JCardWriter;
 import ezvcard.property.Email;
@@ -43,6 +44,7 @@ import org.datatransferproject.spi.transfer.types.ContinuationData;
 import org.datatransferproject.types.common.ExportInformation;
 import org.datatransferproject.types.common.PaginationData;
 import org.datatransferproject.types.common.StringPaginationToken;
+import org.datatransferproject.types.common.models.contacts.ContactsListModelWrapper;
 import org.datatransferproject.types.common.models.contacts.ContactsModelWrapper;
 import org.datatransferproject.types.transfer.auth.TokensAndUrlAuthData;
 
@@ -238,9 +240,12 @@ public class GoogleContactsExporter
       // 谷歌联系人信息导出
       List<PersonResponse> personResponseList = batchResponse.getResponses();
 
-      // Convert Persons to VCards
-      List<VCard> vCards =
-          personResponseList.stream().map(a -> convert(a.getPerson())).collect(Collectors.toList());
+      // Convert Persons to VCards, each serialized as its own jCard
+      List<String> vCards =
+          personResponseList
+              .stream()
+              .map(a -> Ezvcard.writeJson(convert(a.getPerson())).go())
+              .collect(Collectors.toList());
 
       // Determine if there's a next page
       StringPaginationToken nextPageData = null;
@@ -249,7 +254,7 @@ public class GoogleContactsExporter
       }
       ContinuationData continuationData = new ContinuationData(nextPageData);
 
-      ContactsModelWrapper wrapper = new ContactsModelWrapper(makeVCardString(vCards));
+      ContactsModelWrapper wrapper = new ContactsListModelWrapper(vCards);
 
       // Get result type
       ResultType resultType = ResultType.CONTINUE;
@@ -26,48 +26,92 @@ import com.google.api.services.people.v1.model.PhoneNumber;
 import com.google.api.services.people.v1.model.Source;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Iterators;
+import com.google.common.util.concurrent.MoreExecutors;
+import ezvcard.Ezvcard;
 import ezvcard.VCard;
 import ezvcard.io.json.JCardReader;
 import ezvcard.property.Email;
 import ezvcard.property.StructuredName;
 import ezvcard.property.Telephone;
+import org.datatransferproject.datatransfer.google.common.GoogleBatch;
 import org.datatransferproject.datatransfer.google.common.GoogleCredentialFactory;
 import org.datatransferproject.datatransfer.google.common.GoogleStaticObjects;
 import org.datatransferproject.spi.transfer.idempotentexecutor.IdempotentImportExecutor;
+import org.datatransferproject.spi.transfer.idempotentexecutor.IdempotentKey;
 import org.datatransferproject.spi.transfer.provider.ImportResult;
 import org.datatransferproject.spi.transfer.provider.Importer;
+import org.datatransferproject.types.common.models.contacts.ContactsListModelWrapper;
 import org.datatransferproject.types.common.models.contacts.ContactsModelWrapper;
 import org.datatransferproject.types.transfer.auth.TokensAndUrlAuthData;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
 import java.util.stream.Collectors;
 
 import static org.datatransferproject.datatransfer.google.common.GoogleStaticObjects.CONTACT_SOURCE_TYPE;
 import static org.datatransferproject.datatransfer.google.common.GoogleStaticObjects.SOURCE_PARAM_NAME_TYPE;
 import static org.datatransferproject.datatransfer.google.common.GoogleStaticObjects.VCARD_PRIMARY_PREF;
 
-
+/**
+ * Imports contacts into Google Contacts.
+ *
+ * <p>Contacts are parsed one at a time, and contacts are created with batch requests
+ * of up to {@code batchSize} contacts sent concurrently on the supplied executor. Each contact
+ * keeps its own idempotent id, so contacts already imported are skipped on resume and a failed
+ * contact does not fail the rest of its batch.
+ */
 public class GoogleContactsImporter implements Importer<TokensAndUrlAuthData, ContactsModelWrapper> {
+  // Contacts per createContact batch
+  @VisibleForTesting static final int MAX_BATCH_SIZE = 100;
+  // Batches sent but not yet recorded, bounding the contacts held in memory for large pages
+  private static final int MAX_BATCHES_IN_FLIGHT = 8;
 
   private static final FieldMetadata PRIMARY_FIELD_METADATA = new FieldMetadata().setPrimary(true);
   private static final FieldMetadata SECONDARY_FIELD_METADATA =
       new FieldMetadata().setPrimary(false);
 
   private final GoogleCredentialFactory credentialFactory;
+  private final int batchSize;
+  private final ExecutorService batchExecutor;
   private volatile PeopleService peopleService;
 
-  public GoogleContactsImporter(GoogleCredentialFactory credentialFactory) {
-    this.credentialFactory = credentialFactory;
-    this.peopleService = null; // lazily initialized for the given request
+  /**
+   * @param batchSize the number of contacts created per batch request, 1 creates each contact
+   *     with its own request
+   * @param batchExecutor executor on which batch requests are sent
+   */
+  public GoogleContactsImporter(
+      GoogleCredentialFactory credentialFactory, int batchSize, ExecutorService batchExecutor) {
+    this(credentialFactory, null, batchSize, batchExecutor);
   }
 
   @VisibleForTesting
   GoogleContactsImporter(PeopleService peopleService) {
-    this.credentialFactory = null; // unused in tests
+    // credentialFactory is unused in tests
+    this(null, peopleService, 1, MoreExecutors.newDirectExecutorService());
+  }
+
+  @VisibleForTesting
+  GoogleContactsImporter(
+      GoogleCredentialFactory credentialFactory,
+      PeopleService peopleService,
+      int batchSize,
+      ExecutorService batchExecutor) {
+    this.credentialFactory = credentialFactory;
+    // lazily initialized for the given request when null
     this.peopleService = peopleService;
+    this.batchSize = GoogleBatch.checkBatchSize(batchSize, MAX_BATCH_SIZE);
+    this.batchExecutor = batchExecutor;
   }
 
   // TODO(olsona): can we guarantee that <VCARDPROPERTY>.getPref() will always return a value?
@@ -214,23 +258,78 @@ public class GoogleContactsImporter implements Importer<TokensAndUrlAuthData, Co
   public ImportResult importItem(UUID jobId,
       IdempotentImportExecutor idempotentExecutor,
       TokensAndUrlAuthData authData, ContactsModelWrapper data) throws Exception{
-    JCardReader reader = new JCardReader(data.getVCards());
+    PeopleService peopleService = getOrCreatePeopleService(authData);
+    // Keys of the contacts seen on this page, so repeated cards are only created once
+    Set<IdempotentKey> seen = new HashSet<>();
+    List<PendingContact> batch = new ArrayList<>(batchSize);
+    GoogleBatch.Sender<PendingContact, Person> sender =
+        GoogleBatch.sender(
+            batchExecutor,
+            peopleService,
+            batchSize,
+            (contact, outcome) ->
+                idempotentExecutor.executeAndSwallowIOExceptions(
+                    contact.key, contact.itemName, outcome::get, Person::getResourceName));
+    GoogleBatch.RequestFactory<PendingContact, Person> createContact =
+        contact -> peopleService.people().createContact(contact.person);
+    ImportResult result = ImportResult.OK;
     try {
-      // TODO(olsona): address any other problems that might arise in conversion
-      List<VCard> vCardList = reader.readAll();
-      PeopleService.People peopleService = getOrCreatePeopleService(authData).people();
-      for (VCard vCard : vCardList) {
-        // 转换成谷歌信息的人员信息类
-        Person person = convert(vCard);
-        idempotentExecutor.executeAndSwallowIOExceptions(
-            vCard.toString(),
-            vCard.getFormattedName().toString(),
-            () -> peopleService.createContact(person).execute().toPrettyString());
+      try {
+        // TODO(olsona): address any other problems that might arise in conversion
+        Iterator<VCard> vCards = readVCards(data);
+        while (vCards.hasNext()) {
+          VCard vCard = vCards.next();
+          IdempotentKey key = IdempotentKey.of(vCard.toString());
+          if (idempotentExecutor.isKeyCached(key) || !seen.add(key)) {
+            continue;
+          }
+          // 转换成谷歌信息的人员信息类
+          batch.add(new PendingContact(key, vCard.getFormattedName().toString(), convert(vCard)));
+          if (batch.size() == batchSize) {
+            sender.add(batch, createContact);
+            batch = new ArrayList<>(batchSize);
+            sender.recordUntil(MAX_BATCHES_IN_FLIGHT);
+          }
+        }
+      } catch (UncheckedIOException e) {
+        // The contacts read before the failure are still created
+        result = new ImportResult(e.getCause());
       }
-      return ImportResult.OK;
-    } catch (IOException e) {
-      return new ImportResult(e);
+      sender.add(batch, createContact);
+    } catch (Exception e) {
+      throw sender.recordAllOnFailure(e);
     }
+    // The idempotent executor is only updated from this thread
+    sender.recordAll();
+    return result;
+  }
+
+  /**
+   * Returns the contacts in {@code data}, parsed as they are iterated. Failures to read the jCard
+   * are thrown as {@link UncheckedIOException}.
+   */
+  private static Iterator<VCard> readVCards(ContactsModelWrapper data) {
+    if (data instanceof ContactsListModelWrapper) {
+      return Iterators.transform(
+          ((ContactsListModelWrapper) data).getCards().iterator(),
+          card -> Ezvcard.parseJson(card).first());
+    }
+    JCardReader reader = new JCardReader(data.getVCards());
+    return new AbstractIterator<VCard>() {
+      @Override
+      protected VCard computeNext() {
+        try {
+          VCard vCard = reader.readNext();
+          if (vCard == null) {
+            reader.close();
+            return endOfData();
+          }
+          return vCard;
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      }
+    };
   }
 
   private PeopleService getOrCreatePeopleService(TokensAndUrlAuthData authData) {
@@ -249,4 +348,17 @@ public class GoogleContactsImporter implements Importer<TokensAndUrlAuthData, Co
         .setApplicationName(GoogleStaticObjects.APP_NAME)
         .build();
   }
+
+  /** A converted contact waiting to be created. */
+  private static final class PendingContact {
+    private final IdempotentKey key;
+    private final String itemName;
+    private final Person person;
+
+    private PendingContact(IdempotentKey key, String itemName, Person person) {
+      this.key = key;
+      this.itemName = itemName;
+      this.person = person;
+    }
+  }
 }
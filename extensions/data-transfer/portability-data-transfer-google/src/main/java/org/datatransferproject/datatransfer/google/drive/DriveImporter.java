@@ -76,8 +76,9 @@ public final class DriveImporter
     // Uploads photos
     if (data.getFiles() != null && data.getFiles().size() > 0) {
       for (DigitalDocumentWrapper file : data.getFiles()) {
+        // The content is cached under the id of the exported file, which is unique to it
         idempotentExecutor.executeAndSwallowIOExceptions(
-            Integer.toString(file.hashCode()),
+            file.getCachedContentId(),
             file.getDtpDigitalDocument().getName(),
             () -> importSingleFile(jobId, driveInterface, file, parentId));
       }
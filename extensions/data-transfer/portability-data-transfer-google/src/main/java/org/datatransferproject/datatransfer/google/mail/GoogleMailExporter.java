@@ -16,17 +16,34 @@
 
 package org.datatransferproject.datatransfer.google.mail;
 
+import static org.datatransferproject.datatransfer.google.common.GoogleStaticObjects.GMAIL_MAX_BATCH_SIZE;
+
 import com.google.api.client.auth.oauth2.Credential;
+import com.google.api.client.googleapis.batch.BatchRequest;
+import com.google.api.client.googleapis.batch.json.JsonBatchCallback;
+import com.google.api.client.googleapis.json.GoogleJsonError;
+import com.google.api.client.http.HttpHeaders;
 import com.google.api.services.gmail.Gmail;
 import com.google.api.services.gmail.Gmail.Users.Messages;
 import com.google.api.services.gmail.model.ListMessagesResponse;
 import com.google.api.services.gmail.model.Message;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+import org.datatransferproject.api.launcher.Monitor;
 import org.datatransferproject.datatransfer.google.common.GoogleCredentialFactory;
 import org.datatransferproject.datatransfer.google.common.GoogleStaticObjects;
 import org.datatransferproject.spi.transfer.provider.ExportResult;
@@ -40,25 +57,82 @@ import org.datatransferproject.types.transfer.auth.TokensAndUrlAuthData;
 import org.datatransferproject.types.common.models.mail.MailContainerResource;
 import org.datatransferproject.types.common.models.mail.MailMessageModel;
 
+/**
+ * Exports Gmail messages one page at a time.
+ *
+ * <p>When batch fetching is enabled the raw bodies of a page are retrieved through the Gmail batch
+ * endpoint rather than with one request per message. When a prefetch executor is supplied, the
+ * message list for the next page is requested in the background while the current page is being
+ * imported, and picked up by the next call to {@link #export} for the same job.
+ */
 public class GoogleMailExporter implements Exporter<TokensAndUrlAuthData, MailContainerResource> {
   @VisibleForTesting
-  static final long PAGE_SIZE = 50; // TODO configure this in production
+  static final long PAGE_SIZE = 50;
+  // Gmail rejects list requests for more results than this
+  @VisibleForTesting
+  static final long MAX_PAGE_SIZE = 500;
   @VisibleForTesting
   // The special value me can be used to indicate the authenticated user to the gmail api
   static final String USER = "me";
 
+  private static final String RAW_FORMAT = "raw";
+  // Upper bound on the number of jobs holding a prefetched page at any one time
+  private static final long MAX_PREFETCHED_JOBS = 16;
+  // Pages that are never picked up, e.g. because the job failed, are dropped after this long
+  private static final long PREFETCH_EXPIRY_MINUTES = 10;
+
   private final GoogleCredentialFactory credentialFactory;
+  private final long pageSize;
+  private final boolean batchFetch;
+  @Nullable private final ExecutorService prefetchExecutor;
+  private final Monitor monitor;
+  private final Cache<UUID, PrefetchedPage> prefetchedPages =
+      CacheBuilder.newBuilder()
+          .maximumSize(MAX_PREFETCHED_JOBS)
+          .expireAfterWrite(PREFETCH_EXPIRY_MINUTES, TimeUnit.MINUTES)
+          .<UUID, PrefetchedPage>removalListener(
+              notification -> {
+                if (notification.wasEvicted()) {
+                  notification.getValue().response.cancel(true);
+                }
+              })
+          .build();
   private volatile Gmail gmail;
 
-  public GoogleMailExporter(GoogleCredentialFactory credentialFactory) {
-    this.credentialFactory = credentialFactory;
-    this.gmail = null;
+  /**
+   * @param pageSize the number of messages to export per call, at most {@link #MAX_PAGE_SIZE}
+   * @param batchFetch whether message bodies are fetched with Gmail batch requests
+   * @param prefetchExecutor executor used to list the next page ahead of time, or null to list
+   *     each page on demand
+   */
+  public GoogleMailExporter(
+      GoogleCredentialFactory credentialFactory,
+      int pageSize,
+      boolean batchFetch,
+      @Nullable ExecutorService prefetchExecutor,
+      Monitor monitor) {
+    this(credentialFactory, null, pageSize, batchFetch, prefetchExecutor, monitor);
   }
 
   @VisibleForTesting
-  GoogleMailExporter(GoogleCredentialFactory credentialFactory, Gmail gmail) {
+  GoogleMailExporter(
+      GoogleCredentialFactory credentialFactory,
+      Gmail gmail,
+      int pageSize,
+      boolean batchFetch,
+      @Nullable ExecutorService prefetchExecutor,
+      Monitor monitor) {
+    Preconditions.checkArgument(
+        pageSize > 0 && pageSize <= MAX_PAGE_SIZE,
+        "pageSize must be between 1 and %s, was %s",
+        MAX_PAGE_SIZE,
+        pageSize);
     this.credentialFactory = credentialFactory;
     this.gmail = gmail;
+    this.pageSize = pageSize;
+    this.batchFetch = batchFetch;
+    this.prefetchExecutor = prefetchExecutor;
+    this.monitor = monitor;
   }
 
   @Override
@@ -67,51 +141,145 @@ public class GoogleMailExporter implements Exporter<TokensAndUrlAuthData, MailCo
     // Create a new gmail service for the authorized user
     Gmail gmail = getOrCreateGmail(authData);
 
-    Messages.List request = null;
-    try {
-      request = gmail.users().messages().list(USER).setMaxResults(PAGE_SIZE);
-    } catch (IOException e) {
-      return new ExportResult<>(e);
-    }
-
+    String pageToken = null;
     if (exportInformation.isPresent() && exportInformation.get().getPaginationData() != null) {
-      request.setPageToken(
-          ((StringPaginationToken) exportInformation.get().getPaginationData()).getToken());
+      pageToken = ((StringPaginationToken) exportInformation.get().getPaginationData()).getToken();
     }
 
-    ListMessagesResponse response = null;
+    ListMessagesResponse response;
     try {
-      response = request.execute();
+      response = listMessages(id, gmail, pageToken);
     } catch (IOException e) {
       return new ExportResult<>(e);
     }
 
-    List<MailMessageModel> results = new ArrayList<>(response.getMessages().size());
-    // TODO: this is a good indication we need to swap the interface
-    // as we can't store all the mail messages in memory at once.
-    for (Message listMessage : response.getMessages()) {
-      Message getResponse = null;
-      try {
-        getResponse =
-            gmail.users().messages().get(USER, listMessage.getId()).setFormat("raw").execute();
-      } catch (IOException e) {
-        return new ExportResult<>(e);
-      }
-      // TODO: note this doesn't transfer things like labels
-      results.add(new MailMessageModel(getResponse.getRaw(), getResponse.getLabelIds()));
-    }
-
     PaginationData newPage = null;
     ResultType resultType = ResultType.END;
     if (response.getNextPageToken() != null) {
       newPage = new StringPaginationToken(response.getNextPageToken());
       resultType = ResultType.CONTINUE;
+      // Start listing the next page now so it is ready by the time this one has been imported
+      prefetch(id, gmail, response.getNextPageToken());
+    }
+
+    // TODO: this is a good indication we need to swap the interface
+    // as we can't store all the mail messages in memory at once.
+    List<Message> messages;
+    try {
+      messages = response.getMessages() == null
+          ? new ArrayList<>()
+          : getMessages(gmail, response.getMessages());
+    } catch (IOException e) {
+      prefetchedPages.invalidate(id);
+      return new ExportResult<>(e);
+    }
+
+    List<MailMessageModel> results = new ArrayList<>(messages.size());
+    for (Message message : messages) {
+      // TODO: note this doesn't transfer things like labels
+      results.add(new MailMessageModel(message.getRaw(), message.getLabelIds()));
     }
 
     MailContainerResource mailContainerResource = new MailContainerResource(null, results);
     return new ExportResult<>(resultType, mailContainerResource, new ContinuationData(newPage));
   }
 
+  /**
+   * Returns the message list for the given page, using the prefetched response for this job if it
+   * is for the same page and completed successfully.
+   */
+  private ListMessagesResponse listMessages(UUID jobId, Gmail gmail, @Nullable String pageToken)
+      throws IOException {
+    PrefetchedPage prefetched = prefetchedPages.getIfPresent(jobId);
+    if (prefetched != null) {
+      prefetchedPages.invalidate(jobId);
+      if (prefetched.pageToken.equals(pageToken)) {
+        try {
+          return prefetched.response.get();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new IOException("Interrupted waiting for prefetched page", e);
+        } catch (ExecutionException e) {
+          monitor.debug(
+              () -> "Prefetching mail page failed, listing it again for job " + jobId,
+              e.getCause());
+        }
+      } else {
+        prefetched.response.cancel(true);
+      }
+    }
+    return newListRequest(gmail, pageToken).execute();
+  }
+
+  private void prefetch(UUID jobId, Gmail gmail, String pageToken) {
+    if (prefetchExecutor == null) {
+      return;
+    }
+    try {
+      Future<ListMessagesResponse> response =
+          prefetchExecutor.submit(() -> newListRequest(gmail, pageToken).execute());
+      prefetchedPages.put(jobId, new PrefetchedPage(pageToken, response));
+    } catch (RejectedExecutionException e) {
+      // All prefetch slots are busy, the next page will be listed when it is requested
+      monitor.debug(() -> "Not prefetching mail page for job " + jobId + ", executor is full");
+    }
+  }
+
+  /** Fetches the raw form of each listed message, preserving list order. */
+  private List<Message> getMessages(Gmail gmail, List<Message> listMessages) throws IOException {
+    if (!batchFetch) {
+      List<Message> messages = new ArrayList<>(listMessages.size());
+      for (Message listMessage : listMessages) {
+        messages.add(newGetRequest(gmail, listMessage.getId()).execute());
+      }
+      return messages;
+    }
+
+    Message[] messages = new Message[listMessages.size()];
+    for (int start = 0; start < messages.length; start += GMAIL_MAX_BATCH_SIZE) {
+      int end = Math.min(start + GMAIL_MAX_BATCH_SIZE, messages.length);
+      List<String> failures = new ArrayList<>();
+      BatchRequest batch = gmail.batch();
+      for (int i = start; i < end; i++) {
+        int index = i;
+        String messageId = listMessages.get(i).getId();
+        newGetRequest(gmail, messageId)
+            .queue(
+                batch,
+                new JsonBatchCallback<Message>() {
+                  @Override
+                  public void onSuccess(Message message, HttpHeaders responseHeaders) {
+                    messages[index] = message;
+                  }
+
+                  @Override
+                  public void onFailure(GoogleJsonError error, HttpHeaders responseHeaders) {
+                    failures.add(messageId + ": " + error.getMessage());
+                  }
+                });
+      }
+      // Callbacks are invoked on this thread before execute returns
+      batch.execute();
+      if (!failures.isEmpty()) {
+        throw new IOException("Unable to fetch messages " + failures);
+      }
+    }
+    return Arrays.asList(messages);
+  }
+
+  private Messages.List newListRequest(Gmail gmail, @Nullable String pageToken)
+      throws IOException {
+    Messages.List request = gmail.users().messages().list(USER).setMaxResults(pageSize);
+    if (pageToken != null) {
+      request.setPageToken(pageToken);
+    }
+    return request;
+  }
+
+  private Messages.Get newGetRequest(Gmail gmail, String messageId) throws IOException {
+    return gmail.users().messages().get(USER, messageId).setFormat(RAW_FORMAT);
+  }
+
   private Gmail getOrCreateGmail(TokensAndUrlAuthData authData) {
     return gmail == null ? makeGmailService(authData) : gmail;
   }
@@ -123,4 +291,15 @@ public class GoogleMailExporter implements Exporter<TokensAndUrlAuthData, MailCo
         .setApplicationName(GoogleStaticObjects.APP_NAME)
         .build();
   }
+
+  /** A message list request issued ahead of time for a job's next page. */
+  private static final class PrefetchedPage {
+    private final String pageToken;
+    private final Future<ListMessagesResponse> response;
+
+    private PrefetchedPage(String pageToken, Future<ListMessagesResponse> response) {
+      this.pageToken = pageToken;
+      this.response = response;
+    }
+  }
 }
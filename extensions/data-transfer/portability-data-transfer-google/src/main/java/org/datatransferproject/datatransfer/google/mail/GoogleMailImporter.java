@@ -13,9 +13,10 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
-
 package org.datatransferproject.datatransfer.google.mail;
 
+import static org.datatransferproject.datatransfer.google.common.GoogleStaticObjects.GMAIL_MAX_BATCH_SIZE;
+
 import com.google.api.client.auth.oauth2.Credential;
 import com.google.api.services.gmail.Gmail;
 import com.google.api.services.gmail.model.Label;
@@ -24,12 +25,16 @@ import com.google.api.services.gmail.model.Message;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.MoreExecutors;
 import org.datatransferproject.api.launcher.Monitor;
+import org.datatransferproject.datatransfer.google.common.GoogleBatch;
 import org.datatransferproject.datatransfer.google.common.GoogleCredentialFactory;
 import org.datatransferproject.datatransfer.google.common.GoogleStaticObjects;
 import org.datatransferproject.spi.transfer.idempotentexecutor.IdempotentImportExecutor;
+import org.datatransferproject.spi.transfer.idempotentexecutor.IdempotentKey;
 import org.datatransferproject.spi.transfer.provider.ImportResult;
 import org.datatransferproject.spi.transfer.provider.Importer;
 import org.datatransferproject.types.common.models.mail.MailContainerModel;
@@ -38,12 +43,26 @@ import org.datatransferproject.types.common.models.mail.MailMessageModel;
 import org.datatransferproject.types.transfer.auth.TokensAndUrlAuthData;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
-import java.util.function.Supplier;
-
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Imports mail into Gmail.
+ *
+ * <p>The destination account's labels are listed once per job and kept in memory, with labels
+ * created during the job added as they are made. Messages are inserted with Gmail batch requests
+ * of up to {@code batchSize} messages, and the batches of a page are sent concurrently on the
+ * supplied executor. Each message keeps its own idempotent id, so messages already imported are
+ * skipped on resume and a failed message does not fail the rest of its batch.
+ */
 public class GoogleMailImporter implements Importer<TokensAndUrlAuthData, MailContainerResource> {
   @VisibleForTesting
   // The special value me can be used to indicate the authenticated user to the gmail api
@@ -51,19 +70,52 @@ public class GoogleMailImporter implements Importer<TokensAndUrlAuthData, MailCo
 
   @VisibleForTesting static final String LABEL = "DTP-migrated";
 
+  // Upper bound on the number of jobs whose label map is held at any one time
+  private static final long MAX_CACHED_JOBS = 16;
+  private static final long LABEL_CACHE_EXPIRY_HOURS = 1;
+
   private GoogleCredentialFactory credentialFactory;
   private final Gmail gmail;
+  private final int batchSize;
+  private final ExecutorService batchExecutor;
   private final Monitor monitor;
+  // Mapping of job id -> (label name -> destination label id)
+  private final Cache<UUID, Map<String, String>> destinationLabels =
+      CacheBuilder.newBuilder()
+          .maximumSize(MAX_CACHED_JOBS)
+          .expireAfterAccess(LABEL_CACHE_EXPIRY_HOURS, TimeUnit.HOURS)
+          .build();
 
-  public GoogleMailImporter(GoogleCredentialFactory credentialFactory, Monitor monitor) {
-    this(credentialFactory, null, monitor);
+  /**
+   * @param batchSize the number of messages inserted per batch request, 1 inserts each message
+   *     with its own request
+   * @param batchExecutor executor on which the batch requests of a page are sent
+   */
+  public GoogleMailImporter(
+      GoogleCredentialFactory credentialFactory,
+      int batchSize,
+      ExecutorService batchExecutor,
+      Monitor monitor) {
+    this(credentialFactory, null, batchSize, batchExecutor, monitor);
   }
 
   @VisibleForTesting
   GoogleMailImporter(
       GoogleCredentialFactory credentialFactory, Gmail gmail, Monitor monitor) {
+    this(credentialFactory, gmail, 1, MoreExecutors.newDirectExecutorService(), monitor);
+  }
+
+  @VisibleForTesting
+  GoogleMailImporter(
+      GoogleCredentialFactory credentialFactory,
+      Gmail gmail,
+      int batchSize,
+      ExecutorService batchExecutor,
+      Monitor monitor) {
     this.credentialFactory = credentialFactory;
     this.gmail = gmail;
+    this.batchSize = GoogleBatch.checkBatchSize(batchSize, GMAIL_MAX_BATCH_SIZE);
+    this.batchExecutor = batchExecutor;
     this.monitor = monitor;
   }
 
@@ -73,91 +125,69 @@ public class GoogleMailImporter implements Importer<TokensAndUrlAuthData, MailCo
       IdempotentImportExecutor idempotentExecutor,
       TokensAndUrlAuthData authData,
       MailContainerResource data) throws Exception {
+    Gmail gmail = getOrCreateGmail(authData);
 
-    // Lazy init the request for all labels in the destination account, since it may not be needed
-    // Mapping of labelName -> destination label id
-    Supplier<Map<String, String>> allDestinationLabels = allDestinationLabelsSupplier(authData);
-
-    // Import folders/labels
-    importLabels(authData, idempotentExecutor, allDestinationLabels, data.getFolders());
-
-
-    // Import the special DTP label
-    importDTPLabel(authData, idempotentExecutor, allDestinationLabels);
-
-    // Import labels from the given set of messages
-    importLabelsForMessages(
-            authData, idempotentExecutor, allDestinationLabels, data.getMessages());
+    // Import folders/labels, the special DTP label and the labels of the given set of messages
+    Set<String> labelNames = new LinkedHashSet<>();
+    for (MailContainerModel mailContainerModel : data.getFolders()) {
+      Preconditions.checkArgument(!Strings.isNullOrEmpty(mailContainerModel.getName()));
+      labelNames.add(mailContainerModel.getName());
+    }
+    labelNames.add(LABEL);
+    for (MailMessageModel mailMessageModel : data.getMessages()) {
+      labelNames.addAll(mailMessageModel.getContainerIds());
+    }
+    Map<String, String> labelIds = getDestinationLabels(id, gmail);
+    importLabels(gmail, idempotentExecutor, labelIds, labelNames);
 
-    importMessages(authData, idempotentExecutor, data.getMessages());
+    importMessages(gmail, idempotentExecutor, labelIds, data.getMessages());
 
     return ImportResult.OK;
   }
 
   /**
-   * Creates a label in the import account, if it doesn't already exist, for all {@code folders} .
+   * Returns the mapping of label name -> label id in the import account for the given job, listing
+   * the account's labels the first time it is requested.
    */
-  private void importLabels(
-      TokensAndUrlAuthData authData,
-      IdempotentImportExecutor idempotentExecutor,
-      Supplier<Map<String, String>> allDestinationLabels,
-      Collection<MailContainerModel> folders) throws Exception {
-    for (MailContainerModel mailContainerModel : folders) {
-      Preconditions.checkArgument(!Strings.isNullOrEmpty(mailContainerModel.getName()));
-      String exportedLabelName = mailContainerModel.getName();
-      idempotentExecutor.executeAndSwallowIOExceptions(
-          exportedLabelName,
-          "Label - " + exportedLabelName,
-          () -> {
-            String importerLabelId = allDestinationLabels.get().get(mailContainerModel.getName());
-            if (importerLabelId == null) {
-              importerLabelId = createImportedLabelId(authData, mailContainerModel.getName());
-            }
-            return importerLabelId;
-          });
+  private Map<String, String> getDestinationLabels(UUID jobId, Gmail gmail) throws IOException {
+    Map<String, String> labelIds = destinationLabels.getIfPresent(jobId);
+    if (labelIds == null) {
+      ListLabelsResponse response = gmail.users().labels().list(USER).execute();
+      labelIds = new ConcurrentHashMap<>();
+      if (response.getLabels() != null) {
+        for (Label label : response.getLabels()) {
+          // TODO: remove system labels
+          labelIds.put(label.getName(), label.getId());
+        }
       }
-  }
-
-  /** Creates a label in the import account to associate with all imported messages. */
-  private void importDTPLabel(
-      TokensAndUrlAuthData authData,
-      IdempotentImportExecutor idempotentExecutor,
-      Supplier<Map<String, String>> allDestinationLabels) throws Exception {
-    idempotentExecutor.executeAndSwallowIOExceptions(
-        LABEL,
-        LABEL,
-        () -> {
-          String migratedLabelId = allDestinationLabels.get().get(LABEL);
-          if (migratedLabelId == null) {
-            migratedLabelId = createImportedLabelId(authData, LABEL);
-          }
-          return migratedLabelId;
-        });
+      destinationLabels.put(jobId, labelIds);
+    }
+    return labelIds;
   }
 
   /**
-   * Creates a label in the import account, if it doesn't already exist, for all labels associated
-   * with the give {@code messages} .
+   * Creates a label in the import account, if it doesn't already exist, for each of {@code
+   * labelNames} and records its id in {@code labelIds}.
    */
-  private void importLabelsForMessages(
-      TokensAndUrlAuthData authData,
+  private void importLabels(
+      Gmail gmail,
       IdempotentImportExecutor idempotentExecutor,
-      Supplier<Map<String, String>> allDestinationLabels,
-      Collection<MailMessageModel> messages) throws Exception {
-    for (MailMessageModel mailMessageModel : messages) {
-      // Get or create label ids associated with this message
-      for (String exportedLabelName : mailMessageModel.getContainerIds()) {
-        idempotentExecutor.executeAndSwallowIOExceptions(
-            exportedLabelName,
-            exportedLabelName,
-            () -> {
-              String importerLabelId = allDestinationLabels.get().get(exportedLabelName);
-              // Found no existing map or label named the same, create a new one
-              if (importerLabelId == null) {
-                  importerLabelId = createImportedLabelId(authData, exportedLabelName);
-              }
-              return importerLabelId;
-            });
+      Map<String, String> labelIds,
+      Collection<String> labelNames) throws Exception {
+    for (String labelName : labelNames) {
+      String importerLabelId =
+          idempotentExecutor.executeAndSwallowIOExceptions(
+              labelName,
+              "Label - " + labelName,
+              () -> {
+                String existingLabelId = labelIds.get(labelName);
+                // Found no existing label named the same, create a new one
+                return existingLabelId != null
+                    ? existingLabelId
+                    : createImportedLabelId(gmail, labelName);
+              });
+      if (importerLabelId != null) {
+        labelIds.put(labelName, importerLabelId);
       }
     }
   }
@@ -166,74 +196,78 @@ public class GoogleMailImporter implements Importer<TokensAndUrlAuthData, MailCo
    * Import each message in {@code messages} into the import account with it's associated labels.
    */
   private void importMessages(
-      TokensAndUrlAuthData authData,
+      Gmail gmail,
       IdempotentImportExecutor idempotentExecutor,
+      Map<String, String> labelIds,
       Collection<MailMessageModel> messages) throws Exception {
-    for (MailMessageModel mailMessageModel : messages) {
-      idempotentExecutor.executeAndSwallowIOExceptions(
-          mailMessageModel.toString(),
-          // Trim the full mail message to try to give some context to the user but not overwhelm
-          // them.
-          "Mail message: " + mailMessageModel.getRawString()
-              .substring(0, Math.min(50, mailMessageModel.getRawString().length())),
-          () -> {
-            // Gather the label ids that will be associated with this message
-            ImmutableList.Builder<String> importedLabelIds = ImmutableList.builder();
-            for (String exportedLabelIdOrName : mailMessageModel.getContainerIds()) {
-              // By this time all the label ids have been added to tempdata
-              String importedLabelId = idempotentExecutor.getCachedValue(exportedLabelIdOrName);
-              if (importedLabelId != null) {
-                importedLabelIds.add(exportedLabelIdOrName);
-              } else {
-                // TODO remove after testing
-                monitor.debug(
-                    () -> "labels should have been added prior to importing messages");
-              }
-            }
-            // Create the message to import
-            Message newMessage =
-                new Message()
-                    .setRaw(mailMessageModel.getRawString())
-                    .setLabelIds(importedLabelIds.build());
-            return getOrCreateGmail(authData)
-                .users()
-                .messages()
-                .insert(USER, newMessage)
-                .execute()
-                .getId();
-          });
+    GoogleBatch.Sender<MailMessageModel, Message> sender =
+        GoogleBatch.sender(
+            batchExecutor,
+            gmail,
+            batchSize,
+            (mailMessageModel, outcome) ->
+                idempotentExecutor.executeAndSwallowIOExceptions(
+                    getIdempotentKey(mailMessageModel),
+                    getItemName(mailMessageModel),
+                    outcome::get,
+                    Message::getId));
+    try {
+      sender.add(
+          GoogleBatch.pending(
+              idempotentExecutor, messages, message -> getIdempotentKey(message).toString()),
+          mailMessageModel ->
+              gmail.users().messages().insert(USER, toMessage(mailMessageModel, labelIds)));
+    } catch (RuntimeException e) {
+      throw sender.recordAllOnFailure(e);
     }
+    // The idempotent executor is only updated from this thread
+    sender.recordAll();
   }
 
-  /** Supplies a mapping of Label Name -> Label Id (in the import account). */
-  private java.util.function.Supplier<Map<String, String>> allDestinationLabelsSupplier(
-      TokensAndUrlAuthData authData) {
-    return () -> {
-      ListLabelsResponse response;
-      try {
-        response = getOrCreateGmail(authData).users().labels().list(USER).execute();
-      } catch (IOException e) {
-        throw new RuntimeException("Unable to list labels for user", e);
-      }
-      ImmutableMap.Builder<String, String> builder = ImmutableMap.builder();
+  /**
+   * Returns the idempotent key of a message. The key covers the full content and labels of the
+   * message, so only exact copies of an imported message are skipped.
+   */
+  private static IdempotentKey getIdempotentKey(MailMessageModel mailMessageModel) {
+    List<String> parts = new ArrayList<>();
+    parts.add(mailMessageModel.getRawString());
+    parts.addAll(mailMessageModel.getContainerIds());
+    return IdempotentKey.of(parts.toArray(new String[0]));
+  }
 
-      for (Label label : response.getLabels()) {
-        // TODO: remove system labels
-        builder.put(label.getName(), label.getId());
+  /** Creates the message to import, with the destination ids of its labels. */
+  private Message toMessage(MailMessageModel mailMessageModel, Map<String, String> labelIds) {
+    // Gather the label ids that will be associated with this message
+    ImmutableList.Builder<String> importedLabelIds = ImmutableList.builder();
+    for (String exportedLabelIdOrName : mailMessageModel.getContainerIds()) {
+      // By this time all the labels have been created
+      String importedLabelId = labelIds.get(exportedLabelIdOrName);
+      if (importedLabelId != null) {
+        importedLabelIds.add(importedLabelId);
+      } else {
+        monitor.debug(
+            () -> "Label " + exportedLabelIdOrName + " could not be imported, leaving it off");
       }
-      return builder.build();
-    };
+    }
+    return new Message()
+        .setRaw(mailMessageModel.getRawString())
+        .setLabelIds(importedLabelIds.build());
+  }
+
+  private static String getItemName(MailMessageModel mailMessageModel) {
+    // Trim the full mail message to try to give some context to the user but not overwhelm them.
+    return "Mail message: " + mailMessageModel.getRawString()
+        .substring(0, Math.min(50, mailMessageModel.getRawString().length()));
   }
 
   /** Creates the given {@code labelName} in the import service provider and returns the id. */
-  private String createImportedLabelId(TokensAndUrlAuthData authData, String labelName)
-      throws IOException {
+  private String createImportedLabelId(Gmail gmail, String labelName) throws IOException {
     Label newLabel =
         new Label()
             .setName(labelName)
             .setLabelListVisibility("labelShow")
             .setMessageListVisibility("show");
-    return getOrCreateGmail(authData).users().labels().create(USER, newLabel).execute().getId();
+    return gmail.users().labels().create(USER, newLabel).execute().getId();
   }
 
   private Gmail getOrCreateGmail(TokensAndUrlAuthData authData) {
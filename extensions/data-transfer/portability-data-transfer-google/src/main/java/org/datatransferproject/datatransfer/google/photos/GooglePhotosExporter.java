@@ -15,22 +15,28 @@
  */
 package org.datatransferproject.datatransfer.google.photos;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.api.client.auth.oauth2.Credential;
 import com.google.api.client.json.JsonFactory;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableList;
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.Queue;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import javax.annotation.Nullable;
 import org.datatransferproject.api.launcher.Monitor;
 import org.datatransferproject.datatransfer.google.common.GoogleCredentialFactory;
 import org.datatransferproject.datatransfer.google.mediaModels.AlbumListResponse;
@@ -41,10 +47,11 @@ import org.datatransferproject.spi.cloud.storage.TemporaryPerJobDataStore;
 import org.datatransferproject.spi.transfer.provider.ExportResult;
 import org.datatransferproject.spi.transfer.provider.ExportResult.ResultType;
 import org.datatransferproject.spi.transfer.provider.Exporter;
+import org.datatransferproject.spi.transfer.types.ContainedIdIndex;
 import org.datatransferproject.spi.transfer.types.ContinuationData;
 import org.datatransferproject.spi.transfer.types.InvalidTokenException;
 import org.datatransferproject.spi.transfer.types.PermissionDeniedException;
-import org.datatransferproject.spi.transfer.types.TempPhotosData;
+import org.datatransferproject.transfer.ContainedIdIndexStore;
 import org.datatransferproject.types.common.ExportInformation;
 import org.datatransferproject.types.common.PaginationData;
 import org.datatransferproject.types.common.StringPaginationToken;
@@ -57,28 +64,70 @@ import org.datatransferproject.types.transfer.auth.TokensAndUrlAuthData;
 // Not ready for prime-time!
 // TODO: fix duplication problems introduced by exporting all photos in 'root' directory first
 
+/**
+ * Exports albums and photos from Google Photos.
+ *
+ * <p>Albums, and the photos in them, are exported first, then the photos that are not in any
+ * album. To tell the two apart, the ids of all media contained in albums are indexed when the
+ * export starts. When a scan executor is supplied, that index is built in the background, with up
+ * to {@code albumScansPerJob} albums listed concurrently, so that album export starts right away.
+ * A page of albumless photos that is exported before the index completes waits for it, unless
+ * every photo on the page was already found in a scanned album.
+ */
 public class GooglePhotosExporter
     implements Exporter<TokensAndUrlAuthData, PhotosContainerResource> {
 
   static final String ALBUM_TOKEN_PREFIX = "album:";
   static final String PHOTO_TOKEN_PREFIX = "media:";
+  // Temp store key of the index of media ids that belong to at least one album
+  static final String CONTAINED_MEDIA_INDEX_KEY = "containedMediaIndex";
+
+  // Upper bound on the number of jobs whose contained media scan is held at any one time
+  private static final long MAX_CACHED_JOBS = 16;
+  private static final long INDEX_CACHE_EXPIRY_HOURS = 1;
 
   private final GoogleCredentialFactory credentialFactory;
-  private final TemporaryPerJobDataStore jobStore;
   private final JsonFactory jsonFactory;
+  private final int albumScansPerJob;
+  @Nullable private final ExecutorService scanExecutor;
   private volatile GooglePhotosInterface photosInterface;
+  // Index of media ids contained in albums for each job, read from the temp store once per job
+  // rather than once per page of exported media
+  private final ContainedIdIndexStore containedMediaIndexes;
+  // Mapping of job id -> contained media scan still running in the background on this worker
+  private final Cache<UUID, ContainedMediaScan> containedMediaScans =
+      CacheBuilder.newBuilder()
+          .maximumSize(MAX_CACHED_JOBS)
+          .expireAfterAccess(INDEX_CACHE_EXPIRY_HOURS, TimeUnit.HOURS)
+          .build();
 
   private final Monitor monitor;
 
+  /**
+   * @param albumScansPerJob the number of albums a job lists concurrently while indexing the media
+   *     contained in albums
+   * @param scanExecutor executor on which contained media are indexed in the background, or null
+   *     to index them before the first albums are exported
+   */
   public GooglePhotosExporter(
       GoogleCredentialFactory credentialFactory,
       TemporaryPerJobDataStore jobStore,
       JsonFactory jsonFactory,
+      int albumScansPerJob,
+      @Nullable ExecutorService scanExecutor,
       Monitor monitor) {
-    this.credentialFactory = credentialFactory;
-    this.jobStore = jobStore;
-    this.jsonFactory = jsonFactory;
-    this.monitor = monitor;
+    // photosInterface lazily initialized later on
+    this(credentialFactory, jobStore, jsonFactory, null, albumScansPerJob, scanExecutor, monitor);
+  }
+
+  @VisibleForTesting
+  GooglePhotosExporter(
+      GoogleCredentialFactory credentialFactory,
+      TemporaryPerJobDataStore jobStore,
+      JsonFactory jsonFactory,
+      GooglePhotosInterface photosInterface,
+      Monitor monitor) {
+    this(credentialFactory, jobStore, jsonFactory, photosInterface, 0, null, monitor);
   }
 
   @VisibleForTesting
@@ -87,12 +136,16 @@ public class GooglePhotosExporter
       TemporaryPerJobDataStore jobStore,
       JsonFactory jsonFactory,
       GooglePhotosInterface photosInterface,
+      int albumScansPerJob,
+      @Nullable ExecutorService scanExecutor,
       Monitor monitor) {
     this.credentialFactory = credentialFactory;
-    this.jobStore = jobStore;
     this.jsonFactory = jsonFactory;
     this.photosInterface = photosInterface;
+    this.albumScansPerJob = albumScansPerJob;
+    this.scanExecutor = albumScansPerJob > 0 ? scanExecutor : null;
     this.monitor = monitor;
+    this.containedMediaIndexes = new ContainedIdIndexStore(jobStore, CONTAINED_MEDIA_INDEX_KEY);
   }
 
   /**
@@ -111,7 +164,11 @@ public class GooglePhotosExporter
       throws IOException, InvalidTokenException, PermissionDeniedException {
     if (!exportInformation.isPresent()) {
       // Make list of photos contained in albums so they are not exported twice later on
-      populateContainedPhotosList(jobId, authData);
+      if (scanExecutor == null) {
+        populateContainedPhotosList(jobId, authData);
+      } else {
+        startContainedMediaScan(jobId, authData);
+      }
       return exportAlbums(authData, Optional.empty(), jobId);
     } else if (exportInformation.get().getContainerResource() instanceof PhotosContainerResource) {
       // if ExportInformation is a photos container, this is a request to only export the contents
@@ -272,7 +329,7 @@ public class GooglePhotosExporter
     PhotosContainerResource containerResource = null;
     GoogleMediaItem[] mediaItems = mediaItemSearchResponse.getMediaItems();
     if (mediaItems != null && mediaItems.length > 0) {
-      List<PhotoModel> photos = convertPhotosList(albumId, mediaItems, jobId);
+      List<PhotoModel> photos = convertPhotosList(albumId, mediaItems, jobId, authData);
       containerResource = new PhotosContainerResource(null, photos);
     }
 
@@ -285,51 +342,179 @@ public class GooglePhotosExporter
   }
 
   /**
-   * Method for storing a list of all photos that are already contained in albums
+   * Method for storing an index of all photos that are already contained in albums
    */
   @VisibleForTesting
-  void populateContainedPhotosList(UUID jobId, TokensAndUrlAuthData authData)
+  ContainedIdIndex populateContainedPhotosList(UUID jobId, TokensAndUrlAuthData authData)
       throws IOException, InvalidTokenException, PermissionDeniedException {
-    // This method is only called once at the beginning of the transfer, so we can start by
-    // initializing a new TempPhotosData to be store in the job store.
-    TempPhotosData tempPhotosData = new TempPhotosData(jobId);
+    // This method is only called once at the beginning of the transfer, or when the background
+    // scan failed or never stored its index, so we can start by building a new index to be stored
+    // in the job store.
+    GooglePhotosInterface photosInterface = getOrCreatePhotosInterface(authData);
+    List<ContainedIdIndex> albums = new ArrayList<>();
+    for (String albumId : listAlbumIds(photosInterface)) {
+      albums.add(indexAlbum(photosInterface, albumId));
+    }
+    ContainedIdIndex index = ContainedIdIndex.union(albums);
+    storeContainedMediaIndex(jobId, index);
+    return index;
+  }
+
+  /**
+   * Starts indexing the media contained in the job's albums on the scan executor. The albums are
+   * listed first, then scanned by up to {@code albumScansPerJob} tasks that take turns picking up
+   * the next album.
+   */
+  private void startContainedMediaScan(UUID jobId, TokensAndUrlAuthData authData) {
+    GooglePhotosInterface photosInterface = getOrCreatePhotosInterface(authData);
+    ContainedMediaScan scan = new ContainedMediaScan();
+    containedMediaScans.put(jobId, scan);
+    CompletableFuture.supplyAsync(() -> listAlbumIdsUnchecked(photosInterface), scanExecutor)
+        .thenCompose(albumIds -> scanAlbums(photosInterface, albumIds, scan))
+        .thenApply(
+            ignored -> {
+              ContainedIdIndex index = ContainedIdIndex.union(scan.scannedAlbums);
+              try {
+                storeContainedMediaIndex(jobId, index);
+              } catch (IOException e) {
+                // The index is still held by this worker, it is only lost if the job moves
+                monitor.severe(() -> "Unable to store contained media index for job " + jobId, e);
+              }
+              return index;
+            })
+        .whenComplete(
+            (index, failure) -> {
+              if (failure == null) {
+                containedMediaScans.invalidate(jobId);
+                scan.index.complete(index);
+              } else {
+                // Left in place so that the next page of albumless photos scans again
+                monitor.info(() -> "Contained media scan failed for job " + jobId, failure);
+                scan.index.completeExceptionally(failure);
+              }
+            });
+  }
+
+  private CompletableFuture<Void> scanAlbums(
+      GooglePhotosInterface photosInterface, List<String> albumIds, ContainedMediaScan scan) {
+    Queue<String> pendingAlbums = new ConcurrentLinkedQueue<>(albumIds);
+    CompletableFuture<?>[] scanners =
+        new CompletableFuture<?>[Math.min(albumScansPerJob, albumIds.size())];
+    for (int i = 0; i < scanners.length; i++) {
+      scanners[i] =
+          CompletableFuture.runAsync(
+              () -> {
+                String albumId;
+                while ((albumId = pendingAlbums.poll()) != null) {
+                  try {
+                    scan.scannedAlbums.add(indexAlbum(photosInterface, albumId));
+                  } catch (Exception e) {
+                    // The scan as a whole has failed, so the other scanners can stop early
+                    pendingAlbums.clear();
+                    throw new CompletionException(e);
+                  }
+                }
+              },
+              scanExecutor);
+    }
+    return CompletableFuture.allOf(scanners);
+  }
 
+  private List<String> listAlbumIds(GooglePhotosInterface photosInterface)
+      throws IOException, InvalidTokenException, PermissionDeniedException {
+    List<String> albumIds = new ArrayList<>();
     String albumToken = null;
     AlbumListResponse albumListResponse;
-    MediaItemSearchResponse containedMediaSearchResponse;
     do {
-      albumListResponse =
-          getOrCreatePhotosInterface(authData).listAlbums(Optional.ofNullable(albumToken));
+      albumListResponse = photosInterface.listAlbums(Optional.ofNullable(albumToken));
       if (albumListResponse.getAlbums() != null) {
         for (GoogleAlbum album : albumListResponse.getAlbums()) {
-          String albumId = album.getId();
-          String photoToken = null;
-          do {
-            containedMediaSearchResponse =
-                getOrCreatePhotosInterface(authData)
-                    .listMediaItems(Optional.of(albumId), Optional.ofNullable(photoToken));
-            if (containedMediaSearchResponse.getMediaItems() != null) {
-              for (GoogleMediaItem mediaItem : containedMediaSearchResponse.getMediaItems()) {
-                tempPhotosData.addContainedPhotoId(mediaItem.getId());
-              }
-            }
-            photoToken = containedMediaSearchResponse.getNextPageToken();
-          } while (photoToken != null);
+          albumIds.add(album.getId());
         }
       }
       albumToken = albumListResponse.getNextPageToken();
     } while (albumToken != null);
+    return albumIds;
+  }
+
+  private List<String> listAlbumIdsUnchecked(GooglePhotosInterface photosInterface) {
+    try {
+      return listAlbumIds(photosInterface);
+    } catch (Exception e) {
+      throw new CompletionException(e);
+    }
+  }
+
+  private static ContainedIdIndex indexAlbum(GooglePhotosInterface photosInterface, String albumId)
+      throws IOException, InvalidTokenException, PermissionDeniedException {
+    ContainedIdIndex.Builder containedMedia = ContainedIdIndex.builder();
+    String photoToken = null;
+    MediaItemSearchResponse containedMediaSearchResponse;
+    do {
+      containedMediaSearchResponse =
+          photosInterface.listMediaItems(Optional.of(albumId), Optional.ofNullable(photoToken));
+      if (containedMediaSearchResponse.getMediaItems() != null) {
+        for (GoogleMediaItem mediaItem : containedMediaSearchResponse.getMediaItems()) {
+          containedMedia.add(mediaItem.getId());
+        }
+      }
+      photoToken = containedMediaSearchResponse.getNextPageToken();
+    } while (photoToken != null);
+    return containedMedia.build();
+  }
 
+  private void storeContainedMediaIndex(UUID jobId, ContainedIdIndex index) throws IOException {
     // TODO: if we see complaints about objects being too large for JobStore in other places, we
     // should consider putting logic in JobStore itself to handle it
-    InputStream stream = convertJsonToInputStream(tempPhotosData);
-    jobStore.create(jobId, createCacheKey(), stream);
+    containedMediaIndexes.put(jobId, index);
+    monitor.debug(
+        () -> String.format("%s: Google Photos indexed %d contained media", jobId, index.size()));
   }
 
-  @VisibleForTesting
-  static InputStream convertJsonToInputStream(Object jsonObject) throws JsonProcessingException {
-    String tempString = new ObjectMapper().writeValueAsString(jsonObject);
-    return new ByteArrayInputStream(tempString.getBytes(StandardCharsets.UTF_8));
+  /**
+   * Returns a test for whether media on the given page of albumless media is contained in an
+   * album. While the job's background scan is running, media found in an album scanned so far is
+   * certainly contained, but any other media may still turn up in an album not scanned yet. Unless
+   * every photo on the page is of the first kind, this waits for the scan to complete.
+   */
+  private Predicate<String> getContainedMedia(
+      UUID jobId, GoogleMediaItem[] mediaItems, TokensAndUrlAuthData authData)
+      throws IOException, InvalidTokenException, PermissionDeniedException {
+    ContainedIdIndex index = containedMediaIndexes.getIfCached(jobId);
+    if (index != null) {
+      return index::contains;
+    }
+    ContainedMediaScan scan = containedMediaScans.getIfPresent(jobId);
+    if (scan == null) {
+      ContainedIdIndex stored = containedMediaIndexes.getIfStored(jobId);
+      if (stored != null) {
+        return stored::contains;
+      }
+      // No scan stored its index, e.g. because the worker running it stopped, so treating the
+      // index as empty would export every contained photo a second time
+      return populateContainedPhotosList(jobId, authData)::contains;
+    }
+    boolean maybeContained = false;
+    for (GoogleMediaItem mediaItem : mediaItems) {
+      if (mediaItem.getMediaMetadata().getPhoto() != null
+          && !scan.isKnownContained(mediaItem.getId())) {
+        maybeContained = true;
+        break;
+      }
+    }
+    if (!maybeContained) {
+      return scan::isKnownContained;
+    }
+    try {
+      return scan.index.get()::contains;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted waiting for contained media of job " + jobId, e);
+    } catch (ExecutionException e) {
+      ContainedIdIndex rescanned = populateContainedPhotosList(jobId, authData);
+      containedMediaScans.invalidate(jobId);
+      return rescanned::contains;
+    }
   }
 
   private Optional<String> getPhotosPaginationToken(Optional<PaginationData> paginationData) {
@@ -346,24 +531,21 @@ public class GooglePhotosExporter
   }
 
   private List<PhotoModel> convertPhotosList(
-      Optional<String> albumId, GoogleMediaItem[] mediaItems, UUID jobId) throws IOException {
+      Optional<String> albumId,
+      GoogleMediaItem[] mediaItems,
+      UUID jobId,
+      TokensAndUrlAuthData authData)
+      throws IOException, InvalidTokenException, PermissionDeniedException {
     List<PhotoModel> photos = new ArrayList<>(mediaItems.length);
 
-    TempPhotosData tempPhotosData = null;
-    InputStream stream = jobStore.getStream(jobId, createCacheKey()).getStream();
-    if (stream != null) {
-      tempPhotosData = new ObjectMapper().readValue(stream, TempPhotosData.class);
-      stream.close();
-    }
+    // Album contents are exported with their album, so the index only matters for albumless media
+    Predicate<String> isContained =
+        albumId.isPresent() ? id -> false : getContainedMedia(jobId, mediaItems, authData);
 
     for (GoogleMediaItem mediaItem : mediaItems) {
       if (mediaItem.getMediaMetadata().getPhoto() != null) {
         // TODO: address videos
-        boolean shouldUpload = albumId.isPresent();
-
-        if (tempPhotosData != null) {
-          shouldUpload = shouldUpload || !tempPhotosData.isContainedPhotoId(mediaItem.getId());
-        }
+        boolean shouldUpload = albumId.isPresent() || !isContained.test(mediaItem.getId());
 
         if (shouldUpload) {
           PhotoModel photoModel = convertToPhotoModel(albumId, mediaItem);
@@ -401,7 +583,19 @@ public class GooglePhotosExporter
         credentialFactory, credential, jsonFactory, monitor, /* arbitrary writesPerSecond */ 1.0);
   }
 
-  private static String createCacheKey() {
-    return "tempPhotosData";
+  /** Media ids of a job's albums, indexed in the background one album at a time. */
+  private static final class ContainedMediaScan {
+    // Indexes of the albums scanned so far
+    private final Queue<ContainedIdIndex> scannedAlbums = new ConcurrentLinkedQueue<>();
+    private final CompletableFuture<ContainedIdIndex> index = new CompletableFuture<>();
+
+    private boolean isKnownContained(String id) {
+      for (ContainedIdIndex album : scannedAlbums) {
+        if (album.contains(id)) {
+          return true;
+        }
+      }
+      return false;
+    }
   }
 }
@@ -21,6 +21,7 @@ import com.google.api.services.tasks.Tasks;
 import com.google.api.services.tasks.model.TaskList;
 import com.google.api.services.tasks.model.TaskLists;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import org.datatransferproject.api.launcher.Monitor;
 import org.datatransferproject.datatransfer.google.common.GoogleCredentialFactory;
@@ -46,23 +47,51 @@ import java.util.UUID;
 import java.util.stream.Collectors;
 
 
+/** Exports task lists and their tasks from Google Tasks. */
 public class GoogleTasksExporter implements Exporter<TokensAndUrlAuthData, TaskContainerResource> {
+  // The largest page the Tasks API returns for task lists and for tasks
+  public static final int MAX_PAGE_SIZE = 100;
+  @VisibleForTesting static final int DEFAULT_PAGE_SIZE = 50;
 
-  private static final long PAGE_SIZE = 50; // TODO: configure correct size in production
   private final GoogleCredentialFactory credentialFactory;
   private final Monitor monitor;
+  private final long pageSize;
 
   private volatile Tasks tasksClient;
 
   public GoogleTasksExporter(GoogleCredentialFactory credentialFactory, Monitor monitor) {
+    this(credentialFactory, DEFAULT_PAGE_SIZE, monitor);
+  }
+
+  /**
+   * @param pageSize the number of task lists or tasks requested per page, at most {@link
+   *     #MAX_PAGE_SIZE}
+   */
+  public GoogleTasksExporter(
+      GoogleCredentialFactory credentialFactory, int pageSize, Monitor monitor) {
+    Preconditions.checkArgument(
+        pageSize > 0 && pageSize <= MAX_PAGE_SIZE,
+        "pageSize must be between 1 and %s, was %s",
+        MAX_PAGE_SIZE,
+        pageSize);
     this.credentialFactory = credentialFactory;
+    this.pageSize = pageSize;
     this.monitor = monitor;
   }
 
   @VisibleForTesting
   GoogleTasksExporter(
       GoogleCredentialFactory credentialFactory, Tasks tasksClient, Monitor monitor) {
-    this(credentialFactory, monitor);
+    this(credentialFactory, tasksClient, DEFAULT_PAGE_SIZE, monitor);
+  }
+
+  @VisibleForTesting
+  GoogleTasksExporter(
+      GoogleCredentialFactory credentialFactory,
+      Tasks tasksClient,
+      int pageSize,
+      Monitor monitor) {
+    this(credentialFactory, pageSize, monitor);
     this.tasksClient = tasksClient;
   }
 
@@ -96,7 +125,7 @@ public class GoogleTasksExporter implements Exporter<TokensAndUrlAuthData, TaskC
       Tasks tasksService, IdOnlyContainerResource resource, Optional<PaginationData> paginationData)
       throws IOException {
     Tasks.TasksOperations.List query =
-        tasksService.tasks().list(resource.getId()).setMaxResults(PAGE_SIZE);
+        tasksService.tasks().list(resource.getId()).setMaxResults(pageSize);
 
     if (paginationData.isPresent()) {
       query.setPageToken(((StringPaginationToken) paginationData.get()).getToken());
@@ -133,7 +162,7 @@ public class GoogleTasksExporter implements Exporter<TokensAndUrlAuthData, TaskC
 
   private ExportResult<TaskContainerResource> getTasksList(
       Tasks tasksService, Optional<PaginationData> paginationData) throws IOException {
-    Tasks.Tasklists.List query = tasksService.tasklists().list().setMaxResults(PAGE_SIZE);
+    Tasks.Tasklists.List query = tasksService.tasklists().list().setMaxResults(pageSize);
     if (paginationData.isPresent()) {
       query.setPageToken(((StringPaginationToken) paginationData.get()).getToken());
     }
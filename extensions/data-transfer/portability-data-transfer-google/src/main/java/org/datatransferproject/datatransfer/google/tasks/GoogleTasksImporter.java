@@ -21,6 +21,8 @@ import com.google.api.services.tasks.Tasks;
 import com.google.api.services.tasks.model.Task;
 import com.google.api.services.tasks.model.TaskList;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.MoreExecutors;
+import org.datatransferproject.datatransfer.google.common.GoogleBatch;
 import org.datatransferproject.datatransfer.google.common.GoogleCredentialFactory;
 import org.datatransferproject.datatransfer.google.common.GoogleStaticObjects;
 import org.datatransferproject.spi.transfer.idempotentexecutor.IdempotentImportExecutor;
@@ -32,24 +34,45 @@ import org.datatransferproject.types.common.models.tasks.TaskListModel;
 import org.datatransferproject.types.common.models.tasks.TaskModel;
 import org.datatransferproject.types.transfer.auth.TokensAndUrlAuthData;
 
-import java.io.IOException;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
-
+/**
+ * Imports task lists and their tasks into Google Tasks.
+ *
+ * <p>Tasks are inserted with batch requests of up to {@code batchSize} tasks of the same list. Each
+ * task keeps its own idempotent id, so tasks already imported are skipped on resume and a failed
+ * task does not fail the rest of its batch.
+ */
 public class GoogleTasksImporter implements Importer<TokensAndUrlAuthData, TaskContainerResource> {
+  // Tasks inserted per batch request
+  @VisibleForTesting static final int MAX_BATCH_SIZE = 100;
 
   private final GoogleCredentialFactory credentialFactory;
+  private final int batchSize;
   private Tasks tasksClient;
 
-  public GoogleTasksImporter(GoogleCredentialFactory credentialFactory) {
-    this(credentialFactory, null);
+  /**
+   * @param batchSize the number of tasks inserted per batch request, 1 inserts each task with its
+   *     own request
+   */
+  public GoogleTasksImporter(GoogleCredentialFactory credentialFactory, int batchSize) {
+    this(credentialFactory, null, batchSize);
   }
 
   @VisibleForTesting
   GoogleTasksImporter(GoogleCredentialFactory credentialFactory,
       Tasks tasksClient) {
+    this(credentialFactory, tasksClient, 1);
+  }
+
+  @VisibleForTesting
+  GoogleTasksImporter(GoogleCredentialFactory credentialFactory, Tasks tasksClient,
+      int batchSize) {
     this.credentialFactory = credentialFactory;
     this.tasksClient = tasksClient;
+    this.batchSize = GoogleBatch.checkBatchSize(batchSize, MAX_BATCH_SIZE);
   }
 
   @Override
@@ -68,27 +91,51 @@ public class GoogleTasksImporter implements Importer<TokensAndUrlAuthData, TaskC
           () -> tasksService.tasklists().insert(newTaskList).execute().getId());
     }
 
-    for (TaskModel oldTask : data.getTasks()) {
-      Task newTask = new Task().setTitle(oldTask.getText()).setNotes(oldTask.getNotes());
-      if (oldTask.getCompletedTime() != null) {
-        newTask.setCompleted(new DateTime(oldTask.getCompletedTime().toEpochMilli()));
-      }
-      if (oldTask.getDueTime() != null) {
-        newTask.setDue(new DateTime(oldTask.getDueTime().toEpochMilli()));
-      }
-      // If its not cached that means the task list create failed.
-      if (idempotentImportExecutor.isKeyCached(oldTask.getTaskListId())) {
-        String newTaskListId = idempotentImportExecutor.getCachedValue(oldTask.getTaskListId());
-        idempotentImportExecutor.executeAndSwallowIOExceptions(
-            oldTask.getTaskListId() + oldTask.getText(),
-            oldTask.getText(),
-            () -> tasksService.tasks().insert(newTaskListId, newTask).execute().getId());
+    // If the task list isn't cached that means the task list create failed
+    Map<String, List<TaskModel>> pendingByList =
+        GoogleBatch.pendingByContainer(
+            idempotentImportExecutor,
+            data.getTasks(),
+            TaskModel::getTaskListId,
+            GoogleTasksImporter::getTaskId);
+
+    GoogleBatch.Sender<TaskModel, Task> sender =
+        GoogleBatch.sender(
+            MoreExecutors.newDirectExecutorService(),
+            tasksService,
+            batchSize,
+            (oldTask, outcome) ->
+                idempotentImportExecutor.executeAndSwallowIOExceptions(
+                    getTaskId(oldTask), oldTask.getText(), outcome::get, Task::getId));
+    try {
+      for (Map.Entry<String, List<TaskModel>> entry : pendingByList.entrySet()) {
+        String newTaskListId = idempotentImportExecutor.getCachedValue(entry.getKey());
+        sender.add(
+            entry.getValue(),
+            oldTask -> tasksService.tasks().insert(newTaskListId, convertToGoogleTask(oldTask)));
       }
+    } catch (RuntimeException e) {
+      throw sender.recordAllOnFailure(e);
     }
-
+    sender.recordAll();
     return new ImportResult(ResultType.OK);
   }
 
+  private static String getTaskId(TaskModel task) {
+    return task.getTaskListId() + task.getText();
+  }
+
+  private static Task convertToGoogleTask(TaskModel oldTask) {
+    Task newTask = new Task().setTitle(oldTask.getText()).setNotes(oldTask.getNotes());
+    if (oldTask.getCompletedTime() != null) {
+      newTask.setCompleted(new DateTime(oldTask.getCompletedTime().toEpochMilli()));
+    }
+    if (oldTask.getDueTime() != null) {
+      newTask.setDue(new DateTime(oldTask.getDueTime().toEpochMilli()));
+    }
+    return newTask;
+  }
+
   private Tasks getOrCreateTasksService(TokensAndUrlAuthData authData) {
     return tasksClient == null ? makeTasksService(authData) : tasksClient;
   }
@@ -40,6 +40,7 @@ import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
 import com.google.common.collect.Iterators;
 import com.google.common.collect.UnmodifiableIterator;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.google.photos.library.v1.PhotosLibraryClient;
 import com.google.photos.library.v1.PhotosLibrarySettings;
 import com.google.photos.library.v1.proto.BatchCreateMediaItemsResponse;
@@ -56,6 +57,7 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
@@ -63,6 +65,9 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.stream.Stream;
 import org.apache.commons.lang3.tuple.Pair;
 import org.datatransferproject.api.launcher.Monitor;
@@ -79,32 +84,82 @@ import org.datatransferproject.types.common.models.videos.VideosContainerResourc
 import org.datatransferproject.types.transfer.auth.AppCredentials;
 import org.datatransferproject.types.transfer.auth.TokensAndUrlAuthData;
 
+/**
+ * Imports videos into Google Photos.
+ *
+ * <p>Each video is downloaded to a temp file and uploaded from there, and the uploaded videos are
+ * then created in batches. The videos of a batch are downloaded and uploaded on the upload
+ * executor, so with more than one thread the download of one video overlaps the upload of
+ * another. The temp files held at any one time are kept within a disk budget, see {@link
+ * TempDiskBudget}. Outcomes are still recorded by upload token, in batch order, on the importing
+ * thread.
+ */
 public class GoogleVideosImporter
     implements Importer<TokensAndUrlAuthData, VideosContainerResource> {
 
+  /**
+   * Space reserved for a video whose size the server doesn't announce. Anything it turns out to
+   * take beyond that is charged while it downloads.
+   */
+  private static final long UNKNOWN_SIZE_RESERVATION_BYTES = 64L * 1024 * 1024;
+
   private final ImageStreamProvider videoStreamProvider;
   private Monitor monitor;
   private final AppCredentials appCredentials;
   private final TemporaryPerJobDataStore dataStore;
+  private final ExecutorService uploadExecutor;
+  private final TempDiskBudget tempDiskBudget;
   private Map<UUID, PhotosLibraryClient> clientsMap = new HashMap<>();
 
+  /**
+   * @param uploadExecutor executor on which videos are downloaded and uploaded, its number of
+   *     threads is the number of videos transferred concurrently
+   * @param tempDiskBudgetBytes the most temp disk space held by downloaded videos at any one time
+   */
   public GoogleVideosImporter(
-      AppCredentials appCredentials, TemporaryPerJobDataStore dataStore, Monitor monitor) {
-    this.monitor = monitor;
-    this.appCredentials = appCredentials;
-    this.dataStore = dataStore;
-    this.videoStreamProvider = new ImageStreamProvider();
+      AppCredentials appCredentials,
+      TemporaryPerJobDataStore dataStore,
+      Monitor monitor,
+      ExecutorService uploadExecutor,
+      long tempDiskBudgetBytes) {
+    this(
+        appCredentials,
+        dataStore,
+        monitor,
+        new ImageStreamProvider(),
+        uploadExecutor,
+        tempDiskBudgetBytes);
   }
 
+  @VisibleForTesting
   GoogleVideosImporter(
       AppCredentials appCredentials,
       TemporaryPerJobDataStore dataStore,
       Monitor monitor,
       ImageStreamProvider videoStreamProvider) {
+    this(
+        appCredentials,
+        dataStore,
+        monitor,
+        videoStreamProvider,
+        MoreExecutors.newDirectExecutorService(),
+        Long.MAX_VALUE);
+  }
+
+  @VisibleForTesting
+  GoogleVideosImporter(
+      AppCredentials appCredentials,
+      TemporaryPerJobDataStore dataStore,
+      Monitor monitor,
+      ImageStreamProvider videoStreamProvider,
+      ExecutorService uploadExecutor,
+      long tempDiskBudgetBytes) {
     this.videoStreamProvider = videoStreamProvider;
     this.monitor = monitor;
     this.appCredentials = appCredentials;
     this.dataStore = dataStore;
+    this.uploadExecutor = uploadExecutor;
+    this.tempDiskBudget = new TempDiskBudget(tempDiskBudgetBytes);
   }
 
   /**
@@ -195,10 +250,15 @@ public class GoogleVideosImporter
     final HashMap<String, Long> uploadTokenToLength = new HashMap<>();
     // The PhotosLibraryClient can throw InvalidArgumentException and this try block wraps the two
     // calls of the client to handle the InvalidArgumentException when the user's storage is full.
+    final List<Future<Pair<String, Long>>> uploads = new ArrayList<>(batchedVideos.size());
     try {
       for (VideoModel video : batchedVideos) {
+        uploads.add(uploadExecutor.submit(() -> uploadMediaItem(video, client)));
+      }
+      for (int i = 0; i < batchedVideos.size(); i++) {
+        final VideoModel video = batchedVideos.get(i);
         try {
-          Pair<String, Long> pair = uploadMediaItem(video, client);
+          Pair<String, Long> pair = getUpload(uploads.get(i));
           final String uploadToken = pair.getLeft();
           mediaItems.add(buildMediaItem(video, uploadToken));
           uploadTokenToDataId.put(uploadToken, video);
@@ -271,19 +331,57 @@ public class GoogleVideosImporter
       } else {
         throw e;
       }
+    } finally {
+      // Only has an effect if the batch was abandoned, each upload cleans up its own temp file
+      for (Future<Pair<String, Long>> upload : uploads) {
+        upload.cancel(true);
+      }
+    }
+  }
+
+  /** Waits for an upload, rethrowing what it failed with. */
+  private static Pair<String, Long> getUpload(Future<Pair<String, Long>> upload)
+      throws Exception {
+    try {
+      return upload.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw e;
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof Exception) {
+        throw (Exception) cause;
+      }
+      throw (Error) cause;
     }
   }
 
   private Pair<String, Long> uploadMediaItem(
       MediaObject inputVideo, PhotosLibraryClient photosLibraryClient)
-      throws IOException, UploadErrorException {
+      throws IOException, UploadErrorException, InterruptedException {
 
+    // Reserve the disk space before the download is opened, so that a video waiting for space
+    // doesn't hold an open response meanwhile
+    String url = inputVideo.getContentUrl().toString();
+    long announcedBytes = this.videoStreamProvider.getContentLength(url);
+    TempDiskBudget.Reservation reservation =
+        tempDiskBudget.reserve(
+            announcedBytes < 0
+                ? Math.min(UNKNOWN_SIZE_RESERVATION_BYTES, tempDiskBudget.getCapacityBytes())
+                : announcedBytes);
     final File tmp;
-    try (InputStream inputStream =
-            // 根据URL获取 HttpURLConnection，再进一步拿到流
-        this.videoStreamProvider
-                .getConnection(inputVideo.getContentUrl().toString()).getInputStream()) {
-      tmp = dataStore.getTempFileFromInputStream(inputStream, inputVideo.getName(), ".mp4");
+    try {
+      // 根据URL获取 HttpURLConnection，再进一步拿到流
+      HttpURLConnection connection = this.videoStreamProvider.getConnection(url);
+      try (InputStream inputStream = connection.getInputStream()) {
+        tmp =
+            dataStore.getTempFileFromInputStream(
+                reservation.track(inputStream), inputVideo.getName(), ".mp4");
+      }
+      reservation.resize(tmp.length());
+    } catch (IOException | RuntimeException e) {
+      reservation.release();
+      throw e;
     }
     try {
       UploadMediaItemRequest uploadRequest =
@@ -313,6 +411,7 @@ public class GoogleVideosImporter
     } finally {
       //noinspection ResultOfMethodCallIgnored
       tmp.delete();
+      reservation.release();
     }
   }
 
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2019 The Data Transfer Project Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.datatransferproject.datatransfer.google.videos;
+
+import com.google.common.base.Preconditions;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Bounds the temp disk space held by videos that are downloaded but not yet uploaded.
+ *
+ * <p>Space is reserved before a download is opened and released once the upload is done. Bytes a
+ * download writes past its reservation are charged as they arrive, without waiting, so a size
+ * that was unknown or understated up front still counts against later reservations. A video
+ * larger than the whole budget is still let through, but only when nothing else holds any space.
+ */
+final class TempDiskBudget {
+  private final long capacityBytes;
+  private long reservedBytes;
+
+  TempDiskBudget(long capacityBytes) {
+    Preconditions.checkArgument(capacityBytes > 0, "capacityBytes must be positive");
+    this.capacityBytes = capacityBytes;
+  }
+
+  long getCapacityBytes() {
+    return capacityBytes;
+  }
+
+  /** Waits until {@code bytes} fit in the budget, then reserves them. */
+  Reservation reserve(long bytes) throws InterruptedException {
+    Preconditions.checkArgument(bytes >= 0, "bytes must not be negative");
+    synchronized (this) {
+      while (reservedBytes > 0 && reservedBytes + bytes > capacityBytes) {
+        wait();
+      }
+      reservedBytes += bytes;
+    }
+    return new Reservation(bytes);
+  }
+
+  private synchronized void adjust(long delta) {
+    reservedBytes += delta;
+    if (delta < 0) {
+      notifyAll();
+    }
+  }
+
+  /** Space held for one video, used from the thread that downloads and uploads it. */
+  final class Reservation {
+    private long bytes;
+
+    private Reservation(long bytes) {
+      this.bytes = bytes;
+    }
+
+    long getBytes() {
+      return bytes;
+    }
+
+    /** Wraps a download so that the bytes read past this reservation are added to it. */
+    InputStream track(InputStream in) {
+      return new FilterInputStream(in) {
+        private long readBytes;
+
+        @Override
+        public int read() throws IOException {
+          int b = super.read();
+          if (b >= 0) {
+            charge(1);
+          }
+          return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+          int n = super.read(b, off, len);
+          if (n > 0) {
+            charge(n);
+          }
+          return n;
+        }
+
+        private void charge(long n) {
+          readBytes += n;
+          if (readBytes > bytes) {
+            resize(readBytes);
+          }
+        }
+      };
+    }
+
+    /** Changes this reservation to {@code actual} bytes, without waiting. */
+    void resize(long actual) {
+      adjust(actual - bytes);
+      bytes = actual;
+    }
+
+    void release() {
+      resize(0);
+    }
+  }
+}
@@ -21,6 +21,7 @@ import static org.datatransferproject.datatransfer.google.common.GoogleStaticObj
 import static org.datatransferproject.datatransfer.google.common.GoogleStaticObjects.EVENT_TOKEN_PREFIX;
 import static org.datatransferproject.datatransfer.google.common.GoogleStaticObjects.MAX_ATTENDEES;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
@@ -30,6 +31,7 @@ import com.google.api.services.calendar.model.CalendarList;
 import com.google.api.services.calendar.model.CalendarListEntry;
 import com.google.api.services.calendar.model.Event;
 import com.google.api.services.calendar.model.Events;
+import com.google.common.util.concurrent.MoreExecutors;
 import java.io.IOException;
 import java.util.Collection;
 import java.util.Collections;
@@ -37,6 +39,7 @@ import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 import java.util.stream.Collectors;
+import org.datatransferproject.api.launcher.Monitor;
 import org.datatransferproject.datatransfer.google.common.GoogleCredentialFactory;
 import org.datatransferproject.spi.transfer.provider.ExportResult;
 import org.datatransferproject.spi.transfer.types.ContinuationData;
@@ -231,6 +234,43 @@ public class GoogleCalendarExporterTest {
     assertThat(paginationToken).isNull();
   }
 
+  @Test
+  public void exportEventsPrefetchedWithCalendars() throws IOException {
+    setUpSingleCalendarResponse();
+    calendarListResponse.setNextPageToken(null);
+    eventListResponse.setNextPageToken(null);
+    GoogleCalendarExporter prefetchingExporter =
+        new GoogleCalendarExporter(
+            credentialFactory,
+            calendarClient,
+            100,
+            2,
+            MoreExecutors.newDirectExecutorService(),
+            new Monitor() {});
+
+    prefetchingExporter.export(JOB_ID, null, Optional.empty());
+    // The calendar's first page of events is fetched along with the calendar list
+    verify(eventListRequest).execute();
+
+    ExportInformation exportInformation =
+        new ExportInformation(null, new IdOnlyContainerResource(CALENDAR_ID));
+    ExportResult<CalendarContainerResource> result =
+        prefetchingExporter.export(JOB_ID, null, Optional.of(exportInformation));
+
+    // And isn't fetched again when exported
+    verify(eventListRequest, times(1)).execute();
+    verify(eventListRequest).setMaxResults(100);
+    verify(eventListRequest).setFields(GoogleCalendarExporter.EVENT_FIELDS);
+    assertThat(
+            result
+                .getExportedData()
+                .getEvents()
+                .stream()
+                .map(CalendarEventModel::getTitle)
+                .collect(Collectors.toList()))
+        .containsExactly(EVENT_DESCRIPTION);
+  }
+
   /** Sets up a response with a single calendar, containing a single event */
   private void setUpSingleCalendarResponse() throws IOException {
     setUpSingleEventResponse();
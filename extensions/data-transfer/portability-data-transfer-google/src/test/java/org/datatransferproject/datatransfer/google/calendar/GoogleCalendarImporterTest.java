@@ -16,8 +16,13 @@
 
 package org.datatransferproject.datatransfer.google.calendar;
 
+import com.google.api.client.googleapis.batch.BatchRequest;
+import com.google.api.client.googleapis.batch.json.JsonBatchCallback;
+import com.google.api.client.googleapis.json.GoogleJsonError;
+import com.google.api.client.http.HttpHeaders;
 import com.google.api.services.calendar.Calendar;
 import com.google.api.services.calendar.model.Event;
+import com.google.common.util.concurrent.MoreExecutors;
 import org.datatransferproject.datatransfer.google.common.GoogleCredentialFactory;
 import org.datatransferproject.spi.transfer.idempotentexecutor.IdempotentImportExecutor;
 import org.datatransferproject.test.types.FakeIdempotentImportExecutor;
@@ -28,10 +33,19 @@ import org.junit.Before;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 import java.util.UUID;
 
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
@@ -102,4 +116,86 @@ public class GoogleCalendarImporterTest {
     verify(calendarEvents).insert(googleCalendarId, eventToInsert);
     verify(eventInsertRequest).execute();
   }
+
+  @Test
+  public void importEventsInBatches() throws Exception {
+    String modelCalendarId = "modelCalendarId";
+    String googleCalendarId = "googleCalendarId";
+    // The calendar was created by an earlier page
+    executor.executeAndSwallowIOExceptions(modelCalendarId, "calendar", () -> googleCalendarId);
+    BatchRequest batchRequest = setUpBatchImporter(googleCalendarId);
+
+    // One full batch and a partial one, with the rejected event in the first
+    List<CalendarEventModel> events = new ArrayList<>();
+    for (int i = 0; i < 30; i++) {
+      events.add(event(modelCalendarId, i == 3 ? "rejected" : "event" + i));
+    }
+    UUID jobId = UUID.randomUUID();
+    calendarService.importItem(
+        jobId, executor, null, new CalendarContainerResource(Collections.emptyList(), events));
+
+    verify(batchRequest, times(2)).execute();
+    verify(calendarEvents, times(30)).insert(eq(googleCalendarId), any(Event.class));
+    verify(eventInsertRequest, never()).execute();
+    // Only the rejected event is left to import on retry
+    assertThat(executor.isKeyCached(Integer.toString(events.get(3).hashCode()))).isFalse();
+    assertThat(executor.isKeyCached(Integer.toString(events.get(4).hashCode()))).isTrue();
+    calendarService.importItem(
+        jobId, executor, null, new CalendarContainerResource(Collections.emptyList(), events));
+    verify(calendarEvents, times(31)).insert(eq(googleCalendarId), any(Event.class));
+  }
+
+  @Test
+  public void importEventsInBatchesSkipsCalendarThatWasNotCreated() throws Exception {
+    BatchRequest batchRequest = setUpBatchImporter("googleCalendarId");
+
+    calendarService.importItem(
+        UUID.randomUUID(),
+        executor,
+        null,
+        new CalendarContainerResource(
+            Collections.emptyList(),
+            Collections.singletonList(event("uncreatedCalendarId", "event"))));
+
+    verify(batchRequest, never()).execute();
+    verify(calendarEvents, never()).insert(anyString(), any(Event.class));
+  }
+
+  /**
+   * Replaces the importer with one that inserts events in batches of 25, each event into {@code
+   * googleCalendarId} succeeding except those titled "rejected".
+   */
+  private BatchRequest setUpBatchImporter(String googleCalendarId) throws IOException {
+    BatchRequest batchRequest = mock(BatchRequest.class);
+    when(calendarClient.batch()).thenReturn(batchRequest);
+    when(calendarEvents.insert(eq(googleCalendarId), any(Event.class)))
+        .thenAnswer(
+            invocation -> {
+              Event event = invocation.getArgument(1);
+              doAnswer(
+                      queued -> {
+                        JsonBatchCallback<Event> callback = queued.getArgument(1);
+                        if (event.getSummary().equals("rejected")) {
+                          callback.onFailure(
+                              new GoogleJsonError().setMessage("Invalid event"),
+                              new HttpHeaders());
+                        } else {
+                          callback.onSuccess(
+                              new Event().setId("id-" + event.getSummary()), new HttpHeaders());
+                        }
+                        return null;
+                      })
+                  .when(eventInsertRequest)
+                  .queue(eq(batchRequest), any());
+              return eventInsertRequest;
+            });
+    calendarService =
+        new GoogleCalendarImporter(
+            credentialFactory, calendarClient, 25, MoreExecutors.newDirectExecutorService());
+    return batchRequest;
+  }
+
+  private static CalendarEventModel event(String calendarId, String title) {
+    return new CalendarEventModel(calendarId, title, null, null, null, null, null, null);
+  }
 }
@@ -0,0 +1,298 @@
+/*
+ * Copyright 2019 The Data Transfer Project Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.datatransferproject.datatransfer.google.common;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.api.client.googleapis.batch.BatchRequest;
+import com.google.api.client.googleapis.batch.json.JsonBatchCallback;
+import com.google.api.client.googleapis.json.GoogleJsonError;
+import com.google.api.client.googleapis.services.AbstractGoogleClient;
+import com.google.api.client.googleapis.services.json.AbstractGoogleJsonClientRequest;
+import com.google.api.client.http.HttpHeaders;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.MoreExecutors;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import org.datatransferproject.test.types.FakeIdempotentImportExecutor;
+import org.junit.Before;
+import org.junit.Test;
+
+public class GoogleBatchTest {
+  private AbstractGoogleClient client;
+  private BatchRequest batchRequest;
+  // Callbacks queued on the batch, invoked when it is executed
+  private List<Runnable> queuedCallbacks;
+  private List<String> recorded;
+
+  @Before
+  public void setUp() throws IOException {
+    client = mock(AbstractGoogleClient.class);
+    batchRequest = mock(BatchRequest.class);
+    queuedCallbacks = new ArrayList<>();
+    recorded = new ArrayList<>();
+
+    when(client.batch()).thenReturn(batchRequest);
+    doAnswer(
+            invocation -> {
+              queuedCallbacks.forEach(Runnable::run);
+              return null;
+            })
+        .when(batchRequest)
+        .execute();
+  }
+
+  @Test
+  public void recordsOutcomeOfEachItemInOrder() throws Exception {
+    Map<String, String> responses = ImmutableMap.of("a", "created-a", "c", "created-c");
+
+    GoogleBatch.send(client, ImmutableList.of("a", "b", "c"), item -> request(responses, item))
+        .record(this::recordOutcome);
+
+    // Only the failed request is reported as failed, the rest of the batch still succeeds
+    assertThat(recorded).containsExactly("a=created-a", "b!Not found: b", "c=created-c").inOrder();
+  }
+
+  @Test
+  public void failedBatchFailsEveryItem() throws Exception {
+    Map<String, String> responses = ImmutableMap.of("a", "created-a", "b", "created-b");
+    doAnswer(
+            invocation -> {
+              throw new IOException("Backend error");
+            })
+        .when(batchRequest)
+        .execute();
+
+    GoogleBatch.send(client, ImmutableList.of("a", "b"), item -> request(responses, item))
+        .record(this::recordOutcome);
+
+    assertThat(recorded).containsExactly("a!Backend error", "b!Backend error").inOrder();
+  }
+
+  @Test
+  public void requestThatCannotBeCreatedFailsOnlyItsItem() throws Exception {
+    Map<String, String> responses = ImmutableMap.of("a", "created-a", "c", "created-c");
+
+    GoogleBatch.send(
+            client,
+            ImmutableList.of("a", "b", "c"),
+            item -> {
+              if (item.equals("b")) {
+                throw new IOException("Invalid item");
+              }
+              return request(responses, item);
+            })
+        .record(this::recordOutcome);
+
+    assertThat(recorded).containsExactly("a=created-a", "b!Invalid item", "c=created-c").inOrder();
+  }
+
+  @Test
+  public void batchWithoutRequestsIsNotExecuted() throws Exception {
+    GoogleBatch.send(
+            client,
+            ImmutableList.of("a"),
+            item -> {
+              throw new IOException("Invalid item");
+            })
+        .record(this::recordOutcome);
+
+    verify(batchRequest, never()).execute();
+    assertThat(recorded).containsExactly("a!Invalid item");
+  }
+
+  @Test
+  public void recordAllRecordsLaterBatchesBeforeThrowing() throws Exception {
+    Map<String, String> responses = ImmutableMap.of("a", "created-a", "b", "created-b");
+    Queue<GoogleBatch<String, String>> batches = new ArrayDeque<>();
+    batches.add(GoogleBatch.send(client, ImmutableList.of("a"), item -> request(responses, item)));
+    queuedCallbacks.clear();
+    batches.add(GoogleBatch.send(client, ImmutableList.of("b"), item -> request(responses, item)));
+
+    try {
+      GoogleBatch.recordAll(
+          batches,
+          (item, outcome) -> {
+            recordOutcome(item, outcome);
+            if (item.equals("a")) {
+              throw new IOException("Can't record a");
+            }
+          });
+      fail("Expected the failure recording the first batch");
+    } catch (IOException e) {
+      assertThat(e).hasMessageThat().isEqualTo("Can't record a");
+    }
+
+    assertThat(recorded).containsExactly("a=created-a", "b=created-b").inOrder();
+    assertThat(batches).isEmpty();
+  }
+
+  @Test
+  public void senderSplitsItemsIntoBatches() throws Exception {
+    Map<String, String> responses =
+        ImmutableMap.of("a", "created-a", "b", "created-b", "c", "created-c");
+    GoogleBatch.Sender<String, String> sender =
+        GoogleBatch.sender(
+            MoreExecutors.newDirectExecutorService(), client, 2, this::recordOutcome);
+
+    sender.add(ImmutableList.of("a", "b", "c"), item -> request(responses, item));
+    sender.recordAll();
+
+    verify(client, times(2)).batch();
+    assertThat(recorded).containsExactly("a=created-a", "b=created-b", "c=created-c").inOrder();
+  }
+
+  @Test
+  public void senderWithBatchSizeOfOneSendsEachItemOnItsOwn() throws Exception {
+    GoogleBatch.Sender<String, String> sender =
+        GoogleBatch.sender(
+            MoreExecutors.newDirectExecutorService(), client, 1, this::recordOutcome);
+
+    sender.add(
+        ImmutableList.of("a", "b"),
+        item -> {
+          AbstractGoogleJsonClientRequest<String> request = newRequest();
+          if (item.equals("a")) {
+            when(request.execute()).thenReturn("created-a");
+          } else {
+            when(request.execute()).thenThrow(new IOException("Not found: b"));
+          }
+          return request;
+        });
+    sender.recordAll();
+
+    verify(client, never()).batch();
+    assertThat(recorded).containsExactly("a=created-a", "b!Not found: b").inOrder();
+  }
+
+  @Test
+  public void senderRecordsSentBatchesOnFailure() {
+    Map<String, String> responses = ImmutableMap.of("a", "created-a");
+    GoogleBatch.Sender<String, String> sender =
+        GoogleBatch.sender(
+            MoreExecutors.newDirectExecutorService(), client, 2, this::recordOutcome);
+    sender.add(ImmutableList.of("a"), item -> request(responses, item));
+    RuntimeException failure = new IllegalStateException("Can't convert b");
+
+    assertThat(sender.recordAllOnFailure(failure)).isSameAs(failure);
+    assertThat(recorded).containsExactly("a=created-a");
+  }
+
+  @Test
+  public void senderRecordsOldestBatchesFirst() throws Exception {
+    Map<String, String> responses = ImmutableMap.of("a", "created-a", "b", "created-b");
+    GoogleBatch.Sender<String, String> sender =
+        GoogleBatch.sender(
+            MoreExecutors.newDirectExecutorService(), client, 2, this::recordOutcome);
+    sender.add(ImmutableList.of("a"), item -> request(responses, item));
+    queuedCallbacks.clear();
+    sender.add(ImmutableList.of("b"), item -> request(responses, item));
+
+    sender.recordUntil(1);
+
+    assertThat(recorded).containsExactly("a=created-a");
+  }
+
+  @Test
+  public void checkBatchSizeRejectsSizesOutOfRange() {
+    assertThat(GoogleBatch.checkBatchSize(50, 50)).isEqualTo(50);
+    for (int batchSize : new int[] {0, 51}) {
+      try {
+        GoogleBatch.checkBatchSize(batchSize, 50);
+        fail("Expected batch size " + batchSize + " to be rejected");
+      } catch (IllegalArgumentException expected) {
+      }
+    }
+  }
+
+  @Test
+  public void pendingByContainerSkipsImportedItemsAndFailedContainers() throws Exception {
+    FakeIdempotentImportExecutor executor = new FakeIdempotentImportExecutor();
+    executor.executeAndSwallowIOExceptions("list1", "List 1", () -> "new-list1");
+    executor.executeAndSwallowIOExceptions("list2", "List 2", () -> "new-list2");
+    executor.executeAndSwallowIOExceptions("list1/done", "Done", () -> "new-done");
+
+    Map<String, List<String>> pending =
+        GoogleBatch.pendingByContainer(
+            executor,
+            ImmutableList.of(
+                "list1/done", "list2/a", "list1/b", "list3/c", "list2/a", "list1/d"),
+            item -> item.substring(0, item.indexOf('/')),
+            item -> item);
+
+    assertThat(pending.keySet()).containsExactly("list2", "list1").inOrder();
+    assertThat(pending.get("list1")).containsExactly("list1/b", "list1/d").inOrder();
+    assertThat(pending.get("list2")).containsExactly("list2/a");
+  }
+
+  private void recordOutcome(String item, GoogleBatch.Outcome<String> outcome) {
+    try {
+      recorded.add(item + "=" + outcome.get());
+    } catch (IOException e) {
+      recorded.add(item + "!" + e.getMessage());
+    }
+  }
+
+  /**
+   * Returns a request for {@code item} that succeeds with its entry in {@code responses}, or fails
+   * if it has none, when the batch is executed.
+   */
+  private AbstractGoogleJsonClientRequest<String> request(
+      Map<String, String> responses, String item) throws IOException {
+    AbstractGoogleJsonClientRequest<String> request = newRequest();
+    doAnswer(
+            invocation -> {
+              JsonBatchCallback<String> callback = invocation.getArgument(1);
+              queuedCallbacks.add(
+                  () -> {
+                    try {
+                      if (responses.containsKey(item)) {
+                        callback.onSuccess(responses.get(item), new HttpHeaders());
+                      } else {
+                        callback.onFailure(
+                            new GoogleJsonError().setMessage("Not found: " + item),
+                            new HttpHeaders());
+                      }
+                    } catch (IOException e) {
+                      throw new IllegalStateException(e);
+                    }
+                  });
+              return null;
+            })
+        .when(request)
+        .queue(eq(batchRequest), any());
+    return request;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static AbstractGoogleJsonClientRequest<String> newRequest() {
+    return mock(AbstractGoogleJsonClientRequest.class);
+  }
+}
@@ -16,14 +16,21 @@
 
 package org.datatransferproject.datatransfer.google.contacts;
 
+import com.google.api.client.googleapis.batch.BatchRequest;
+import com.google.api.client.googleapis.batch.json.JsonBatchCallback;
+import com.google.api.client.http.HttpHeaders;
 import com.google.api.services.people.v1.PeopleService;
 import com.google.api.services.people.v1.PeopleService.People;
 import com.google.api.services.people.v1.PeopleService.People.CreateContact;
 import com.google.api.services.people.v1.model.Person;
+import com.google.common.util.concurrent.MoreExecutors;
+import ezvcard.Ezvcard;
 import ezvcard.VCard;
 import ezvcard.property.StructuredName;
 import org.datatransferproject.spi.transfer.idempotentexecutor.IdempotentImportExecutor;
+import org.datatransferproject.spi.transfer.provider.ImportResult;
 import org.datatransferproject.test.types.FakeIdempotentImportExecutor;
+import org.datatransferproject.types.common.models.contacts.ContactsListModelWrapper;
 import org.datatransferproject.types.common.models.contacts.ContactsModelWrapper;
 import org.junit.Before;
 import org.junit.Test;
@@ -32,11 +39,16 @@ import java.io.IOException;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.datatransferproject.datatransfer.google.common.GoogleStaticObjects.CONTACT_SOURCE_TYPE;
 import static org.datatransferproject.datatransfer.google.common.GoogleStaticObjects.SOURCE_PARAM_NAME_TYPE;
+import static com.google.common.truth.Truth.assertThat;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -90,4 +102,123 @@ public class GoogleContactsImporterTest {
     verify(people, times(numberOfVCards)).createContact(any(Person.class));
     verify(createContact, times(numberOfVCards)).execute();
   }
+
+  @Test
+  public void importSkipsRepeatedAndAlreadyImportedContacts() throws Exception {
+    List<VCard> vCardList = new LinkedList<>();
+    for (int i = 0; i < 3; i++) {
+      StructuredName structuredName = new StructuredName();
+      structuredName.setFamily("Family" + i);
+      VCard vCard = new VCard();
+      vCard.setStructuredName(structuredName);
+      vCard.setFormattedName("First " + structuredName.getFamily());
+      vCardList.add(vCard);
+    }
+    // The last contact appears twice on the page
+    vCardList.add(vCardList.get(2));
+    ContactsModelWrapper wrapper =
+        new ContactsModelWrapper(GoogleContactsExporter.makeVCardString(vCardList));
+
+    UUID jobId = UUID.randomUUID();
+    contactsService.importItem(jobId, executor, null, wrapper);
+    // A retried page finds every contact already imported
+    contactsService.importItem(jobId, executor, null, wrapper);
+
+    verify(people, times(3)).createContact(any(Person.class));
+  }
+
+  @Test
+  public void importListOfCards() throws Exception {
+    List<String> cards = new LinkedList<>();
+    for (int i = 0; i < 2; i++) {
+      StructuredName structuredName = new StructuredName();
+      structuredName.setFamily("Family" + i);
+      VCard vCard = new VCard();
+      vCard.setStructuredName(structuredName);
+      vCard.setFormattedName("First " + structuredName.getFamily());
+      cards.add(Ezvcard.writeJson(vCard).go());
+    }
+
+    contactsService.importItem(
+        UUID.randomUUID(), executor, null, new ContactsListModelWrapper(cards));
+
+    verify(people, times(2)).createContact(any(Person.class));
+  }
+
+  @Test
+  public void importContactsInBatches() throws Exception {
+    // Three batches, the last one partial
+    int numberOfVCards = 120;
+    String vCardString = GoogleContactsExporter.makeVCardString(makeVCards(numberOfVCards));
+    ContactsModelWrapper wrapper = new ContactsModelWrapper(vCardString);
+    BatchRequest batchRequest = setUpBatchImporter();
+
+    UUID jobId = UUID.randomUUID();
+    contactsService.importItem(jobId, executor, null, wrapper);
+    // Every contact of every batch was recorded, so a retried page creates nothing
+    contactsService.importItem(jobId, executor, null, wrapper);
+
+    verify(batchRequest, times(3)).execute();
+    verify(people, times(numberOfVCards)).createContact(any(Person.class));
+    verify(createContact, never()).execute();
+  }
+
+  @Test
+  public void importRecordsSentBatchesWhenCardCannotBeRead() throws Exception {
+    // One full batch and a partial one are read before a card that ends mid-value
+    List<VCard> vCards = makeVCards(60);
+    String readable = GoogleContactsExporter.makeVCardString(vCards);
+    ContactsModelWrapper wrapper =
+        new ContactsModelWrapper(readable + "[\"vcard\",[[\"fn\",{},\"text\",\"Trunc");
+    BatchRequest batchRequest = setUpBatchImporter();
+
+    UUID jobId = UUID.randomUUID();
+    ImportResult result = contactsService.importItem(jobId, executor, null, wrapper);
+    contactsService.importItem(jobId, executor, null, new ContactsModelWrapper(readable));
+
+    assertThat(result.getThrowable().isPresent()).isTrue();
+    verify(batchRequest, times(2)).execute();
+    // The readable contacts were all created and recorded by the failed page
+    verify(people, times(60)).createContact(any(Person.class));
+  }
+
+  /**
+   * Replaces the importer with one that creates contacts in batches of {@link
+   * GoogleContactsImporter#MAX_BATCH_SIZE} / 2, each contact succeeding.
+   */
+  private BatchRequest setUpBatchImporter() throws IOException {
+    BatchRequest batchRequest = mock(BatchRequest.class);
+    when(peopleService.batch()).thenReturn(batchRequest);
+    AtomicInteger created = new AtomicInteger();
+    doAnswer(
+            invocation -> {
+              JsonBatchCallback<Person> callback = invocation.getArgument(1);
+              callback.onSuccess(
+                  new Person().setResourceName("people/c" + created.incrementAndGet()),
+                  new HttpHeaders());
+              return null;
+            })
+        .when(createContact)
+        .queue(eq(batchRequest), any());
+    contactsService =
+        new GoogleContactsImporter(
+            null,
+            peopleService,
+            GoogleContactsImporter.MAX_BATCH_SIZE / 2,
+            MoreExecutors.newDirectExecutorService());
+    return batchRequest;
+  }
+
+  private static List<VCard> makeVCards(int count) {
+    List<VCard> vCardList = new LinkedList<>();
+    for (int i = 0; i < count; i++) {
+      StructuredName structuredName = new StructuredName();
+      structuredName.setFamily("Family" + i);
+      VCard vCard = new VCard();
+      vCard.setStructuredName(structuredName);
+      vCard.setFormattedName("First " + structuredName.getFamily());
+      vCardList.add(vCard);
+    }
+    return vCardList;
+  }
 }
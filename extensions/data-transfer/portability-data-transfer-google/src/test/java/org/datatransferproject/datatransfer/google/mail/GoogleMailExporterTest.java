@@ -17,13 +17,21 @@
 package org.datatransferproject.datatransfer.google.mail;
 
 import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
+import com.google.api.client.googleapis.batch.BatchRequest;
+import com.google.api.client.googleapis.batch.json.JsonBatchCallback;
+import com.google.api.client.googleapis.json.GoogleJsonError;
+import com.google.api.client.http.HttpHeaders;
 import com.google.api.services.gmail.Gmail;
 import com.google.api.services.gmail.Gmail.Users;
 import com.google.api.services.gmail.Gmail.Users.Messages;
@@ -31,14 +39,19 @@ import com.google.api.services.gmail.Gmail.Users.Messages.Get;
 import com.google.api.services.gmail.model.ListMessagesResponse;
 import com.google.api.services.gmail.model.Message;
 import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.MoreExecutors;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 import java.util.stream.Collectors;
+import org.datatransferproject.api.launcher.Monitor;
 import org.datatransferproject.datatransfer.google.common.GoogleCredentialFactory;
+import org.datatransferproject.datatransfer.google.common.GoogleStaticObjects;
 import org.datatransferproject.spi.transfer.provider.ExportResult;
 import org.datatransferproject.spi.transfer.types.ContinuationData;
 import org.datatransferproject.types.common.ExportInformation;
@@ -79,6 +92,8 @@ public class GoogleMailExporterTest {
   @Mock
   private Gmail gmail;
   @Mock
+  private BatchRequest batchRequest;
+  @Mock
   private GoogleCredentialFactory googleCredentialFactory;
 
   private ListMessagesResponse messageListResponse;
@@ -87,7 +102,14 @@ public class GoogleMailExporterTest {
 
   @Before
   public void setup() throws IOException {
-    googleMailExporter = new GoogleMailExporter(googleCredentialFactory, gmail);
+    googleMailExporter =
+        new GoogleMailExporter(
+            googleCredentialFactory,
+            gmail,
+            (int) GoogleMailExporter.PAGE_SIZE,
+            false,
+            null,
+            new Monitor() {});
 
     when(gmail.users()).thenReturn(users);
     when(users.messages()).thenReturn(messages);
@@ -163,6 +185,141 @@ public class GoogleMailExporterTest {
     assertThat(paginationToken).isNull();
   }
 
+  @Test
+  public void exportMessagesUsesPrefetchedPage() throws IOException {
+    setUpSingleMessageResponse();
+    messageListResponse.setNextPageToken(NEXT_TOKEN);
+    googleMailExporter =
+        new GoogleMailExporter(
+            googleCredentialFactory,
+            gmail,
+            (int) GoogleMailExporter.PAGE_SIZE,
+            false,
+            MoreExecutors.newDirectExecutorService(),
+            new Monitor() {});
+
+    // The first page lists itself and prefetches the second
+    googleMailExporter.export(JOB_ID, null, Optional.empty());
+    verify(messageListRequest).setPageToken(NEXT_TOKEN);
+    verify(messageListRequest, times(2)).execute();
+
+    // The second page is served from the prefetched list
+    ExportInformation exportInformation =
+        new ExportInformation(new StringPaginationToken(NEXT_TOKEN), null);
+    ExportResult<MailContainerResource> result =
+        googleMailExporter.export(JOB_ID, null, Optional.of(exportInformation));
+
+    // Only the prefetch of the following page goes back to the list endpoint
+    verify(messageListRequest, times(3)).execute();
+    assertThat(result.getExportedData().getMessages()).hasSize(1);
+  }
+
+  @Test
+  public void exportMessagesIgnoresPrefetchForOtherPage() throws IOException {
+    setUpSingleMessageResponse();
+    messageListResponse.setNextPageToken(NEXT_TOKEN);
+    googleMailExporter =
+        new GoogleMailExporter(
+            googleCredentialFactory,
+            gmail,
+            (int) GoogleMailExporter.PAGE_SIZE,
+            false,
+            MoreExecutors.newDirectExecutorService(),
+            new Monitor() {});
+
+    googleMailExporter.export(JOB_ID, null, Optional.empty());
+    verify(messageListRequest, times(2)).execute();
+
+    // Retrying the first page must not be answered with the second page's list
+    googleMailExporter.export(JOB_ID, null, Optional.empty());
+    verify(messageListRequest, times(4)).execute();
+  }
+
+  @Test
+  public void exportMessagesInBatches() throws IOException {
+    // One full batch and one partial batch
+    int messageCount = GoogleStaticObjects.GMAIL_MAX_BATCH_SIZE + 10;
+    List<Message> fullMessages = setUpBatchResponse(messageCount);
+    Iterator<Message> fetched = fullMessages.iterator();
+    doAnswer(
+            invocation -> {
+              JsonBatchCallback<Message> callback = invocation.getArgument(1);
+              callback.onSuccess(fetched.next(), new HttpHeaders());
+              return null;
+            })
+        .when(get)
+        .queue(eq(batchRequest), any());
+
+    ExportResult<MailContainerResource> result =
+        newBatchExporter().export(JOB_ID, null, Optional.empty());
+
+    verify(batchRequest, times(2)).execute();
+    verify(get, never()).execute();
+    // Messages keep the order in which they were listed
+    assertThat(
+            result.getExportedData().getMessages().stream()
+                .map(MailMessageModel::getRawString)
+                .collect(Collectors.toList()))
+        .containsExactlyElementsIn(
+            fullMessages.stream().map(Message::getRaw).collect(Collectors.toList()))
+        .inOrder();
+  }
+
+  @Test
+  public void exportMessagesInBatchesFailsPageOnFailedMessage() throws IOException {
+    List<Message> fullMessages = setUpBatchResponse(3);
+    Iterator<Message> fetched = fullMessages.iterator();
+    doAnswer(
+            invocation -> {
+              JsonBatchCallback<Message> callback = invocation.getArgument(1);
+              Message message = fetched.next();
+              if (message == fullMessages.get(1)) {
+                callback.onFailure(
+                    new GoogleJsonError().setMessage("Rate limit exceeded"), new HttpHeaders());
+              } else {
+                callback.onSuccess(message, new HttpHeaders());
+              }
+              return null;
+            })
+        .when(get)
+        .queue(eq(batchRequest), any());
+
+    ExportResult<MailContainerResource> result =
+        newBatchExporter().export(JOB_ID, null, Optional.empty());
+
+    assertThat(result.getThrowable().isPresent()).isTrue();
+    assertThat(result.getThrowable().get()).isInstanceOf(IOException.class);
+    assertThat(result.getThrowable().get().getMessage()).contains("Rate limit exceeded");
+  }
+
+  private GoogleMailExporter newBatchExporter() {
+    return new GoogleMailExporter(
+        googleCredentialFactory,
+        gmail,
+        (int) GoogleMailExporter.MAX_PAGE_SIZE,
+        true,
+        null,
+        new Monitor() {});
+  }
+
+  /**
+   * Sets up a list response of {@code count} messages fetched through {@link #batchRequest},
+   * returning their full forms in list order
+   */
+  private List<Message> setUpBatchResponse(int count) throws IOException {
+    List<Message> listed = new ArrayList<>(count);
+    List<Message> full = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      listed.add(new Message().setId(MESSAGE_ID + i));
+      full.add(
+          new Message().setId(MESSAGE_ID + i).setRaw(MESSAGE_RAW + i).setLabelIds(MESSAGE_LABELS));
+    }
+    messageListResponse = new ListMessagesResponse().setMessages(listed);
+    when(messageListRequest.execute()).thenReturn(messageListResponse);
+    when(gmail.batch()).thenReturn(batchRequest);
+    return full;
+  }
+
   /**
    * Sets up a response with a single message
    */
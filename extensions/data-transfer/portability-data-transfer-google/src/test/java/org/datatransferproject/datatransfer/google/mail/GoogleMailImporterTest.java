@@ -16,6 +16,10 @@
 
 package org.datatransferproject.datatransfer.google.mail;
 
+import com.google.api.client.googleapis.batch.BatchRequest;
+import com.google.api.client.googleapis.batch.json.JsonBatchCallback;
+import com.google.api.client.googleapis.json.GoogleJsonError;
+import com.google.api.client.http.HttpHeaders;
 import com.google.api.services.gmail.Gmail;
 import com.google.api.services.gmail.Gmail.Users;
 import com.google.api.services.gmail.Gmail.Users.Labels;
@@ -25,8 +29,10 @@ import com.google.api.services.gmail.model.Label;
 import com.google.api.services.gmail.model.ListLabelsResponse;
 import com.google.api.services.gmail.model.Message;
 import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.MoreExecutors;
 import org.datatransferproject.api.launcher.Monitor;
 import org.datatransferproject.datatransfer.google.common.GoogleCredentialFactory;
+import org.datatransferproject.datatransfer.google.common.GoogleStaticObjects;
 import org.datatransferproject.spi.transfer.idempotentexecutor.IdempotentImportExecutor;
 import org.datatransferproject.spi.transfer.provider.ImportResult;
 import org.datatransferproject.test.types.FakeIdempotentImportExecutor;
@@ -40,6 +46,7 @@ import org.mockito.Mock;
 
 import java.io.IOException;
 import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.List;
 import java.util.UUID;
 import org.mockito.junit.MockitoJUnitRunner;
@@ -49,6 +56,9 @@ import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
@@ -69,6 +79,7 @@ public class GoogleMailImporterTest {
   @Mock private Users users;
   @Mock private Messages messages;
   @Mock private Insert insert;
+  @Mock private BatchRequest batchRequest;
   @Mock private Labels labels;
   @Mock private Labels.List labelsList;
   @Mock private Labels.Create labelsCreate;
@@ -92,7 +103,7 @@ public class GoogleMailImporterTest {
     when(gmail.users()).thenReturn(users);
     when(users.messages()).thenReturn(messages);
     when(messages.insert(anyString(), any(Message.class))).thenReturn(insert);
-    when(insert.execute()).thenReturn(new Message().setId("fooBar"));
+    lenient().when(insert.execute()).thenReturn(new Message().setId("fooBar"));
     when(users.labels()).thenReturn(labels);
     when(labels.list(anyString())).thenReturn(labelsList);
     when(labelsList.execute()).thenReturn(labelsListResponse);
@@ -117,4 +128,90 @@ public class GoogleMailImporterTest {
     assertThat(messageArgumentCaptor.getValue().getRaw()).isEqualTo(MESSAGE_RAW);
     // TODO(olsona): test labels
   }
+
+  @Test
+  public void importMessagesListsLabelsOncePerJob() throws Exception {
+    MailContainerResource resource =
+        new MailContainerResource(null, Collections.singletonList(MESSAGE_MODEL));
+    MailContainerResource nextResource =
+        new MailContainerResource(
+            null,
+            Collections.singletonList(new MailMessageModel("other content", MESSAGE_LABELS)));
+
+    googleMailImporter.importItem(JOB_ID, executor, null, resource);
+    googleMailImporter.importItem(JOB_ID, executor, null, nextResource);
+
+    verify(labelsList, times(1)).execute();
+    verify(messages, times(2)).insert(eq(GoogleMailImporter.USER), any(Message.class));
+  }
+
+  @Test
+  public void importMessageSkipsAlreadyImportedMessage() throws Exception {
+    MailContainerResource resource =
+        new MailContainerResource(null, Collections.singletonList(MESSAGE_MODEL));
+
+    googleMailImporter.importItem(JOB_ID, executor, null, resource);
+    googleMailImporter.importItem(JOB_ID, executor, null, resource);
+
+    verify(messages, times(1)).insert(eq(GoogleMailImporter.USER), any(Message.class));
+  }
+
+  @Test
+  public void importMessagesOfSameSizeSeparately() throws Exception {
+    // Same length and same labels, but different content
+    MailContainerResource resource =
+        new MailContainerResource(
+            null,
+            ImmutableList.of(
+                new MailMessageModel("message one", MESSAGE_LABELS),
+                new MailMessageModel("message two", MESSAGE_LABELS)));
+
+    googleMailImporter.importItem(JOB_ID, executor, null, resource);
+
+    verify(messages, times(2)).insert(eq(GoogleMailImporter.USER), any(Message.class));
+  }
+
+  @Test
+  public void importMessagesInBatchRetriesOnlyFailedMessage() throws Exception {
+    googleMailImporter =
+        new GoogleMailImporter(
+            googleCredentialFactory,
+            gmail,
+            GoogleStaticObjects.GMAIL_MAX_BATCH_SIZE,
+            MoreExecutors.newDirectExecutorService(),
+            new Monitor() {});
+    when(gmail.batch()).thenReturn(batchRequest);
+    // The second message queued on the first attempt is rejected
+    AtomicInteger queued = new AtomicInteger();
+    doAnswer(
+            invocation -> {
+              JsonBatchCallback<Message> callback = invocation.getArgument(1);
+              if (queued.incrementAndGet() == 2) {
+                callback.onFailure(
+                    new GoogleJsonError().setMessage("Rate limit exceeded"), new HttpHeaders());
+              } else {
+                callback.onSuccess(
+                    new Message().setId("message" + queued.get()), new HttpHeaders());
+              }
+              return null;
+            })
+        .when(insert)
+        .queue(eq(batchRequest), any());
+    MailContainerResource resource =
+        new MailContainerResource(
+            null,
+            ImmutableList.of(
+                new MailMessageModel("message one", MESSAGE_LABELS),
+                new MailMessageModel("message two", MESSAGE_LABELS),
+                new MailMessageModel("message six", MESSAGE_LABELS)));
+
+    googleMailImporter.importItem(JOB_ID, executor, null, resource);
+    googleMailImporter.importItem(JOB_ID, executor, null, resource);
+
+    // All three messages in one batch, then the failed message again on its own
+    verify(batchRequest, times(2)).execute();
+    ArgumentCaptor<Message> inserted = ArgumentCaptor.forClass(Message.class);
+    verify(messages, times(4)).insert(eq(GoogleMailImporter.USER), inserted.capture());
+    assertThat(inserted.getAllValues().get(3).getRaw()).isEqualTo("message two");
+  }
 }
@@ -17,18 +17,21 @@ package org.datatransferproject.datatransfer.google.photos;
 
 import static com.google.common.truth.Truth.assertThat;
 import static org.datatransferproject.datatransfer.google.photos.GooglePhotosExporter.ALBUM_TOKEN_PREFIX;
+import static org.datatransferproject.datatransfer.google.photos.GooglePhotosExporter.CONTAINED_MEDIA_INDEX_KEY;
 import static org.datatransferproject.datatransfer.google.photos.GooglePhotosExporter.PHOTO_TOKEN_PREFIX;
 import static org.junit.Assert.assertNull;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.api.client.json.jackson2.JacksonFactory;
+import com.google.common.util.concurrent.MoreExecutors;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Collection;
@@ -47,10 +50,10 @@ import org.datatransferproject.datatransfer.google.mediaModels.Photo;
 import org.datatransferproject.spi.cloud.storage.TemporaryPerJobDataStore;
 import org.datatransferproject.spi.cloud.storage.TemporaryPerJobDataStore.InputStreamWrapper;
 import org.datatransferproject.spi.transfer.provider.ExportResult;
+import org.datatransferproject.spi.transfer.types.ContainedIdIndex;
 import org.datatransferproject.spi.transfer.types.ContinuationData;
 import org.datatransferproject.spi.transfer.types.InvalidTokenException;
 import org.datatransferproject.spi.transfer.types.PermissionDeniedException;
-import org.datatransferproject.spi.transfer.types.TempPhotosData;
 import org.datatransferproject.types.common.PaginationData;
 import org.datatransferproject.types.common.StringPaginationToken;
 import org.datatransferproject.types.common.models.ContainerResource;
@@ -256,10 +259,12 @@ public class GooglePhotosExporterTest {
     // Check contents of job store
     ArgumentCaptor<InputStream> inputStreamArgumentCaptor =
         ArgumentCaptor.forClass(InputStream.class);
-    verify(jobStore).create(eq(uuid), eq("tempPhotosData"), inputStreamArgumentCaptor.capture());
-    TempPhotosData tempPhotosData =
-        new ObjectMapper().readValue(inputStreamArgumentCaptor.getValue(), TempPhotosData.class);
-    assertThat(tempPhotosData.lookupContainedPhotoIds()).containsExactly(PHOTO_ID, secondId);
+    verify(jobStore)
+        .create(eq(uuid), eq(CONTAINED_MEDIA_INDEX_KEY), inputStreamArgumentCaptor.capture());
+    ContainedIdIndex index = ContainedIdIndex.readFrom(inputStreamArgumentCaptor.getValue());
+    assertThat(index.size()).isEqualTo(2);
+    assertThat(index.contains(PHOTO_ID)).isTrue();
+    assertThat(index.contains(secondId)).isTrue();
   }
 
   @Test
@@ -283,10 +288,9 @@ public class GooglePhotosExporterTest {
         .thenReturn(new GoogleMediaItem[] {containedPhoto, albumlessPhoto});
     when(mediaItemSearchResponse.getNextPageToken()).thenReturn(null);
 
-    TempPhotosData tempPhotosData = new TempPhotosData(uuid);
-    tempPhotosData.addContainedPhotoId(containedPhotoId);
-    InputStream stream = GooglePhotosExporter.convertJsonToInputStream(tempPhotosData);
-    when(jobStore.getStream(uuid, "tempPhotosData")).thenReturn(new InputStreamWrapper(stream));
+    InputStream stream = ContainedIdIndex.builder().add(containedPhotoId).build().toInputStream();
+    when(jobStore.getStream(uuid, CONTAINED_MEDIA_INDEX_KEY))
+        .thenReturn(new InputStreamWrapper(stream));
 
     // Run test
     ExportResult<PhotosContainerResource> result =
@@ -300,6 +304,124 @@ public class GooglePhotosExporterTest {
         .containsExactly(albumlessPhotoUri + "=d"); // download
   }
 
+  @Test
+  public void containedMediaIndexReadOncePerJob()
+      throws IOException, InvalidTokenException, PermissionDeniedException {
+    String containedPhotoId = "contained photo id";
+    GoogleMediaItem containedPhoto = setUpSinglePhoto("contained photo uri", containedPhotoId);
+    GoogleMediaItem albumlessPhoto = setUpSinglePhoto("albumless photo uri", "albumless photo id");
+    MediaItemSearchResponse mediaItemSearchResponse = mock(MediaItemSearchResponse.class);
+
+    when(photosInterface.listMediaItems(eq(Optional.empty()), any(Optional.class)))
+        .thenReturn(mediaItemSearchResponse);
+    when(mediaItemSearchResponse.getMediaItems())
+        .thenReturn(new GoogleMediaItem[] {containedPhoto, albumlessPhoto});
+    when(mediaItemSearchResponse.getNextPageToken()).thenReturn(PHOTO_TOKEN);
+
+    InputStream stream = ContainedIdIndex.builder().add(containedPhotoId).build().toInputStream();
+    when(jobStore.getStream(uuid, CONTAINED_MEDIA_INDEX_KEY))
+        .thenReturn(new InputStreamWrapper(stream));
+
+    // Run test - export two pages of albumless photos
+    googlePhotosExporter.exportPhotos(null, Optional.empty(), Optional.empty(), uuid);
+    ExportResult<PhotosContainerResource> result =
+        googlePhotosExporter.exportPhotos(
+            null,
+            Optional.empty(),
+            Optional.of(new StringPaginationToken(PHOTO_TOKEN_PREFIX + PHOTO_TOKEN)),
+            uuid);
+
+    // Check results - the second page still skips contained photos without re-reading the index
+    assertThat(result.getExportedData().getPhotos()).hasSize(1);
+    verify(jobStore, times(1)).getStream(uuid, CONTAINED_MEDIA_INDEX_KEY);
+  }
+
+  @Test
+  public void backgroundScanIndexesContainedMedia()
+      throws IOException, InvalidTokenException, PermissionDeniedException {
+    GooglePhotosExporter scanningExporter =
+        new GooglePhotosExporter(
+            mock(GoogleCredentialFactory.class),
+            jobStore,
+            new JacksonFactory(),
+            photosInterface,
+            2,
+            MoreExecutors.newDirectExecutorService(),
+            mock(Monitor.class));
+
+    // Set up an album containing one photo, and a page of albumless photos including that one
+    setUpSingleAlbum();
+    when(albumListResponse.getNextPageToken()).thenReturn(null);
+    GoogleMediaItem containedPhoto = setUpSinglePhoto(IMG_URI, PHOTO_ID);
+    String albumlessPhotoUri = "albumless photo uri";
+    GoogleMediaItem albumlessPhoto = setUpSinglePhoto(albumlessPhotoUri, "albumless photo id");
+
+    MediaItemSearchResponse albumMediaResponse = mock(MediaItemSearchResponse.class);
+    when(photosInterface.listMediaItems(eq(Optional.of(ALBUM_ID)), any(Optional.class)))
+        .thenReturn(albumMediaResponse);
+    when(albumMediaResponse.getMediaItems()).thenReturn(new GoogleMediaItem[] {containedPhoto});
+    when(albumMediaResponse.getNextPageToken()).thenReturn(null);
+
+    MediaItemSearchResponse albumlessMediaResponse = mock(MediaItemSearchResponse.class);
+    when(photosInterface.listMediaItems(eq(Optional.empty()), any(Optional.class)))
+        .thenReturn(albumlessMediaResponse);
+    when(albumlessMediaResponse.getMediaItems())
+        .thenReturn(new GoogleMediaItem[] {containedPhoto, albumlessPhoto});
+    when(albumlessMediaResponse.getNextPageToken()).thenReturn(null);
+
+    // Run test
+    scanningExporter.export(uuid, null, Optional.empty());
+    ExportResult<PhotosContainerResource> result =
+        scanningExporter.exportPhotos(null, Optional.empty(), Optional.empty(), uuid);
+
+    // Check results - the index is stored for other workers, and used here without reading it
+    verify(jobStore).create(eq(uuid), eq(CONTAINED_MEDIA_INDEX_KEY), any(InputStream.class));
+    verify(jobStore, never()).getStream(any(), anyString());
+    assertThat(
+            result.getExportedData().getPhotos().stream()
+                .map(PhotoModel::getFetchableUrl)
+                .collect(Collectors.toList()))
+        .containsExactly(albumlessPhotoUri + "=d");
+  }
+
+  @Test
+  public void scansAlbumsWhenNoIndexWasStored()
+      throws IOException, InvalidTokenException, PermissionDeniedException {
+    // Set up an album containing one photo, and a page of albumless photos including that one,
+    // with no index in the job store, as when the worker scanning the albums stopped
+    setUpSingleAlbum();
+    when(albumListResponse.getNextPageToken()).thenReturn(null);
+    GoogleMediaItem containedPhoto = setUpSinglePhoto(IMG_URI, PHOTO_ID);
+    String albumlessPhotoUri = "albumless photo uri";
+    GoogleMediaItem albumlessPhoto = setUpSinglePhoto(albumlessPhotoUri, "albumless photo id");
+
+    MediaItemSearchResponse albumMediaResponse = mock(MediaItemSearchResponse.class);
+    when(photosInterface.listMediaItems(eq(Optional.of(ALBUM_ID)), any(Optional.class)))
+        .thenReturn(albumMediaResponse);
+    when(albumMediaResponse.getMediaItems()).thenReturn(new GoogleMediaItem[] {containedPhoto});
+    when(albumMediaResponse.getNextPageToken()).thenReturn(null);
+
+    MediaItemSearchResponse albumlessMediaResponse = mock(MediaItemSearchResponse.class);
+    when(photosInterface.listMediaItems(eq(Optional.empty()), any(Optional.class)))
+        .thenReturn(albumlessMediaResponse);
+    when(albumlessMediaResponse.getMediaItems())
+        .thenReturn(new GoogleMediaItem[] {containedPhoto, albumlessPhoto});
+    when(albumlessMediaResponse.getNextPageToken()).thenReturn(null);
+
+    // Run test
+    ExportResult<PhotosContainerResource> result =
+        googlePhotosExporter.exportPhotos(null, Optional.empty(), Optional.empty(), uuid);
+
+    // Check results - the albums were scanned and the new index stored
+    verify(photosInterface).listMediaItems(Optional.of(ALBUM_ID), Optional.empty());
+    verify(jobStore).create(eq(uuid), eq(CONTAINED_MEDIA_INDEX_KEY), any(InputStream.class));
+    assertThat(
+            result.getExportedData().getPhotos().stream()
+                .map(PhotoModel::getFetchableUrl)
+                .collect(Collectors.toList()))
+        .containsExactly(albumlessPhotoUri + "=d");
+  }
+
   /** Sets up a response with a single album, containing a single photo */
   private void setUpSingleAlbum() {
     GoogleAlbum albumEntry = new GoogleAlbum();
@@ -16,6 +16,97 @@
 
 package org.datatransferproject.datatransfer.google.tasks;
 
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.api.services.tasks.Tasks;
+import com.google.api.services.tasks.model.Task;
+import com.google.api.services.tasks.model.TaskList;
+import com.google.api.services.tasks.model.TaskLists;
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.util.Optional;
+import java.util.UUID;
+import org.datatransferproject.api.launcher.Monitor;
+import org.datatransferproject.datatransfer.google.common.GoogleCredentialFactory;
+import org.datatransferproject.spi.transfer.provider.ExportResult;
+import org.datatransferproject.types.common.ExportInformation;
+import org.datatransferproject.types.common.models.IdOnlyContainerResource;
+import org.datatransferproject.types.common.models.tasks.TaskContainerResource;
+import org.junit.Before;
+import org.junit.Test;
+
 public class GoogleTasksExporterTest {
+  private static final UUID JOB_ID = UUID.randomUUID();
+  private static final String LIST_ID = "listId";
+
+  private GoogleCredentialFactory credentialFactory;
+  private Tasks tasksClient;
+  private Tasks.Tasklists.List taskListsRequest;
+  private Tasks.TasksOperations.List tasksRequest;
+
+  @Before
+  public void setUp() throws IOException {
+    credentialFactory = mock(GoogleCredentialFactory.class);
+    tasksClient = mock(Tasks.class);
+    Tasks.Tasklists tasklists = mock(Tasks.Tasklists.class);
+    Tasks.TasksOperations tasksOperations = mock(Tasks.TasksOperations.class);
+    taskListsRequest = mock(Tasks.Tasklists.List.class);
+    tasksRequest = mock(Tasks.TasksOperations.List.class);
+
+    when(tasksClient.tasklists()).thenReturn(tasklists);
+    when(tasklists.list()).thenReturn(taskListsRequest);
+    when(taskListsRequest.setMaxResults(anyLong())).thenReturn(taskListsRequest);
+    when(taskListsRequest.execute())
+        .thenReturn(
+            new TaskLists()
+                .setItems(ImmutableList.of(new TaskList().setId(LIST_ID).setTitle("list"))));
+
+    when(tasksClient.tasks()).thenReturn(tasksOperations);
+    when(tasksOperations.list(LIST_ID)).thenReturn(tasksRequest);
+    when(tasksRequest.setMaxResults(anyLong())).thenReturn(tasksRequest);
+    when(tasksRequest.execute())
+        .thenReturn(
+            new com.google.api.services.tasks.model.Tasks()
+                .setItems(ImmutableList.of(new Task().setTitle("task"))));
+  }
+
+  @Test
+  public void exportUsesDefaultPageSize() {
+    GoogleTasksExporter exporter =
+        new GoogleTasksExporter(credentialFactory, tasksClient, new Monitor() {});
+
+    exporter.export(JOB_ID, null, Optional.empty());
+
+    verify(taskListsRequest).setMaxResults((long) GoogleTasksExporter.DEFAULT_PAGE_SIZE);
+  }
+
+  @Test
+  public void exportUsesConfiguredPageSize() {
+    GoogleTasksExporter exporter =
+        new GoogleTasksExporter(
+            credentialFactory, tasksClient, GoogleTasksExporter.MAX_PAGE_SIZE, new Monitor() {});
+
+    ExportResult<TaskContainerResource> listsResult =
+        exporter.export(JOB_ID, null, Optional.empty());
+    ExportResult<TaskContainerResource> tasksResult =
+        exporter.export(
+            JOB_ID,
+            null,
+            Optional.of(new ExportInformation(null, new IdOnlyContainerResource(LIST_ID))));
+
+    verify(taskListsRequest).setMaxResults((long) GoogleTasksExporter.MAX_PAGE_SIZE);
+    verify(tasksRequest).setMaxResults((long) GoogleTasksExporter.MAX_PAGE_SIZE);
+    assertThat(listsResult.getExportedData().getLists()).hasSize(1);
+    assertThat(tasksResult.getExportedData().getTasks()).hasSize(1);
+  }
 
-}
\ No newline at end of file
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsPageSizeAboveApiLimit() {
+    new GoogleTasksExporter(
+        credentialFactory, GoogleTasksExporter.MAX_PAGE_SIZE + 1, new Monitor() {});
+  }
+}
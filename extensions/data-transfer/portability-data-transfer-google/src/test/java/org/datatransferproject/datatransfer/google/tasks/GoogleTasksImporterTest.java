@@ -0,0 +1,152 @@
+/*
+ * Copyright 2019 The Data Transfer Project Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.datatransferproject.datatransfer.google.tasks;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.api.client.googleapis.batch.BatchRequest;
+import com.google.api.client.googleapis.batch.json.JsonBatchCallback;
+import com.google.api.client.googleapis.json.GoogleJsonError;
+import com.google.api.client.http.HttpHeaders;
+import com.google.api.services.tasks.Tasks;
+import com.google.api.services.tasks.model.Task;
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.util.UUID;
+import org.datatransferproject.datatransfer.google.common.GoogleCredentialFactory;
+import org.datatransferproject.spi.transfer.idempotentexecutor.IdempotentImportExecutor;
+import org.datatransferproject.spi.transfer.provider.ImportResult;
+import org.datatransferproject.spi.transfer.provider.ImportResult.ResultType;
+import org.datatransferproject.test.types.FakeIdempotentImportExecutor;
+import org.datatransferproject.types.common.models.tasks.TaskContainerResource;
+import org.datatransferproject.types.common.models.tasks.TaskModel;
+import org.junit.Before;
+import org.junit.Test;
+
+public class GoogleTasksImporterTest {
+  private static final String LIST_ID = "listId";
+  private static final String NEW_LIST_ID = "newListId";
+  private static final UUID JOB_ID = UUID.randomUUID();
+
+  private Tasks tasksClient;
+  private Tasks.TasksOperations tasksOperations;
+  private BatchRequest batchRequest;
+  private IdempotentImportExecutor executor;
+  private GoogleTasksImporter importer;
+
+  @Before
+  public void setUp() throws IOException {
+    tasksClient = mock(Tasks.class);
+    tasksOperations = mock(Tasks.TasksOperations.class);
+    batchRequest = mock(BatchRequest.class);
+    executor = new FakeIdempotentImportExecutor();
+    importer = new GoogleTasksImporter(mock(GoogleCredentialFactory.class), tasksClient, 2);
+
+    when(tasksClient.tasks()).thenReturn(tasksOperations);
+    when(tasksClient.batch()).thenReturn(batchRequest);
+    // Each task is created with an id derived from its title, except "fails" which is rejected
+    when(tasksOperations.insert(eq(NEW_LIST_ID), any(Task.class)))
+        .thenAnswer(invocation -> insertRequest(invocation.getArgument(1)));
+
+    // The task list was created by an earlier page
+    executor.executeAndSwallowIOExceptions(LIST_ID, "list", () -> NEW_LIST_ID);
+  }
+
+  @Test
+  public void importTasksInBatches() throws Exception {
+    // The first task was imported by an earlier attempt
+    executor.executeAndSwallowIOExceptions(LIST_ID + "task0", "task0", () -> "created-task0");
+
+    ImportResult result =
+        importer.importItem(
+            JOB_ID,
+            executor,
+            null,
+            new TaskContainerResource(
+                null,
+                ImmutableList.of(task("task0"), task("task1"), task("task2"), task("task3"))));
+
+    assertThat(result.getType()).isEqualTo(ResultType.OK);
+    // Three remaining tasks in batches of two
+    verify(batchRequest, times(2)).execute();
+    verify(tasksOperations, times(3)).insert(eq(NEW_LIST_ID), any(Task.class));
+    assertThat((String) executor.getCachedValue(LIST_ID + "task1")).isEqualTo("created-task1");
+    assertThat((String) executor.getCachedValue(LIST_ID + "task2")).isEqualTo("created-task2");
+    assertThat((String) executor.getCachedValue(LIST_ID + "task3")).isEqualTo("created-task3");
+  }
+
+  @Test
+  public void failedTaskDoesNotFailItsBatch() throws Exception {
+    ImportResult result =
+        importer.importItem(
+            JOB_ID,
+            executor,
+            null,
+            new TaskContainerResource(null, ImmutableList.of(task("fails"), task("task1"))));
+
+    assertThat(result.getType()).isEqualTo(ResultType.OK);
+    verify(batchRequest).execute();
+    assertThat(executor.isKeyCached(LIST_ID + "fails")).isFalse();
+    assertThat((String) executor.getCachedValue(LIST_ID + "task1")).isEqualTo("created-task1");
+  }
+
+  @Test
+  public void skipsTasksOfListThatWasNotCreated() throws Exception {
+    ImportResult result =
+        importer.importItem(
+            JOB_ID,
+            executor,
+            null,
+            new TaskContainerResource(
+                ImmutableList.of(),
+                ImmutableList.of(new TaskModel("otherList", "task1", null, null, null))));
+
+    assertThat(result.getType()).isEqualTo(ResultType.OK);
+    verify(batchRequest, never()).execute();
+    assertThat(executor.isKeyCached("otherList" + "task1")).isFalse();
+  }
+
+  private static TaskModel task(String title) {
+    return new TaskModel(LIST_ID, title, null, null, null);
+  }
+
+  private Tasks.TasksOperations.Insert insertRequest(Task task) throws IOException {
+    Tasks.TasksOperations.Insert insert = mock(Tasks.TasksOperations.Insert.class);
+    doAnswer(
+            invocation -> {
+              JsonBatchCallback<Task> callback = invocation.getArgument(1);
+              if (task.getTitle().equals("fails")) {
+                callback.onFailure(
+                    new GoogleJsonError().setMessage("Invalid task"), new HttpHeaders());
+              } else {
+                callback.onSuccess(
+                    new Task().setId("created-" + task.getTitle()), new HttpHeaders());
+              }
+              return null;
+            })
+        .when(insert)
+        .queue(eq(batchRequest), any());
+    return insert;
+  }
+}
@@ -21,7 +21,11 @@ import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.assertFalse;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.after;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import com.google.common.collect.Lists;
@@ -37,6 +41,11 @@ import com.google.rpc.Status;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.net.HttpURLConnection;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import org.datatransferproject.api.launcher.Monitor;
 import org.datatransferproject.spi.cloud.storage.TemporaryPerJobDataStore;
 import org.datatransferproject.spi.transfer.idempotentexecutor.InMemoryIdempotentImportExecutor;
@@ -59,11 +68,12 @@ public class GoogleVideosImporterTest {
 
   private GoogleVideosImporter googleVideosImporter;
   private ImageStreamProvider streamProvider;
+  private TemporaryPerJobDataStore dataStore;
 
   @Before
   public void setUp() throws Exception {
     // Create files so we can accurately check the length of file counting
-    TemporaryPerJobDataStore dataStore = mock(TemporaryPerJobDataStore.class);
+    dataStore = mock(TemporaryPerJobDataStore.class);
     TemporaryFolder folder = new TemporaryFolder();
     folder.create();
     File file1 = folder.newFile();
@@ -136,6 +146,138 @@ public class GoogleVideosImporterTest {
     assertEquals("Expected executor to have no errors.", 0, executor.getErrors().size());
   }
 
+  @Test
+  public void importTwoVideosConcurrentlyWithinDiskBudget() throws Exception {
+    // Each video announces 32 bytes, so the budget only lets one of them be on disk at a time
+    when(streamProvider.getContentLength(any())).thenReturn(32L);
+    ExecutorService uploadExecutor = Executors.newFixedThreadPool(2);
+    GoogleVideosImporter concurrentImporter =
+        new GoogleVideosImporter(
+            null, dataStore, mock(Monitor.class), streamProvider, uploadExecutor, 32L);
+
+    PhotosLibraryClient photosLibraryClient = mock(PhotosLibraryClient.class);
+    when(photosLibraryClient.uploadMediaItem(any()))
+        .thenReturn(
+            UploadMediaItemResponse.newBuilder().setUploadToken("token1").build(),
+            UploadMediaItemResponse.newBuilder().setUploadToken("token2").build());
+    BatchCreateMediaItemsResponse response =
+        BatchCreateMediaItemsResponse.newBuilder()
+            .addNewMediaItemResults(
+                NewMediaItemResult.newBuilder()
+                    .setStatus(Status.newBuilder().setCode(Code.OK_VALUE).build())
+                    .setMediaItem(MediaItem.newBuilder().setId("RESULT_ID_1").build())
+                    .setUploadToken("token1")
+                    .build())
+            .addNewMediaItemResults(
+                NewMediaItemResult.newBuilder()
+                    .setStatus(Status.newBuilder().setCode(Code.OK_VALUE).build())
+                    .setMediaItem(MediaItem.newBuilder().setId("RESULT_ID_2").build())
+                    .setUploadToken("token2")
+                    .build())
+            .build();
+    when(photosLibraryClient.batchCreateMediaItems(ArgumentMatchers.anyList()))
+        .thenReturn(response);
+
+    InMemoryIdempotentImportExecutor executor =
+        new InMemoryIdempotentImportExecutor(mock(Monitor.class));
+    long length;
+    try {
+      length =
+          concurrentImporter.importVideoBatch(
+              Lists.newArrayList(
+                  new VideoModel(
+                      VIDEO_TITLE, VIDEO_URI, VIDEO_DESCRIPTION, MP4_MEDIA_TYPE, VIDEO_ID, null,
+                      false),
+                  new VideoModel(
+                      VIDEO_TITLE, VIDEO_URI, VIDEO_DESCRIPTION, MP4_MEDIA_TYPE, "myId2", null,
+                      false)),
+              photosLibraryClient,
+              executor);
+    } finally {
+      uploadExecutor.shutdownNow();
+    }
+
+    assertEquals("Expected the number of bytes to be the two files of 32L.", 64L, length);
+    assertEquals("Expected executor to have no errors.", 0, executor.getErrors().size());
+    assertTrue(executor.isKeyCached(VIDEO_ID));
+    assertTrue(executor.isKeyCached("myId2"));
+  }
+
+  @Test
+  public void uploadWaitsForDiskBudgetBeforeDownloading() throws Exception {
+    // Each video announces 32 bytes and the budget holds one of them, so while the first upload
+    // is held the second video must not be downloaded
+    when(streamProvider.getContentLength(any())).thenReturn(32L);
+    ExecutorService uploadExecutor = Executors.newFixedThreadPool(2);
+    GoogleVideosImporter concurrentImporter =
+        new GoogleVideosImporter(
+            null, dataStore, mock(Monitor.class), streamProvider, uploadExecutor, 32L);
+
+    CountDownLatch firstUploadStarted = new CountDownLatch(1);
+    CountDownLatch finishFirstUpload = new CountDownLatch(1);
+    PhotosLibraryClient photosLibraryClient = mock(PhotosLibraryClient.class);
+    when(photosLibraryClient.uploadMediaItem(any()))
+        .thenAnswer(
+            invocation -> {
+              firstUploadStarted.countDown();
+              finishFirstUpload.await();
+              return UploadMediaItemResponse.newBuilder().setUploadToken("token1").build();
+            })
+        .thenReturn(UploadMediaItemResponse.newBuilder().setUploadToken("token2").build());
+    BatchCreateMediaItemsResponse response =
+        BatchCreateMediaItemsResponse.newBuilder()
+            .addNewMediaItemResults(
+                NewMediaItemResult.newBuilder()
+                    .setStatus(Status.newBuilder().setCode(Code.OK_VALUE).build())
+                    .setMediaItem(MediaItem.newBuilder().setId("RESULT_ID_1").build())
+                    .setUploadToken("token1")
+                    .build())
+            .addNewMediaItemResults(
+                NewMediaItemResult.newBuilder()
+                    .setStatus(Status.newBuilder().setCode(Code.OK_VALUE).build())
+                    .setMediaItem(MediaItem.newBuilder().setId("RESULT_ID_2").build())
+                    .setUploadToken("token2")
+                    .build())
+            .build();
+    when(photosLibraryClient.batchCreateMediaItems(ArgumentMatchers.anyList()))
+        .thenReturn(response);
+
+    InMemoryIdempotentImportExecutor executor =
+        new InMemoryIdempotentImportExecutor(mock(Monitor.class));
+    ExecutorService importThread = Executors.newSingleThreadExecutor();
+    try {
+      Future<Long> length =
+          importThread.submit(
+              () ->
+                  concurrentImporter.importVideoBatch(
+                      Lists.newArrayList(
+                          new VideoModel(
+                              VIDEO_TITLE, VIDEO_URI, VIDEO_DESCRIPTION, MP4_MEDIA_TYPE, VIDEO_ID,
+                              null, false),
+                          new VideoModel(
+                              VIDEO_TITLE, VIDEO_URI, VIDEO_DESCRIPTION, MP4_MEDIA_TYPE, "myId2",
+                              null, false)),
+                      photosLibraryClient,
+                      executor));
+
+      assertTrue(firstUploadStarted.await(5, TimeUnit.SECONDS));
+      verify(streamProvider, timeout(5000).times(2)).getContentLength(any());
+      verify(streamProvider, after(200).times(1)).getConnection(any());
+
+      finishFirstUpload.countDown();
+      assertEquals(
+          "Expected the number of bytes to be the two files of 32L.",
+          64L,
+          (long) length.get(5, TimeUnit.SECONDS));
+      verify(streamProvider, times(2)).getConnection(any());
+    } finally {
+      finishFirstUpload.countDown();
+      importThread.shutdownNow();
+      uploadExecutor.shutdownNow();
+    }
+    assertEquals("Expected executor to have no errors.", 0, executor.getErrors().size());
+  }
+
   @Test
   public void failOneVideo() throws Exception {
     PhotosLibraryClient photosLibraryClient = mock(PhotosLibraryClient.class);
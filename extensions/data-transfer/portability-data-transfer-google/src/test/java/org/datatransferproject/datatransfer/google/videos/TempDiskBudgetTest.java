@@ -0,0 +1,82 @@
+/*
+ * Copyright 2019 The Data Transfer Project Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.datatransferproject.datatransfer.google.videos;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.datatransferproject.datatransfer.google.videos.TempDiskBudget.Reservation;
+import org.junit.Test;
+
+public class TempDiskBudgetTest {
+
+  @Test
+  public void reserveWaitsUntilSpaceIsReleased() throws Exception {
+    TempDiskBudget budget = new TempDiskBudget(32);
+    Reservation first = budget.reserve(32);
+    CountDownLatch reserved = new CountDownLatch(1);
+    Thread waiter =
+        new Thread(
+            () -> {
+              try {
+                budget.reserve(16);
+                reserved.countDown();
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+              }
+            });
+    waiter.start();
+    try {
+      assertFalse(reserved.await(200, TimeUnit.MILLISECONDS));
+
+      first.release();
+      assertTrue(reserved.await(5, TimeUnit.SECONDS));
+    } finally {
+      waiter.interrupt();
+    }
+  }
+
+  @Test
+  public void oversizedReservationGoesThroughWhenBudgetIsEmpty() throws Exception {
+    TempDiskBudget budget = new TempDiskBudget(32);
+    Reservation reservation = budget.reserve(64);
+    assertEquals(64, reservation.getBytes());
+  }
+
+  @Test
+  public void trackChargesBytesReadPastReservation() throws Exception {
+    TempDiskBudget budget = new TempDiskBudget(32);
+    Reservation reservation = budget.reserve(8);
+    InputStream in = reservation.track(new ByteArrayInputStream(new byte[24]));
+    byte[] buffer = new byte[16];
+    assertEquals(16, in.read(buffer));
+    assertEquals(16, reservation.getBytes());
+    assertEquals(8, in.read(buffer));
+    assertEquals(24, reservation.getBytes());
+    assertEquals(-1, in.read());
+
+    reservation.resize(20);
+    assertEquals(20, reservation.getBytes());
+    reservation.release();
+    assertEquals(0, reservation.getBytes());
+  }
+}
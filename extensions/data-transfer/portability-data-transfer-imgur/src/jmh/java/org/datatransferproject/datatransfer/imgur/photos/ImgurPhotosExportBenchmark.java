@@ -0,0 +1,175 @@
+/*
+ * Copyright 2019 The Data Transfer Project Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.datatransferproject.datatransfer.imgur.photos;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.io.ByteStreams;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import okhttp3.OkHttpClient;
+import org.datatransferproject.api.launcher.Monitor;
+import org.datatransferproject.spi.cloud.storage.TemporaryPerJobDataStore;
+import org.datatransferproject.spi.transfer.provider.ExportResult;
+import org.datatransferproject.types.common.ExportInformation;
+import org.datatransferproject.types.common.IntPaginationToken;
+import org.datatransferproject.types.common.models.IdOnlyContainerResource;
+import org.datatransferproject.types.common.models.photos.PhotosContainerResource;
+import org.datatransferproject.types.transfer.auth.TokensAndUrlAuthData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures how long {@link ImgurPhotosExporter} takes to return one page of photos, against a
+ * local HTTP server standing in for both the Imgur API and the image host.
+ *
+ * <p>The stand-in answers listings immediately and serves each image after {@code
+ * imageLatencyMillis}, which is where eager exports spend their time: every photo on the page is
+ * downloaded into the job store, one after another, before the page is returned. Deferred exports
+ * only pay for the listing.
+ *
+ * <p>Run with {@code ./gradlew :extensions:data-transfer:portability-data-transfer-imgur:jmh}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ImgurPhotosExportBenchmark {
+  private static final TokensAndUrlAuthData AUTH_DATA =
+      new TokensAndUrlAuthData("accessToken", "refreshToken", "tokenUrl");
+
+  @Param({"10", "50"})
+  private int resultsPerPage;
+
+  @Param({"false", "true"})
+  private boolean deferMediaDownload;
+
+  @Param("20")
+  private int imageLatencyMillis;
+
+  @Param("262144")
+  private int imageBytes;
+
+  private final ObjectMapper objectMapper =
+      new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+  private HttpServer server;
+  private ExecutorService serverExecutor;
+  private ImgurPhotosExporter exporter;
+  private Optional<ExportInformation> firstPage;
+
+  @Setup
+  public void setUp() throws IOException {
+    byte[] image = new byte[imageBytes];
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    String baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+    server.createContext("/3/account/me/images/", exchange -> listImages(exchange, baseUrl));
+    server.createContext("/i/", exchange -> serveImage(exchange, image));
+    serverExecutor = Executors.newCachedThreadPool();
+    server.setExecutor(serverExecutor);
+    server.start();
+
+    TemporaryPerJobDataStore jobStore =
+        new TemporaryPerJobDataStore() {
+          @Override
+          public void create(UUID jobId, String key, InputStream stream) throws IOException {
+            ByteStreams.exhaust(stream);
+          }
+        };
+    exporter =
+        new ImgurPhotosExporter(
+            new Monitor() {},
+            new OkHttpClient.Builder().build(),
+            objectMapper,
+            jobStore,
+            baseUrl + "/3",
+            resultsPerPage,
+            deferMediaDownload);
+    firstPage =
+        Optional.of(
+            new ExportInformation(
+                new IntPaginationToken(0),
+                new IdOnlyContainerResource(ImgurPhotosExporter.DEFAULT_ALBUM_ID)));
+  }
+
+  @TearDown
+  public void tearDown() {
+    server.stop(0);
+    serverExecutor.shutdownNow();
+  }
+
+  @Benchmark
+  public ExportResult<PhotosContainerResource> exportPage() throws Exception {
+    return exporter.export(UUID.randomUUID(), AUTH_DATA, firstPage);
+  }
+
+  private void listImages(HttpExchange exchange, String baseUrl) throws IOException {
+    List<Map<String, Object>> images = new ArrayList<>(resultsPerPage);
+    for (int i = 0; i < resultsPerPage; i++) {
+      Map<String, Object> image = new HashMap<>();
+      image.put("id", "image" + i);
+      image.put("name", "Image " + i);
+      image.put("type", "image/jpeg");
+      image.put("link", baseUrl + "/i/image" + i + ".jpg");
+      images.add(image);
+    }
+    Map<String, Object> response = new HashMap<>();
+    response.put("data", images);
+    respond(exchange, objectMapper.writeValueAsString(response).getBytes(StandardCharsets.UTF_8));
+  }
+
+  private void serveImage(HttpExchange exchange, byte[] image) throws IOException {
+    try {
+      Thread.sleep(imageLatencyMillis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    respond(exchange, image);
+  }
+
+  private static void respond(HttpExchange exchange, byte[] body) throws IOException {
+    exchange.sendResponseHeaders(200, body.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(body);
+    }
+  }
+}
@@ -55,7 +55,16 @@ public class ImgurTransferExtension implements TransferExtension {
     OkHttpClient client = context.getService(OkHttpClient.class);
     TemporaryPerJobDataStore jobStore = context.getService(TemporaryPerJobDataStore.class);
 
-    exporter = new ImgurPhotosExporter(monitor, client, mapper, jobStore, BASE_URL);
+    exporter =
+        new ImgurPhotosExporter(
+            monitor,
+            client,
+            mapper,
+            jobStore,
+            BASE_URL,
+            context.getSetting(
+                "imgurExportResultsPerPage", ImgurPhotosExporter.DEFAULT_RESULTS_PER_PAGE),
+            context.getSetting("imgurDeferPhotoDownload", false));
     importer = new ImgurPhotosImporter(monitor, client, mapper, jobStore, BASE_URL);
 
     initialized = true;
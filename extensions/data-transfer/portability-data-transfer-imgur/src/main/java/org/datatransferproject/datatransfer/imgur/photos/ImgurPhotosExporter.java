@@ -17,6 +17,7 @@
 package org.datatransferproject.datatransfer.imgur.photos;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
@@ -26,7 +27,9 @@ import org.datatransferproject.api.launcher.Monitor;
 import org.datatransferproject.spi.cloud.storage.TemporaryPerJobDataStore;
 import org.datatransferproject.spi.transfer.provider.ExportResult;
 import org.datatransferproject.spi.transfer.provider.Exporter;
+import org.datatransferproject.spi.transfer.types.ContainedIdIndex;
 import org.datatransferproject.spi.transfer.types.ContinuationData;
+import org.datatransferproject.transfer.ContainedIdIndexStore;
 import org.datatransferproject.types.common.ExportInformation;
 import org.datatransferproject.types.common.IntPaginationToken;
 import org.datatransferproject.types.common.PaginationData;
@@ -50,22 +53,36 @@ import java.util.UUID;
 
 import static java.lang.String.format;
 
-/** Exports Imgur albums and photos using Imgur API */
+/**
+ * Exports Imgur albums and photos using Imgur API.
+ *
+ * <p>By default every exported photo is downloaded into the job store before the page is returned.
+ * In deferred mode only the metadata is exported, and the importer fetches each photo from its
+ * Imgur link when it gets to it, so a page is ready as soon as its listing is.
+ *
+ * <p>The ids of photos in albums are recorded per job in the temp store, so non-album photos are
+ * still told apart correctly after a retry or when the job moves to another worker.
+ */
 public class ImgurPhotosExporter
     implements Exporter<TokensAndUrlAuthData, PhotosContainerResource> {
-  private static final String RESULTS_PER_PAGE = "10";
+  // Number of albums or photos requested per page
+  public static final int DEFAULT_RESULTS_PER_PAGE = 50;
   private final String ALBUM_PHOTOS_URL_TEMPLATE;
   private final String ALBUMS_URL_TEMPLATE;
   private final String ALL_PHOTOS_URL_TEMPLATE;
 
   public static final String DEFAULT_ALBUM_ID = "defaultAlbumId";
+  // Temp store key of the index of photo ids that belong to at least one album
+  static final String ALBUM_PHOTOS_INDEX_KEY = "imgurAlbumPhotosIndex";
   private boolean containsNonAlbumPhotos = false;
-  private Set<String> albumPhotos = new HashSet<>();
 
   private final OkHttpClient client;
   private final ObjectMapper objectMapper;
   private final Monitor monitor;
   private final TemporaryPerJobDataStore jobStore;
+  private final boolean deferMediaDownload;
+  // Ids of the photos in each job's albums, for finding non-album photos later
+  private final ContainedIdIndexStore albumPhotos;
 
   public ImgurPhotosExporter(
       Monitor monitor,
@@ -73,13 +90,32 @@ public class ImgurPhotosExporter
       ObjectMapper objectMapper,
       TemporaryPerJobDataStore jobStore,
       String baseUrl) {
+    this(monitor, client, objectMapper, jobStore, baseUrl, DEFAULT_RESULTS_PER_PAGE, false);
+  }
+
+  /**
+   * @param resultsPerPage number of albums or photos to request per page
+   * @param deferMediaDownload if true, photos are not copied into the job store and are exported
+   *     with their Imgur link only
+   */
+  public ImgurPhotosExporter(
+      Monitor monitor,
+      OkHttpClient client,
+      ObjectMapper objectMapper,
+      TemporaryPerJobDataStore jobStore,
+      String baseUrl,
+      int resultsPerPage,
+      boolean deferMediaDownload) {
+    Preconditions.checkArgument(resultsPerPage > 0, "resultsPerPage must be positive");
     this.client = client;
     this.objectMapper = objectMapper;
     this.monitor = monitor;
     this.jobStore = jobStore;
+    this.deferMediaDownload = deferMediaDownload;
+    this.albumPhotos = new ContainedIdIndexStore(jobStore, ALBUM_PHOTOS_INDEX_KEY);
     ALBUM_PHOTOS_URL_TEMPLATE = baseUrl + "/album/%s/images";
-    ALBUMS_URL_TEMPLATE = baseUrl + "/account/me/albums/%s?perPage=" + RESULTS_PER_PAGE;
-    ALL_PHOTOS_URL_TEMPLATE = baseUrl + "/account/me/images/%s?perPage=" + RESULTS_PER_PAGE;
+    ALBUMS_URL_TEMPLATE = baseUrl + "/account/me/albums/%s?perPage=" + resultsPerPage;
+    ALL_PHOTOS_URL_TEMPLATE = baseUrl + "/account/me/images/%s?perPage=" + resultsPerPage;
   }
 
   /**
@@ -104,7 +140,7 @@ public class ImgurPhotosExporter
     if (resource != null) {
       return requestPhotos(authData, resource, paginationData, jobId);
     } else {
-      return requestAlbums(authData, paginationData);
+      return requestAlbums(authData, paginationData, jobId);
     }
   }
 
@@ -113,9 +149,11 @@ public class ImgurPhotosExporter
    *
    * @param authData authentication information
    * @param paginationData pagination information to use for subsequent calls
+   * @param jobId the job id
    */
   private ExportResult<PhotosContainerResource> requestAlbums(
-      TokensAndUrlAuthData authData, PaginationData paginationData) throws IOException {
+      TokensAndUrlAuthData authData, PaginationData paginationData, UUID jobId)
+      throws IOException {
     ImmutableList.Builder<PhotoAlbum> albumBuilder = ImmutableList.builder();
     List<IdOnlyContainerResource> albumIds = new ArrayList<>();
 
@@ -188,26 +226,15 @@ public class ImgurPhotosExporter
 
     String url = format(ALBUM_PHOTOS_URL_TEMPLATE, albumId);
     List<PhotoModel> photos = new ArrayList<>();
+    List<String> photoIds = new ArrayList<>();
 
     List<Map<String, Object>> items = requestData(authData, url);
     for (Map<String, Object> item : items) {
-      PhotoModel photoModel =
-          new PhotoModel(
-              (String) item.get("name"),
-              (String) item.get("link"),
-              (String) item.get("description"),
-              (String) item.get("type"),
-              (String) item.get("id"),
-              albumId,
-              true);
-      photos.add(photoModel);
-
-      InputStream inputStream = getImageAsStream(photoModel.getFetchableUrl());
-      jobStore.create(jobId, photoModel.getFetchableUrl(), inputStream);
-
-      // Save id of each album photo for finding non-album photos later
-      albumPhotos.add((String) item.get("id"));
+      photos.add(createPhotoModel(item, albumId, jobId));
+      photoIds.add((String) item.get("id"));
     }
+    // Save id of each album photo for finding non-album photos later, writing only this album's
+    albumPhotos.addAll(jobId, photoIds);
 
     // This request doesn't support pages
     ExportResult.ResultType resultType = ExportResult.ResultType.END;
@@ -240,24 +267,13 @@ public class ImgurPhotosExporter
 
     boolean hasMore = (items != null && items.size() != 0);
 
+    ContainedIdIndex jobAlbumPhotos = albumPhotos.get(jobId);
     for (Map<String, Object> item : items) {
       String photoId = (String) item.get("id");
 
       // Select photos which are not included to the collection of retrieved album photos
-      if (!albumPhotos.contains(photoId)) {
-        PhotoModel photoModel =
-            new PhotoModel(
-                (String) item.get("name"),
-                (String) item.get("link"),
-                (String) item.get("description"),
-                (String) item.get("type"),
-                (String) item.get("id"),
-                DEFAULT_ALBUM_ID,
-                true);
-        photos.add(photoModel);
-
-        InputStream inputStream = getImageAsStream(photoModel.getFetchableUrl());
-        jobStore.create(jobId, photoModel.getFetchableUrl(), inputStream);
+      if (!jobAlbumPhotos.contains(photoId)) {
+        photos.add(createPhotoModel(item, DEFAULT_ALBUM_ID, jobId));
       }
     }
 
@@ -284,6 +300,29 @@ public class ImgurPhotosExporter
     return new ExportResult<>(resultType, photosContainerResource, continuationData);
   }
 
+  /**
+   * Creates the model for a photo listed by Imgur, copying the photo into the job store unless
+   * downloads are deferred to the importer.
+   */
+  private PhotoModel createPhotoModel(Map<String, Object> item, String albumId, UUID jobId)
+      throws IOException {
+    PhotoModel photoModel =
+        new PhotoModel(
+            (String) item.get("name"),
+            (String) item.get("link"),
+            (String) item.get("description"),
+            (String) item.get("type"),
+            (String) item.get("id"),
+            albumId,
+            !deferMediaDownload);
+    if (!deferMediaDownload) {
+      try (InputStream inputStream = getImageAsStream(photoModel.getFetchableUrl())) {
+        jobStore.create(jobId, photoModel.getFetchableUrl(), inputStream);
+      }
+    }
+    return photoModel;
+  }
+
   /**
    * Performs request to the given endpoint and returns received data
    *
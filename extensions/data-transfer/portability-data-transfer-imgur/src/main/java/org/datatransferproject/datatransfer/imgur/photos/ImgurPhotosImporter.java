@@ -149,7 +149,10 @@ public class ImgurPhotosImporter
       return -1;
     }
 
-    byte[] imageBytes = ByteStreams.toByteArray(inputStream);
+    byte[] imageBytes;
+    try (InputStream stream = inputStream) {
+      imageBytes = ByteStreams.toByteArray(stream);
+    }
     String imageData = Base64.getEncoder().encodeToString(imageBytes);
 
     Request.Builder requestBuilder = new Request.Builder().url(UPLOAD_PHOTO_URL);
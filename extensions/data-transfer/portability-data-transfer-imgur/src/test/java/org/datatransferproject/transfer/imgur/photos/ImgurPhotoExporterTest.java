@@ -18,6 +18,8 @@ package org.datatransferproject.transfer.imgur.photos;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.ByteStreams;
 import com.google.common.io.Resources;
 import com.squareup.okhttp.mockwebserver.MockResponse;
 import com.squareup.okhttp.mockwebserver.MockWebServer;
@@ -25,9 +27,11 @@ import okhttp3.OkHttpClient;
 import org.datatransferproject.api.launcher.Monitor;
 import org.datatransferproject.datatransfer.imgur.photos.ImgurPhotosExporter;
 import org.datatransferproject.spi.cloud.storage.JobStore;
+import org.datatransferproject.spi.cloud.storage.TemporaryPerJobDataStore;
 import org.datatransferproject.spi.transfer.provider.ExportResult;
 import org.datatransferproject.types.common.ExportInformation;
 import org.datatransferproject.types.common.IntPaginationToken;
+import org.datatransferproject.types.common.PaginationData;
 import org.datatransferproject.types.common.models.IdOnlyContainerResource;
 import org.datatransferproject.types.common.models.photos.PhotoAlbum;
 import org.datatransferproject.types.common.models.photos.PhotoModel;
@@ -38,14 +42,26 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 import org.mockito.junit.MockitoJUnitRunner;
 
 import static com.google.common.truth.Truth.assertThat;
 import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 
 @RunWith(MockitoJUnitRunner.class)
 public class ImgurPhotoExporterTest {
@@ -160,14 +176,15 @@ public class ImgurPhotoExporterTest {
     server.enqueue(new MockResponse().setBody(albumsResponse));
     server.enqueue(new MockResponse().setBody(album1ImagesResponse));
     server.enqueue(new MockResponse().setBody(allImagesResponse));
+    UUID jobId = UUID.randomUUID();
 
     // export albums
-    exporter.export(UUID.randomUUID(), token, Optional.empty());
+    exporter.export(jobId, token, Optional.empty());
 
     // export album photos
     ExportResult<PhotosContainerResource> albumPhotosResult =
         exporter.export(
-            UUID.randomUUID(),
+            jobId,
             token,
             Optional.of(new ExportInformation(null, new IdOnlyContainerResource("albumId1"))));
 
@@ -176,7 +193,7 @@ public class ImgurPhotoExporterTest {
     // export non-album photos
     ExportResult<PhotosContainerResource> nonAlbumPhotosResult =
         exporter.export(
-            UUID.randomUUID(),
+            jobId,
             token,
             Optional.of(
                 new ExportInformation(
@@ -203,6 +220,112 @@ public class ImgurPhotoExporterTest {
     assertEquals(3, resource.getPhotos().size());
   }
 
+  @Test
+  public void testDeferredAlbumPhotosExport() throws Exception {
+    server.enqueue(new MockResponse().setBody(album1ImagesResponse));
+    ImgurPhotosExporter deferredExporter =
+        new ImgurPhotosExporter(
+            monitor,
+            client,
+            mapper,
+            jobStore,
+            server.url("").toString(),
+            ImgurPhotosExporter.DEFAULT_RESULTS_PER_PAGE,
+            true);
+
+    ExportResult<PhotosContainerResource> result =
+        deferredExporter.export(
+            UUID.randomUUID(),
+            token,
+            Optional.of(new ExportInformation(null, new IdOnlyContainerResource("albumId1"))));
+
+    assertThat(result.getExportedData().getPhotos())
+        .containsExactly(ALBUM_PHOTO_1, ALBUM_PHOTO_2)
+        .inOrder();
+    // Photos are fetched by the importer, so nothing is downloaded during export
+    for (PhotoModel photo : result.getExportedData().getPhotos()) {
+      assertThat(photo.isInTempStore()).isFalse();
+      verify(jobStore, never()).create(any(), eq(photo.getFetchableUrl()), any(InputStream.class));
+    }
+  }
+
+  @Test
+  public void testNonAlbumPhotosWithOverlappingAlbumsAcrossRestarts() throws Exception {
+    // A synthetic library of 30 photos: album 0 holds photos 0-14, album 1 holds photos 10-24, so
+    // photos 10-14 are in both, and photos 25-29 are in no album
+    InMemoryDataStore dataStore = new InMemoryDataStore();
+    UUID jobId = UUID.randomUUID();
+    server.enqueue(new MockResponse().setBody(dataResponse(album("album0"), album("album1"))));
+    server.enqueue(new MockResponse().setBody(dataResponse(photos(0, 15))));
+    server.enqueue(new MockResponse().setBody(dataResponse(photos(10, 25))));
+    server.enqueue(new MockResponse().setBody(dataResponse(photos(0, 10))));
+    server.enqueue(new MockResponse().setBody(dataResponse(photos(10, 20))));
+    server.enqueue(new MockResponse().setBody(dataResponse(photos(20, 30))));
+    server.enqueue(new MockResponse().setBody(dataResponse()));
+
+    // Each step runs on a new exporter, as if the job moved to another worker every time
+    newDeferredExporter(dataStore).export(jobId, token, Optional.empty());
+    for (String albumId : new String[] {"album0", "album1"}) {
+      ExportResult<PhotosContainerResource> result =
+          newDeferredExporter(dataStore)
+              .export(
+                  jobId,
+                  token,
+                  Optional.of(new ExportInformation(null, new IdOnlyContainerResource(albumId))));
+      assertEquals(15, result.getExportedData().getPhotos().size());
+    }
+    List<String> nonAlbumPhotoIds = new ArrayList<>();
+    PaginationData page = new IntPaginationToken(0);
+    while (page != null) {
+      ExportResult<PhotosContainerResource> result =
+          newDeferredExporter(dataStore)
+              .export(
+                  jobId,
+                  token,
+                  Optional.of(
+                      new ExportInformation(
+                          page,
+                          new IdOnlyContainerResource(ImgurPhotosExporter.DEFAULT_ALBUM_ID))));
+      for (PhotoModel photo : result.getExportedData().getPhotos()) {
+        nonAlbumPhotoIds.add(photo.getDataId());
+      }
+      page = result.getContinuationData().getPaginationData();
+    }
+
+    assertThat(nonAlbumPhotoIds)
+        .containsExactly("photo25", "photo26", "photo27", "photo28", "photo29")
+        .inOrder();
+  }
+
+  @Test
+  public void testNonAlbumPhotosAreTrackedPerJob() throws Exception {
+    InMemoryDataStore dataStore = new InMemoryDataStore();
+    ImgurPhotosExporter deferredExporter = newDeferredExporter(dataStore);
+    UUID jobWithAlbum = UUID.randomUUID();
+    UUID jobWithoutAlbum = UUID.randomUUID();
+    server.enqueue(new MockResponse().setBody(dataResponse(album("album0"))));
+    server.enqueue(new MockResponse().setBody(dataResponse(photos(0, 5))));
+    server.enqueue(new MockResponse().setBody(dataResponse()));
+    server.enqueue(new MockResponse().setBody(dataResponse(photos(0, 5))));
+
+    deferredExporter.export(jobWithAlbum, token, Optional.empty());
+    deferredExporter.export(
+        jobWithAlbum,
+        token,
+        Optional.of(new ExportInformation(null, new IdOnlyContainerResource("album0"))));
+    deferredExporter.export(jobWithoutAlbum, token, Optional.empty());
+    ExportResult<PhotosContainerResource> result =
+        deferredExporter.export(
+            jobWithoutAlbum,
+            token,
+            Optional.of(
+                new ExportInformation(
+                    null, new IdOnlyContainerResource(ImgurPhotosExporter.DEFAULT_ALBUM_ID))));
+
+    // Photos in the other job's album are no reason to skip this job's photos
+    assertEquals(5, result.getExportedData().getPhotos().size());
+  }
+
   @Test
   public void testPagination() throws Exception {
     server.enqueue(new MockResponse().setBody(page1Response));
@@ -248,4 +371,60 @@ public class ImgurPhotoExporterTest {
   public void tearDown() throws Exception {
     server.shutdown();
   }
+
+  private ImgurPhotosExporter newDeferredExporter(TemporaryPerJobDataStore dataStore) {
+    return new ImgurPhotosExporter(
+        monitor,
+        client,
+        mapper,
+        dataStore,
+        server.url("").toString(),
+        ImgurPhotosExporter.DEFAULT_RESULTS_PER_PAGE,
+        true);
+  }
+
+  @SafeVarargs
+  private final String dataResponse(Map<String, Object>... items) throws IOException {
+    return dataResponse(Arrays.asList(items));
+  }
+
+  private String dataResponse(List<Map<String, Object>> items) throws IOException {
+    return mapper.writeValueAsString(ImmutableMap.of("data", items));
+  }
+
+  private static Map<String, Object> album(String id) {
+    return ImmutableMap.<String, Object>of("id", id, "title", "Title of " + id);
+  }
+
+  private static List<Map<String, Object>> photos(int from, int to) {
+    List<Map<String, Object>> photos = new ArrayList<>();
+    for (int i = from; i < to; i++) {
+      photos.add(
+          ImmutableMap.<String, Object>of(
+              "id", "photo" + i,
+              "name", "Photo " + i,
+              "type", "image/jpeg",
+              "link", "https://i.imgur.com/photo" + i + ".jpg"));
+    }
+    return photos;
+  }
+
+  /** Temp store that keeps streams in memory and, like a real one, fails on unknown keys. */
+  private static class InMemoryDataStore implements TemporaryPerJobDataStore {
+    private final Map<String, byte[]> streams = new HashMap<>();
+
+    @Override
+    public void create(UUID jobId, String key, InputStream stream) throws IOException {
+      streams.put(jobId + "/" + key, ByteStreams.toByteArray(stream));
+    }
+
+    @Override
+    public InputStreamWrapper getStream(UUID jobId, String key) throws IOException {
+      byte[] bytes = streams.get(jobId + "/" + key);
+      if (bytes == null) {
+        throw new FileNotFoundException(jobId + "/" + key);
+      }
+      return new InputStreamWrapper(new ByteArrayInputStream(bytes), (long) bytes.length);
+    }
+  }
 }
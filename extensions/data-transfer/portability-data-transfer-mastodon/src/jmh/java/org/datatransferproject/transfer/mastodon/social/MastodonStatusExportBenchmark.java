@@ -0,0 +1,153 @@
+/*
+ * Copyright 2019 The Data Transfer Project Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.datatransferproject.transfer.mastodon.social;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableList;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.datatransferproject.spi.transfer.provider.ExportResult;
+import org.datatransferproject.types.common.ExportInformation;
+import org.datatransferproject.types.common.StringPaginationToken;
+import org.datatransferproject.types.common.models.social.SocialActivityContainerResource;
+import org.datatransferproject.types.transfer.auth.CookiesAndUrlAuthData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures how many pages of statuses {@link MastodonActivityExport} returns per second, against a
+ * local HTTP server standing in for a Mastodon instance.
+ *
+ * <p>With {@code sameJob} every page belongs to one job, so the account is only verified once and
+ * each operation is a single statuses request. Otherwise every page is exported as a new job and
+ * also pays for verify_credentials.
+ *
+ * <p>Run with {@code ./gradlew :extensions:data-transfer:portability-data-transfer-mastodon:jmh}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class MastodonStatusExportBenchmark {
+  private static final String ACCOUNT_ID = "1";
+
+  @Param({"20", "40"})
+  private int statusesPerPage;
+
+  @Param({"true", "false"})
+  private boolean sameJob;
+
+  private final ObjectMapper objectMapper = new ObjectMapper();
+  private HttpServer server;
+  private ExecutorService serverExecutor;
+  private MastodonActivityExport exporter;
+  private CookiesAndUrlAuthData authData;
+  private Optional<ExportInformation> nextPage;
+  private UUID jobId;
+
+  @Setup
+  public void setUp() throws IOException {
+    byte[] account = objectMapper.writeValueAsBytes(account());
+    byte[] statuses = objectMapper.writeValueAsBytes(statuses());
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    server.createContext(
+        "/api/v1/accounts/verify_credentials", exchange -> respond(exchange, account));
+    server.createContext(
+        "/api/v1/accounts/" + ACCOUNT_ID + "/statuses", exchange -> respond(exchange, statuses));
+    serverExecutor = Executors.newCachedThreadPool();
+    server.setExecutor(serverExecutor);
+    server.start();
+
+    exporter = new MastodonActivityExport();
+    authData =
+        new CookiesAndUrlAuthData(
+            ImmutableList.of("accessToken"),
+            "http://127.0.0.1:" + server.getAddress().getPort());
+    nextPage = Optional.of(new ExportInformation(new StringPaginationToken("100"), null));
+    jobId = UUID.randomUUID();
+  }
+
+  @TearDown
+  public void tearDown() {
+    server.stop(0);
+    serverExecutor.shutdownNow();
+  }
+
+  @Benchmark
+  public ExportResult<SocialActivityContainerResource> exportPage() throws Exception {
+    return exporter.export(sameJob ? jobId : UUID.randomUUID(), authData, nextPage);
+  }
+
+  private static Map<String, Object> account() {
+    Map<String, Object> account = new HashMap<>();
+    account.put("id", ACCOUNT_ID);
+    account.put("username", "user");
+    account.put("acct", "user");
+    account.put("display_name", "User");
+    account.put("statuses_count", 1000);
+    account.put("url", "https://mastodon.example/@user");
+    account.put("moved", false);
+    return account;
+  }
+
+  private List<Map<String, Object>> statuses() {
+    List<Map<String, Object>> statuses = new ArrayList<>(statusesPerPage);
+    for (int i = 0; i < statusesPerPage; i++) {
+      Map<String, Object> status = new HashMap<>();
+      status.put("id", Integer.toString(100 - i));
+      status.put("uri", "https://mastodon.example/users/user/statuses/" + i);
+      status.put("url", "https://mastodon.example/@user/" + i);
+      status.put("account", account());
+      status.put("created_at", "2019-01-01T00:00:00.000Z");
+      status.put("content", "<p>Status number " + i + "</p>");
+      statuses.add(status);
+    }
+    return statuses;
+  }
+
+  private static void respond(HttpExchange exchange, byte[] body) throws IOException {
+    exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+    exchange.sendResponseHeaders(200, body.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(body);
+    }
+  }
+}
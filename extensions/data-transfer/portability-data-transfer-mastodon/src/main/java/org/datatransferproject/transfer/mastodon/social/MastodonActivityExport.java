@@ -17,6 +17,8 @@
 package org.datatransferproject.transfer.mastodon.social;
 
 import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import org.datatransferproject.spi.transfer.provider.ExportResult;
 import org.datatransferproject.spi.transfer.provider.ExportResult.ResultType;
 import org.datatransferproject.spi.transfer.provider.Exporter;
@@ -31,10 +33,13 @@ import org.datatransferproject.types.common.models.social.SocialActivityModel;
 import org.datatransferproject.types.common.models.social.SocialActivityType;
 import org.datatransferproject.types.transfer.auth.CookiesAndUrlAuthData;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -43,10 +48,21 @@ import static com.google.common.base.Preconditions.checkState;
 /**
  * Exports post data from Mastodon.
  * <p> Currently only supports text and not images.
+ * <p> The account being exported is verified once per job and reused for every later page.
  **/
 public class MastodonActivityExport implements
         Exporter<CookiesAndUrlAuthData, SocialActivityContainerResource> {
   private static final Pattern RAW_CONTENT_PATTERN = Pattern.compile("<p>(.*)</p>");
+  // Upper bound on the number of jobs whose accounts are held at any one time
+  private static final long MAX_CACHED_JOBS = 16;
+  private static final long ACCOUNT_CACHE_EXPIRY_HOURS = 1;
+
+  // Mapping of job id -> the account returned by verify_credentials for that job
+  private final Cache<UUID, Account> accounts =
+      CacheBuilder.newBuilder()
+          .maximumSize(MAX_CACHED_JOBS)
+          .expireAfterAccess(ACCOUNT_CACHE_EXPIRY_HOURS, TimeUnit.HOURS)
+          .build();
 
   @Override
   public ExportResult<SocialActivityContainerResource> export(UUID jobId,
@@ -69,9 +85,9 @@ public class MastodonActivityExport implements
             authData.getCookies().get(0),
             authData.getUrl());
 
-    Account account = utilities.getAccount();
+    Account account = getAccount(jobId, utilities);
 
-    Status[] statuses = utilities.getStatuses(maxId);
+    Status[] statuses = utilities.getStatuses(account.getId(), maxId);
     List<SocialActivityModel> activityList = new ArrayList<>(statuses.length);
 
     SocialActivityActor actor =
@@ -97,6 +113,15 @@ public class MastodonActivityExport implements
         continuationData);
   }
 
+  private Account getAccount(UUID jobId, MastodonHttpUtilities utilities) throws IOException {
+    try {
+      return accounts.get(jobId, utilities::getAccount);
+    } catch (ExecutionException e) {
+      // getAccount only throws IOExceptions
+      throw (IOException) e.getCause();
+    }
+  }
+
   private SocialActivityModel statusToActivity(
       Account account, Status status, MastodonHttpUtilities utilities) {
     String contentString = status.getContent();
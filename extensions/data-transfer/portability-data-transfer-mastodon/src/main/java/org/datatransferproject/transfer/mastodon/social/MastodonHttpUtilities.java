@@ -23,20 +23,26 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.api.client.http.GenericUrl;
 import com.google.api.client.http.HttpHeaders;
 import com.google.api.client.http.HttpRequest;
+import com.google.api.client.http.HttpRequestFactory;
 import com.google.api.client.http.HttpResponse;
 import com.google.api.client.http.HttpTransport;
 import com.google.api.client.http.UrlEncodedContent;
 import com.google.api.client.http.javanet.NetHttpTransport;
-import com.google.api.client.util.IOUtils;
 import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableMap;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
 import org.datatransferproject.transfer.mastodon.model.Account;
 import org.datatransferproject.transfer.mastodon.model.Status;
 
-/** Helper methods for interacting with the Mastodon API **/
+/**
+ * Helper methods for interacting with the Mastodon API.
+ *
+ * <p>All instances share one request factory, so the underlying transport can keep connections to
+ * an instance alive between requests. Responses are always read to the end and closed for the same
+ * reason. Constructing an instance makes no requests; the account is fetched on first use.
+ **/
 public class MastodonHttpUtilities {
   private static final String ACCOUNT_VERIFICATION_URL = "/api/v1/accounts/verify_credentials";
   private static final String STATUS_URL_PATTERN = "/api/v1/accounts/%s/statuses";
@@ -44,31 +50,39 @@ public class MastodonHttpUtilities {
 
   private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
   private static final HttpTransport TRANSPORT = new NetHttpTransport();
+  private static final HttpRequestFactory REQUEST_FACTORY = TRANSPORT.createRequestFactory();
   private final URI baseUri;
   private final String accessToken;
   private final String baseUrl;
-  private final Account account;
+  private Account account;
 
   /**
    * Construct a new utility class for a given user.
    * @param accessToken the access token for a user from the UI or OAuth flow
    * @param baseUrl the base url of the mastodon instance of the user
    */
-  MastodonHttpUtilities(String accessToken, String baseUrl) throws IOException {
+  MastodonHttpUtilities(String accessToken, String baseUrl) {
     this.accessToken = checkNotNull(accessToken, "accessToken must be provided" );
     this.baseUrl = checkNotNull(baseUrl, "baseUrl must be provided");
     this.baseUri = URI.create(baseUrl);
-    this.account = fetchAccount();
   }
 
-  /** Gets the account info via verify_credentials. **/
-  public Account getAccount() {
+  /** Gets the account info via verify_credentials, fetching it on the first call. **/
+  public synchronized Account getAccount() throws IOException {
+    if (account == null) {
+      account = fetchAccount();
+    }
     return account;
   }
 
   /** Gets the statuses posted by the user. **/
   public Status[] getStatuses(String maxId) throws Exception {
-    String url = String.format(STATUS_URL_PATTERN, account.getId());
+    return getStatuses(getAccount().getId(), maxId);
+  }
+
+  /** Gets the statuses posted by the account with the given id. **/
+  public Status[] getStatuses(String accountId, String maxId) throws IOException {
+    String url = String.format(STATUS_URL_PATTERN, accountId);
     if (!Strings.isNullOrEmpty(maxId)) {
       url += "?max_id=" + maxId;
     }
@@ -84,7 +98,7 @@ public class MastodonHttpUtilities {
         "visibility", "private"
     );
     UrlEncodedContent urlEncodedContent = new UrlEncodedContent(formParams);
-    HttpRequest postRequest = TRANSPORT.createRequestFactory()
+    HttpRequest postRequest = REQUEST_FACTORY
         .buildPostRequest(
             new GenericUrl(baseUrl + POST_URL),
             urlEncodedContent)
@@ -98,8 +112,12 @@ public class MastodonHttpUtilities {
     postRequest.setHeaders(headers);
 
     HttpResponse response = postRequest.execute();
-
-    validateResponse(postRequest, response, 200);
+    try {
+      validateResponse(postRequest, response, 200);
+    } finally {
+      // Drain the body so the connection can be reused
+      response.ignore();
+    }
   }
 
   /** Gets the account info via verify_credentials. **/
@@ -109,28 +127,26 @@ public class MastodonHttpUtilities {
   }
 
   private <T> T request(String path, Class<T> clazz) throws IOException {
-    String rawString = requestRaw(path);
-    try {
-      return OBJECT_MAPPER.readValue(rawString, clazz);
-    } catch (IOException | RuntimeException e) {
-      throw new IOException("Problem parsing results of: " + path + "\nContent: " + rawString, e);
-    }
-  }
-
-  private String requestRaw(String path) throws IOException {
-    HttpRequest getRequest = TRANSPORT.createRequestFactory().buildGetRequest(
+    HttpRequest getRequest = REQUEST_FACTORY.buildGetRequest(
         new GenericUrl(baseUrl + path));
     HttpHeaders headers = new HttpHeaders();
     headers.setAuthorization("Bearer " + accessToken);
     getRequest.setHeaders(headers);
 
     HttpResponse response = getRequest.execute();
+    try {
+      validateResponse(getRequest, response, 200);
+    } catch (IOException e) {
+      response.ignore();
+      throw e;
+    }
 
-    validateResponse(getRequest, response, 200);
-    ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-
-    IOUtils.copy(response.getContent(), byteArrayOutputStream, true);
-    return byteArrayOutputStream.toString();
+    // Parse straight from the response rather than buffering the whole body first
+    try (InputStream content = response.getContent()) {
+      return OBJECT_MAPPER.readValue(content, clazz);
+    } catch (IOException | RuntimeException e) {
+      throw new IOException("Problem parsing results of: " + path, e);
+    }
   }
 
   private static void validateResponse(
@@ -16,10 +16,10 @@
 package org.datatransferproject.transfer.microsoft.contacts;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import ezvcard.Ezvcard;
 import ezvcard.VCard;
-import ezvcard.io.json.JCardWriter;
 import java.io.IOException;
-import java.io.StringWriter;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -36,6 +36,7 @@ import org.datatransferproject.transfer.microsoft.transformer.TransformResult;
 import org.datatransferproject.transfer.microsoft.transformer.TransformerService;
 import org.datatransferproject.transfer.microsoft.types.GraphPagination;
 import org.datatransferproject.types.transfer.auth.TokensAndUrlAuthData;
+import org.datatransferproject.types.common.models.contacts.ContactsListModelWrapper;
 import org.datatransferproject.types.common.models.contacts.ContactsModelWrapper;
 
 /**
@@ -106,22 +107,16 @@ public class MicrosoftContactsExporter implements Exporter<TokensAndUrlAuthData,
   }
 
   private ContactsModelWrapper transform(List<Map<String, Object>> rawContacts) {
-    StringWriter stringWriter = new StringWriter();
-    try (JCardWriter writer = new JCardWriter(stringWriter)) {
-      for (Map<String, Object> rawContact : rawContacts) {
-        TransformResult<VCard> result = transformerService.transform(VCard.class, rawContact);
-        if (result.hasProblems()) {
-          // discard
-          // FIXME log problem
-          continue;
-        }
-        writer.write(result.getTransformed());
+    List<String> cards = new ArrayList<>(rawContacts.size());
+    for (Map<String, Object> rawContact : rawContacts) {
+      TransformResult<VCard> result = transformerService.transform(VCard.class, rawContact);
+      if (result.hasProblems()) {
+        // discard
+        // FIXME log problem
+        continue;
       }
-    } catch (IOException e) {
-      // TODO log
-      e.printStackTrace();
-      return new ContactsModelWrapper("");
+      cards.add(Ezvcard.writeJson(result.getTransformed()).go());
     }
-    return new ContactsModelWrapper(stringWriter.toString());
+    return new ContactsListModelWrapper(cards);
   }
 }
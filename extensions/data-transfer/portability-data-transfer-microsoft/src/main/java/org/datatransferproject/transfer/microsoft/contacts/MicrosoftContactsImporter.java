@@ -16,6 +16,7 @@
 package org.datatransferproject.transfer.microsoft.contacts;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import ezvcard.Ezvcard;
 import ezvcard.VCard;
 import ezvcard.io.json.JCardReader;
 import okhttp3.OkHttpClient;
@@ -25,6 +26,7 @@ import org.datatransferproject.spi.transfer.provider.Importer;
 import org.datatransferproject.transfer.microsoft.transformer.TransformResult;
 import org.datatransferproject.transfer.microsoft.transformer.TransformerService;
 import org.datatransferproject.types.transfer.auth.TokenAuthData;
+import org.datatransferproject.types.common.models.contacts.ContactsListModelWrapper;
 import org.datatransferproject.types.common.models.contacts.ContactsModelWrapper;
 
 import java.io.IOException;
@@ -67,9 +69,8 @@ public class MicrosoftContactsImporter implements Importer<TokenAuthData, Contac
       IdempotentImportExecutor idempotentImportExecutor,
       TokenAuthData authData,
       ContactsModelWrapper wrapper) {
-    JCardReader reader = new JCardReader(wrapper.getVCards());
     try {
-      List<VCard> cards = reader.readAll();
+      List<VCard> cards = readVCards(wrapper);
 
       List<String> problems = new ArrayList<>();
 
@@ -100,4 +101,16 @@ public class MicrosoftContactsImporter implements Importer<TokenAuthData, Contac
       return new ImportResult(e);
     }
   }
+
+  private static List<VCard> readVCards(ContactsModelWrapper wrapper) throws IOException {
+    if (wrapper instanceof ContactsListModelWrapper) {
+      List<String> cards = ((ContactsListModelWrapper) wrapper).getCards();
+      List<VCard> vCards = new ArrayList<>(cards.size());
+      for (String card : cards) {
+        vCards.add(Ezvcard.parseJson(card).first());
+      }
+      return vCards;
+    }
+    return new JCardReader(wrapper.getVCards()).readAll();
+  }
 }
@@ -19,6 +19,7 @@ package org.datatransferproject.transfer.rememberthemilk;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import org.datatransferproject.api.launcher.ExtensionContext;
+import org.datatransferproject.api.launcher.MetricRecorder;
 import org.datatransferproject.api.launcher.Monitor;
 import org.datatransferproject.spi.cloud.storage.AppCredentialStore;
 import org.datatransferproject.spi.transfer.extension.TransferExtension;
@@ -83,7 +84,9 @@ public class RememberTheMilkTransferExtension implements TransferExtension {
     Monitor monitor = context.getMonitor();
 
     exporter = new RememberTheMilkTasksExporter(credentials);
-    importer = new RememberTheMilkTasksImporter(credentials, monitor);
+    importer =
+        new RememberTheMilkTasksImporter(
+            credentials, context.getService(MetricRecorder.class), monitor);
 
     initialized = true;
   }
@@ -25,13 +25,18 @@ import com.google.api.client.http.HttpResponse;
 import com.google.api.client.http.HttpTransport;
 import com.google.api.client.http.javanet.NetHttpTransport;
 import com.google.api.client.repackaged.com.google.common.base.Strings;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.CharMatcher;
 import com.google.common.collect.ImmutableMap;
 import java.io.IOException;
 import java.net.URL;
 import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.print.DocFlavor.STRING;
 import org.datatransferproject.transfer.rememberthemilk.model.tasks.GetListResponse;
 import org.datatransferproject.transfer.rememberthemilk.model.tasks.GetListsResponse;
@@ -45,11 +50,42 @@ import org.datatransferproject.transfer.rememberthemilk.model.tasks.TimelineCrea
 class RememberTheMilkService {
   private static final String BASE_URL = "https://api.rememberthemilk.com/services/rest/";
   private static final HttpTransport HTTP_TRANSPORT = new NetHttpTransport();
-  private RememberTheMilkSignatureGenerator signatureGenerator;
+  // Characters that Smart Add gives a meaning to, e.g. '#' adds a tag and '^' sets the due date
+  private static final CharMatcher SMART_ADD_CHARS = CharMatcher.anyOf("^!#@*=");
+  private static final DateTimeFormatter DUE_DATE_FORMAT =
+      DateTimeFormatter.ISO_LOCAL_DATE.withZone(ZoneOffset.UTC);
+
+  private final RememberTheMilkSignatureGenerator signatureGenerator;
+  private final String baseUrl;
+  private final HttpRequestFactory requestFactory;
+  private final AtomicLong callCount = new AtomicLong();
   private XmlMapper xmlMapper = new XmlMapper();
 
   RememberTheMilkService(RememberTheMilkSignatureGenerator signatureGenerator) {
+    this(signatureGenerator, BASE_URL, HTTP_TRANSPORT);
+  }
+
+  @VisibleForTesting
+  RememberTheMilkService(
+      RememberTheMilkSignatureGenerator signatureGenerator,
+      String baseUrl,
+      HttpTransport transport) {
     this.signatureGenerator = signatureGenerator;
+    this.baseUrl = baseUrl;
+    this.requestFactory = transport.createRequestFactory();
+  }
+
+  /** Returns the number of API calls this service has made. */
+  long getCallCount() {
+    return callCount.get();
+  }
+
+  /**
+   * Returns whether a task with this name can be given its due date when it is created, see {@link
+   * #createTask(String, String, String, Instant)}.
+   */
+  static boolean canSetDueDateOnCreate(String name) {
+    return SMART_ADD_CHARS.matchesNoneOf(name) && !name.contains("://");
   }
 
   public String createTimeline() throws IOException {
@@ -91,6 +127,24 @@ class RememberTheMilkService {
     return taskUpdateResponse.list.taskseries.get(0);
   }
 
+  /**
+   * Creates a task that is due on the given date, with a single call. The due date is added to
+   * the name with Smart Add syntax, so this is only for names for which {@link
+   * #canSetDueDateOnCreate} holds; any other Smart Add syntax in the name would be applied too.
+   */
+  public TaskSeries createTask(String name, String timeline, String listId, Instant dueDate)
+      throws IOException {
+    checkState(canSetDueDateOnCreate(name), "Task name contains Smart Add syntax");
+    Map<String, String> params = new LinkedHashMap<>();
+    params.put("method", RememberTheMilkMethods.TASKS_ADD.getMethodName());
+    params.put("timeline", timeline);
+    params.put("name", name + " ^" + DUE_DATE_FORMAT.format(dueDate));
+    params.put("list_id", listId);
+    params.put("parse", "1");
+    TaskUpdateResponse taskUpdateResponse = makeRequest(params, TaskUpdateResponse.class);
+    return taskUpdateResponse.list.taskseries.get(0);
+  }
+
   public void completeTask(String timeline, String listId, int seriesId, int taskId)
       throws IOException {
     // NB: The RTM API does not support setting an arbitrary completion time, so this method can
@@ -141,9 +195,9 @@ class RememberTheMilkService {
   private <T extends RememberTheMilkResponse> T makeRequest(
       Map<String, String> parameters, Class<T> dataClass) throws IOException {
 
-    URL signedUrl = signatureGenerator.getSignature(BASE_URL, parameters);
+    URL signedUrl = signatureGenerator.getSignature(baseUrl, parameters);
 
-    HttpRequestFactory requestFactory = HTTP_TRANSPORT.createRequestFactory();
+    callCount.incrementAndGet();
     HttpRequest getRequest = requestFactory.buildGetRequest(new GenericUrl(signedUrl));
     HttpResponse response = getRequest.execute();
     int statusCode = response.getStatusCode();
@@ -16,8 +16,22 @@
 
 package org.datatransferproject.transfer.rememberthemilk.tasks;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Splitter;
 import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import org.datatransferproject.api.launcher.MetricRecorder;
 import org.datatransferproject.api.launcher.Monitor;
 import org.datatransferproject.spi.transfer.idempotentexecutor.IdempotentImportExecutor;
 import org.datatransferproject.spi.transfer.provider.ImportResult;
@@ -30,24 +44,53 @@ import org.datatransferproject.types.transfer.auth.AppCredentials;
 import org.datatransferproject.types.transfer.auth.AuthData;
 import org.datatransferproject.types.transfer.auth.TokenAuthData;
 
-import java.io.IOException;
-import java.util.UUID;
-
-
 /*
  * Importer for Tasks data type to Remember The Milk Service.
+ *
+ * RTM allows few calls per second, so the importer keeps them to a minimum: each job gets one
+ * service and one timeline, which are reused for every page, and a due date is set by the call
+ * that creates the task whenever the task's name allows it. Completions are queued and sent after
+ * the tasks of a page are created, each recorded with its own idempotent id, so a failed
+ * completion doesn't cause its task to be created again. A created task is recorded with the ids
+ * RTM gave it, so that a completion that failed is sent again when the page is retried. The number
+ * of calls made for each task is recorded under CALLS_PER_TASK_TAG.
  */
 public class RememberTheMilkTasksImporter implements Importer<AuthData, TaskContainerResource> {
+  static final String CALLS_PER_TASK_TAG = "rtm_calls_per_task";
+  private static final String DATA_TYPE = "TASKS";
+  // Upper bound on the number of jobs whose service and timeline are held at any one time
+  private static final long MAX_CACHED_JOBS = 16;
+  private static final long EXPIRY_HOURS = 1;
+  // Separates the series id from the task id in the idempotent value of a created task
+  private static final String TASK_ID_SEPARATOR = ":";
 
-  private final AppCredentials appCredentials;
+  private final Function<TokenAuthData, RememberTheMilkService> serviceFactory;
+  private final MetricRecorder metricRecorder;
   private final Monitor monitor;
-  private RememberTheMilkService service;
+  private final Cache<UUID, JobImport> jobImports =
+      CacheBuilder.newBuilder()
+          .maximumSize(MAX_CACHED_JOBS)
+          .expireAfterAccess(EXPIRY_HOURS, TimeUnit.HOURS)
+          .build();
 
   public RememberTheMilkTasksImporter(
-      AppCredentials appCredentials, Monitor monitor) {
-    this.appCredentials = appCredentials;
+      AppCredentials appCredentials, MetricRecorder metricRecorder, Monitor monitor) {
+    this(
+        authData ->
+            new RememberTheMilkService(
+                new RememberTheMilkSignatureGenerator(appCredentials, authData.getToken())),
+        metricRecorder,
+        monitor);
+  }
+
+  @VisibleForTesting
+  RememberTheMilkTasksImporter(
+      Function<TokenAuthData, RememberTheMilkService> serviceFactory,
+      MetricRecorder metricRecorder,
+      Monitor monitor) {
+    this.serviceFactory = serviceFactory;
+    this.metricRecorder = metricRecorder;
     this.monitor = monitor;
-    this.service = null;
   }
 
   @Override
@@ -56,32 +99,54 @@ public class RememberTheMilkTasksImporter implements Importer<AuthData, TaskCont
       IdempotentImportExecutor idempotentExecutor,
       AuthData authData,
       TaskContainerResource data) {
-    String timeline;
     try {
-      RememberTheMilkService service = getOrCreateService(authData);
-
-      timeline = service.createTimeline();
+      JobImport jobImport = getOrCreateJobImport(jobId, authData);
+      RememberTheMilkService service = jobImport.service;
+      String timeline = jobImport.timeline;
 
       for (TaskListModel taskList : data.getLists()) {
         idempotentExecutor.executeAndSwallowIOExceptions(
             taskList.getId(),
             taskList.getName(),
-            () -> service.createTaskList(taskList.getName(), timeline).id
+            () -> String.valueOf(service.createTaskList(taskList.getName(), timeline).id)
         );
       }
 
+      List<PendingCompletion> completions = new ArrayList<>();
       for (TaskModel task : data.getTasks()) {
         // Empty or blank tasks aren't valid in RTM
         if (!Strings.isNullOrEmpty(task.getText())) {
+          String taskId = Integer.toString(task.hashCode());
+          if (idempotentExecutor.isKeyCached(taskId)) {
+            // Created on an earlier attempt, which may have failed to send the completion
+            requeueCompletion(idempotentExecutor, task, taskId, completions);
+            continue;
+          }
           idempotentExecutor.executeAndSwallowIOExceptions(
-              Integer.toString(task.hashCode()),
+              taskId,
               task.getText(),
               () -> {
                 String newList = idempotentExecutor.getCachedValue(task.getTaskListId());
-                return insertTask(task, newList, timeline);
+                return insertTask(service, task, taskId, newList, timeline, completions);
               });
         }
       }
+
+      for (PendingCompletion completion : completions) {
+        idempotentExecutor.executeAndSwallowIOExceptions(
+            getCompletionId(completion.taskId),
+            completion.name,
+            () -> {
+              long callsBefore = service.getCallCount();
+              try {
+                service.completeTask(
+                    timeline, completion.listId, completion.seriesId, completion.rtmTaskId);
+              } finally {
+                recordCallsPerTask(completion.calls + service.getCallCount() - callsBefore);
+              }
+              return completion.seriesId;
+            });
+      }
     } catch (Exception e) {
       monitor.severe(() -> "Error importing item", e);
       return new ImportResult(e);
@@ -89,30 +154,151 @@ public class RememberTheMilkTasksImporter implements Importer<AuthData, TaskCont
     return new ImportResult(ImportResult.ResultType.OK);
   }
 
-  private Integer insertTask(TaskModel task, String newList, String timeline) throws IOException {
-    TaskSeries addedTask = service.createTask(task.getText(), timeline, newList);
-    // todo: add notes
-    if (task.getCompletedTime() != null) {
+  /**
+   * Creates the task and sets its due date, with a single call where the name allows it. If the
+   * task is completed, its completion is added to {@code completions} rather than sent right away.
+   *
+   * @return the ids of the created task, to be recorded as its idempotent value
+   */
+  private String insertTask(
+      RememberTheMilkService service,
+      TaskModel task,
+      String taskId,
+      String newList,
+      String timeline,
+      List<PendingCompletion> completions)
+      throws IOException {
+    long callsBefore = service.getCallCount();
+    TaskSeries addedTask;
+    int rtmTaskId;
+    boolean completed = false;
+    try {
+      // TODO: Address recurring events with different due dates/times
+      boolean dueOnCreate =
+          task.getDueTime() != null
+              && RememberTheMilkService.canSetDueDateOnCreate(task.getText());
+      if (dueOnCreate) {
+        addedTask = service.createTask(task.getText(), timeline, newList, task.getDueTime());
+      } else {
+        addedTask = service.createTask(task.getText(), timeline, newList);
+      }
+      // todo: add notes
       // NB: this assumes that only one task was added above, and that the task series
       // in the response contains only one task.
-      // TODO: Address recurring events where some are completed and some are not
-      service.completeTask(timeline, newList, addedTask.id, addedTask.tasks.get(0).id);
+      rtmTaskId = addedTask.tasks.get(0).id;
+      if (task.getDueTime() != null && !dueOnCreate) {
+        service.setDueDate(timeline, newList, addedTask.id, rtmTaskId, task.getDueTime());
+      }
+      if (task.getCompletedTime() != null) {
+        // TODO: Address recurring events where some are completed and some are not
+        completions.add(
+            new PendingCompletion(
+                taskId,
+                task.getText(),
+                newList,
+                addedTask.id,
+                rtmTaskId,
+                service.getCallCount() - callsBefore));
+        completed = true;
+      }
+    } finally {
+      // Completed tasks are recorded once their completion has been sent
+      if (!completed) {
+        recordCallsPerTask(service.getCallCount() - callsBefore);
+      }
     }
-    if (task.getDueTime() != null) {
-      // TODO: Address recurring events with different due dates/times
-      service.setDueDate(
-          timeline, newList, addedTask.id, addedTask.tasks.get(0).id, task.getDueTime());
+    return addedTask.id + TASK_ID_SEPARATOR + rtmTaskId;
+  }
+
+  /**
+   * Adds the completion of a task created on an earlier attempt to {@code completions}, unless the
+   * task isn't completed or its completion was already sent.
+   */
+  private void requeueCompletion(
+      IdempotentImportExecutor idempotentExecutor,
+      TaskModel task,
+      String taskId,
+      List<PendingCompletion> completions) {
+    if (task.getCompletedTime() == null
+        || idempotentExecutor.isKeyCached(getCompletionId(taskId))) {
+      return;
+    }
+    Serializable createdIds = idempotentExecutor.getCachedValue(taskId);
+    List<String> ids =
+        createdIds == null
+            ? ImmutableList.of()
+            : Splitter.on(TASK_ID_SEPARATOR).splitToList(createdIds.toString());
+    if (ids.size() != 2) {
+      // Recorded without the RTM task id, so there is nothing to complete
+      monitor.info(() -> "Unable to complete previously created task " + taskId);
+      return;
     }
-    return addedTask.id;
+    String newList = idempotentExecutor.getCachedValue(task.getTaskListId());
+    completions.add(
+        new PendingCompletion(
+            taskId,
+            task.getText(),
+            newList,
+            Integer.parseInt(ids.get(0)),
+            Integer.parseInt(ids.get(1)),
+            0));
+  }
+
+  private static String getCompletionId(String taskId) {
+    return taskId + "-completed";
+  }
+
+  private void recordCallsPerTask(long calls) {
+    metricRecorder.recordMetric(DATA_TYPE, CALLS_PER_TASK_TAG, (int) calls);
   }
 
-  private RememberTheMilkService getOrCreateService(AuthData authData) {
+  /** Returns the job's service and timeline, creating the timeline on the job's first page. */
+  private JobImport getOrCreateJobImport(UUID jobId, AuthData authData) throws IOException {
     Preconditions.checkArgument(authData instanceof TokenAuthData);
-    return service == null ? createService((TokenAuthData) authData) : service;
+    try {
+      return jobImports.get(
+          jobId,
+          () -> {
+            RememberTheMilkService service = serviceFactory.apply((TokenAuthData) authData);
+            return new JobImport(service, service.createTimeline());
+          });
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException("Unable to create timeline for job " + jobId, e.getCause());
+    }
   }
 
-  private RememberTheMilkService createService(TokenAuthData authData) {
-    return new RememberTheMilkService(
-        new RememberTheMilkSignatureGenerator(appCredentials, authData.getToken()));
+  /** A job's service and the timeline all of its changes are made in. */
+  private static final class JobImport {
+    private final RememberTheMilkService service;
+    private final String timeline;
+
+    private JobImport(RememberTheMilkService service, String timeline) {
+      this.service = service;
+      this.timeline = timeline;
+    }
+  }
+
+  /** A created task that still has to be marked as completed. */
+  private static final class PendingCompletion {
+    private final String taskId;
+    private final String name;
+    private final String listId;
+    private final int seriesId;
+    private final int rtmTaskId;
+    // Calls made for the task so far
+    private final long calls;
+
+    private PendingCompletion(
+        String taskId, String name, String listId, int seriesId, int rtmTaskId, long calls) {
+      this.taskId = taskId;
+      this.name = name;
+      this.listId = listId;
+      this.seriesId = seriesId;
+      this.rtmTaskId = rtmTaskId;
+      this.calls = calls;
+    }
   }
 }
@@ -0,0 +1,264 @@
+/*
+ * Copyright 2019 The Data Transfer Project Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.datatransferproject.transfer.rememberthemilk.tasks;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.api.client.http.javanet.NetHttpTransport;
+import com.google.common.collect.ImmutableList;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import org.datatransferproject.api.launcher.MetricRecorder;
+import org.datatransferproject.api.launcher.Monitor;
+import org.datatransferproject.spi.transfer.provider.ImportResult;
+import org.datatransferproject.test.types.FakeIdempotentImportExecutor;
+import org.datatransferproject.types.common.models.tasks.TaskContainerResource;
+import org.datatransferproject.types.common.models.tasks.TaskListModel;
+import org.datatransferproject.types.common.models.tasks.TaskModel;
+import org.datatransferproject.types.transfer.auth.AppCredentials;
+import org.datatransferproject.types.transfer.auth.TokenAuthData;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Runs the importer against a local server that fakes the RTM REST endpoint. */
+public class RememberTheMilkTasksImporterTest {
+  private static final TokenAuthData AUTH_DATA = new TokenAuthData("token");
+  private static final Instant DUE = Instant.parse("2019-05-01T10:00:00Z");
+  private static final Instant COMPLETED = Instant.parse("2019-04-30T10:00:00Z");
+  private static final TaskListModel LIST = new TaskListModel("list1", "Groceries");
+
+  // Parameters of every call the fake endpoint received, in order
+  private final List<Map<String, String>> calls = Collections.synchronizedList(new ArrayList<>());
+  private final List<Integer> callsPerTask = new ArrayList<>();
+  // Number of calls to complete a task that the fake endpoint fails before answering again
+  private int failingCompletions;
+  private HttpServer server;
+  private RememberTheMilkTasksImporter importer;
+  private FakeIdempotentImportExecutor executor;
+
+  @Before
+  public void setUp() throws IOException {
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    server.createContext("/services/rest/", this::handle);
+    server.start();
+    String baseUrl = "http://127.0.0.1:" + server.getAddress().getPort() + "/services/rest/";
+    importer =
+        new RememberTheMilkTasksImporter(
+            authData ->
+                new RememberTheMilkService(
+                    new RememberTheMilkSignatureGenerator(
+                        new AppCredentials("key", "secret"), authData.getToken()),
+                    baseUrl,
+                    new NetHttpTransport()),
+            new RecordingMetricRecorder(),
+            new Monitor() {});
+    executor = new FakeIdempotentImportExecutor();
+  }
+
+  @After
+  public void tearDown() {
+    server.stop(0);
+  }
+
+  @Test
+  public void completedTaskWithDueDateTakesTwoCalls() {
+    importTasks(new TaskModel("list1", "Buy milk", null, COMPLETED, DUE));
+
+    assertThat(methods())
+        .containsExactly(
+            "rtm.timelines.create", "rtm.lists.add", "rtm.tasks.add", "rtm.tasks.complete")
+        .inOrder();
+    Map<String, String> add = calls.get(2);
+    assertThat(add.get("name")).isEqualTo("Buy milk ^2019-05-01");
+    assertThat(add.get("parse")).isEqualTo("1");
+    assertThat(callsPerTask).containsExactly(2);
+  }
+
+  @Test
+  public void dueDateIsSetSeparatelyForSmartAddNames() {
+    importTasks(new TaskModel("list1", "Call mom !1", null, null, DUE));
+
+    assertThat(methods())
+        .containsExactly(
+            "rtm.timelines.create", "rtm.lists.add", "rtm.tasks.add", "rtm.tasks.setDueDate")
+        .inOrder();
+    Map<String, String> add = calls.get(2);
+    assertThat(add.get("name")).isEqualTo("Call mom !1");
+    assertThat(add).doesNotContainKey("parse");
+    assertThat(callsPerTask).containsExactly(2);
+  }
+
+  @Test
+  public void completionsAreSentAfterThePagesTasks() {
+    importTasks(
+        new TaskModel("list1", "Buy milk", null, COMPLETED, null),
+        new TaskModel("list1", "Buy bread", null, null, null),
+        new TaskModel("list1", "Buy eggs", null, COMPLETED, null));
+
+    assertThat(methods())
+        .containsExactly(
+            "rtm.timelines.create",
+            "rtm.lists.add",
+            "rtm.tasks.add",
+            "rtm.tasks.add",
+            "rtm.tasks.add",
+            "rtm.tasks.complete",
+            "rtm.tasks.complete")
+        .inOrder();
+    assertThat(callsPerTask).containsExactly(1, 2, 2);
+  }
+
+  @Test
+  public void timelineIsCreatedOncePerJob() {
+    UUID jobId = UUID.randomUUID();
+    importTasks(jobId, new TaskModel("list1", "Buy milk", null, null, null));
+    importTasks(jobId, new TaskModel("list1", "Buy bread", null, null, null));
+    importTasks(UUID.randomUUID(), new TaskModel("list1", "Buy eggs", null, null, null));
+
+    assertThat(methods().stream().filter("rtm.timelines.create"::equals).count()).isEqualTo(2);
+    assertThat(methods().stream().filter("rtm.tasks.add"::equals).count()).isEqualTo(3);
+  }
+
+  @Test
+  public void failedCompletionIsSentAgainOnRetry() {
+    UUID jobId = UUID.randomUUID();
+    TaskModel task = new TaskModel("list1", "Buy milk", null, COMPLETED, null);
+    failingCompletions = 1;
+    importTasks(jobId, task);
+    // The fake gives each task the number of the call that created it
+    String rtmId = String.valueOf(methods().indexOf("rtm.tasks.add") + 1);
+    calls.clear();
+
+    importTasks(jobId, task);
+
+    assertThat(methods()).containsExactly("rtm.tasks.complete");
+    Map<String, String> complete = calls.get(0);
+    assertThat(complete.get("taskseries_id")).isEqualTo(rtmId);
+    assertThat(complete.get("task_id")).isEqualTo(rtmId);
+  }
+
+  @Test
+  public void completedTaskIsNotCompletedAgainOnRetry() {
+    UUID jobId = UUID.randomUUID();
+    TaskModel task = new TaskModel("list1", "Buy milk", null, COMPLETED, null);
+    importTasks(jobId, task);
+    calls.clear();
+
+    importTasks(jobId, task);
+
+    assertThat(methods()).isEmpty();
+  }
+
+  private void importTasks(TaskModel... tasks) {
+    importTasks(UUID.randomUUID(), tasks);
+  }
+
+  private void importTasks(UUID jobId, TaskModel... tasks) {
+    ImportResult result =
+        importer.importItem(
+            jobId,
+            executor,
+            AUTH_DATA,
+            new TaskContainerResource(ImmutableList.of(LIST), ImmutableList.copyOf(tasks)));
+    assertThat(result.getType()).isEqualTo(ImportResult.ResultType.OK);
+  }
+
+  private List<String> methods() {
+    synchronized (calls) {
+      return calls.stream().map(call -> call.get("method")).collect(Collectors.toList());
+    }
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    Map<String, String> params = new HashMap<>();
+    for (String param : exchange.getRequestURI().getQuery().split("&")) {
+      int separator = param.indexOf('=');
+      params.put(param.substring(0, separator), param.substring(separator + 1));
+    }
+    calls.add(params);
+
+    if ("rtm.tasks.complete".equals(params.get("method")) && failingCompletions > 0) {
+      failingCompletions--;
+      exchange.sendResponseHeaders(500, -1);
+      exchange.close();
+      return;
+    }
+    String body;
+    switch (params.get("method")) {
+      case "rtm.timelines.create":
+        body = "<timeline>42</timeline>";
+        break;
+      case "rtm.lists.add":
+        body =
+            "<transaction id=\"1\" undoable=\"0\"/>"
+                + "<list id=\"456\" name=\"list\" deleted=\"0\" locked=\"0\" "
+                + "archived=\"0\" position=\"0\" smart=\"0\" sort_order=\"0\"/>";
+        break;
+      default:
+        int id = calls.size();
+        body =
+            "<transaction id=\"1\" undoable=\"0\"/>"
+                + "<list id=\"456\">"
+                + "<taskseries id=\"" + id + "\" created=\"2019-05-01T10:00:00Z\" "
+                + "modified=\"2019-05-01T10:00:00Z\" name=\"task\" source=\"api\">"
+                + "<tags/><participants/><notes/>"
+                + "<task id=\"" + id + "\" due=\"\" has_due_time=\"0\" "
+                + "added=\"2019-05-01T10:00:00Z\" completed=\"\" deleted=\"\" priority=\"N\" "
+                + "postponed=\"0\" estimate=\"\"/>"
+                + "</taskseries></list>";
+    }
+    byte[] response =
+        ("<?xml version='1.0' encoding='UTF-8'?><rsp stat=\"ok\">" + body + "</rsp>")
+            .getBytes(StandardCharsets.UTF_8);
+    exchange.sendResponseHeaders(200, response.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(response);
+    }
+  }
+
+  private class RecordingMetricRecorder implements MetricRecorder {
+    @Override
+    public void recordMetric(String dataType, String tag) {}
+
+    @Override
+    public void recordMetric(String dataType, String tag, boolean bool) {}
+
+    @Override
+    public void recordMetric(String dataType, String tag, Duration duration) {}
+
+    @Override
+    public void recordMetric(String dataType, String tag, int value) {
+      if (RememberTheMilkTasksImporter.CALLS_PER_TASK_TAG.equals(tag)) {
+        callsPerTask.add(value);
+      }
+    }
+  }
+}
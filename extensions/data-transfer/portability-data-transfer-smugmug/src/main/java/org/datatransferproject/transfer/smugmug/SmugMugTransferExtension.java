@@ -21,6 +21,7 @@ import com.google.api.client.http.HttpTransport;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import org.datatransferproject.api.launcher.ExtensionContext;
+import org.datatransferproject.api.launcher.MetricRecorder;
 import org.datatransferproject.api.launcher.Monitor;
 import org.datatransferproject.api.launcher.TypeManager;
 import org.datatransferproject.spi.cloud.storage.AppCredentialStore;
@@ -28,9 +29,12 @@ import org.datatransferproject.spi.cloud.storage.TemporaryPerJobDataStore;
 import org.datatransferproject.spi.transfer.extension.TransferExtension;
 import org.datatransferproject.spi.transfer.provider.Exporter;
 import org.datatransferproject.spi.transfer.provider.Importer;
+import org.datatransferproject.transfer.JobClientCache;
+import org.datatransferproject.transfer.smugmug.photos.SmugMugInterface;
 import org.datatransferproject.transfer.smugmug.photos.SmugMugPhotosExporter;
 import org.datatransferproject.transfer.smugmug.photos.SmugMugPhotosImporter;
 import org.datatransferproject.types.transfer.auth.AppCredentials;
+import org.datatransferproject.types.transfer.auth.TokenSecretAuthData;
 
 import java.io.IOException;
 
@@ -99,8 +103,14 @@ public class SmugMugTransferExtension implements TransferExtension {
 
     ObjectMapper mapper = context.getService(TypeManager.class).getMapper();
 
-    exporter = new SmugMugPhotosExporter(appCredentials, mapper, jobStore, monitor);
-    importer = new SmugMugPhotosImporter(jobStore, appCredentials, mapper, monitor);
+    // Shared by the importer and exporter; clients are held per job and token, so each side of a
+    // job authenticates its own account once
+    JobClientCache<TokenSecretAuthData, SmugMugInterface> smugMugInterfaces =
+        SmugMugInterface.createClientCache(
+            appCredentials, mapper, context.getService(MetricRecorder.class));
+
+    exporter = new SmugMugPhotosExporter(smugMugInterfaces, jobStore, monitor);
+    importer = new SmugMugPhotosImporter(smugMugInterfaces, jobStore, monitor);
     initialized = true;
   }
 }
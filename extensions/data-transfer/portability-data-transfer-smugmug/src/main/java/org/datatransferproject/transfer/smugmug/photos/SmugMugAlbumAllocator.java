@@ -0,0 +1,204 @@
+/*
+ * Copyright 2018 The Data Transfer Project Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.datatransferproject.transfer.smugmug.photos;
+
+import static com.google.common.base.Preconditions.checkState;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.datatransferproject.spi.cloud.storage.TemporaryPerJobDataStore;
+import org.datatransferproject.types.common.models.photos.PhotoAlbum;
+
+/**
+ * Hands out the destination album for each imported photo, moving on to overflow albums as albums
+ * fill up.
+ *
+ * <p>Album counts and overflow links are kept in memory per job, along with the last album in each
+ * overflow chain, so finding an album with room doesn't touch the job store. Counts are written
+ * back in batches: before a photo is uploaded to an album, the album's stored count is raised to
+ * cover the next {@code checkpointInterval} photos if it doesn't already, and {@link #checkpoint}
+ * writes the exact counts. A worker that dies between checkpoints therefore leaves albums looking
+ * fuller than they are, never emptier, and a resumed job can't overfill them.
+ */
+class SmugMugAlbumAllocator {
+  // Upper bound on the number of jobs whose albums are held at any one time
+  private static final long MAX_CACHED_JOBS = 16;
+  private static final long EXPIRY_HOURS = 1;
+
+  private final TemporaryPerJobDataStore jobStore;
+  private final int albumMaxSize;
+  private final int checkpointInterval;
+  private final Cache<UUID, JobAlbums> jobs =
+      CacheBuilder.newBuilder()
+          .maximumSize(MAX_CACHED_JOBS)
+          .expireAfterAccess(EXPIRY_HOURS, TimeUnit.HOURS)
+          .build();
+
+  SmugMugAlbumAllocator(
+      TemporaryPerJobDataStore jobStore, int albumMaxSize, int checkpointInterval) {
+    checkState(checkpointInterval > 0, "checkpointInterval should be > 0");
+    this.jobStore = jobStore;
+    this.albumMaxSize = albumMaxSize;
+    this.checkpointInterval = checkpointInterval;
+  }
+
+  /** Stores a newly created album. */
+  synchronized void register(UUID jobId, SmugMugPhotoTempData album) throws IOException {
+    jobStore.create(jobId, getTempDataId(album.getAlbumExportId()), album);
+    JobAlbums albums = getJobAlbums(jobId);
+    albums.albums.put(album.getAlbumExportId(), album);
+    albums.storedCounts.put(album.getAlbumExportId(), album.getPhotoCount());
+  }
+
+  /**
+   * Returns the album the next photo of {@code baseAlbumId} should be uploaded to, creating an
+   * overflow album with {@code overflowAlbumCreator} if every album in the chain is full.
+   */
+  synchronized SmugMugPhotoTempData allocate(
+      UUID jobId, String baseAlbumId, OverflowAlbumCreator overflowAlbumCreator)
+      throws Exception {
+    JobAlbums albums = getJobAlbums(jobId);
+    SmugMugPhotoTempData baseAlbum = albums.load(jobId, baseAlbumId);
+    SmugMugPhotoTempData album =
+        albums.load(jobId, albums.lastAlbums.getOrDefault(baseAlbumId, baseAlbumId));
+    int depth = albums.depths.getOrDefault(baseAlbumId, 0);
+    while (album.getPhotoCount() >= albumMaxSize) {
+      if (album.getOverflowAlbumExportId() == null) {
+        // since the album is full and has no overflow, we need to create a new one
+        PhotoAlbum newAlbum =
+            createOverflowAlbum(
+                baseAlbum.getAlbumExportId(),
+                baseAlbum.getAlbumName(),
+                baseAlbum.getAlbumDescription(),
+                depth + 1);
+        overflowAlbumCreator.create(newAlbum);
+        album.setOverflowAlbumExportId(newAlbum.getId());
+        store(jobId, album, albums.storedCounts.get(album.getAlbumExportId()));
+      }
+      album = albums.load(jobId, album.getOverflowAlbumExportId());
+      depth += 1;
+    }
+    albums.lastAlbums.put(baseAlbumId, album.getAlbumExportId());
+    albums.depths.put(baseAlbumId, depth);
+
+    int storedCount = albums.storedCounts.get(album.getAlbumExportId());
+    if (album.getPhotoCount() >= storedCount) {
+      int reservedCount = Math.min(album.getPhotoCount() + checkpointInterval, albumMaxSize);
+      store(jobId, album, reservedCount);
+      albums.storedCounts.put(album.getAlbumExportId(), reservedCount);
+    }
+    return album;
+  }
+
+  /** Counts a photo uploaded to an album returned by {@link #allocate}. */
+  synchronized void recordUpload(UUID jobId, SmugMugPhotoTempData album) {
+    album.incrementPhotoCount();
+    getJobAlbums(jobId).dirty.add(album.getAlbumExportId());
+  }
+
+  /** Writes the exact count of every album that has had photos uploaded since the last call. */
+  synchronized void checkpoint(UUID jobId) {
+    JobAlbums albums = jobs.getIfPresent(jobId);
+    if (albums == null) {
+      return;
+    }
+    for (String albumExportId : albums.dirty) {
+      SmugMugPhotoTempData album = albums.albums.get(albumExportId);
+      jobStore.update(jobId, getTempDataId(albumExportId), album);
+      albums.storedCounts.put(albumExportId, album.getPhotoCount());
+    }
+    albums.dirty.clear();
+  }
+
+  /** Writes {@code album} with the given photo count, which may be ahead of its actual count. */
+  private void store(UUID jobId, SmugMugPhotoTempData album, int photoCount) {
+    jobStore.update(
+        jobId,
+        getTempDataId(album.getAlbumExportId()),
+        new SmugMugPhotoTempData(
+            album.getAlbumExportId(),
+            album.getAlbumName(),
+            album.getAlbumDescription(),
+            album.getAlbumUri(),
+            Math.max(album.getPhotoCount(), photoCount),
+            album.getOverflowAlbumExportId()));
+  }
+
+  private JobAlbums getJobAlbums(UUID jobId) {
+    try {
+      return jobs.get(jobId, JobAlbums::new);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static String getTempDataId(String albumId) {
+    return String.format("smugmug-album-temp-data-%s", albumId);
+  }
+
+  /**
+   * Create an overflow album using the base album's id, name, and description and the overflow
+   * album's opy number. E.g. if baseAlbum needs a single overflow album, it will be created with
+   * createOverflowAlbum("baseAlbumId", "baseAlbumName", "baseAlbumDescription", 1) and result in an
+   * album PhotoAlbum("baseAlbumId-overflow-1", "baseAlbumName (1)", "baseAlbumDescription")
+   */
+  private static PhotoAlbum createOverflowAlbum(
+      String baseAlbumId, String baseAlbumName, String baseAlbumDescription, int copyNumber) {
+    checkState(copyNumber > 0, "copyNumber should be > 0");
+    return new PhotoAlbum(
+        String.format("%s-overflow-%d", baseAlbumId, copyNumber),
+        String.format("%s (%d)", baseAlbumName, copyNumber),
+        baseAlbumDescription);
+  }
+
+  /** Creates an overflow album in the destination account. */
+  @FunctionalInterface
+  interface OverflowAlbumCreator {
+    void create(PhotoAlbum overflowAlbum) throws Exception;
+  }
+
+  /** The albums of one job that have been read or written so far. */
+  private final class JobAlbums {
+    // Mapping of album export id -> album
+    private final Map<String, SmugMugPhotoTempData> albums = new HashMap<>();
+    // Mapping of album export id -> photo count last written to the job store
+    private final Map<String, Integer> storedCounts = new HashMap<>();
+    // Mapping of base album export id -> last album found in its overflow chain, and its depth
+    private final Map<String, String> lastAlbums = new HashMap<>();
+    private final Map<String, Integer> depths = new HashMap<>();
+    private final Set<String> dirty = new LinkedHashSet<>();
+
+    private SmugMugPhotoTempData load(UUID jobId, String albumExportId) throws IOException {
+      SmugMugPhotoTempData album = albums.get(albumExportId);
+      if (album == null) {
+        album =
+            jobStore.findData(jobId, getTempDataId(albumExportId), SmugMugPhotoTempData.class);
+        checkState(album != null, "No temp data for album %s", albumExportId);
+        albums.put(albumExportId, album);
+        storedCounts.put(albumExportId, album.getPhotoCount());
+      }
+      return album;
+    }
+  }
+}
@@ -24,6 +24,8 @@ import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.net.HttpHeaders;
+import org.datatransferproject.api.launcher.MetricRecorder;
+import org.datatransferproject.transfer.JobClientCache;
 import org.datatransferproject.transfer.smugmug.photos.model.*;
 import org.datatransferproject.types.common.models.photos.PhotoModel;
 import org.datatransferproject.types.transfer.auth.AppCredentials;
@@ -56,6 +58,18 @@ public class SmugMugInterface {
   private final ObjectMapper mapper;
   private final SmugMugUser user;
 
+  /**
+   * Returns a cache that holds one interface per job and token, since creating one makes a
+   * blocking request for the user's information.
+   */
+  public static JobClientCache<TokenSecretAuthData, SmugMugInterface> createClientCache(
+      AppCredentials appCredentials, ObjectMapper mapper, MetricRecorder metricRecorder) {
+    return new JobClientCache<>(
+        "PHOTOS",
+        metricRecorder,
+        authData -> new SmugMugInterface(appCredentials, authData, mapper));
+  }
+
   SmugMugInterface(AppCredentials appCredentials, TokenSecretAuthData authData, ObjectMapper mapper)
       throws IOException {
     this.oAuthService =
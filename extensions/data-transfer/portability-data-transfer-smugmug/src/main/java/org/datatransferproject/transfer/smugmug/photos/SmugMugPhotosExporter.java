@@ -16,7 +16,6 @@
 
 package org.datatransferproject.transfer.smugmug.photos;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
@@ -27,6 +26,7 @@ import org.datatransferproject.spi.transfer.provider.ExportResult;
 import org.datatransferproject.spi.transfer.provider.ExportResult.ResultType;
 import org.datatransferproject.spi.transfer.provider.Exporter;
 import org.datatransferproject.spi.transfer.types.ContinuationData;
+import org.datatransferproject.transfer.JobClientCache;
 import org.datatransferproject.transfer.smugmug.photos.model.SmugMugAlbum;
 import org.datatransferproject.transfer.smugmug.photos.model.SmugMugAlbumImageResponse;
 import org.datatransferproject.transfer.smugmug.photos.model.SmugMugAlbumsResponse;
@@ -37,7 +37,6 @@ import org.datatransferproject.types.common.models.IdOnlyContainerResource;
 import org.datatransferproject.types.common.models.photos.PhotoAlbum;
 import org.datatransferproject.types.common.models.photos.PhotoModel;
 import org.datatransferproject.types.common.models.photos.PhotosContainerResource;
-import org.datatransferproject.types.transfer.auth.AppCredentials;
 import org.datatransferproject.types.transfer.auth.TokenSecretAuthData;
 
 import java.io.IOException;
@@ -53,31 +52,34 @@ public class SmugMugPhotosExporter
   static final String ALBUM_TOKEN_PREFIX = "album:";
   static final String PHOTO_TOKEN_PREFIX = "photo:";
 
-  private final AppCredentials appCredentials;
-  private final ObjectMapper mapper;
   private final TemporaryPerJobDataStore jobStore;
   private final Monitor monitor;
 
   private SmugMugInterface smugMugInterface;
+  private final JobClientCache<TokenSecretAuthData, SmugMugInterface> smugMugInterfaces;
 
   public SmugMugPhotosExporter(
-      AppCredentials appCredentials,
-      ObjectMapper mapper,
+      JobClientCache<TokenSecretAuthData, SmugMugInterface> smugMugInterfaces,
       TemporaryPerJobDataStore jobStore,
       Monitor monitor) {
-    this(null, appCredentials, mapper, jobStore, monitor);
+    this(null, smugMugInterfaces, jobStore, monitor);
   }
 
   @VisibleForTesting
   SmugMugPhotosExporter(
       SmugMugInterface smugMugInterface,
-      AppCredentials appCredentials,
-      ObjectMapper mapper,
       TemporaryPerJobDataStore jobStore,
       Monitor monitor) {
-    this.appCredentials = appCredentials;
+    this(smugMugInterface, null, jobStore, monitor);
+  }
+
+  private SmugMugPhotosExporter(
+      SmugMugInterface smugMugInterface,
+      JobClientCache<TokenSecretAuthData, SmugMugInterface> smugMugInterfaces,
+      TemporaryPerJobDataStore jobStore,
+      Monitor monitor) {
+    this.smugMugInterfaces = smugMugInterfaces;
     this.smugMugInterface = smugMugInterface;
-    this.mapper = mapper;
     this.jobStore = jobStore;
     this.monitor = monitor;
   }
@@ -99,7 +101,7 @@ public class SmugMugPhotosExporter
     SmugMugInterface smugMugInterface;
 
     try {
-      smugMugInterface = getOrCreateSmugMugInterface(authData);
+      smugMugInterface = getOrCreateSmugMugInterface(jobId, authData);
     } catch (IOException e) {
       monitor.severe(() -> "Unable to create Smugmug service for user", e);
       throw e;
@@ -239,11 +241,11 @@ public class SmugMugPhotosExporter
     return new ExportResult<>(resultType, resource, continuationData);
   }
 
-  // Returns the provided interface, or a new one specific to the authData provided.
-  private SmugMugInterface getOrCreateSmugMugInterface(TokenSecretAuthData authData)
-      throws IOException {
+  // Returns the provided interface, or the one held for the job and authData provided.
+  private SmugMugInterface getOrCreateSmugMugInterface(
+      UUID jobId, TokenSecretAuthData authData) throws IOException {
     return smugMugInterface == null
-        ? new SmugMugInterface(appCredentials, authData, mapper)
+        ? smugMugInterfaces.getOrCreate(jobId, authData)
         : smugMugInterface;
   }
 
@@ -16,9 +16,6 @@
 
 package org.datatransferproject.transfer.smugmug.photos;
 
-import static com.google.common.base.Preconditions.checkState;
-
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Strings;
 import java.io.IOException;
@@ -29,32 +26,33 @@ import org.datatransferproject.spi.cloud.storage.TemporaryPerJobDataStore;
 import org.datatransferproject.spi.transfer.idempotentexecutor.IdempotentImportExecutor;
 import org.datatransferproject.spi.transfer.provider.ImportResult;
 import org.datatransferproject.spi.transfer.provider.Importer;
+import org.datatransferproject.transfer.JobClientCache;
 import org.datatransferproject.transfer.smugmug.SmugMugTransmogrificationConfig;
 import org.datatransferproject.transfer.smugmug.photos.model.SmugMugAlbumResponse;
 import org.datatransferproject.transfer.smugmug.photos.model.SmugMugImageUploadResponse;
 import org.datatransferproject.types.common.models.photos.PhotoAlbum;
 import org.datatransferproject.types.common.models.photos.PhotoModel;
 import org.datatransferproject.types.common.models.photos.PhotosContainerResource;
-import org.datatransferproject.types.transfer.auth.AppCredentials;
 import org.datatransferproject.types.transfer.auth.TokenSecretAuthData;
 
 public class SmugMugPhotosImporter
     implements Importer<TokenSecretAuthData, PhotosContainerResource> {
 
   private static final String DEFAULT_ALBUM_NAME = "Untitled Album";
+  // Album counts are written to the job store at most once per this many photos
+  private static final int ALBUM_CHECKPOINT_INTERVAL = 50;
   private final TemporaryPerJobDataStore jobStore;
-  private final AppCredentials appCredentials;
-  private final ObjectMapper mapper;
   private final Monitor monitor;
   private final SmugMugTransmogrificationConfig transmogrificationConfig;
   private final SmugMugInterface smugMugInterface;
+  private final JobClientCache<TokenSecretAuthData, SmugMugInterface> smugMugInterfaces;
+  private final SmugMugAlbumAllocator albumAllocator;
 
   public SmugMugPhotosImporter(
+      JobClientCache<TokenSecretAuthData, SmugMugInterface> smugMugInterfaces,
       TemporaryPerJobDataStore jobStore,
-      AppCredentials appCredentials,
-      ObjectMapper mapper,
       Monitor monitor) {
-    this(null, new SmugMugTransmogrificationConfig(), jobStore, appCredentials, mapper, monitor);
+    this(null, smugMugInterfaces, new SmugMugTransmogrificationConfig(), jobStore, monitor);
   }
 
   @VisibleForTesting
@@ -62,14 +60,23 @@ public class SmugMugPhotosImporter
       SmugMugInterface smugMugInterface,
       SmugMugTransmogrificationConfig transmogrificationConfig,
       TemporaryPerJobDataStore jobStore,
-      AppCredentials appCredentials,
-      ObjectMapper mapper,
+      Monitor monitor) {
+    this(smugMugInterface, null, transmogrificationConfig, jobStore, monitor);
+  }
+
+  private SmugMugPhotosImporter(
+      SmugMugInterface smugMugInterface,
+      JobClientCache<TokenSecretAuthData, SmugMugInterface> smugMugInterfaces,
+      SmugMugTransmogrificationConfig transmogrificationConfig,
+      TemporaryPerJobDataStore jobStore,
       Monitor monitor) {
     this.smugMugInterface = smugMugInterface;
+    this.smugMugInterfaces = smugMugInterfaces;
     this.transmogrificationConfig = transmogrificationConfig;
+    this.albumAllocator =
+        new SmugMugAlbumAllocator(
+            jobStore, transmogrificationConfig.getAlbumMaxSize(), ALBUM_CHECKPOINT_INTERVAL);
     this.jobStore = jobStore;
-    this.appCredentials = appCredentials;
-    this.mapper = mapper;
     this.monitor = monitor;
   }
 
@@ -85,7 +92,7 @@ public class SmugMugPhotosImporter
     data.transmogrify(transmogrificationConfig);
 
     try {
-      SmugMugInterface smugMugInterface = getOrCreateSmugMugInterface(authData);
+      SmugMugInterface smugMugInterface = getOrCreateSmugMugInterface(jobId, authData);
       for (PhotoAlbum album : data.getAlbums()) {
         idempotentExecutor.executeAndSwallowIOExceptions(
             album.getId(),
@@ -96,8 +103,10 @@ public class SmugMugPhotosImporter
         idempotentExecutor.executeAndSwallowIOExceptions(
             photo.getAlbumId() + "-" + photo.getDataId(),
             photo.getTitle(),
-            () -> importSinglePhoto(jobId, idempotentExecutor, photo, smugMugInterface));
+            () -> importSinglePhoto(jobId, idempotentExecutor, photo, smugMugInterface),
+            SmugMugPhotosImporter::getImageUri);
       }
+      albumAllocator.checkpoint(jobId);
     } catch (IOException e) {
       monitor.severe(() -> "Error importing", e);
       return new ImportResult(e);
@@ -117,12 +126,12 @@ public class SmugMugPhotosImporter
     SmugMugPhotoTempData tempData =
         new SmugMugPhotoTempData(
             inputAlbum.getId(), albumName, inputAlbum.getDescription(), albumResponse.getUri());
-    jobStore.create(jobId, getTempDataId(inputAlbum.getId()), tempData);
+    albumAllocator.register(jobId, tempData);
     return albumResponse.getUri();
   }
 
   @VisibleForTesting
-  String importSinglePhoto(
+  SmugMugImageUploadResponse importSinglePhoto(
       UUID jobId,
       IdempotentImportExecutor idempotentExecutor,
       PhotoModel inputPhoto,
@@ -142,17 +151,21 @@ public class SmugMugPhotosImporter
 
     SmugMugImageUploadResponse response =
         smugMugInterface.uploadImage(inputPhoto, albumTempData.getAlbumUri(), inputStream);
-    albumTempData.incrementPhotoCount();
-    jobStore.update(jobId, getTempDataId(albumTempData.getAlbumExportId()), albumTempData);
+    albumAllocator.recordUpload(jobId, albumTempData);
 
-    return response.toString();
+    return response;
   }
 
-  // Returns the provided interface, or a new one specific to the authData provided.
-  private SmugMugInterface getOrCreateSmugMugInterface(TokenSecretAuthData authData)
-      throws IOException {
+  // Only the uri of the uploaded image is kept as the idempotent result
+  private static String getImageUri(SmugMugImageUploadResponse response) {
+    return response.getImageInfo() == null ? null : response.getImageInfo().getImageUri();
+  }
+
+  // Returns the provided interface, or the one held for the job and authData provided.
+  private SmugMugInterface getOrCreateSmugMugInterface(
+      UUID jobId, TokenSecretAuthData authData) throws IOException {
     return smugMugInterface == null
-        ? new SmugMugInterface(appCredentials, authData, mapper)
+        ? smugMugInterfaces.getOrCreate(jobId, authData)
         : smugMugInterface;
   }
 
@@ -167,60 +180,13 @@ public class SmugMugPhotosImporter
       String baseAlbumId,
       SmugMugInterface smugMugInterface)
       throws Exception {
-    SmugMugPhotoTempData baseAlbumTempData =
-        jobStore.findData(jobId, getTempDataId(baseAlbumId), SmugMugPhotoTempData.class);
-    SmugMugPhotoTempData albumTempData = baseAlbumTempData;
-    int depth = 0;
-    while (albumTempData.getPhotoCount() >= transmogrificationConfig.getAlbumMaxSize()) {
-      if (albumTempData.getOverflowAlbumExportId() == null) {
-        PhotoAlbum newAlbum =
-            createOverflowAlbum(
-                baseAlbumTempData.getAlbumExportId(),
-                baseAlbumTempData.getAlbumName(),
-                baseAlbumTempData.getAlbumDescription(),
-                depth + 1);
-        // since the album is full and has no overflow, we need to create a new one
-        String newUri =
+    return albumAllocator.allocate(
+        jobId,
+        baseAlbumId,
+        newAlbum ->
             idempotentExecutor.executeOrThrowException(
                 newAlbum.getId(),
                 newAlbum.getName(),
-                () -> importSingleAlbum(jobId, newAlbum, smugMugInterface));
-        albumTempData.setOverflowAlbumExportId(newAlbum.getId());
-        jobStore.update(jobId, getTempDataId(albumTempData.getAlbumExportId()), albumTempData);
-        albumTempData =
-            jobStore.findData(
-                jobId,
-                getTempDataId(albumTempData.getOverflowAlbumExportId()),
-                SmugMugPhotoTempData.class);
-      } else {
-        albumTempData =
-            jobStore.findData(
-                jobId,
-                getTempDataId(albumTempData.getOverflowAlbumExportId()),
-                SmugMugPhotoTempData.class);
-      }
-      depth += 1;
-    }
-    return albumTempData;
-  }
-
-  private static String getTempDataId(String albumId) {
-    return String.format("smugmug-album-temp-data-%s", albumId);
-  }
-
-  /**
-   * Create an overflow album using the base album's id, name, and description and the overflow
-   * album's opy number. E.g. if baseAlbum needs a single overflow album, it will be created with
-   * createOverflowAlbum("baseAlbumId", "baseAlbumName", "baseAlbumDescription", 1) and result in an
-   * album PhotoAlbum("baseAlbumId-overflow-1", "baseAlbumName (1)", "baseAlbumDescription")
-   */
-  private static PhotoAlbum createOverflowAlbum(
-      String baseAlbumId, String baseAlbumName, String baseAlbumDescription, int copyNumber)
-      throws Exception {
-    checkState(copyNumber > 0, "copyNumber should be > 0");
-    return new PhotoAlbum(
-        String.format("%s-overflow-%d", baseAlbumId, copyNumber),
-        String.format("%s (%d)", baseAlbumName, copyNumber),
-        baseAlbumDescription);
+                () -> importSingleAlbum(jobId, newAlbum, smugMugInterface)));
   }
 }
@@ -92,5 +92,9 @@ public final class SmugMugImageUploadResponse {
           .add("URL", url)
           .toString();
     }
+
+    public String getImageUri() {
+      return imageUri;
+    }
   }
 }
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2018 The Data Transfer Project Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.datatransferproject.transfer.smugmug.photos;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import org.datatransferproject.cloud.local.LocalJobStore;
+import org.datatransferproject.spi.cloud.storage.TemporaryPerJobDataStore;
+import org.datatransferproject.types.common.models.DataModel;
+import org.datatransferproject.types.common.models.photos.PhotoAlbum;
+import org.junit.Test;
+
+public class SmugMugAlbumAllocatorTest {
+  private static final String TEMP_DATA_FORMAT = "smugmug-album-temp-data-%s";
+  private static final String ALBUM_ID = "albumId";
+
+  private final UUID jobId = UUID.randomUUID();
+  private final CountingJobStore jobStore = new CountingJobStore();
+
+  @Test
+  public void batchesCountUpdates() throws Exception {
+    SmugMugAlbumAllocator allocator = new SmugMugAlbumAllocator(jobStore, 100, 5);
+    allocator.register(jobId, newAlbum(ALBUM_ID));
+
+    for (int i = 0; i < 10; i++) {
+      SmugMugPhotoTempData album = allocator.allocate(jobId, ALBUM_ID, this::failOnOverflow);
+      allocator.recordUpload(jobId, album);
+    }
+
+    // One reservation per five photos, and the stored count is never behind the real one
+    assertThat(jobStore.updates).isEqualTo(2);
+    assertThat(storedAlbum(ALBUM_ID).getPhotoCount()).isEqualTo(10);
+
+    allocator.allocate(jobId, ALBUM_ID, this::failOnOverflow);
+    assertThat(storedAlbum(ALBUM_ID).getPhotoCount()).isEqualTo(15);
+
+    allocator.checkpoint(jobId);
+    assertThat(storedAlbum(ALBUM_ID).getPhotoCount()).isEqualTo(10);
+  }
+
+  @Test
+  public void resumedJobDoesNotOverfillAlbum() throws Exception {
+    SmugMugAlbumAllocator allocator = new SmugMugAlbumAllocator(jobStore, 4, 10);
+    allocator.register(jobId, newAlbum(ALBUM_ID));
+    SmugMugPhotoTempData album = allocator.allocate(jobId, ALBUM_ID, this::failOnOverflow);
+    allocator.recordUpload(jobId, album);
+
+    // A new worker only sees what was written before the first one died
+    List<String> createdAlbums = new ArrayList<>();
+    SmugMugAlbumAllocator resumed = new SmugMugAlbumAllocator(jobStore, 4, 10);
+    SmugMugPhotoTempData destination =
+        resumed.allocate(
+            jobId,
+            ALBUM_ID,
+            overflowAlbum -> {
+              createdAlbums.add(overflowAlbum.getId());
+              resumed.register(jobId, newAlbum(overflowAlbum.getId()));
+            });
+
+    assertThat(createdAlbums).containsExactly(ALBUM_ID + "-overflow-1");
+    assertThat(destination.getAlbumExportId()).isEqualTo(ALBUM_ID + "-overflow-1");
+  }
+
+  @Test
+  public void followsOverflowChainInMemory() throws Exception {
+    SmugMugAlbumAllocator allocator = new SmugMugAlbumAllocator(jobStore, 2, 10);
+    allocator.register(jobId, newAlbum(ALBUM_ID));
+    List<String> destinations = new ArrayList<>();
+
+    for (int i = 0; i < 5; i++) {
+      SmugMugPhotoTempData album =
+          allocator.allocate(
+              jobId,
+              ALBUM_ID,
+              overflowAlbum -> allocator.register(jobId, newAlbum(overflowAlbum.getId())));
+      allocator.recordUpload(jobId, album);
+      destinations.add(album.getAlbumExportId());
+    }
+    allocator.checkpoint(jobId);
+
+    assertThat(destinations)
+        .containsExactly(
+            ALBUM_ID,
+            ALBUM_ID,
+            ALBUM_ID + "-overflow-1",
+            ALBUM_ID + "-overflow-1",
+            ALBUM_ID + "-overflow-2")
+        .inOrder();
+    assertThat(jobStore.finds).isEqualTo(0);
+    assertThat(storedAlbum(ALBUM_ID).getOverflowAlbumExportId())
+        .isEqualTo(ALBUM_ID + "-overflow-1");
+    assertThat(storedAlbum(ALBUM_ID + "-overflow-2").getPhotoCount()).isEqualTo(1);
+  }
+
+  private void failOnOverflow(PhotoAlbum overflowAlbum) {
+    throw new AssertionError("Unexpected overflow album " + overflowAlbum.getId());
+  }
+
+  private static SmugMugPhotoTempData newAlbum(String albumId) {
+    return new SmugMugPhotoTempData(albumId, "name", "description", albumId + "Uri");
+  }
+
+  private SmugMugPhotoTempData storedAlbum(String albumId) throws IOException {
+    return jobStore.delegate.findData(
+        jobId, String.format(TEMP_DATA_FORMAT, albumId), SmugMugPhotoTempData.class);
+  }
+
+  /** Counts the reads and writes made through it. */
+  private static class CountingJobStore implements TemporaryPerJobDataStore {
+    private final LocalJobStore delegate = new LocalJobStore();
+    private int updates;
+    private int finds;
+
+    @Override
+    public <T extends DataModel> void create(UUID jobId, String key, T model) throws IOException {
+      delegate.create(jobId, key, model);
+    }
+
+    @Override
+    public <T extends DataModel> void update(UUID jobId, String key, T model) {
+      updates++;
+      delegate.update(jobId, key, model);
+    }
+
+    @Override
+    public <T extends DataModel> T findData(UUID jobId, String key, Class<T> type)
+        throws IOException {
+      finds++;
+      return delegate.findData(jobId, key, type);
+    }
+  }
+}
@@ -25,7 +25,6 @@ import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.collect.ImmutableList;
 import java.io.BufferedInputStream;
 import java.util.Collections;
@@ -43,7 +42,6 @@ import org.datatransferproject.transfer.smugmug.photos.model.SmugMugImageUploadR
 import org.datatransferproject.types.common.models.photos.PhotoAlbum;
 import org.datatransferproject.types.common.models.photos.PhotoModel;
 import org.datatransferproject.types.common.models.photos.PhotosContainerResource;
-import org.datatransferproject.types.transfer.auth.AppCredentials;
 import org.datatransferproject.types.transfer.auth.TokenSecretAuthData;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
@@ -150,8 +148,6 @@ public class SmugMugPhotosImporterTest {
             smugMugInterface,
             config,
             jobStore,
-            new AppCredentials("key", "secret"),
-            mock(ObjectMapper.class),
             monitor);
     ImportResult result =
         importer.importItem(
@@ -241,8 +237,6 @@ public class SmugMugPhotosImporterTest {
             smugMugInterface,
             config,
             jobStore,
-            new AppCredentials("key", "secret"),
-            mock(ObjectMapper.class),
             monitor);
     ImportResult result =
         importer.importItem(
@@ -13,7 +13,6 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
-
 package org.datatransferproject.transfer.spotify.playlists;
 
 
@@ -27,12 +26,14 @@ import com.wrapper.spotify.model_objects.specification.Paging;
 import com.wrapper.spotify.model_objects.specification.PlaylistSimplified;
 import com.wrapper.spotify.model_objects.specification.PlaylistTrack;
 import com.wrapper.spotify.model_objects.specification.Track;
-import com.wrapper.spotify.model_objects.specification.User;
 import org.datatransferproject.api.launcher.Monitor;
 import org.datatransferproject.spi.transfer.provider.ExportResult;
 import org.datatransferproject.spi.transfer.provider.ExportResult.ResultType;
 import org.datatransferproject.spi.transfer.provider.Exporter;
+import org.datatransferproject.spi.transfer.types.ContinuationData;
 import org.datatransferproject.types.common.ExportInformation;
+import org.datatransferproject.types.common.IntPaginationToken;
+import org.datatransferproject.types.common.models.IdOnlyContainerResource;
 import org.datatransferproject.types.common.models.playlists.MusicAlbum;
 import org.datatransferproject.types.common.models.playlists.MusicGroup;
 import org.datatransferproject.types.common.models.playlists.MusicPlaylist;
@@ -41,16 +42,22 @@ import org.datatransferproject.types.common.models.playlists.PlaylistContainerRe
 import org.datatransferproject.types.transfer.auth.TokensAndUrlAuthData;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
 /**
  * Exports playlists from Spotify.
+ *
+ * <p>Each call exports a single page: either a page of the user's playlists, without their tracks,
+ * or a page of the tracks of one playlist. Every exported playlist is returned as an {@link
+ * IdOnlyContainerResource} sub-resource, which the copier then exports page by page, so no more
+ * than one page is held in memory at a time.
  **/
 public class SpotifyPlaylistExporter implements
     Exporter<TokensAndUrlAuthData, PlaylistContainerResource> {
+  // The maximum page sizes allowed by the Spotify API
+  private static final int PLAYLIST_PAGE_SIZE = 50;
+  private static final int TRACK_PAGE_SIZE = 100;
 
   private final Monitor monitor;
   private final SpotifyApi spotifyApi;
@@ -67,64 +74,90 @@ public class SpotifyPlaylistExporter implements
     spotifyApi.setAccessToken(authData.getAccessToken());
     spotifyApi.setRefreshToken(authData.getRefreshToken());
 
-    User user = spotifyApi.getCurrentUsersProfile().build().execute();
-
-    return new ExportResult<>(
-        ResultType.END,
-        enumeratePlaylists(user.getId()));
-  }
-
-  private PlaylistContainerResource enumeratePlaylists(String userId)
-      throws IOException, SpotifyWebApiException {
-    List<MusicPlaylist> results = new ArrayList<>();
     int offset = 0;
-    Paging<PlaylistSimplified> playlists;
-    do {
-      int finalOffset = offset;
-      monitor.debug(() -> format("Fetching playlists with offset %s", finalOffset));
-      playlists = spotifyApi.getListOfUsersPlaylists(userId)
-          .offset(offset)
-          .build()
-          .execute();
-      for (PlaylistSimplified playlist : playlists.getItems()) {
-        monitor.debug(
-            () ->
-                format(
-                    "Got playlist %s: %s (id: %s)",
-                    playlist.getId(), playlist.getName(), playlist.getHref()));
-        results.add(new MusicPlaylist(
-            playlist.getHref(),
-            playlist.getName(),
-            fetchPlaylist(playlist.getId())));
+    IdOnlyContainerResource playlist = null;
+    if (exportInformation.isPresent()) {
+      if (exportInformation.get().getPaginationData() != null) {
+        offset = ((IntPaginationToken) exportInformation.get().getPaginationData()).getStart();
       }
-      offset += playlists.getItems().length;
-    } while (!Strings.isNullOrEmpty(playlists.getNext()) && playlists.getItems().length > 0);
-    return new PlaylistContainerResource(results);
+      playlist = (IdOnlyContainerResource) exportInformation.get().getContainerResource();
+    }
+
+    return playlist == null
+        ? exportPlaylists(offset)
+        : exportTracks(playlist.getId(), offset);
   }
 
-  private ImmutableList<MusicRecording> fetchPlaylist(String playlistId)
+  /**
+   * Exports one page of the user's playlists. Their tracks are exported later through a
+   * sub-resource per playlist.
+   */
+  private ExportResult<PlaylistContainerResource> exportPlaylists(int offset)
       throws IOException, SpotifyWebApiException {
-    int offset = 0;
-    Paging<PlaylistTrack> playlistTrackResults;
-    ImmutableList.Builder<MusicRecording> results = new ImmutableList.Builder<>(); 
-    do {
-      int finalOffset = offset;
+    monitor.debug(() -> format("Fetching playlists with offset %s", offset));
+    Paging<PlaylistSimplified> playlists = spotifyApi.getListOfCurrentUsersPlaylists()
+        .offset(offset)
+        .limit(PLAYLIST_PAGE_SIZE)
+        .build()
+        .execute();
+
+    ImmutableList.Builder<MusicPlaylist> results = ImmutableList.builder();
+    IntPaginationToken nextPage = nextPage(playlists, offset);
+    ContinuationData continuationData = new ContinuationData(nextPage);
+    for (PlaylistSimplified playlist : playlists.getItems()) {
       monitor.debug(
           () ->
               format(
-                  "Fetching playlist's %s tracks with offset %s, next: %s",
-                  playlistId, finalOffset));
-      playlistTrackResults = spotifyApi.getPlaylistsTracks(playlistId)
-          .offset(offset)
-          .build()
-          .execute();
-      for (PlaylistTrack track : playlistTrackResults.getItems()) {
+                  "Got playlist %s: %s (id: %s)",
+                  playlist.getId(), playlist.getName(), playlist.getHref()));
+      results.add(new MusicPlaylist(playlist.getId(), playlist.getName(), ImmutableList.of()));
+      continuationData.addContainerResource(new IdOnlyContainerResource(playlist.getId()));
+    }
+    // The tracks of the playlists are still exported through their sub-resources after the last
+    // page of playlists
+    return new ExportResult<>(
+        nextPage == null ? ResultType.END : ResultType.CONTINUE,
+        new PlaylistContainerResource(results.build()),
+        continuationData);
+  }
+
+  /**
+   * Exports one page of the tracks of the given playlist. The playlist itself has already been
+   * exported, so the page is a {@link MusicPlaylist#tracksOf tracks only} playlist.
+   */
+  private ExportResult<PlaylistContainerResource> exportTracks(String playlistId, int offset)
+      throws IOException, SpotifyWebApiException {
+    monitor.debug(
+        () -> format("Fetching playlist's %s tracks with offset %s", playlistId, offset));
+    Paging<PlaylistTrack> playlistTrackResults = spotifyApi.getPlaylistsTracks(playlistId)
+        .offset(offset)
+        .limit(TRACK_PAGE_SIZE)
+        .build()
+        .execute();
+
+    ImmutableList.Builder<MusicRecording> results = ImmutableList.builder();
+    for (PlaylistTrack track : playlistTrackResults.getItems()) {
+      // Tracks that have been removed from Spotify are returned without any details
+      if (track.getTrack() != null) {
         results.add(convertTrack(track));
       }
-      offset += playlistTrackResults.getItems().length;
-    } while (!Strings.isNullOrEmpty(playlistTrackResults.getNext())
-        && playlistTrackResults.getItems().length > 0);
-    return results.build();
+    }
+
+    IntPaginationToken nextPage = nextPage(playlistTrackResults, offset);
+    PlaylistContainerResource resource =
+        new PlaylistContainerResource(
+            ImmutableList.of(MusicPlaylist.tracksOf(playlistId, results.build())));
+    return new ExportResult<>(
+        nextPage == null ? ResultType.END : ResultType.CONTINUE,
+        resource,
+        new ContinuationData(nextPage));
+  }
+
+  private static IntPaginationToken nextPage(Paging<?> paging, int offset) {
+    if (Strings.isNullOrEmpty(paging.getNext()) || paging.getItems().length == 0) {
+      return null;
+    }
+    return new IntPaginationToken(offset + paging.getItems().length);
   }
 
   private MusicRecording convertTrack(PlaylistTrack playlistTrack) {
@@ -13,11 +13,13 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
-
 package org.datatransferproject.transfer.spotify.playlists;
 
 
 import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Lists;
 import com.wrapper.spotify.SpotifyApi;
 import com.wrapper.spotify.exceptions.SpotifyWebApiException;
 import com.wrapper.spotify.model_objects.specification.Paging;
@@ -25,6 +27,7 @@ import com.wrapper.spotify.model_objects.specification.Track;
 import com.wrapper.spotify.model_objects.specification.User;
 import org.datatransferproject.api.launcher.Monitor;
 import org.datatransferproject.spi.transfer.idempotentexecutor.IdempotentImportExecutor;
+import org.datatransferproject.spi.transfer.idempotentexecutor.IdempotentKey;
 import org.datatransferproject.spi.transfer.provider.ImportResult;
 import org.datatransferproject.spi.transfer.provider.Importer;
 import org.datatransferproject.types.common.models.playlists.MusicPlaylist;
@@ -33,17 +36,38 @@ import org.datatransferproject.types.common.models.playlists.PlaylistContainerRe
 import org.datatransferproject.types.transfer.auth.TokensAndUrlAuthData;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.UUID;
-
-import static com.google.common.base.Preconditions.checkArgument;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Imports playlists into Spotify.
+ *
+ * <p>Tracks are appended to a playlist in export order, in chunks of up to {@link
+ * #MAX_TRACKS_PER_REQUEST}. Each chunk has its own idempotent id, so a resumed job does not add a
+ * chunk twice. ISRC lookups are cached for the duration of a job, since the same track often
+ * appears in several playlists.
  **/
 public class SpotifyPlaylistImporter
     implements Importer<TokensAndUrlAuthData, PlaylistContainerResource> {
+  // The maximum number of tracks Spotify accepts in a single add request
+  private static final int MAX_TRACKS_PER_REQUEST = 100;
+  // Upper bound on the number of jobs whose lookups are held at any one time
+  private static final long MAX_CACHED_JOBS = 16;
+  private static final long TRACK_CACHE_EXPIRY_HOURS = 1;
+
   private final Monitor monitor;
   private final SpotifyApi spotifyApi;
+  // Mapping of job id -> (ISRC -> Spotify track uri, empty if there is no such track)
+  private final Cache<UUID, Map<String, Optional<String>>> trackUris =
+      CacheBuilder.newBuilder()
+          .maximumSize(MAX_CACHED_JOBS)
+          .expireAfterAccess(TRACK_CACHE_EXPIRY_HOURS, TimeUnit.HOURS)
+          .build();
 
   public SpotifyPlaylistImporter(Monitor monitor, SpotifyApi spotifyApi) {
     this.monitor = monitor;
@@ -60,16 +84,26 @@ public class SpotifyPlaylistImporter
     spotifyApi.setRefreshToken(authData.getRefreshToken());
 
     User user = spotifyApi.getCurrentUsersProfile().build().execute();
+    Map<String, Optional<String>> jobTrackUris =
+        trackUris.get(jobId, ConcurrentHashMap::new);
     for (MusicPlaylist playlist : data.getLists()) {
-      createPlaylist(idempotentExecutor, playlist, user.getId());
+      createPlaylist(idempotentExecutor, jobTrackUris, playlist, user.getId());
     }
     return ImportResult.OK;
   }
 
   private void createPlaylist(IdempotentImportExecutor idempotentExecutor,
+      Map<String, Optional<String>> jobTrackUris,
       MusicPlaylist playlist,
       String userId)
       throws Exception, SpotifyWebApiException {
+    // Pages of tracks belong to a playlist created by an earlier page
+    if (playlist.isTracksOnly() && !idempotentExecutor.isKeyCached(playlist.getIdentifier())) {
+      monitor.info(
+          () -> "Skipping tracks for playlist " + playlist.getIdentifier()
+              + " since it wasn't imported");
+      return;
+    }
     String playlistId = idempotentExecutor.executeAndSwallowIOExceptions(
         playlist.getIdentifier(),
         "Playlist: " + playlist.getHeadline(),
@@ -82,47 +116,113 @@ public class SpotifyPlaylistImporter
             .execute()
             .getId());
     if (playlistId != null) {
-      for (MusicRecording track : playlist.getTrack()) {
-        addTrack(idempotentExecutor, playlistId, playlist.getHeadline(), track);
+      for (List<MusicRecording> tracks
+          : Lists.partition(playlist.getTrack(), MAX_TRACKS_PER_REQUEST)) {
+        addTracks(
+            idempotentExecutor,
+            jobTrackUris,
+            playlistId,
+            playlist.isTracksOnly() ? playlistId : playlist.getHeadline(),
+            tracks);
       }
     }
   }
 
-  private void addTrack(
+  /** Appends {@code tracks} to the end of the playlist with a single request. */
+  private void addTracks(
       IdempotentImportExecutor idempotentExecutor,
+      Map<String, Optional<String>> jobTrackUris,
       String playlistId,
       String playlistName,
-      MusicRecording track)
+      List<MusicRecording> tracks)
       throws Exception {
+    IdempotentKey chunkId = chunkKey(playlistId, tracks);
+    if (idempotentExecutor.isKeyCached(chunkId)) {
+      return;
+    }
+
+    List<String> uris = new ArrayList<>(tracks.size());
+    for (MusicRecording track : tracks) {
+      IOException failure;
+      try {
+        Optional<String> uri = lookUpTrack(jobTrackUris, track);
+        if (uri.isPresent()) {
+          uris.add(uri.get());
+          continue;
+        }
+        failure = new IOException("Couldn't find track: " + track.getHeadline()
+            + " with code: " + track.getIsrcCode());
+      } catch (SpotifyWebApiException e) {
+        failure = new IOException("Unable to look up track: " + track.getHeadline(), e);
+      } catch (IOException e) {
+        failure = e;
+      }
+      // Record the missing track as a failed item of its own
+      IOException cause = failure;
+      idempotentExecutor.executeAndSwallowIOExceptions(
+          IdempotentKey.of(playlistId, track.getIdentifier()),
+          playlistName + " - " + track.getHeadline(),
+          () -> {
+            throw cause;
+          });
+    }
+    if (uris.isEmpty()) {
+      return;
+    }
+
     idempotentExecutor.executeAndSwallowIOExceptions(
-        playlistId + "-" + track.hashCode(),
-        playlistName + " - " + track.getHeadline(),
+        chunkId,
+        playlistName + " - " + uris.size() + " tracks",
         () -> {
-          Track spotifyTrack = searchForSong(track);
           spotifyApi
-              .addTracksToPlaylist(playlistId, new String[] {spotifyTrack.getUri()})
-              .position(0)
+              .addTracksToPlaylist(playlistId, uris.toArray(new String[0]))
               .build()
               .execute();
-          return null;
+          return uris.size();
         }
     );
   }
 
-  private Track searchForSong(MusicRecording track)
+  /**
+   * Returns the uri of the Spotify track with the same ISRC as {@code track}, consulting the job's
+   * cache first.
+   */
+  private Optional<String> lookUpTrack(
+      Map<String, Optional<String>> jobTrackUris, MusicRecording track)
       throws IOException, SpotifyWebApiException {
     // TODO: right now this depends on an ISRC being present, we should add fallback
     // logic.
-    checkArgument(!Strings.isNullOrEmpty(track.getIsrcCode()), "No ISRC code present for: "
-        + track.getHeadline());
+    if (Strings.isNullOrEmpty(track.getIsrcCode())) {
+      monitor.debug(() -> "No ISRC code present for: " + track.getHeadline());
+      return Optional.empty();
+    }
+    Optional<String> uri = jobTrackUris.get(track.getIsrcCode());
+    if (uri == null) {
+      uri = searchForSong(track.getIsrcCode()).map(Track::getUri);
+      jobTrackUris.put(track.getIsrcCode(), uri);
+    }
+    return uri;
+  }
+
+  private Optional<Track> searchForSong(String isrcCode)
+      throws IOException, SpotifyWebApiException {
     Paging<Track> searchResponse = spotifyApi
-        .searchTracks("isrc:" + track.getIsrcCode())
+        .searchTracks("isrc:" + isrcCode)
         .build()
         .execute();
     if (searchResponse.getItems().length == 0) {
-      throw new IOException("Couldn't find track: " + track.getHeadline()
-          + " with code: " + track.getIsrcCode());
+      return Optional.empty();
+    }
+    return Optional.of(searchResponse.getItems()[0]);
+  }
+
+  /** Identifies a chunk of tracks by its content, so re-exported chunks get the same id. */
+  private static IdempotentKey chunkKey(String playlistId, List<MusicRecording> tracks) {
+    String[] parts = new String[tracks.size() + 1];
+    parts[0] = playlistId;
+    for (int i = 0; i < tracks.size(); i++) {
+      parts[i + 1] = tracks.get(i).getIdentifier();
     }
-    return searchResponse.getItems()[0];
+    return IdempotentKey.of(parts);
   }
 }
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2019 The Data Transfer Project Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.datatransferproject.transfer.spotify.playlists;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.ImmutableMap;
+import com.wrapper.spotify.SpotifyApi;
+import com.wrapper.spotify.model_objects.specification.AlbumSimplified;
+import com.wrapper.spotify.model_objects.specification.ArtistSimplified;
+import com.wrapper.spotify.model_objects.specification.ExternalId;
+import com.wrapper.spotify.model_objects.specification.Paging;
+import com.wrapper.spotify.model_objects.specification.PlaylistSimplified;
+import com.wrapper.spotify.model_objects.specification.PlaylistTrack;
+import com.wrapper.spotify.model_objects.specification.Track;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import org.datatransferproject.api.launcher.Monitor;
+import org.datatransferproject.spi.transfer.provider.ExportResult;
+import org.datatransferproject.spi.transfer.provider.ExportResult.ResultType;
+import org.datatransferproject.spi.transfer.types.ContinuationData;
+import org.datatransferproject.types.common.ExportInformation;
+import org.datatransferproject.types.common.IntPaginationToken;
+import org.datatransferproject.types.common.models.IdOnlyContainerResource;
+import org.datatransferproject.types.common.models.playlists.MusicPlaylist;
+import org.datatransferproject.types.common.models.playlists.MusicRecording;
+import org.datatransferproject.types.common.models.playlists.PlaylistContainerResource;
+import org.datatransferproject.types.transfer.auth.TokensAndUrlAuthData;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SpotifyPlaylistExporterTest {
+  private static final UUID JOB_ID = UUID.randomUUID();
+  private static final TokensAndUrlAuthData AUTH_DATA =
+      new TokensAndUrlAuthData("accessToken", "refreshToken", "tokenServerUrl");
+  private static final String NEXT_URL = "https://api.spotify.com/v1/next";
+
+  private SpotifyApi spotifyApi;
+  private SpotifyPlaylistExporter exporter;
+
+  @Before
+  public void setUp() {
+    spotifyApi = mock(SpotifyApi.class, RETURNS_DEEP_STUBS);
+    exporter = new SpotifyPlaylistExporter(new Monitor() {}, spotifyApi);
+  }
+
+  @Test
+  public void exportPlaylistsWithoutTracks() throws Exception {
+    setUpPlaylists(0, NEXT_URL, playlist("p1", "First"), playlist("p2", "Second"));
+
+    ExportResult<PlaylistContainerResource> result =
+        exporter.export(JOB_ID, AUTH_DATA, Optional.empty());
+
+    assertThat(result.getType()).isEqualTo(ResultType.CONTINUE);
+    assertThat(
+            result.getExportedData().getLists().stream()
+                .map(MusicPlaylist::getHeadline)
+                .collect(Collectors.toList()))
+        .containsExactly("First", "Second")
+        .inOrder();
+    for (MusicPlaylist playlist : result.getExportedData().getLists()) {
+      assertThat(playlist.getTrack()).isEmpty();
+    }
+    ContinuationData continuationData = result.getContinuationData();
+    assertThat(((IntPaginationToken) continuationData.getPaginationData()).getStart())
+        .isEqualTo(2);
+    // The tracks of each playlist are exported through a sub-resource
+    assertThat(continuationData.getContainerResources())
+        .containsExactly(new IdOnlyContainerResource("p1"), new IdOnlyContainerResource("p2"));
+  }
+
+  @Test
+  public void exportLastPageOfPlaylistsEnds() throws Exception {
+    setUpPlaylists(2, null, playlist("p3", "Third"));
+
+    ExportResult<PlaylistContainerResource> result =
+        exporter.export(
+            JOB_ID,
+            AUTH_DATA,
+            Optional.of(new ExportInformation(new IntPaginationToken(2), null)));
+
+    assertThat(result.getType()).isEqualTo(ResultType.END);
+    assertThat(result.getContinuationData().getPaginationData()).isNull();
+    assertThat(result.getContinuationData().getContainerResources())
+        .containsExactly(new IdOnlyContainerResource("p3"));
+  }
+
+  @Test
+  public void exportTracksOfPlaylist() throws Exception {
+    PlaylistTrack removed = new PlaylistTrack.Builder().build();
+    setUpTracks("p1", 0, null, track("Song", "ISRC1"), removed, track("Other song", "ISRC2"));
+
+    ExportResult<PlaylistContainerResource> result =
+        exporter.export(
+            JOB_ID,
+            AUTH_DATA,
+            Optional.of(new ExportInformation(null, new IdOnlyContainerResource("p1"))));
+
+    assertThat(result.getType()).isEqualTo(ResultType.END);
+    MusicPlaylist playlist = result.getExportedData().getLists().iterator().next();
+    // The playlist itself was exported with its page of playlists
+    assertThat(playlist.isTracksOnly()).isTrue();
+    assertThat(playlist.getIdentifier()).isEqualTo("p1");
+    // Tracks removed from Spotify are left out
+    assertThat(
+            playlist.getTrack().stream()
+                .map(MusicRecording::getIsrcCode)
+                .collect(Collectors.toList()))
+        .containsExactly("ISRC1", "ISRC2")
+        .inOrder();
+  }
+
+  @Test
+  public void exportTracksContinuesToNextPage() throws Exception {
+    setUpTracks("p1", 100, NEXT_URL, track("Song", "ISRC1"));
+
+    ExportResult<PlaylistContainerResource> result =
+        exporter.export(
+            JOB_ID,
+            AUTH_DATA,
+            Optional.of(
+                new ExportInformation(
+                    new IntPaginationToken(100), new IdOnlyContainerResource("p1"))));
+
+    assertThat(result.getType()).isEqualTo(ResultType.CONTINUE);
+    assertThat(((IntPaginationToken) result.getContinuationData().getPaginationData()).getStart())
+        .isEqualTo(101);
+  }
+
+  private void setUpPlaylists(int offset, String next, PlaylistSimplified... playlists)
+      throws Exception {
+    Paging<PlaylistSimplified> page =
+        new Paging.Builder<PlaylistSimplified>().setItems(playlists).setNext(next).build();
+    when(spotifyApi
+            .getListOfCurrentUsersPlaylists()
+            .offset(offset)
+            .limit(50)
+            .build()
+            .execute())
+        .thenReturn(page);
+  }
+
+  private void setUpTracks(String playlistId, int offset, String next, PlaylistTrack... tracks)
+      throws Exception {
+    Paging<PlaylistTrack> page =
+        new Paging.Builder<PlaylistTrack>().setItems(tracks).setNext(next).build();
+    when(spotifyApi.getPlaylistsTracks(playlistId).offset(offset).limit(100).build().execute())
+        .thenReturn(page);
+  }
+
+  private static PlaylistSimplified playlist(String id, String name) {
+    return new PlaylistSimplified.Builder().setId(id).setName(name).build();
+  }
+
+  private static PlaylistTrack track(String name, String isrc) {
+    Track track =
+        new Track.Builder()
+            .setHref("https://api.spotify.com/v1/tracks/" + isrc)
+            .setName(name)
+            .setExternalIds(
+                new ExternalId.Builder().setExternalIds(ImmutableMap.of("isrc", isrc)).build())
+            .setAlbum(new AlbumSimplified.Builder().setName("Album").build())
+            .setArtists(new ArtistSimplified.Builder().setName("Artist").build())
+            .build();
+    return new PlaylistTrack.Builder().setTrack(track).build();
+  }
+}
@@ -15,15 +15,21 @@
  */
 package org.datatransferproject.transport.jettyrest;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.datatransferproject.api.launcher.ExtensionContext;
 import org.datatransferproject.api.launcher.Monitor;
 import org.datatransferproject.spi.api.transport.TransportBinder;
 import org.datatransferproject.spi.service.extension.ServiceExtension;
+import org.datatransferproject.transport.jettyrest.http.JettyConfiguration;
 import org.datatransferproject.transport.jettyrest.http.JettyMonitor;
 import org.datatransferproject.transport.jettyrest.http.JettyTransport;
 import org.datatransferproject.transport.jettyrest.rest.JerseyTransportBinder;
 
 import java.security.KeyStore;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Bootstraps the Jetty REST extension.
@@ -35,6 +41,7 @@ import java.security.KeyStore;
 public class JettyRestExtension implements ServiceExtension {
   private JettyTransport transport;
   private JerseyTransportBinder binder;
+  private ExecutorService actionExecutor;
 
   @Override
   public void initialize(ExtensionContext context) {
@@ -42,9 +49,42 @@ public class JettyRestExtension implements ServiceExtension {
     JettyMonitor.setDelegate(monitor);
     KeyStore keyStore = context.getService(KeyStore.class);
     boolean useHttps = context.getSetting("useHttps", true);
+    JettyConfiguration configuration =
+        JettyConfiguration.builder()
+            .setHttpPort(context.getSetting("httpPort", 8080))
+            .setMinThreads(context.getSetting("jettyMinThreads", 8))
+            .setMaxThreads(context.getSetting("jettyMaxThreads", 200))
+            .setAcceptors(context.getSetting("jettyAcceptors", -1))
+            .setSelectors(context.getSetting("jettySelectors", -1))
+            .setIdleTimeoutMillis(context.getSetting("jettyIdleTimeoutMillis", 30000))
+            .setHttp2(context.getSetting("useHttp2", false))
+            .build();
     // 初始化transport，
-    transport = new JettyTransport(keyStore, useHttps, monitor);
-    binder = new JerseyTransportBinder(transport);
+    transport = new JettyTransport(keyStore, useHttps, configuration, monitor);
+
+    // Bounded so that a burst of slow requests is rejected with a 503 rather than queued forever
+    int actionThreads = context.getSetting("actionThreads", 32);
+    int actionQueueSize = context.getSetting("actionQueueSize", 1000);
+    actionExecutor =
+        new ThreadPoolExecutor(
+            actionThreads,
+            actionThreads,
+            60,
+            TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(actionQueueSize),
+            new ThreadFactoryBuilder().setNameFormat("api-action-%d").setDaemon(true).build());
+    int actionTimeoutMillis = context.getSetting("actionTimeoutMillis", 60000);
+
+    int progressPollIntervalMillis = context.getSetting("progressPollIntervalMillis", 2000);
+    int progressPollThreads = context.getSetting("progressPollThreads", 2);
+    binder =
+        new JerseyTransportBinder(
+            transport,
+            monitor,
+            actionExecutor,
+            actionTimeoutMillis,
+            progressPollIntervalMillis,
+            progressPollThreads);
     context.registerService(TransportBinder.class, binder);
   }
 
@@ -57,6 +97,8 @@ public class JettyRestExtension implements ServiceExtension {
 
   @Override
   public void shutdown() {
+    binder.shutdown();
     transport.shutdown();
+    actionExecutor.shutdown();
   }
 }
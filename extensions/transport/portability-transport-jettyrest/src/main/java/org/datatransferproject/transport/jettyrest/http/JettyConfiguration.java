@@ -0,0 +1,126 @@
+/*
+ * Copyright 2018 The Data Transfer Project Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.datatransferproject.transport.jettyrest.http;
+
+/**
+ * Connector and thread pool settings for {@link JettyTransport}.
+ *
+ * <p>A negative acceptor or selector count lets Jetty size them from the number of available
+ * processors.
+ */
+public class JettyConfiguration {
+  private final int httpPort;
+  private final int minThreads;
+  private final int maxThreads;
+  private final int acceptors;
+  private final int selectors;
+  private final int idleTimeoutMillis;
+  private final boolean http2;
+
+  private JettyConfiguration(Builder builder) {
+    this.httpPort = builder.httpPort;
+    this.minThreads = builder.minThreads;
+    this.maxThreads = builder.maxThreads;
+    this.acceptors = builder.acceptors;
+    this.selectors = builder.selectors;
+    this.idleTimeoutMillis = builder.idleTimeoutMillis;
+    this.http2 = builder.http2;
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  public int getHttpPort() {
+    return httpPort;
+  }
+
+  public int getMinThreads() {
+    return minThreads;
+  }
+
+  public int getMaxThreads() {
+    return maxThreads;
+  }
+
+  public int getAcceptors() {
+    return acceptors;
+  }
+
+  public int getSelectors() {
+    return selectors;
+  }
+
+  public int getIdleTimeoutMillis() {
+    return idleTimeoutMillis;
+  }
+
+  /** Whether HTTP/2 is offered: h2 via ALPN over TLS, or h2c over cleartext. */
+  public boolean isHttp2() {
+    return http2;
+  }
+
+  public static class Builder {
+    private int httpPort = 8080;
+    private int minThreads = 8;
+    private int maxThreads = 200;
+    private int acceptors = -1;
+    private int selectors = -1;
+    private int idleTimeoutMillis = 30000;
+    private boolean http2 = false;
+
+    private Builder() {}
+
+    public Builder setHttpPort(int httpPort) {
+      this.httpPort = httpPort;
+      return this;
+    }
+
+    public Builder setMinThreads(int minThreads) {
+      this.minThreads = minThreads;
+      return this;
+    }
+
+    public Builder setMaxThreads(int maxThreads) {
+      this.maxThreads = maxThreads;
+      return this;
+    }
+
+    public Builder setAcceptors(int acceptors) {
+      this.acceptors = acceptors;
+      return this;
+    }
+
+    public Builder setSelectors(int selectors) {
+      this.selectors = selectors;
+      return this;
+    }
+
+    public Builder setIdleTimeoutMillis(int idleTimeoutMillis) {
+      this.idleTimeoutMillis = idleTimeoutMillis;
+      return this;
+    }
+
+    public Builder setHttp2(boolean http2) {
+      this.http2 = http2;
+      return this;
+    }
+
+    public JettyConfiguration build() {
+      return new JettyConfiguration(this);
+    }
+  }
+}
@@ -16,10 +16,17 @@
 package org.datatransferproject.transport.jettyrest.http;
 
 import org.datatransferproject.api.launcher.Monitor;
+import org.eclipse.jetty.alpn.server.ALPNServerConnectionFactory;
+import org.eclipse.jetty.http.HttpVersion;
+import org.eclipse.jetty.http2.HTTP2Cipher;
+import org.eclipse.jetty.http2.server.HTTP2CServerConnectionFactory;
+import org.eclipse.jetty.http2.server.HTTP2ServerConnectionFactory;
+import org.eclipse.jetty.server.ConnectionFactory;
 import org.eclipse.jetty.server.Connector;
 import org.eclipse.jetty.server.Handler;
 import org.eclipse.jetty.server.HttpConfiguration;
 import org.eclipse.jetty.server.HttpConnectionFactory;
+import org.eclipse.jetty.server.SecureRequestCustomizer;
 import org.eclipse.jetty.server.Server;
 import org.eclipse.jetty.server.ServerConnector;
 import org.eclipse.jetty.server.SslConnectionFactory;
@@ -29,6 +36,7 @@ import org.eclipse.jetty.servlet.ServletContextHandler;
 import org.eclipse.jetty.servlet.ServletHolder;
 import org.eclipse.jetty.servlet.Source;
 import org.eclipse.jetty.util.ssl.SslContextFactory;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
 
 import javax.servlet.Servlet;
 import javax.servlet.http.HttpServletRequest;
@@ -46,20 +54,26 @@ public class JettyTransport {
 
   private final KeyStore keyStore;
   private final boolean useHttps;
+  private final JettyConfiguration configuration;
   private final Monitor monitor;
 
-  private int httpPort = 8080; // TODO configure
-
   private Server server;
   private List<Handler> handlers = new ArrayList<>();
 
-  public JettyTransport(KeyStore keyStore, boolean useHttps, Monitor monitor) {
+  public JettyTransport(
+      KeyStore keyStore, boolean useHttps, JettyConfiguration configuration, Monitor monitor) {
     this.keyStore = keyStore;
     this.useHttps = useHttps;
+    this.configuration = configuration;
     this.monitor = monitor;
     System.setProperty(LOG_CLASS, JettyMonitor.class.getName()); // required by Jetty
     System.setProperty(ANNOUNCE, "false");
-    monitor.info(() -> "Creating JettyTransport. useHttps=" + useHttps);
+    monitor.info(
+        () ->
+            "Creating JettyTransport. useHttps="
+                + useHttps
+                + ", http2="
+                + configuration.isHttp2());
   }
 
   /**
@@ -67,34 +81,69 @@ public class JettyTransport {
    */
   public void start() {
     try {
-    if (useHttps) {
-      server = new Server();
-      SslContextFactory sslContextFactory = new SslContextFactory();
-      sslContextFactory.setKeyStore(keyStore);
-      // TODO configure
-      sslContextFactory.setKeyStorePassword("password");
-      sslContextFactory.setKeyManagerPassword("password");
-      HttpConfiguration https = new HttpConfiguration();
-      ServerConnector sslConnector =
+      QueuedThreadPool threadPool =
+          new QueuedThreadPool(
+              configuration.getMaxThreads(),
+              configuration.getMinThreads(),
+              configuration.getIdleTimeoutMillis());
+      threadPool.setName("jetty");
+      server = new Server(threadPool);
+
+      HttpConfiguration httpConfiguration = new HttpConfiguration();
+      ConnectionFactory[] connectionFactories;
+      if (useHttps) {
+        SslContextFactory sslContextFactory = new SslContextFactory();
+        sslContextFactory.setKeyStore(keyStore);
+        // TODO configure
+        sslContextFactory.setKeyStorePassword("password");
+        sslContextFactory.setKeyManagerPassword("password");
+        if (configuration.isHttp2()) {
+          // h2 is negotiated through ALPN, which needs an ALPN provider for the running JVM on the
+          // classpath; clients that don't negotiate h2 fall back to HTTP/1.1.
+          httpConfiguration.addCustomizer(new SecureRequestCustomizer());
+          sslContextFactory.setCipherComparator(HTTP2Cipher.COMPARATOR);
+          ALPNServerConnectionFactory alpn = new ALPNServerConnectionFactory();
+          alpn.setDefaultProtocol(HttpVersion.HTTP_1_1.asString());
+          connectionFactories =
+              new ConnectionFactory[] {
+                new SslConnectionFactory(sslContextFactory, alpn.getProtocol()),
+                alpn,
+                new HTTP2ServerConnectionFactory(httpConfiguration),
+                new HttpConnectionFactory(httpConfiguration)
+              };
+        } else {
+          connectionFactories =
+              new ConnectionFactory[] {
+                new SslConnectionFactory(sslContextFactory, "http/1.1"),
+                new HttpConnectionFactory(httpConfiguration)
+              };
+        }
+      } else if (configuration.isHttp2()) {
+        connectionFactories =
+            new ConnectionFactory[] {
+              new HttpConnectionFactory(httpConfiguration),
+              new HTTP2CServerConnectionFactory(httpConfiguration)
+            };
+      } else {
+        connectionFactories =
+            new ConnectionFactory[] {new HttpConnectionFactory(httpConfiguration)};
+      }
+
+      ServerConnector connector =
           new ServerConnector(
               server,
-              new SslConnectionFactory(sslContextFactory, "http/1.1"),
-              new HttpConnectionFactory(https));
-      sslConnector.setPort(httpPort);
-      server.setConnectors(new Connector[] {sslConnector});
-    } else {
-      server = new Server(httpPort);
-      ServerConnector connector =
-          new ServerConnector(server, new HttpConnectionFactory(new HttpConfiguration()));
-      connector.setPort(httpPort);
+              configuration.getAcceptors(),
+              configuration.getSelectors(),
+              connectionFactories);
+      connector.setPort(configuration.getHttpPort());
+      connector.setIdleTimeout(configuration.getIdleTimeoutMillis());
       server.setConnectors(new Connector[] {connector});
-    }
 
-    server.setErrorHandler(new JettyErrorHandler());
+      server.setErrorHandler(new JettyErrorHandler());
 
-    ContextHandlerCollection contexts = new ContextHandlerCollection();
-    contexts.setHandlers(handlers.toArray(new Handler[0]));
-    server.setHandler(contexts);
+      ContextHandlerCollection contexts = new ContextHandlerCollection();
+      contexts.setHandlers(handlers.toArray(new Handler[0]));
+      server.setHandler(contexts);
 
       server.start();
       monitor.info(() -> "Using Jetty transport");
@@ -119,6 +168,8 @@ public class JettyTransport {
     servletHolder.setName("Data Transfer Project");
     servletHolder.setServlet(servletContainer);
     servletHolder.setInitOrder(1);
+    // required for server-sent event streams
+    servletHolder.setAsyncSupported(true);
 
     ServletContextHandler handler = new ServletContextHandler(ServletContextHandler.NO_SESSIONS);
     handler.setContextPath("/");
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2018 The Data Transfer Project Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.datatransferproject.transport.jettyrest.rest;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import javax.ws.rs.ServiceUnavailableException;
+import javax.ws.rs.container.AsyncResponse;
+import org.datatransferproject.api.action.Action;
+
+/**
+ * Runs {@link Action}s off the servlet request thread and resumes the suspended JAX-RS response
+ * with the result.
+ *
+ * <p>Requests that cannot be queued on the action executor, or that do not complete within the
+ * timeout, are answered with 503 so clients can retry instead of tying up a connection. On timeout
+ * the action's result is cancelled first, and the 503 is only sent if that succeeds: an action
+ * that has already committed its work refuses cancellation, and the response then waits for its
+ * result instead of inviting a retry that would repeat it.
+ */
+class ActionInvoker {
+  private final Executor executor;
+  private final long timeoutMillis;
+
+  ActionInvoker(Executor executor, long timeoutMillis) {
+    this.executor = executor;
+    this.timeoutMillis = timeoutMillis;
+  }
+
+  <REQUEST, RESPONSE> void invoke(
+      Action<REQUEST, RESPONSE> action, REQUEST request, AsyncResponse response) {
+    CompletionStage<RESPONSE> result;
+    try {
+      result = action.handleAsync(request, executor);
+    } catch (RuntimeException e) {
+      response.resume(translate(e));
+      return;
+    }
+    CompletableFuture<RESPONSE> future = result.toCompletableFuture();
+    response.setTimeoutHandler(
+        timedOut -> {
+          if (future.cancel(false)) {
+            timedOut.resume(new ServiceUnavailableException("Request timed out"));
+          } else {
+            // Either the result is about to resume the response, or the action has committed
+            // and can no longer be abandoned; wait for it rather than sending a 503.
+            timedOut.setTimeout(timeoutMillis, TimeUnit.MILLISECONDS);
+          }
+        });
+    response.setTimeout(timeoutMillis, TimeUnit.MILLISECONDS);
+    future.whenComplete(
+        (value, error) -> {
+          if (error == null) {
+            response.resume(value);
+          } else {
+            response.resume(translate(error));
+          }
+        });
+  }
+
+  private static Throwable translate(Throwable error) {
+    if (error instanceof CompletionException && error.getCause() != null) {
+      error = error.getCause();
+    }
+    if (error instanceof RejectedExecutionException) {
+      return new ServiceUnavailableException("Too many concurrent requests");
+    }
+    return error;
+  }
+}
@@ -15,7 +15,9 @@
  */
 package org.datatransferproject.transport.jettyrest.rest;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.datatransferproject.api.action.Action;
+import org.datatransferproject.api.launcher.Monitor;
 import org.datatransferproject.spi.api.transport.TransportBinder;
 import org.datatransferproject.transport.jettyrest.http.JettyTransport;
 import org.datatransferproject.types.client.datatype.GetDataTypes;
@@ -27,20 +29,40 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 
 /**
  * Binds {@link Action}s to REST over HTTP
  *
  * <p>Actions are bound by creating JAX-RS resources and registering them with the Jersey
- * application.
+ * application. Transfer job actions run on {@code actionExecutor} so that servlet threads are not
+ * held while they block on the job store or on auth data generators.
  * 通过创建JAX-RS资源并将其注册到Jersey应用程序来绑定操作
  */
 public class JerseyTransportBinder implements TransportBinder {
   private final JettyTransport jettyTransport;
+  private final Monitor monitor;
+  private final Executor actionExecutor;
+  private final long actionTimeoutMillis;
+  private final long progressPollIntervalMillis;
+  private final int progressPollThreads;
   private final Map<Class<?>, Action> actions;
+  private JobProgressHub progressHub;
 
-  public JerseyTransportBinder(JettyTransport jettyTransport) {
+  public JerseyTransportBinder(
+      JettyTransport jettyTransport,
+      Monitor monitor,
+      Executor actionExecutor,
+      long actionTimeoutMillis,
+      long progressPollIntervalMillis,
+      int progressPollThreads) {
     this.jettyTransport = jettyTransport;
+    this.monitor = monitor;
+    this.actionExecutor = actionExecutor;
+    this.actionTimeoutMillis = actionTimeoutMillis;
+    this.progressPollIntervalMillis = progressPollIntervalMillis;
+    this.progressPollThreads = progressPollThreads;
     actions = new HashMap<>();
   }
 
@@ -57,6 +79,18 @@ public class JerseyTransportBinder implements TransportBinder {
   public void start() {
 
     try {
+      progressHub =
+          new JobProgressHub(
+              actions.get(GetTransferJobProgress.class),
+              Executors.newScheduledThreadPool(
+                  progressPollThreads,
+                  new ThreadFactoryBuilder()
+                      .setNameFormat("job-progress-%d")
+                      .setDaemon(true)
+                      .build()),
+              progressPollIntervalMillis,
+              monitor);
+
       Set<Object> controllers = new HashSet<>();
       controllers.add(new DataTypesController(actions.get(GetDataTypes.class)));
       controllers.add(new TransferServicesController(actions.get(GetTransferServices.class)));
@@ -68,7 +102,9 @@ public class JerseyTransportBinder implements TransportBinder {
               actions.get(ReserveWorker.class),
               actions.get(GetReservedWorker.class),
               actions.get(StartTransferJob.class),
-              actions.get(GetTransferJob.class)));
+              actions.get(GetTransferJob.class),
+              progressHub,
+              new ActionInvoker(actionExecutor, actionTimeoutMillis)));
 
       // Create a Jersey JAX-RS Application (resourceConfig), add the actions, and register it with
       // the Jetty transport.
@@ -84,4 +120,10 @@ public class JerseyTransportBinder implements TransportBinder {
       throw new RuntimeException(e);
     }
   }
+
+  public void shutdown() {
+    if (progressHub != null) {
+      progressHub.shutdown();
+    }
+  }
 }
@@ -0,0 +1,208 @@
+/*
+ * Copyright 2018 The Data Transfer Project Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.datatransferproject.transport.jettyrest.rest;
+
+import static java.lang.String.format;
+
+import com.google.common.collect.ImmutableSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.sse.OutboundSseEvent;
+import javax.ws.rs.sse.Sse;
+import javax.ws.rs.sse.SseEventSink;
+import org.datatransferproject.api.action.Action;
+import org.datatransferproject.api.launcher.Monitor;
+import org.datatransferproject.spi.cloud.types.PortabilityJob.State;
+import org.datatransferproject.types.client.transfer.GetTransferJobProgress;
+import org.datatransferproject.types.client.transfer.TransferJobProgress;
+
+/**
+ * Fans out transfer job progress to server-sent event subscribers.
+ *
+ * <p>Every job with at least one open subscriber is polled once per interval through the progress
+ * action, no matter how many clients are watching it. A "progress" event is sent only when the
+ * snapshot changes, new subscribers receive the latest snapshot straight away, and all streams
+ * for a job are closed once it reaches a terminal state.
+ */
+public class JobProgressHub {
+  static final String PROGRESS_EVENT = "progress";
+  static final String ERROR_EVENT = "error";
+
+  private static final Set<String> TERMINAL_STATES =
+      ImmutableSet.of(State.COMPLETE.name(), State.ERROR.name(), State.CANCELED.name());
+
+  private final Action<GetTransferJobProgress, TransferJobProgress> action;
+  private final ScheduledExecutorService executor;
+  private final long pollIntervalMillis;
+  private final Monitor monitor;
+  private final Map<String, Channel> channels = new ConcurrentHashMap<>();
+
+  public JobProgressHub(
+      Action<GetTransferJobProgress, TransferJobProgress> action,
+      ScheduledExecutorService executor,
+      long pollIntervalMillis,
+      Monitor monitor) {
+    this.action = action;
+    this.executor = executor;
+    this.pollIntervalMillis = pollIntervalMillis;
+    this.monitor = monitor;
+  }
+
+  /** Registers {@code sink} to receive progress events for the job with the given encoded id. */
+  public void subscribe(String id, SseEventSink sink, Sse sse) {
+    // Only registration happens under the map's lock, the sink is written to afterwards
+    Channel channel =
+        channels.compute(
+            id,
+            (key, existing) -> {
+              Channel current = existing == null ? new Channel(sse) : existing;
+              current.sinks.add(sink);
+              return current;
+            });
+    channel.startPolling(
+        () ->
+            executor.scheduleWithFixedDelay(
+                () -> poll(id, channel), 0, pollIntervalMillis, TimeUnit.MILLISECONDS));
+    OutboundSseEvent latest = channel.latest;
+    if (latest != null) {
+      send(channel, sink, latest);
+    }
+  }
+
+  /** Closes all open streams and stops polling. */
+  public void shutdown() {
+    channels.forEach((id, channel) -> closeChannel(id, channel, null));
+    executor.shutdownNow();
+  }
+
+  /** Returns the number of jobs currently being polled. */
+  int getWatchedJobCount() {
+    return channels.size();
+  }
+
+  private void poll(String id, Channel channel) {
+    channel.sinks.removeIf(SseEventSink::isClosed);
+    if (dropIfUnwatched(id, channel)) {
+      return;
+    }
+
+    TransferJobProgress progress;
+    try {
+      progress = action.handle(new GetTransferJobProgress(id));
+    } catch (RuntimeException e) {
+      monitor.info(() -> format("Unable to fetch progress for job %s", id), e);
+      closeChannel(
+          id,
+          channel,
+          channel.sse.newEventBuilder().name(ERROR_EVENT).data(String.class, e.getMessage()).build());
+      return;
+    }
+
+    boolean changed = !progress.equals(channel.lastProgress);
+    if (changed) {
+      channel.lastProgress = progress;
+      channel.latest =
+          channel
+              .sse
+              .newEventBuilder()
+              .name(PROGRESS_EVENT)
+              .mediaType(MediaType.APPLICATION_JSON_TYPE)
+              .data(TransferJobProgress.class, progress)
+              .build();
+    }
+    if (TERMINAL_STATES.contains(progress.getState())) {
+      closeChannel(id, channel, changed ? channel.latest : null);
+    } else if (changed) {
+      channel.sinks.forEach(sink -> send(channel, sink, channel.latest));
+    }
+  }
+
+  private void send(Channel channel, SseEventSink sink, OutboundSseEvent event) {
+    sink.send(event)
+        .whenComplete(
+            (result, error) -> {
+              if (error != null) {
+                channel.sinks.remove(sink);
+                sink.close();
+              }
+            });
+  }
+
+  /**
+   * Stops polling if all subscribers of {@code channel} have gone away. Runs under the map's lock
+   * for {@code id} so it cannot race with a concurrent {@link #subscribe}.
+   */
+  private boolean dropIfUnwatched(String id, Channel channel) {
+    channels.computeIfPresent(
+        id,
+        (key, current) -> {
+          if (current == channel && channel.sinks.isEmpty()) {
+            channel.stopPolling();
+            return null;
+          }
+          return current;
+        });
+    return channels.get(id) != channel;
+  }
+
+  private void closeChannel(String id, Channel channel, OutboundSseEvent lastEvent) {
+    if (!channels.remove(id, channel)) {
+      return;
+    }
+    channel.stopPolling();
+    for (SseEventSink sink : channel.sinks) {
+      if (lastEvent == null || sink.isClosed()) {
+        sink.close();
+      } else {
+        sink.send(lastEvent).whenComplete((result, error) -> sink.close());
+      }
+    }
+  }
+
+  private static final class Channel {
+    private final Sse sse;
+    private final Set<SseEventSink> sinks = new CopyOnWriteArraySet<>();
+    private volatile TransferJobProgress lastProgress;
+    private volatile OutboundSseEvent latest;
+    private ScheduledFuture<?> future;
+    private boolean stopped;
+
+    private Channel(Sse sse) {
+      this.sse = sse;
+    }
+
+    /** Schedules polling with {@code scheduler} unless it is already scheduled or stopped. */
+    private synchronized void startPolling(Supplier<ScheduledFuture<?>> scheduler) {
+      if (future == null && !stopped) {
+        future = scheduler.get();
+      }
+    }
+
+    private synchronized void stopPolling() {
+      stopped = true;
+      if (future != null) {
+        future.cancel(false);
+      }
+    }
+  }
+}
@@ -24,9 +24,14 @@ import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.sse.Sse;
+import javax.ws.rs.sse.SseEventSink;
 
-/** */
+/** Transfer job endpoints. Actions run asynchronously through an {@link ActionInvoker}. */
 @Consumes({MediaType.APPLICATION_JSON})
 @Produces({MediaType.APPLICATION_JSON})
 @Path("/transfer")
@@ -37,6 +42,8 @@ public class TransferController {
     private final Action<GetReservedWorker, ReservedWorker> getReservedWorkerAction;
     private final Action<StartTransferJob, TransferJob> startJobAction;
     private final Action<GetTransferJob, TransferJob> getJobAction;
+    private final JobProgressHub progressHub;
+    private final ActionInvoker invoker;
 
     public TransferController(
             Action<CreateTransferJob, TransferJob> createJobAction,
@@ -44,47 +51,63 @@ public class TransferController {
             Action<ReserveWorker, ReservedWorker> reserveWorkerAction,
             Action<GetReservedWorker, ReservedWorker> getReservedWorkerAction,
             Action<StartTransferJob, TransferJob> startJobAction,
-            Action<GetTransferJob, TransferJob> getJobAction) {
+            Action<GetTransferJob, TransferJob> getJobAction,
+            JobProgressHub progressHub,
+            ActionInvoker invoker) {
         this.createJobAction = createJobAction;
         this.generateAuthDataAction = generateAuthDataAction;
         this.reserveWorkerAction = reserveWorkerAction;
         this.getReservedWorkerAction = getReservedWorkerAction;
         this.startJobAction = startJobAction;
         this.getJobAction = getJobAction;
+        this.progressHub = progressHub;
+        this.invoker = invoker;
     }
 
     @GET
     @Path("{id}")
-    public TransferJob getTransferJob(@PathParam("id") String id) {
-        return getJobAction.handle((new GetTransferJob(id)));
+    public void getTransferJob(
+            @PathParam("id") String id, @Suspended AsyncResponse response) {
+        invoker.invoke(getJobAction, new GetTransferJob(id), response);
+    }
+
+    /** Streams progress snapshots for the job as server-sent events until it finishes. */
+    @GET
+    @Path("{id}/progress")
+    @Produces(MediaType.SERVER_SENT_EVENTS)
+    public void watchTransferJobProgress(
+            @PathParam("id") String id, @Context SseEventSink sink, @Context Sse sse) {
+        progressHub.subscribe(id, sink, sse);
     }
 
     @POST
-    public TransferJob createTransferJob(CreateTransferJob request) {
-        return createJobAction.handle(request);
+    public void createTransferJob(
+            CreateTransferJob request, @Suspended AsyncResponse response) {
+        invoker.invoke(createJobAction, request, response);
     }
 
     @POST
     @Path("{id}/generate")
-    public ServiceAuthData generate(GenerateServiceAuthData generate) {
-        return generateAuthDataAction.handle(generate);
+    public void generate(
+            GenerateServiceAuthData generate, @Suspended AsyncResponse response) {
+        invoker.invoke(generateAuthDataAction, generate, response);
     }
 
     @POST
     @Path("worker/{id}")
-    public ReservedWorker reserveWorker(ReserveWorker reserveWorker) {
-        return reserveWorkerAction.handle(reserveWorker);
+    public void reserveWorker(ReserveWorker reserveWorker, @Suspended AsyncResponse response) {
+        invoker.invoke(reserveWorkerAction, reserveWorker, response);
     }
 
     @GET
     @Path("worker/{id}")
-    public ReservedWorker getWorker(@PathParam("id") String id) {
-        return getReservedWorkerAction.handle((new GetReservedWorker(id)));
+    public void getWorker(@PathParam("id") String id, @Suspended AsyncResponse response) {
+        invoker.invoke(getReservedWorkerAction, new GetReservedWorker(id), response);
     }
 
     @POST
     @Path("{id}/start")
-    public TransferJob startTransferJob(StartTransferJob request) {
-        return startJobAction.handle(request);
+    public void startTransferJob(StartTransferJob request, @Suspended AsyncResponse response) {
+        invoker.invoke(startJobAction, request, response);
     }
 }
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2019 The Data Transfer Project Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.datatransferproject.transport.jettyrest.rest;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import javax.ws.rs.ServiceUnavailableException;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.TimeoutHandler;
+import org.datatransferproject.api.action.Action;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+public class ActionInvokerTest {
+  private static final long TIMEOUT_MILLIS = 1000;
+  private static final Executor DIRECT = Runnable::run;
+
+  private AsyncResponse response;
+
+  @Before
+  public void setUp() {
+    response = mock(AsyncResponse.class);
+  }
+
+  @Test
+  public void resultResumesResponse() {
+    new ActionInvoker(DIRECT, TIMEOUT_MILLIS)
+        .invoke(new FakeAction(request -> "handled " + request), "job", response);
+
+    verify(response).resume("handled job");
+    verify(response).setTimeout(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+  }
+
+  @Test
+  public void rejectedRequestIsAnsweredWithServiceUnavailable() {
+    Executor rejecting =
+        task -> {
+          throw new RejectedExecutionException("full");
+        };
+
+    new ActionInvoker(rejecting, TIMEOUT_MILLIS)
+        .invoke(new FakeAction(request -> request), "job", response);
+
+    assertThat(resumedError()).isInstanceOf(ServiceUnavailableException.class);
+  }
+
+  @Test
+  public void failingActionResumesWithItsError() {
+    IllegalStateException failure = new IllegalStateException("job not found");
+
+    new ActionInvoker(DIRECT, TIMEOUT_MILLIS)
+        .invoke(
+            new FakeAction(
+                request -> {
+                  throw failure;
+                }),
+            "job",
+            response);
+
+    assertThat(resumedError()).isSameAs(failure);
+  }
+
+  @Test
+  public void timeoutCancelsActionAndAnswersWithServiceUnavailable() {
+    CompletableFuture<String> pending = new CompletableFuture<>();
+
+    new ActionInvoker(DIRECT, TIMEOUT_MILLIS).invoke(new PendingAction(pending), "job", response);
+    timeoutHandler().handleTimeout(response);
+
+    assertThat(pending.isCancelled()).isTrue();
+    assertThat(resumedError()).isInstanceOf(ServiceUnavailableException.class);
+  }
+
+  @Test
+  public void timeoutWaitsForActionThatHasCommitted() {
+    CompletableFuture<String> committed =
+        new CompletableFuture<String>() {
+          @Override
+          public boolean cancel(boolean mayInterruptIfRunning) {
+            return false;
+          }
+        };
+
+    new ActionInvoker(DIRECT, TIMEOUT_MILLIS)
+        .invoke(new PendingAction(committed), "job", response);
+    timeoutHandler().handleTimeout(response);
+
+    verify(response, never()).resume(any(Throwable.class));
+    verify(response, times(2)).setTimeout(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+
+    committed.complete("created");
+
+    verify(response).resume("created");
+  }
+
+  private TimeoutHandler timeoutHandler() {
+    ArgumentCaptor<TimeoutHandler> handler = ArgumentCaptor.forClass(TimeoutHandler.class);
+    verify(response).setTimeoutHandler(handler.capture());
+    return handler.getValue();
+  }
+
+  private Throwable resumedError() {
+    ArgumentCaptor<Throwable> error = ArgumentCaptor.forClass(Throwable.class);
+    verify(response).resume(error.capture());
+    return error.getValue();
+  }
+
+  /** Handles requests synchronously and runs them through the default {@code handleAsync}. */
+  private static class FakeAction implements Action<String, String> {
+    private final Function<String, String> handler;
+
+    FakeAction(Function<String, String> handler) {
+      this.handler = handler;
+    }
+
+    @Override
+    public Class<String> getRequestType() {
+      return String.class;
+    }
+
+    @Override
+    public String handle(String request) {
+      return handler.apply(request);
+    }
+  }
+
+  /** Returns a result the test completes, like actions that are still working on the request. */
+  private static final class PendingAction extends FakeAction {
+    private final CompletableFuture<String> result;
+
+    PendingAction(CompletableFuture<String> result) {
+      super(request -> result.join());
+      this.result = result;
+    }
+
+    @Override
+    public CompletionStage<String> handleAsync(String request, Executor executor) {
+      return result;
+    }
+  }
+}
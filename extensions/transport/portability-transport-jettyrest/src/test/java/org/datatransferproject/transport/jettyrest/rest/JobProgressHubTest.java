@@ -0,0 +1,258 @@
+/*
+ * Copyright 2019 The Data Transfer Project Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.datatransferproject.transport.jettyrest.rest;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.ImmutableMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import javax.ws.rs.core.GenericType;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.sse.OutboundSseEvent;
+import javax.ws.rs.sse.Sse;
+import javax.ws.rs.sse.SseEventSink;
+import org.datatransferproject.api.action.Action;
+import org.datatransferproject.api.launcher.Monitor;
+import org.datatransferproject.types.client.transfer.GetTransferJobProgress;
+import org.datatransferproject.types.client.transfer.TransferJobProgress;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+public class JobProgressHubTest {
+  private static final String JOB_ID = "job";
+  private static final long POLL_INTERVAL_MILLIS = 500;
+  private static final TransferJobProgress IN_PROGRESS =
+      new TransferJobProgress(JOB_ID, "IN_PROGRESS", ImmutableMap.of("PHOTOS", 1), 10L);
+  private static final TransferJobProgress MORE_PROGRESS =
+      new TransferJobProgress(JOB_ID, "IN_PROGRESS", ImmutableMap.of("PHOTOS", 2), 20L);
+  private static final TransferJobProgress COMPLETE =
+      new TransferJobProgress(JOB_ID, "COMPLETE", ImmutableMap.of("PHOTOS", 2), 20L);
+
+  private Action<GetTransferJobProgress, TransferJobProgress> action;
+  private ScheduledExecutorService executor;
+  private ScheduledFuture<?> future;
+  private Sse sse;
+  private JobProgressHub hub;
+
+  @Before
+  @SuppressWarnings("unchecked")
+  public void setUp() {
+    action = mock(Action.class);
+    executor = mock(ScheduledExecutorService.class);
+    future = mock(ScheduledFuture.class);
+    when(executor.scheduleWithFixedDelay(any(), anyLong(), anyLong(), any()))
+        .thenAnswer(invocation -> future);
+    sse = mock(Sse.class);
+    when(sse.newEventBuilder()).thenAnswer(invocation -> new FakeEventBuilder());
+    hub = new JobProgressHub(action, executor, POLL_INTERVAL_MILLIS, new Monitor() {});
+  }
+
+  @Test
+  public void subscribersOfOneJobShareOnePoll() {
+    hub.subscribe(JOB_ID, newSink(), sse);
+    hub.subscribe(JOB_ID, newSink(), sse);
+
+    verify(executor, times(1))
+        .scheduleWithFixedDelay(
+            any(), eq(0L), eq(POLL_INTERVAL_MILLIS), eq(TimeUnit.MILLISECONDS));
+    assertThat(hub.getWatchedJobCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void progressIsOnlySentWhenItChanges() {
+    SseEventSink sink = newSink();
+    hub.subscribe(JOB_ID, sink, sse);
+    Runnable poll = capturePoll();
+    when(action.handle(any())).thenReturn(IN_PROGRESS, IN_PROGRESS, MORE_PROGRESS);
+
+    poll.run();
+    poll.run();
+    poll.run();
+
+    assertThat(sentData(sink)).containsExactly(IN_PROGRESS, MORE_PROGRESS).inOrder();
+  }
+
+  @Test
+  public void lateSubscriberReceivesLatestProgress() {
+    hub.subscribe(JOB_ID, newSink(), sse);
+    Runnable poll = capturePoll();
+    when(action.handle(any())).thenReturn(IN_PROGRESS);
+    poll.run();
+
+    SseEventSink late = newSink();
+    hub.subscribe(JOB_ID, late, sse);
+
+    assertThat(sentData(late)).containsExactly(IN_PROGRESS);
+  }
+
+  @Test
+  public void terminalStateSendsLastEventAndClosesStreams() {
+    SseEventSink sink = newSink();
+    hub.subscribe(JOB_ID, sink, sse);
+    Runnable poll = capturePoll();
+    when(action.handle(any())).thenReturn(COMPLETE);
+
+    poll.run();
+
+    assertThat(sentData(sink)).containsExactly(COMPLETE);
+    verify(sink).close();
+    verify(future).cancel(false);
+    assertThat(hub.getWatchedJobCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void pollingStopsOnceAllSubscribersLeave() {
+    SseEventSink sink = newSink();
+    hub.subscribe(JOB_ID, sink, sse);
+    Runnable poll = capturePoll();
+    when(sink.isClosed()).thenReturn(true);
+
+    poll.run();
+
+    verify(action, never()).handle(any());
+    verify(future).cancel(false);
+    assertThat(hub.getWatchedJobCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void failedFetchSendsErrorAndClosesStreams() {
+    SseEventSink sink = newSink();
+    hub.subscribe(JOB_ID, sink, sse);
+    Runnable poll = capturePoll();
+    when(action.handle(any())).thenThrow(new IllegalStateException("job not found"));
+
+    poll.run();
+
+    ArgumentCaptor<OutboundSseEvent> events = ArgumentCaptor.forClass(OutboundSseEvent.class);
+    verify(sink).send(events.capture());
+    assertThat(events.getValue().getName()).isEqualTo(JobProgressHub.ERROR_EVENT);
+    assertThat(events.getValue().getData()).isEqualTo("job not found");
+    verify(sink).close();
+    assertThat(hub.getWatchedJobCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void resubscribingAfterCompletionStartsANewPoll() {
+    hub.subscribe(JOB_ID, newSink(), sse);
+    Runnable poll = capturePoll();
+    when(action.handle(any())).thenReturn(COMPLETE);
+    poll.run();
+
+    hub.subscribe(JOB_ID, newSink(), sse);
+
+    verify(executor, times(2)).scheduleWithFixedDelay(any(), anyLong(), anyLong(), any());
+    assertThat(hub.getWatchedJobCount()).isEqualTo(1);
+  }
+
+  private Runnable capturePoll() {
+    ArgumentCaptor<Runnable> poll = ArgumentCaptor.forClass(Runnable.class);
+    verify(executor).scheduleWithFixedDelay(poll.capture(), anyLong(), anyLong(), any());
+    return poll.getValue();
+  }
+
+  private static SseEventSink newSink() {
+    SseEventSink sink = mock(SseEventSink.class);
+    when(sink.send(any())).thenAnswer(invocation -> CompletableFuture.completedFuture(null));
+    return sink;
+  }
+
+  /** Returns the data of the progress events sent to {@code sink}, in order. */
+  private static List<Object> sentData(SseEventSink sink) {
+    ArgumentCaptor<OutboundSseEvent> events = ArgumentCaptor.forClass(OutboundSseEvent.class);
+    verify(sink, atLeast(0)).send(events.capture());
+    List<Object> data = new ArrayList<>();
+    for (OutboundSseEvent event : events.getAllValues()) {
+      assertThat(event.getName()).isEqualTo(JobProgressHub.PROGRESS_EVENT);
+      data.add(event.getData());
+    }
+    return data;
+  }
+
+  /** Builds events that expose their name and data, which is all the hub sets besides type. */
+  private static final class FakeEventBuilder implements OutboundSseEvent.Builder {
+    private String name;
+    private Object data;
+
+    @Override
+    public OutboundSseEvent.Builder id(String id) {
+      return this;
+    }
+
+    @Override
+    public OutboundSseEvent.Builder name(String name) {
+      this.name = name;
+      return this;
+    }
+
+    @Override
+    public OutboundSseEvent.Builder reconnectDelay(long milliseconds) {
+      return this;
+    }
+
+    @Override
+    public OutboundSseEvent.Builder mediaType(MediaType mediaType) {
+      return this;
+    }
+
+    @Override
+    public OutboundSseEvent.Builder comment(String comment) {
+      return this;
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public OutboundSseEvent.Builder data(Class type, Object data) {
+      this.data = data;
+      return this;
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public OutboundSseEvent.Builder data(GenericType type, Object data) {
+      this.data = data;
+      return this;
+    }
+
+    @Override
+    public OutboundSseEvent.Builder data(Object data) {
+      this.data = data;
+      return this;
+    }
+
+    @Override
+    public OutboundSseEvent build() {
+      OutboundSseEvent event = mock(OutboundSseEvent.class);
+      when(event.getName()).thenReturn(name);
+      when(event.getData()).thenReturn(data);
+      return event;
+    }
+  }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2018 The Data Transfer Project Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.datatransferproject.security;
+
+import com.google.common.base.Strings;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.TimeUnit;
+import javax.crypto.SecretKey;
+import org.datatransferproject.api.launcher.Monitor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures throughput of the AES/CBC path used for session-encrypted initial auth data on the API
+ * server and of the RSA path used between the API server and the worker.
+ *
+ * <p>Run with {@code ./gradlew :libraries:security:jmh}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(Threads.MAX)
+public class CryptoBenchmark {
+  // AES/CBC/NoPadding needs whole blocks, so keep the payload a multiple of 16 bytes
+  private static final String AES_PAYLOAD =
+      Strings.padEnd("{\"@type\":\"TokensAndUrlAuthData\",\"accessToken\":\"", 256, 'x');
+  // PKCS1 padding limits a 2048-bit RSA payload to 245 bytes
+  private static final String RSA_PAYLOAD = Strings.repeat("x", 190);
+
+  private Encrypter aesEncrypter;
+  private Decrypter aesDecrypter;
+  private String aesEncrypted;
+
+  private Encrypter rsaEncrypter;
+  private Decrypter rsaDecrypter;
+  private String rsaEncrypted;
+
+  @Setup
+  public void setUp() throws NoSuchAlgorithmException {
+    Monitor monitor = new Monitor() {};
+    EncrypterFactory encrypterFactory = new EncrypterFactory(monitor);
+    DecrypterFactory decrypterFactory = new DecrypterFactory(monitor);
+
+    SecretKey sessionKey = new AesSymmetricKeyGenerator(monitor).generate();
+    aesEncrypter = encrypterFactory.create(sessionKey);
+    aesDecrypter = decrypterFactory.create(sessionKey);
+    aesEncrypted = aesEncrypter.encrypt(AES_PAYLOAD);
+
+    KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("RSA");
+    keyPairGenerator.initialize(2048);
+    KeyPair keyPair = keyPairGenerator.generateKeyPair();
+    rsaEncrypter = encrypterFactory.create(keyPair.getPublic());
+    rsaDecrypter = decrypterFactory.create(keyPair.getPrivate());
+    rsaEncrypted = rsaEncrypter.encrypt(RSA_PAYLOAD);
+  }
+
+  @Benchmark
+  public String aesEncrypt() {
+    return aesEncrypter.encrypt(AES_PAYLOAD);
+  }
+
+  @Benchmark
+  public String aesDecrypt() {
+    return aesDecrypter.decrypt(aesEncrypted);
+  }
+
+  @Benchmark
+  public String rsaEncrypt() {
+    return rsaEncrypter.encrypt(RSA_PAYLOAD);
+  }
+
+  @Benchmark
+  public String rsaDecrypt() {
+    return rsaDecrypter.decrypt(rsaEncrypted);
+  }
+}
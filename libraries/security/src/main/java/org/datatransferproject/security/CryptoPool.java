@@ -0,0 +1,77 @@
+/*
+ * Copyright 2018 The Data Transfer Project Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.datatransferproject.security;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.EnumMap;
+import java.util.Map;
+import javax.crypto.Cipher;
+import javax.crypto.NoSuchPaddingException;
+
+/**
+ * Per-thread {@link Cipher} and {@link SecureRandom} instances used by {@link EncrypterImpl} and
+ * {@link DecrypterImpl}.
+ *
+ * <p>Looking up a JCA provider and seeding a SHA1PRNG are both expensive, so each thread does it
+ * once and the instances are re-initialized for every operation instead. Neither class is
+ * thread-safe, which is why they are never shared between threads.
+ */
+final class CryptoPool {
+  private static final String RANDOM_ALGORITHM = "SHA1PRNG";
+
+  private static final ThreadLocal<Map<CryptoTransformation, Cipher>> CIPHERS =
+      ThreadLocal.withInitial(() -> new EnumMap<>(CryptoTransformation.class));
+  private static final ThreadLocal<SecureRandom> RANDOM = new ThreadLocal<>();
+
+  private CryptoPool() {}
+
+  /**
+   * Returns this thread's {@link Cipher} for the given transformation. Callers must {@code init}
+   * it before use.
+   */
+  static Cipher getCipher(CryptoTransformation transformation)
+      throws NoSuchAlgorithmException, NoSuchPaddingException {
+    Map<CryptoTransformation, Cipher> ciphers = CIPHERS.get();
+    Cipher cipher = ciphers.get(transformation);
+    if (cipher == null) {
+      cipher = Cipher.getInstance(getAlgorithm(transformation));
+      ciphers.put(transformation, cipher);
+    }
+    return cipher;
+  }
+
+  /** Returns this thread's {@link SecureRandom}, seeding it on first use. */
+  static SecureRandom getRandom() throws NoSuchAlgorithmException {
+    SecureRandom random = RANDOM.get();
+    if (random == null) {
+      random = SecureRandom.getInstance(RANDOM_ALGORITHM);
+      RANDOM.set(random);
+    }
+    return random;
+  }
+
+  private static String getAlgorithm(CryptoTransformation transformation) {
+    switch (transformation) {
+      case AES_CBC_NOPADDING:
+        return "AES/CBC/NoPadding";
+      case RSA_ECB_PKCS1:
+        return "RSA/ECB/PKCS1Padding";
+      default:
+        throw new AssertionError("How could this happen...");
+    }
+  }
+}
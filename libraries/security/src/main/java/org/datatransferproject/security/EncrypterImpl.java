@@ -36,6 +36,8 @@ import org.datatransferproject.api.launcher.Monitor;
  *
  * The first block encrypted is a random salt so that we can ignore its value in the decrypter. This
  * makes it so we don't have to record the IV for AES.
+ *
+ * Ciphers and the random source come from {@link CryptoPool} rather than being created per call.
  */
 final class EncrypterImpl implements Encrypter {
   private final Key key;
@@ -51,14 +53,13 @@ final class EncrypterImpl implements Encrypter {
   @Override
   public String encrypt(String data) {
     try {
-      Cipher cipher;
+      Cipher cipher = CryptoPool.getCipher(transformation);
+      SecureRandom random = CryptoPool.getRandom();
       switch (transformation) {
         case AES_CBC_NOPADDING:
-          cipher = Cipher.getInstance("AES/CBC/NoPadding");
-          cipher.init(Cipher.ENCRYPT_MODE, key, generateIv(cipher));
+          cipher.init(Cipher.ENCRYPT_MODE, key, generateIv(cipher, random));
           break;
         case RSA_ECB_PKCS1:
-          cipher = Cipher.getInstance("RSA/ECB/PKCS1Padding");
           cipher.init(Cipher.ENCRYPT_MODE, key);
           break;
         default:
@@ -67,9 +68,12 @@ final class EncrypterImpl implements Encrypter {
       // we use a salt the size of the first block
       // so that we don't need to know IV for AES/CBC
       byte[] salt = new byte[cipher.getBlockSize()];
-      SecureRandom random = SecureRandom.getInstance("SHA1PRNG");
       random.nextBytes(salt);
       byte[] encryptedSalt = cipher.update(salt);
+      if (encryptedSalt == null) {
+        // RSA has no block size, so there is no salt block to emit
+        encryptedSalt = new byte[0];
+      }
       byte[] encryptedData = cipher.doFinal(data.getBytes(UTF_8));
       byte[] encrypted = new byte[encryptedSalt.length + encryptedData.length];
       System.arraycopy(encryptedSalt, 0, encrypted, 0, encryptedSalt.length);
@@ -86,10 +90,9 @@ final class EncrypterImpl implements Encrypter {
     }
   }
 
-  private static final IvParameterSpec generateIv(Cipher cipher) throws NoSuchAlgorithmException {
-    SecureRandom randomSecureRandom = SecureRandom.getInstance("SHA1PRNG");
+  private static IvParameterSpec generateIv(Cipher cipher, SecureRandom random) {
     byte[] iv = new byte[cipher.getBlockSize()];
-    randomSecureRandom.nextBytes(iv);
+    random.nextBytes(iv);
     return new IvParameterSpec(iv);
   }
 }
\ No newline at end of file
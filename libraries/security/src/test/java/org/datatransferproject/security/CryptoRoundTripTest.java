@@ -0,0 +1,151 @@
+/*
+ * Copyright 2019 The Data Transfer Project Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.datatransferproject.security;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.base.Strings;
+import com.google.common.io.BaseEncoding;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import org.datatransferproject.api.launcher.Monitor;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Tests that data encrypted with the per-thread ciphers of {@link CryptoPool} decrypts again. */
+public class CryptoRoundTripTest {
+  // AES/CBC/NoPadding needs whole blocks, so keep the payload a multiple of 16 bytes
+  private static final String AES_PAYLOAD = Strings.padEnd("{\"accessToken\":\"", 64, 'x');
+  private static final String RSA_PAYLOAD = "{\"accessToken\":\"token\"}";
+  private static final int AES_BLOCK_SIZE = 16;
+
+  private final Monitor monitor = new Monitor() {};
+  private final EncrypterFactory encrypterFactory = new EncrypterFactory(monitor);
+  private final DecrypterFactory decrypterFactory = new DecrypterFactory(monitor);
+  private SecretKey sessionKey;
+  private KeyPair keyPair;
+
+  @Before
+  public void setUp() throws Exception {
+    sessionKey = new AesSymmetricKeyGenerator(monitor).generate();
+    KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("RSA");
+    keyPairGenerator.initialize(2048);
+    keyPair = keyPairGenerator.generateKeyPair();
+  }
+
+  @Test
+  public void aesRoundTrip() {
+    String encrypted = encrypterFactory.create(sessionKey).encrypt(AES_PAYLOAD);
+
+    assertThat(decrypterFactory.create(sessionKey).decrypt(encrypted)).isEqualTo(AES_PAYLOAD);
+  }
+
+  @Test
+  public void aesEncryptionsOnSameThreadAreDistinct() {
+    Encrypter encrypter = encrypterFactory.create(sessionKey);
+    Decrypter decrypter = decrypterFactory.create(sessionKey);
+
+    byte[] first = BaseEncoding.base64Url().decode(encrypter.encrypt(AES_PAYLOAD));
+    byte[] second = BaseEncoding.base64Url().decode(encrypter.encrypt(AES_PAYLOAD));
+
+    // A reused cipher must get a fresh IV and salt each time, or the first blocks would repeat
+    assertThat(Arrays.equals(firstBlock(first), firstBlock(second))).isFalse();
+    assertThat(Arrays.equals(first, second)).isFalse();
+    assertThat(decrypter.decrypt(BaseEncoding.base64Url().encode(first))).isEqualTo(AES_PAYLOAD);
+    assertThat(decrypter.decrypt(BaseEncoding.base64Url().encode(second)))
+        .isEqualTo(AES_PAYLOAD);
+  }
+
+  @Test
+  public void aesKeysSharingThreadCipherStaySeparate() {
+    SecretKey otherKey = new AesSymmetricKeyGenerator(monitor).generate();
+    String encrypted = encrypterFactory.create(sessionKey).encrypt(AES_PAYLOAD);
+    String otherEncrypted = encrypterFactory.create(otherKey).encrypt(AES_PAYLOAD);
+
+    assertThat(decrypterFactory.create(otherKey).decrypt(otherEncrypted)).isEqualTo(AES_PAYLOAD);
+    assertThat(decrypterFactory.create(sessionKey).decrypt(encrypted)).isEqualTo(AES_PAYLOAD);
+  }
+
+  @Test
+  public void rsaRoundTrip() {
+    String encrypted = encrypterFactory.create(keyPair.getPublic()).encrypt(RSA_PAYLOAD);
+
+    assertThat(decrypterFactory.create(keyPair.getPrivate()).decrypt(encrypted))
+        .isEqualTo(RSA_PAYLOAD);
+  }
+
+  @Test
+  public void rsaEncryptsWithoutSaltBlock() throws Exception {
+    // RSA has no block size, so the salt is empty and update returns null rather than a block
+    Cipher cipher = CryptoPool.getCipher(CryptoTransformation.RSA_ECB_PKCS1);
+    cipher.init(Cipher.ENCRYPT_MODE, keyPair.getPublic());
+    assertThat(cipher.getBlockSize()).isEqualTo(0);
+    assertThat(cipher.update(new byte[cipher.getBlockSize()])).isNull();
+
+    Encrypter encrypter = encrypterFactory.create(keyPair.getPublic());
+    String first = encrypter.encrypt(RSA_PAYLOAD);
+    String second = encrypter.encrypt(RSA_PAYLOAD);
+
+    // The whole ciphertext is the RSA block, randomized by PKCS1 padding
+    assertThat(BaseEncoding.base64Url().decode(first).length).isEqualTo(256);
+    assertThat(first.equals(second)).isFalse();
+    Decrypter decrypter = decrypterFactory.create(keyPair.getPrivate());
+    assertThat(decrypter.decrypt(first)).isEqualTo(RSA_PAYLOAD);
+    assertThat(decrypter.decrypt(second)).isEqualTo(RSA_PAYLOAD);
+  }
+
+  @Test
+  public void aesAndRsaInterleaveOnSameThread() {
+    Encrypter aesEncrypter = encrypterFactory.create(sessionKey);
+    Encrypter rsaEncrypter = encrypterFactory.create(keyPair.getPublic());
+
+    String aesEncrypted = aesEncrypter.encrypt(AES_PAYLOAD);
+    String rsaEncrypted = rsaEncrypter.encrypt(RSA_PAYLOAD);
+    String aesEncryptedAgain = aesEncrypter.encrypt(AES_PAYLOAD);
+
+    Decrypter aesDecrypter = decrypterFactory.create(sessionKey);
+    assertThat(aesDecrypter.decrypt(aesEncrypted)).isEqualTo(AES_PAYLOAD);
+    assertThat(decrypterFactory.create(keyPair.getPrivate()).decrypt(rsaEncrypted))
+        .isEqualTo(RSA_PAYLOAD);
+    assertThat(aesDecrypter.decrypt(aesEncryptedAgain)).isEqualTo(AES_PAYLOAD);
+  }
+
+  @Test
+  public void decryptsOnAnotherThread() throws Exception {
+    String encrypted = encrypterFactory.create(sessionKey).encrypt(AES_PAYLOAD);
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      String decrypted =
+          executor
+              .submit(() -> decrypterFactory.create(sessionKey).decrypt(encrypted))
+              .get(10, TimeUnit.SECONDS);
+
+      assertThat(decrypted).isEqualTo(AES_PAYLOAD);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static byte[] firstBlock(byte[] encrypted) {
+    return Arrays.copyOf(encrypted, AES_BLOCK_SIZE);
+  }
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright 2019 The Data Transfer Project Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.datatransferproject.transfer;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+import org.datatransferproject.spi.cloud.storage.TemporaryPerJobDataStore;
+import org.datatransferproject.spi.cloud.storage.TemporaryPerJobDataStore.InputStreamWrapper;
+import org.datatransferproject.spi.transfer.types.ContainedIdIndex;
+
+/**
+ * Keeps one {@link ContainedIdIndex} per job in the job's temp store, for exporters that export a
+ * user's albums first and then need to tell which photos are not in any album.
+ *
+ * <p>An index is either stored in one go with {@link #put}, or built up album by album with {@link
+ * #addAll}, which writes only the album's ids as a new segment of the index, under the given key
+ * followed by the segment's number. Either way the index survives retries and the job moving to
+ * another worker. The index of recently active jobs is also held in memory, so each worker reads it
+ * from the temp store at most once per job. Jobs are locked separately, so a slow write for one job
+ * doesn't hold up any other.
+ */
+public class ContainedIdIndexStore {
+  // Upper bound on the number of jobs whose index is held in memory at any one time
+  private static final long MAX_CACHED_JOBS = 16;
+  private static final long EXPIRY_HOURS = 1;
+
+  private final TemporaryPerJobDataStore jobStore;
+  private final String key;
+  private final Cache<UUID, JobIndex> indexes =
+      CacheBuilder.newBuilder()
+          .maximumSize(MAX_CACHED_JOBS)
+          .expireAfterAccess(EXPIRY_HOURS, TimeUnit.HOURS)
+          .build();
+
+  /**
+   * @param jobStore the temp store indexes are written to
+   * @param key the temp store key of each job's index, and the prefix of the keys of its segments
+   */
+  public ContainedIdIndexStore(TemporaryPerJobDataStore jobStore, String key) {
+    this.jobStore = checkNotNull(jobStore, "jobStore can't be null");
+    this.key = checkNotNull(key, "key can't be null");
+  }
+
+  /**
+   * Returns the job's index, reading it from the temp store if it isn't held in memory. A job with
+   * no stored index has an empty one.
+   */
+  public ContainedIdIndex get(UUID jobId) throws IOException {
+    ContainedIdIndex index = getIfStored(jobId);
+    return index == null ? ContainedIdIndex.empty() : index;
+  }
+
+  /**
+   * Returns the job's index, reading it from the temp store if it isn't held in memory, or null if
+   * no index has been stored for the job.
+   */
+  @Nullable
+  public ContainedIdIndex getIfStored(UUID jobId) throws IOException {
+    return load(jobId).getIfStored();
+  }
+
+  /** Returns the job's index if it is held in memory, without going to the temp store. */
+  @Nullable
+  public ContainedIdIndex getIfCached(UUID jobId) {
+    JobIndex job = indexes.getIfPresent(jobId);
+    return job == null ? null : job.getIfStored();
+  }
+
+  /**
+   * Replaces the job's index. The new index is held in memory even if writing it to the temp store
+   * fails, in which case it is only lost if the job moves to another worker.
+   */
+  public void put(UUID jobId, ContainedIdIndex index) throws IOException {
+    // The whole index is replaced, so there is no need to read the stored one first
+    indexes.asMap().computeIfAbsent(jobId, JobIndex::new).put(index);
+  }
+
+  /**
+   * Adds {@code ids} to the job's index, writing them to the temp store as a new segment of it.
+   * Adding ids that are already in the index, e.g. when a page is exported again after a retry,
+   * leaves it unchanged.
+   */
+  public void addAll(UUID jobId, Iterable<String> ids) throws IOException {
+    load(jobId).addAll(ids);
+  }
+
+  private JobIndex load(UUID jobId) throws IOException {
+    try {
+      return indexes.get(jobId, () -> read(jobId));
+    } catch (ExecutionException e) {
+      Throwables.throwIfInstanceOf(e.getCause(), IOException.class);
+      throw new IOException("Couldn't read index of job " + jobId, e.getCause());
+    } catch (UncheckedExecutionException e) {
+      Throwables.throwIfUnchecked(e.getCause());
+      throw e;
+    }
+  }
+
+  private JobIndex read(UUID jobId) throws IOException {
+    JobIndex job = new JobIndex(jobId);
+    ContainedIdIndex index = readIndex(jobId, key);
+    if (index != null) {
+      job.stored = true;
+      job.index = index;
+      return job;
+    }
+    // Not stored in one go, so the index, if any, was built up in segments
+    List<ContainedIdIndex> segments = new ArrayList<>();
+    while ((index = readIndex(jobId, segmentKey(segments.size()))) != null) {
+      segments.add(index);
+    }
+    job.stored = !segments.isEmpty();
+    job.index = ContainedIdIndex.union(segments);
+    job.segments = segments.size();
+    return job;
+  }
+
+  @Nullable
+  private ContainedIdIndex readIndex(UUID jobId, String indexKey) throws IOException {
+    InputStreamWrapper wrapper = jobStore.getStream(jobId, indexKey);
+    InputStream stream = wrapper == null ? null : wrapper.getStream();
+    if (stream == null) {
+      return null;
+    }
+    try (InputStream in = stream) {
+      return ContainedIdIndex.readFrom(in);
+    }
+  }
+
+  private String segmentKey(int segment) {
+    return key + "-" + segment;
+  }
+
+  /** The state of one job's index. Its lock is the job's lock. */
+  private final class JobIndex {
+    private final UUID jobId;
+    private boolean stored;
+    private ContainedIdIndex index = ContainedIdIndex.empty();
+    // Ids added since the index was last merged with them, so that adding an album costs only as
+    // much as the album, and the index is merged once when it is next read
+    @Nullable private ContainedIdIndex.Builder added;
+    // Number of segments written so far, which is also the number of the next one
+    private int segments;
+
+    private JobIndex(UUID jobId) {
+      this.jobId = jobId;
+    }
+
+    synchronized ContainedIdIndex getIfStored() {
+      if (!stored) {
+        return null;
+      }
+      if (added != null) {
+        index = ContainedIdIndex.union(ImmutableList.of(index, added.build()));
+        added = null;
+      }
+      return index;
+    }
+
+    synchronized void put(ContainedIdIndex newIndex) throws IOException {
+      stored = true;
+      index = newIndex;
+      added = null;
+      jobStore.create(jobId, key, newIndex.toInputStream());
+    }
+
+    synchronized void addAll(Iterable<String> ids) throws IOException {
+      ContainedIdIndex segment = ContainedIdIndex.builder().addAll(ids).build();
+      stored = true;
+      if (added == null) {
+        added = ContainedIdIndex.builder();
+      }
+      added.addAll(ids);
+      jobStore.create(jobId, segmentKey(segments), segment.toInputStream());
+      segments++;
+    }
+  }
+}
@@ -32,4 +32,20 @@ public class ImageStreamProvider {
     conn.connect();
     return conn;
   }
+
+  /**
+   * Gets the size of an image, given its URL, with a HEAD request so that nothing is downloaded.
+   * Returns -1 if the server doesn't announce it.
+   */
+  public long getContentLength(String urlStr) throws IOException {
+    URL url = new URL(urlStr);
+    HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+    conn.setRequestMethod("HEAD");
+    try {
+      conn.connect();
+      return conn.getContentLengthLong();
+    } finally {
+      conn.disconnect();
+    }
+  }
 }
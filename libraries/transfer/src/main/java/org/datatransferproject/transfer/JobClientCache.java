@@ -0,0 +1,137 @@
+/*
+ * Copyright 2018 The Data Transfer Project Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.datatransferproject.transfer;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import java.io.IOException;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.datatransferproject.api.launcher.MetricRecorder;
+import org.datatransferproject.types.transfer.auth.AuthData;
+
+/**
+ * Holds the authenticated API clients of running jobs so importers and exporters don't rebuild
+ * them, and repeat whatever handshake their construction involves, on every call.
+ *
+ * <p>Clients are held per job and token, so the importer and exporter of a job can share a cache
+ * while each keeps the client for its own account, and a job whose token changes, e.g. after a
+ * refresh, gets a new client. A client is built at most once per job and token, and building one
+ * doesn't hold up callers asking for any other. Every construction is recorded with the given
+ * {@link MetricRecorder} under {@link #CLIENT_CREATED_TAG}, so a client that stops being reused
+ * shows up as a jump in that metric.
+ *
+ * @param <A> the type of auth data the client is built from
+ * @param <C> the type of client
+ */
+public class JobClientCache<A extends AuthData, C> {
+  public static final String CLIENT_CREATED_TAG = "client_created";
+
+  // Upper bound on the number of clients held at any one time, two per job when a cache is shared
+  // by an importer and an exporter
+  private static final long MAX_CACHED_CLIENTS = 32;
+  // Clients of jobs that stop calling in, e.g. because they failed, are dropped after this long
+  private static final long EXPIRY_HOURS = 1;
+
+  private final String dataType;
+  private final MetricRecorder metricRecorder;
+  private final ClientFactory<A, C> clientFactory;
+  private final Cache<Key, C> clients =
+      CacheBuilder.newBuilder()
+          .maximumSize(MAX_CACHED_CLIENTS)
+          .expireAfterAccess(EXPIRY_HOURS, TimeUnit.HOURS)
+          .build();
+  private final AtomicLong createdCount = new AtomicLong();
+
+  /**
+   * @param dataType the data type recorded with the construction metric
+   * @param metricRecorder the recorder construction events are sent to
+   * @param clientFactory builds a new client for the given auth data
+   */
+  public JobClientCache(
+      String dataType, MetricRecorder metricRecorder, ClientFactory<A, C> clientFactory) {
+    this.dataType = checkNotNull(dataType, "dataType can't be null");
+    this.metricRecorder = checkNotNull(metricRecorder, "metricRecorder can't be null");
+    this.clientFactory = checkNotNull(clientFactory, "clientFactory can't be null");
+  }
+
+  /** Returns the client for {@code jobId} and the token of {@code authData}, building it if absent. */
+  public C getOrCreate(UUID jobId, A authData) throws IOException {
+    try {
+      return clients.get(
+          new Key(jobId, authData.getToken()),
+          () -> {
+            C client = clientFactory.create(authData);
+            createdCount.incrementAndGet();
+            metricRecorder.recordMetric(dataType, CLIENT_CREATED_TAG);
+            return client;
+          });
+    } catch (ExecutionException e) {
+      Throwables.throwIfInstanceOf(e.getCause(), IOException.class);
+      throw new IOException("Couldn't create client for job " + jobId, e.getCause());
+    } catch (UncheckedExecutionException e) {
+      Throwables.throwIfUnchecked(e.getCause());
+      throw e;
+    }
+  }
+
+  /** Returns the number of clients built since this cache was created. */
+  @VisibleForTesting
+  public long getCreatedCount() {
+    return createdCount.get();
+  }
+
+  /** Builds a client from auth data. */
+  @FunctionalInterface
+  public interface ClientFactory<A extends AuthData, C> {
+    C create(A authData) throws IOException;
+  }
+
+  private static final class Key {
+    private final UUID jobId;
+    private final String token;
+
+    private Key(UUID jobId, String token) {
+      this.jobId = jobId;
+      this.token = token;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) o;
+      return jobId.equals(other.jobId) && Objects.equals(token, other.token);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(jobId, token);
+    }
+  }
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright 2019 The Data Transfer Project Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.datatransferproject.transfer;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.io.ByteStreams;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.datatransferproject.spi.cloud.storage.TemporaryPerJobDataStore;
+import org.datatransferproject.spi.transfer.types.ContainedIdIndex;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ContainedIdIndexStoreTest {
+  private static final String KEY = "albumPhotos";
+  private static final UUID JOB_ID = UUID.randomUUID();
+
+  private InMemoryDataStore dataStore;
+  private ContainedIdIndexStore store;
+
+  @Before
+  public void setUp() {
+    dataStore = new InMemoryDataStore();
+    store = new ContainedIdIndexStore(dataStore, KEY);
+  }
+
+  @Test
+  public void jobWithoutIndexIsEmpty() throws Exception {
+    assertThat(store.get(JOB_ID).size()).isEqualTo(0);
+    assertThat(store.getIfCached(JOB_ID)).isNull();
+  }
+
+  @Test
+  public void jobWithoutIndexIsNotStored() throws Exception {
+    assertThat(store.getIfStored(JOB_ID)).isNull();
+
+    store.put(JOB_ID, ContainedIdIndex.builder().add("photo0").build());
+    assertThat(store.getIfStored(JOB_ID).contains("photo0")).isTrue();
+    assertThat(store.getIfCached(JOB_ID)).isNotNull();
+  }
+
+  @Test
+  public void addAllMergesOverlappingAlbums() throws Exception {
+    // A synthetic library of 1000 photos in 10 albums of 150, each overlapping the next by 60;
+    // photos 960-999 are in no album
+    for (int album = 0; album < 10; album++) {
+      store.addAll(JOB_ID, photoIds(album * 90, album * 90 + 150));
+    }
+
+    ContainedIdIndex index = store.get(JOB_ID);
+    assertThat(index.size()).isEqualTo(960);
+    for (int i = 0; i < 1000; i++) {
+      assertThat(index.contains("photo" + i)).isEqualTo(i < 960);
+    }
+  }
+
+  @Test
+  public void addingAnAlbumAgainLeavesIndexUnchanged() throws Exception {
+    store.addAll(JOB_ID, photoIds(0, 10));
+    store.addAll(JOB_ID, photoIds(0, 10));
+
+    assertThat(store.get(JOB_ID).size()).isEqualTo(10);
+  }
+
+  @Test
+  public void indexSurvivesRestart() throws Exception {
+    store.addAll(JOB_ID, photoIds(0, 10));
+    store.addAll(JOB_ID, photoIds(5, 15));
+
+    // A new store over the same temp store, as on another worker
+    ContainedIdIndexStore restarted = new ContainedIdIndexStore(dataStore, KEY);
+    assertThat(restarted.getIfCached(JOB_ID)).isNull();
+    restarted.addAll(JOB_ID, photoIds(20, 25));
+    ContainedIdIndex index = new ContainedIdIndexStore(dataStore, KEY).get(JOB_ID);
+
+    assertThat(index.size()).isEqualTo(20);
+    assertThat(index.contains("photo0")).isTrue();
+    assertThat(index.contains("photo14")).isTrue();
+    assertThat(index.contains("photo15")).isFalse();
+    assertThat(index.contains("photo24")).isTrue();
+  }
+
+  @Test
+  public void addAllWritesOnlyTheAddedIds() throws Exception {
+    store.addAll(JOB_ID, photoIds(0, 100));
+    int firstAlbumBytes = dataStore.writtenBytes;
+    store.addAll(JOB_ID, photoIds(100, 200));
+
+    // The second album is written as a segment of its own instead of with the whole index
+    assertThat(dataStore.writtenBytes).isEqualTo(2 * firstAlbumBytes);
+    assertThat(dataStore.reads).isEqualTo(2);
+    assertThat(store.get(JOB_ID).size()).isEqualTo(200);
+  }
+
+  @Test
+  public void putReplacesIndexWithoutReadingIt() throws Exception {
+    store.put(JOB_ID, ContainedIdIndex.builder().add("photo0").build());
+
+    assertThat(store.get(JOB_ID).contains("photo0")).isTrue();
+    assertThat(dataStore.reads).isEqualTo(0);
+    assertThat(new ContainedIdIndexStore(dataStore, KEY).get(JOB_ID).size()).isEqualTo(1);
+  }
+
+  @Test
+  public void slowWriteDoesNotHoldUpOtherJobs() throws Exception {
+    CountDownLatch otherJobAdded = new CountDownLatch(1);
+    ContainedIdIndexStore slowStore =
+        new ContainedIdIndexStore(
+            new InMemoryDataStore() {
+              @Override
+              public void create(UUID jobId, String key, InputStream stream) throws IOException {
+                if (jobId.equals(JOB_ID)) {
+                  try {
+                    otherJobAdded.await();
+                  } catch (InterruptedException e) {
+                    throw new IOException(e);
+                  }
+                }
+                super.create(jobId, key, stream);
+              }
+            },
+            KEY);
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Future<?> slowAdd =
+          executor.submit(
+              () -> {
+                slowStore.addAll(JOB_ID, photoIds(0, 10));
+                return null;
+              });
+
+      slowStore.addAll(UUID.randomUUID(), photoIds(10, 20));
+      otherJobAdded.countDown();
+
+      slowAdd.get(10, TimeUnit.SECONDS);
+      assertThat(slowStore.get(JOB_ID).size()).isEqualTo(10);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void readsTempStoreOncePerJob() throws Exception {
+    dataStore.create(JOB_ID, KEY, ContainedIdIndex.builder().add("photo0").build().toInputStream());
+
+    for (int i = 0; i < 5; i++) {
+      assertThat(store.get(JOB_ID).contains("photo0")).isTrue();
+    }
+    assertThat(dataStore.reads).isEqualTo(1);
+  }
+
+  @Test
+  public void jobsHaveSeparateIndexes() throws Exception {
+    UUID otherJobId = UUID.randomUUID();
+    store.addAll(JOB_ID, photoIds(0, 10));
+    store.addAll(otherJobId, photoIds(10, 20));
+
+    assertThat(store.get(JOB_ID).contains("photo15")).isFalse();
+    assertThat(store.get(otherJobId).contains("photo5")).isFalse();
+    assertThat(new ContainedIdIndexStore(dataStore, KEY).get(otherJobId).size()).isEqualTo(10);
+  }
+
+  private static List<String> photoIds(int from, int to) {
+    List<String> ids = new ArrayList<>();
+    for (int i = from; i < to; i++) {
+      ids.add("photo" + i);
+    }
+    return ids;
+  }
+
+  private static class InMemoryDataStore implements TemporaryPerJobDataStore {
+    private final Map<String, byte[]> streams = new HashMap<>();
+    private int reads;
+    private int writtenBytes;
+
+    @Override
+    public synchronized void create(UUID jobId, String key, InputStream stream)
+        throws IOException {
+      byte[] bytes = ByteStreams.toByteArray(stream);
+      writtenBytes += bytes.length;
+      streams.put(jobId + "/" + key, bytes);
+    }
+
+    @Override
+    public synchronized InputStreamWrapper getStream(UUID jobId, String key) {
+      reads++;
+      byte[] bytes = streams.get(jobId + "/" + key);
+      return bytes == null ? null : new InputStreamWrapper(new ByteArrayInputStream(bytes));
+    }
+  }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2018 The Data Transfer Project Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.datatransferproject.transfer;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.datatransferproject.api.launcher.MetricRecorder;
+import org.datatransferproject.types.transfer.auth.TokensAndUrlAuthData;
+import org.junit.Before;
+import org.junit.Test;
+
+public class JobClientCacheTest {
+  private static final UUID JOB_ID = UUID.randomUUID();
+  private static final TokensAndUrlAuthData AUTH_DATA =
+      new TokensAndUrlAuthData("token", "refresh", "url");
+  private static final TokensAndUrlAuthData AUTH_DATA_OTHER =
+      new TokensAndUrlAuthData("other", "refresh", "url");
+
+  private final List<String> recordedTags = new ArrayList<>();
+  private JobClientCache<TokensAndUrlAuthData, Object> cache;
+
+  @Before
+  public void setUp() {
+    cache = new JobClientCache<>("PHOTOS", new RecordingMetricRecorder(), authData -> new Object());
+  }
+
+  @Test
+  public void reusesClientForSameJob() throws Exception {
+    Object first = cache.getOrCreate(JOB_ID, AUTH_DATA);
+    Object second = cache.getOrCreate(JOB_ID, new TokensAndUrlAuthData("token", "refresh", "url"));
+
+    assertThat(second).isSameAs(first);
+    assertThat(cache.getCreatedCount()).isEqualTo(1);
+    assertThat(recordedTags).containsExactly(JobClientCache.CLIENT_CREATED_TAG);
+  }
+
+  @Test
+  public void createsClientPerJob() throws Exception {
+    Object first = cache.getOrCreate(JOB_ID, AUTH_DATA);
+    Object second = cache.getOrCreate(UUID.randomUUID(), AUTH_DATA);
+
+    assertThat(second).isNotSameAs(first);
+    assertThat(cache.getCreatedCount()).isEqualTo(2);
+  }
+
+  @Test
+  public void createsClientPerToken() throws Exception {
+    Object first = cache.getOrCreate(JOB_ID, AUTH_DATA);
+    Object second =
+        cache.getOrCreate(JOB_ID, new TokensAndUrlAuthData("refreshed", "refresh", "url"));
+
+    assertThat(second).isNotSameAs(first);
+    assertThat(cache.getOrCreate(JOB_ID, AUTH_DATA)).isSameAs(first);
+    assertThat(cache.getCreatedCount()).isEqualTo(2);
+  }
+
+  @Test
+  public void keepsImporterAndExporterClientsOfSameJob() throws Exception {
+    TokensAndUrlAuthData importAuthData = new TokensAndUrlAuthData("import", "refresh", "url");
+    Object exportClient = cache.getOrCreate(JOB_ID, AUTH_DATA);
+    Object importClient = cache.getOrCreate(JOB_ID, importAuthData);
+
+    for (int i = 0; i < 3; i++) {
+      assertThat(cache.getOrCreate(JOB_ID, AUTH_DATA)).isSameAs(exportClient);
+      assertThat(cache.getOrCreate(JOB_ID, importAuthData)).isSameAs(importClient);
+    }
+    assertThat(cache.getCreatedCount()).isEqualTo(2);
+  }
+
+  @Test
+  public void buildsClientWithoutBlockingOtherKeys() throws Exception {
+    CountDownLatch otherCreated = new CountDownLatch(1);
+    JobClientCache<TokensAndUrlAuthData, Object> blockingCache =
+        new JobClientCache<>(
+            "PHOTOS",
+            new RecordingMetricRecorder(),
+            authData -> {
+              if (authData == AUTH_DATA) {
+                try {
+                  otherCreated.await();
+                } catch (InterruptedException e) {
+                  throw new IOException(e);
+                }
+              }
+              return new Object();
+            });
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Future<Object> blocked = executor.submit(() -> blockingCache.getOrCreate(JOB_ID, AUTH_DATA));
+
+      blockingCache.getOrCreate(UUID.randomUUID(), AUTH_DATA_OTHER);
+      otherCreated.countDown();
+
+      assertThat(blocked.get(10, TimeUnit.SECONDS)).isNotNull();
+      assertThat(blockingCache.getCreatedCount()).isEqualTo(2);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void rethrowsFactoryFailure() {
+    IOException failure = new IOException("handshake failed");
+    JobClientCache<TokensAndUrlAuthData, Object> failingCache =
+        new JobClientCache<>(
+            "PHOTOS",
+            new RecordingMetricRecorder(),
+            authData -> {
+              throw failure;
+            });
+
+    try {
+      failingCache.getOrCreate(JOB_ID, AUTH_DATA);
+      fail("expected IOException");
+    } catch (IOException e) {
+      assertThat(e).isSameAs(failure);
+    }
+    assertThat(failingCache.getCreatedCount()).isEqualTo(0);
+  }
+
+  private class RecordingMetricRecorder implements MetricRecorder {
+    @Override
+    public void recordMetric(String dataType, String tag) {
+      recordedTags.add(tag);
+    }
+
+    @Override
+    public void recordMetric(String dataType, String tag, boolean bool) {
+      recordedTags.add(tag);
+    }
+
+    @Override
+    public void recordMetric(String dataType, String tag, Duration duration) {
+      recordedTags.add(tag);
+    }
+
+    @Override
+    public void recordMetric(String dataType, String tag, int value) {
+      recordedTags.add(tag);
+    }
+  }
+}
@@ -14,11 +14,17 @@ import com.google.inject.Inject;
 import java.io.IOException;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
 import javax.crypto.SecretKey;
 import org.datatransferproject.api.action.Action;
 import org.datatransferproject.api.launcher.Monitor;
 import org.datatransferproject.api.launcher.TypeManager;
 import org.datatransferproject.launcher.monitor.events.EventCode;
+import org.datatransferproject.security.Encrypter;
 import org.datatransferproject.security.EncrypterFactory;
 import org.datatransferproject.security.SymmetricKeyGenerator;
 import org.datatransferproject.spi.api.auth.AuthDataGenerator;
@@ -72,80 +78,50 @@ public class CreateTransferJobAction implements Action<CreateTransferJob, Transf
    */
   @Override
   public TransferJob handle(CreateTransferJob request) {
-    String dataType = request.getDataType();
-    String exportService = request.getExportService();
-    String importService = request.getImportService();
-    Optional<ExportInformation> exportInformation = Optional.ofNullable(request.getExportInformation());
-    String exportCallbackUrl = request.getExportCallbackUrl();
-    String importCallbackUrl = request.getImportCallbackUrl();
-
-    // Create a new job and persist
-    UUID jobId = UUID.randomUUID();
-    // 基于AES生成加密的secret
-    SecretKey sessionKey = symmetricKeyGenerator.generate();
-    String encodedSessionKey = BaseEncoding.base64Url().encode(sessionKey.getEncoded());
-
-    String encryptionScheme = request.getEncryptionScheme();
-    PortabilityJob job;
-    try {
-      job = createJob(encodedSessionKey, dataType, exportService, importService,
-              exportInformation, encryptionScheme);
-    } catch (IOException e) {
-      throw new RuntimeException(e);
-    }
-    AuthDataGenerator exportGenerator =
-        registry.getAuthDataGenerator(job.exportService(), job.transferDataType(), EXPORT);
-    Preconditions.checkNotNull(
-        exportGenerator,
-        "Generator not found for type: %s, service: %s",
-        job.transferDataType(),
-        job.exportService());
-
-    AuthDataGenerator importGenerator =
-        registry.getAuthDataGenerator(job.importService(), job.transferDataType(), IMPORT);
-    Preconditions.checkNotNull(
-        importGenerator,
-        "Generator not found for type: %s, service: %s",
-        job.transferDataType(),
-        job.importService());
-
-    try {
-      String encodedJobId = encodeJobId(jobId);
-      // 导出的身份认证规则
-      AuthFlowConfiguration exportConfiguration =
-              // 提供一个 authUrl 来重定向用户进行身份验证。在Oauth2的例子中，这是 authUrl 授权代码
-          exportGenerator.generateConfiguration(exportCallbackUrl, encodedJobId);
-
-      // 导入的身份认证规则
-      AuthFlowConfiguration importConfiguration =
-          importGenerator.generateConfiguration(importCallbackUrl, encodedJobId);
-      // 初始化授权认证信息
-      job = setInitialAuthDataOnJob(sessionKey, job, exportConfiguration, importConfiguration);
-
-      // 创建谷歌云存储任务
-      jobStore.createJob(jobId, job);
-
-      monitor.debug(
-          () ->
-              format(
-                  "Created new transfer of type '%s' from '%s' to '%s' with jobId: %s",
-                  dataType, exportService, importService, jobId),
-          jobId, EventCode.API_JOB_CREATED);
-
-      return new TransferJob(
-          encodedJobId,
-          job.exportService(),
-          job.importService(),
-          job.transferDataType(),
-          exportConfiguration.getAuthUrl(),
-          importConfiguration.getAuthUrl(),
-          exportConfiguration.getTokenUrl(),
-          importConfiguration.getTokenUrl(),
-          exportConfiguration.getAuthProtocol(),
-          importConfiguration.getAuthProtocol());
-    } catch (IOException e) {
-      throw new RuntimeException(e);
-    }
+    PendingTransferJob pending = new PendingTransferJob(request);
+    // 导出的身份认证规则
+    AuthFlowConfiguration exportConfiguration = pending.generateExportConfiguration();
+    // 导入的身份认证规则
+    AuthFlowConfiguration importConfiguration = pending.generateImportConfiguration();
+    return pending.persist(exportConfiguration, importConfiguration);
+  }
+
+  /**
+   * Creates the job like {@link #handle}, but asks the export and import auth data generators for
+   * their configurations concurrently on {@code executor}.
+   *
+   * <p>The returned stage can be cancelled until the job is about to be persisted, after which
+   * cancellation fails and the stage completes with the created job.
+   */
+  @Override
+  public CompletionStage<TransferJob> handleAsync(CreateTransferJob request, Executor executor) {
+    CreatedJob created = new CreatedJob();
+    CompletableFuture.supplyAsync(() -> new PendingTransferJob(request), executor)
+        .thenCompose(
+            pending -> {
+              CompletableFuture<AuthFlowConfiguration> exportConfiguration =
+                  CompletableFuture.supplyAsync(pending::generateExportConfiguration, executor);
+              CompletableFuture<AuthFlowConfiguration> importConfiguration =
+                  CompletableFuture.supplyAsync(pending::generateImportConfiguration, executor);
+              return exportConfiguration.thenCombineAsync(
+                  importConfiguration,
+                  (export, imports) -> {
+                    if (!created.commit()) {
+                      throw new CancellationException();
+                    }
+                    return pending.persist(export, imports);
+                  },
+                  executor);
+            })
+        .whenComplete(
+            (job, error) -> {
+              if (error == null) {
+                created.complete(job);
+              } else {
+                created.completeExceptionally(error);
+              }
+            });
+    return created;
   }
 
   /**
@@ -160,6 +136,7 @@ public class CreateTransferJobAction implements Action<CreateTransferJob, Transf
   private PortabilityJob setInitialAuthDataOnJob(SecretKey sessionKey, PortabilityJob job,
       AuthFlowConfiguration exportConfiguration, AuthFlowConfiguration importConfiguration)
       throws JsonProcessingException {
+    Encrypter encrypter = encrypterFactory.create(sessionKey);
     // If present, store initial auth data for export services, e.g. used for oauth1
     // 如果存在，则存储用于导出服务的初始身份验证数据，例如用于oauth1
     if (exportConfiguration.getInitialAuthData() != null) {
@@ -171,7 +148,7 @@ public class CreateTransferJobAction implements Action<CreateTransferJob, Transf
       // Serialize and encrypt the initial auth data
       // 序列化和加密初始身份验证数据
       String serialized = objectMapper.writeValueAsString(exportConfiguration.getInitialAuthData());
-      String encryptedInitialAuthData = encrypterFactory.create(sessionKey).encrypt(serialized);
+      String encryptedInitialAuthData = encrypter.encrypt(serialized);
 
       // Add the serialized and encrypted initial auth data to the job authorization
       // 将序列化和加密的初始身份验证数据添加到作业授权中
@@ -191,7 +168,7 @@ public class CreateTransferJobAction implements Action<CreateTransferJob, Transf
 
       // Serialize and encrypt the initial auth data
       String serialized = objectMapper.writeValueAsString(importConfiguration.getInitialAuthData());
-      String encryptedInitialAuthData = encrypterFactory.create(sessionKey).encrypt(serialized);
+      String encryptedInitialAuthData = encrypter.encrypt(serialized);
 
       // Add the serialized and encrypted initial auth data to the job authorization
       JobAuthorization updatedJobAuthorization =
@@ -237,4 +214,114 @@ public class CreateTransferJobAction implements Action<CreateTransferJob, Transf
 
     return builder.build();
   }
+
+  /** The result of {@link #handleAsync}, which can no longer be cancelled once committed. */
+  private static final class CreatedJob extends CompletableFuture<TransferJob> {
+    private final AtomicBoolean settled = new AtomicBoolean();
+
+    /** Returns whether the job may be persisted, which is only the case if not yet cancelled. */
+    private boolean commit() {
+      return settled.compareAndSet(false, true);
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+      return settled.compareAndSet(false, true) && super.cancel(mayInterruptIfRunning);
+    }
+  }
+
+  /** A job that has been set up but not yet given auth configurations or persisted. */
+  private final class PendingTransferJob {
+    private final String exportCallbackUrl;
+    private final String importCallbackUrl;
+    private final UUID jobId = UUID.randomUUID();
+    private final String encodedJobId = encodeJobId(jobId);
+    private final SecretKey sessionKey;
+    private final PortabilityJob job;
+    private final AuthDataGenerator exportGenerator;
+    private final AuthDataGenerator importGenerator;
+
+    private PendingTransferJob(CreateTransferJob request) {
+      this.exportCallbackUrl = request.getExportCallbackUrl();
+      this.importCallbackUrl = request.getImportCallbackUrl();
+
+      // 基于AES生成加密的secret
+      sessionKey = symmetricKeyGenerator.generate();
+      String encodedSessionKey = BaseEncoding.base64Url().encode(sessionKey.getEncoded());
+      try {
+        job =
+            createJob(
+                encodedSessionKey,
+                request.getDataType(),
+                request.getExportService(),
+                request.getImportService(),
+                Optional.ofNullable(request.getExportInformation()),
+                request.getEncryptionScheme());
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+
+      exportGenerator =
+          registry.getAuthDataGenerator(job.exportService(), job.transferDataType(), EXPORT);
+      Preconditions.checkNotNull(
+          exportGenerator,
+          "Generator not found for type: %s, service: %s",
+          job.transferDataType(),
+          job.exportService());
+
+      importGenerator =
+          registry.getAuthDataGenerator(job.importService(), job.transferDataType(), IMPORT);
+      Preconditions.checkNotNull(
+          importGenerator,
+          "Generator not found for type: %s, service: %s",
+          job.transferDataType(),
+          job.importService());
+    }
+
+    // 提供一个 authUrl 来重定向用户进行身份验证。在Oauth2的例子中，这是 authUrl 授权代码
+    private AuthFlowConfiguration generateExportConfiguration() {
+      return exportGenerator.generateConfiguration(exportCallbackUrl, encodedJobId);
+    }
+
+    private AuthFlowConfiguration generateImportConfiguration() {
+      return importGenerator.generateConfiguration(importCallbackUrl, encodedJobId);
+    }
+
+    /** Stores the job with its initial auth data and returns the client view of it. */
+    private TransferJob persist(
+        AuthFlowConfiguration exportConfiguration, AuthFlowConfiguration importConfiguration) {
+      try {
+        // 初始化授权认证信息
+        PortabilityJob initializedJob =
+            setInitialAuthDataOnJob(sessionKey, job, exportConfiguration, importConfiguration);
+
+        // 创建谷歌云存储任务
+        jobStore.createJob(jobId, initializedJob);
+
+        monitor.debug(
+            () ->
+                format(
+                    "Created new transfer of type '%s' from '%s' to '%s' with jobId: %s",
+                    initializedJob.transferDataType(),
+                    initializedJob.exportService(),
+                    initializedJob.importService(),
+                    jobId),
+            jobId, EventCode.API_JOB_CREATED);
+
+        return new TransferJob(
+            encodedJobId,
+            initializedJob.exportService(),
+            initializedJob.importService(),
+            initializedJob.transferDataType(),
+            exportConfiguration.getAuthUrl(),
+            importConfiguration.getAuthUrl(),
+            exportConfiguration.getTokenUrl(),
+            importConfiguration.getTokenUrl(),
+            exportConfiguration.getAuthProtocol(),
+            importConfiguration.getAuthProtocol());
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
+  }
 }
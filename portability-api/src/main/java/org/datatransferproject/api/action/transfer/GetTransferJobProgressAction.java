@@ -0,0 +1,55 @@
+package org.datatransferproject.api.action.transfer;
+
+import com.google.common.base.Preconditions;
+import com.google.inject.Inject;
+import org.datatransferproject.api.action.Action;
+import org.datatransferproject.api.launcher.Monitor;
+import org.datatransferproject.launcher.monitor.events.EventCode;
+import org.datatransferproject.spi.cloud.storage.JobStore;
+import org.datatransferproject.spi.cloud.types.PortabilityJob;
+import org.datatransferproject.types.client.transfer.GetTransferJobProgress;
+import org.datatransferproject.types.client.transfer.TransferJobProgress;
+
+import java.util.UUID;
+
+import static java.lang.String.format;
+import static org.datatransferproject.api.action.ActionUtils.decodeJobId;
+
+/**
+ * Returns the state of a transfer job together with the item and byte counts recorded by the
+ * worker.
+ */
+public class GetTransferJobProgressAction
+    implements Action<GetTransferJobProgress, TransferJobProgress> {
+  private final JobStore jobStore;
+  private final Monitor monitor;
+
+  @Inject
+  public GetTransferJobProgressAction(JobStore jobStore, Monitor monitor) {
+    this.jobStore = jobStore;
+    this.monitor = monitor;
+  }
+
+  @Override
+  public Class<GetTransferJobProgress> getRequestType() {
+    return GetTransferJobProgress.class;
+  }
+
+  @Override
+  public TransferJobProgress handle(GetTransferJobProgress request) {
+    String id = request.getId();
+    Preconditions.checkNotNull(id, "transfer job ID required for GetTransferJobProgressAction");
+    UUID jobId = decodeJobId(id);
+
+    PortabilityJob job = jobStore.findJob(jobId);
+    Preconditions.checkNotNull(job, "existing job not found for transfer job ID: %s", jobId);
+
+    monitor.debug(
+        () -> format("Fetched progress for jobId: %s", jobId),
+        jobId,
+        EventCode.API_GOT_TRANSFER_JOB_PROGRESS);
+
+    return new TransferJobProgress(
+        id, job.state().name(), jobStore.getCounts(jobId), jobStore.getBytes(jobId));
+  }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2019 The Data Transfer Project Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.datatransferproject.api.action.transfer;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.datatransferproject.spi.api.auth.AuthServiceProviderRegistry.AuthMode.EXPORT;
+import static org.datatransferproject.spi.api.auth.AuthServiceProviderRegistry.AuthMode.IMPORT;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.crypto.spec.SecretKeySpec;
+import org.datatransferproject.api.launcher.Monitor;
+import org.datatransferproject.launcher.types.TypeManagerImpl;
+import org.datatransferproject.security.SymmetricKeyGenerator;
+import org.datatransferproject.spi.api.auth.AuthDataGenerator;
+import org.datatransferproject.spi.api.auth.AuthServiceProviderRegistry;
+import org.datatransferproject.spi.api.types.AuthFlowConfiguration;
+import org.datatransferproject.spi.cloud.storage.JobStore;
+import org.datatransferproject.spi.cloud.types.PortabilityJob;
+import org.datatransferproject.types.client.transfer.CreateTransferJob;
+import org.datatransferproject.types.client.transfer.TransferJob;
+import org.datatransferproject.types.common.PortabilityCommon.AuthProtocol;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CreateTransferJobActionTest {
+  private static final CreateTransferJob REQUEST =
+      new CreateTransferJob(
+          "exporter",
+          "importer",
+          "https://example.com/export",
+          "https://example.com/import",
+          "PHOTOS",
+          null,
+          "cleartext");
+
+  private JobStore jobStore;
+  private QueuedExecutor executor;
+  private CreateTransferJobAction action;
+
+  @Before
+  public void setUp() {
+    jobStore = mock(JobStore.class);
+    executor = new QueuedExecutor();
+    AuthServiceProviderRegistry registry = mock(AuthServiceProviderRegistry.class);
+    AuthDataGenerator exportGenerator = generator("https://exporter.com/auth");
+    AuthDataGenerator importGenerator = generator("https://importer.com/auth");
+    when(registry.getAuthDataGenerator("exporter", "PHOTOS", EXPORT)).thenReturn(exportGenerator);
+    when(registry.getAuthDataGenerator("importer", "PHOTOS", IMPORT)).thenReturn(importGenerator);
+    SymmetricKeyGenerator keyGenerator = mock(SymmetricKeyGenerator.class);
+    when(keyGenerator.generate()).thenReturn(new SecretKeySpec(new byte[16], "AES"));
+    action =
+        new CreateTransferJobAction(
+            jobStore, registry, keyGenerator, new TypeManagerImpl(), new Monitor() {});
+  }
+
+  @Test
+  public void handleAsyncCreatesJobWithBothConfigurations() throws Exception {
+    CompletableFuture<TransferJob> result =
+        action.handleAsync(REQUEST, executor).toCompletableFuture();
+    executor.runAll();
+
+    TransferJob job = result.get();
+    assertThat(job.getExportUrl()).isEqualTo("https://exporter.com/auth");
+    assertThat(job.getImportUrl()).isEqualTo("https://importer.com/auth");
+    verify(jobStore).createJob(any(UUID.class), any(PortabilityJob.class));
+  }
+
+  @Test
+  public void cancelledBeforePersistDoesNotCreateJob() throws Exception {
+    CompletableFuture<TransferJob> result =
+        action.handleAsync(REQUEST, executor).toCompletableFuture();
+
+    assertThat(result.cancel(false)).isTrue();
+    executor.runAll();
+
+    assertThat(result.isCancelled()).isTrue();
+    verify(jobStore, never()).createJob(any(UUID.class), any(PortabilityJob.class));
+  }
+
+  @Test
+  public void cannotBeCancelledOncePersisting() throws Exception {
+    AtomicReference<CompletableFuture<TransferJob>> result = new AtomicReference<>();
+    AtomicBoolean cancelledWhilePersisting = new AtomicBoolean(true);
+    doAnswer(
+            invocation -> {
+              cancelledWhilePersisting.set(result.get().cancel(false));
+              return null;
+            })
+        .when(jobStore)
+        .createJob(any(UUID.class), any(PortabilityJob.class));
+
+    result.set(action.handleAsync(REQUEST, executor).toCompletableFuture());
+    executor.runAll();
+
+    assertThat(cancelledWhilePersisting.get()).isFalse();
+    assertThat(result.get().isCancelled()).isFalse();
+    assertThat(result.get().get().getExportUrl()).isEqualTo("https://exporter.com/auth");
+  }
+
+  private static AuthDataGenerator generator(String authUrl) {
+    AuthDataGenerator generator = mock(AuthDataGenerator.class);
+    when(generator.generateConfiguration(anyString(), anyString()))
+        .thenReturn(new AuthFlowConfiguration(authUrl, AuthProtocol.OAUTH_2, null));
+    return generator;
+  }
+
+  /** Runs submitted tasks only when asked, so tests can act between the steps of an action. */
+  private static final class QueuedExecutor implements Executor {
+    private final Queue<Runnable> tasks = new ArrayDeque<>();
+
+    @Override
+    public void execute(Runnable task) {
+      tasks.add(task);
+    }
+
+    void runAll() {
+      Runnable task;
+      while ((task = tasks.poll()) != null) {
+        task.run();
+      }
+    }
+  }
+}
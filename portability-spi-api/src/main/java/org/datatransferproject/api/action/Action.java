@@ -15,6 +15,10 @@
  */
 package org.datatransferproject.api.action;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+
 /** Handles an action in the API server. */
 public interface Action<REQUEST, RESPONSE> {
 
@@ -27,4 +31,22 @@ public interface Action<REQUEST, RESPONSE> {
 
   /** Handles the given {@code REQUEST} and returns a {@code RESPONSE}. */
   RESPONSE handle(REQUEST request);
+
+  /**
+   * Handles the given {@code REQUEST} without blocking the calling thread.
+   *
+   * <p>The default implementation runs {@link #handle} on {@code executor}. Actions that make
+   * several independent blocking calls, or that are backed by non-blocking APIs, can override this
+   * to spread their work over {@code executor} or to avoid occupying one of its threads.
+   *
+   * <p>Transports that stop waiting for a response cancel the stage's {@link
+   * CompletionStage#toCompletableFuture() future}. Actions with side effects should skip them once
+   * cancelled, and should refuse cancellation after committing so the caller waits for the result
+   * rather than retrying work that has already been done.
+   *
+   * @param executor the executor transports provide for blocking action work
+   */
+  default CompletionStage<RESPONSE> handleAsync(REQUEST request, Executor executor) {
+    return CompletableFuture.supplyAsync(() -> handle(request), executor);
+  }
 }
@@ -24,6 +24,7 @@ import java.io.IOException;
 import java.io.Serializable;
 import java.util.Collection;
 import java.util.concurrent.Callable;
+import java.util.function.Function;
 
 /**
  * A utility that will execute a {@link Callable} only once for a given {@code idempotentId}. This
@@ -108,6 +109,83 @@ public interface IdempotentImportExecutor {
   void setJobId(UUID jobId);
 
 
+  /**
+   * Same as {@link #executeAndSwallowIOExceptions(String, String, Callable)}, keyed by the string
+   * form of {@code idempotentKey}.
+   */
+  @Nullable
+  default <T extends Serializable> T executeAndSwallowIOExceptions(
+      IdempotentKey idempotentKey, String itemName, Callable<T> callable) throws Exception {
+    return executeAndSwallowIOExceptions(idempotentKey.toString(), itemName, callable);
+  }
+
+  /**
+   * Same as {@link #executeAndSwallowIOExceptions(String, String, Callable)}, except that only
+   * {@code projection} of the callable's result is stored and returned.
+   *
+   * <p>Stored values are held for the whole job and persisted by some executors, so importers
+   * should project API responses down to what they need later, usually the destination id.
+   */
+  @Nullable
+  default <T, R extends Serializable> R executeAndSwallowIOExceptions(
+      String idempotentId,
+      String itemName,
+      Callable<T> callable,
+      Function<? super T, R> projection)
+      throws Exception {
+    return executeAndSwallowIOExceptions(
+        idempotentId, itemName, () -> projection.apply(callable.call()));
+  }
+
+  /**
+   * Same as {@link #executeAndSwallowIOExceptions(String, String, Callable, Function)}, keyed by
+   * the string form of {@code idempotentKey}.
+   */
+  @Nullable
+  default <T, R extends Serializable> R executeAndSwallowIOExceptions(
+      IdempotentKey idempotentKey,
+      String itemName,
+      Callable<T> callable,
+      Function<? super T, R> projection)
+      throws Exception {
+    return executeAndSwallowIOExceptions(
+        idempotentKey.toString(), itemName, callable, projection);
+  }
+
+  /**
+   * Same as {@link #executeOrThrowException(String, String, Callable)}, except that only {@code
+   * projection} of the callable's result is stored and returned.
+   */
+  default <T, R extends Serializable> R executeOrThrowException(
+      String idempotentId,
+      String itemName,
+      Callable<T> callable,
+      Function<? super T, R> projection)
+      throws Exception {
+    return executeOrThrowException(
+        idempotentId, itemName, () -> projection.apply(callable.call()));
+  }
+
+  /**
+   * Same as {@link #executeOrThrowException(String, String, Callable)}, keyed by the string form
+   * of {@code idempotentKey}.
+   */
+  default <T extends Serializable> T executeOrThrowException(
+      IdempotentKey idempotentKey, String itemName, Callable<T> callable) throws Exception {
+    return executeOrThrowException(idempotentKey.toString(), itemName, callable);
+  }
+
+  /** Same as {@link #getCachedValue(String)}, keyed by the string form of {@code idempotentKey}. */
+  default <T extends Serializable> T getCachedValue(IdempotentKey idempotentKey)
+      throws IllegalArgumentException {
+    return getCachedValue(idempotentKey.toString());
+  }
+
+  /** Same as {@link #isKeyCached(String)}, keyed by the string form of {@code idempotentKey}. */
+  default boolean isKeyCached(IdempotentKey idempotentKey) {
+    return isKeyCached(idempotentKey.toString());
+  }
+
   /** Get the set of recent errors that occurred, and weren't subsequently successful. */
   default Collection<ErrorDetail> getRecentErrors() {
     return getErrors();
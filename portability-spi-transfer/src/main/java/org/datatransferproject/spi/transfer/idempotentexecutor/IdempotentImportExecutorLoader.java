@@ -14,7 +14,10 @@ public class IdempotentImportExecutorLoader {
         .forEachRemaining(builder::add);
     ImmutableList<IdempotentImportExecutorExtension> executors = builder.build();
     if (executors.isEmpty()) {
-      return new InMemoryIdempotentImportExecutor(extensionContext.getMonitor());
+      return new InMemoryIdempotentImportExecutor(
+          extensionContext.getMonitor(),
+          StoredValueSizeRecorder.create(
+              InMemoryIdempotentImportExecutor.class.getSimpleName(), extensionContext));
     } else if (executors.size() == 1) {
       IdempotentImportExecutorExtension extension = executors.get(0);
       extension.initialize();
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2019 The Data Transfer Project Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.datatransferproject.spi.transfer.idempotentexecutor;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.BaseEncoding;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A stable 128-bit fingerprint of an imported item, for use as an idempotent id.
+ *
+ * <p>Importers whose natural id for an item is large, such as the item's full serialized form, or
+ * not stable across workers, such as an identity hash code, should derive the id with {@link #of}
+ * instead. The {@link #toString string form} is 22 url-safe characters and is what executors
+ * store; the item name passed alongside it remains what users see.
+ */
+public final class IdempotentKey {
+  private static final BaseEncoding ENCODING = BaseEncoding.base64Url().omitPadding();
+
+  private final HashCode fingerprint;
+
+  private IdempotentKey(HashCode fingerprint) {
+    this.fingerprint = fingerprint;
+  }
+
+  /**
+   * Returns the fingerprint of the given parts. Parts are length-prefixed, so {@code of("ab", "c")}
+   * and {@code of("a", "bc")} differ, and a null part is distinct from an empty one.
+   */
+  public static IdempotentKey of(String... parts) {
+    Hasher hasher = Hashing.murmur3_128().newHasher();
+    for (String part : parts) {
+      if (part == null) {
+        hasher.putInt(-1);
+      } else {
+        byte[] bytes = part.getBytes(StandardCharsets.UTF_8);
+        hasher.putInt(bytes.length).putBytes(bytes);
+      }
+    }
+    return new IdempotentKey(hasher.hash());
+  }
+
+  /** Parses the string form of a key, as returned by {@link #toString}. */
+  public static IdempotentKey fromString(String key) {
+    return new IdempotentKey(HashCode.fromBytes(ENCODING.decode(key)));
+  }
+
+  /** Returns the 16 bytes of the fingerprint. */
+  public byte[] asBytes() {
+    return fingerprint.asBytes();
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    return fingerprint.equals(((IdempotentKey) o).fingerprint);
+  }
+
+  @Override
+  public int hashCode() {
+    return fingerprint.hashCode();
+  }
+
+  @Override
+  public String toString() {
+    return ENCODING.encode(fingerprint.asBytes());
+  }
+}
@@ -32,6 +32,7 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.Callable;
+import javax.annotation.Nullable;
 
 /** A {@link IdempotentImportExecutor} that stores known values in memory. */
 public class InMemoryIdempotentImportExecutor implements IdempotentImportExecutor {
@@ -39,10 +40,18 @@ public class InMemoryIdempotentImportExecutor implements IdempotentImportExecuto
   private final Map<String, ErrorDetail> errors = new HashMap<>();
   private final Map<String, ErrorDetail> recentErrors = new HashMap<>();
   private final Monitor monitor;
+  @Nullable private final StoredValueSizeRecorder sizeRecorder;
   private UUID jobId;
 
+  /** Creates an executor that doesn't record the size of stored values. */
   public InMemoryIdempotentImportExecutor(Monitor monitor) {
+    this(monitor, null);
+  }
+
+  public InMemoryIdempotentImportExecutor(
+      Monitor monitor, @Nullable StoredValueSizeRecorder sizeRecorder) {
     this.monitor = monitor;
+    this.sizeRecorder = sizeRecorder;
   }
 
   @Override
@@ -72,6 +81,9 @@ public class InMemoryIdempotentImportExecutor implements IdempotentImportExecuto
     try {
       T result = callable.call();
       knownValues.put(idempotentId, result);
+      if (sizeRecorder != null) {
+        sizeRecorder.record(result);
+      }
       monitor.debug(
           () -> jobIdPrefix + format("Storing key %s in cache for %s", idempotentId, itemName));
       errors.remove(idempotentId);
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2019 The Data Transfer Project Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.datatransferproject.spi.transfer.idempotentexecutor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import org.datatransferproject.api.launcher.DtpInternalMetricRecorder;
+import org.datatransferproject.api.launcher.ExtensionContext;
+import org.datatransferproject.api.launcher.MetricRecorder;
+import org.datatransferproject.launcher.metrics.LoggingDtpInternalMetricRecorder;
+import org.datatransferproject.launcher.metrics.ServiceAwareMetricRecorder;
+
+/**
+ * Records the size of every value an {@link IdempotentImportExecutor} stores, so that importers
+ * caching whole API responses instead of a compact projection of them show up in metrics.
+ */
+public final class StoredValueSizeRecorder {
+  public static final String STORED_VALUE_BYTES_TAG = "idempotent_value_bytes";
+  // Executors are shared by every data type, so sizes are recorded under one pseudo data type
+  private static final String DATA_TYPE = "IDEMPOTENT_EXECUTOR";
+
+  private final MetricRecorder metricRecorder;
+
+  public StoredValueSizeRecorder(MetricRecorder metricRecorder) {
+    this.metricRecorder = metricRecorder;
+  }
+
+  /** Creates a recorder that reports to the context's {@link DtpInternalMetricRecorder}. */
+  public static StoredValueSizeRecorder create(String executorName, ExtensionContext context) {
+    LoggingDtpInternalMetricRecorder.registerRecorderIfNeeded(context);
+    return new StoredValueSizeRecorder(
+        new ServiceAwareMetricRecorder(
+            executorName, context.getService(DtpInternalMetricRecorder.class)));
+  }
+
+  /** Records the size of {@code value}, which is about to be stored. */
+  public void record(Serializable value) {
+    metricRecorder.recordMetric(DATA_TYPE, STORED_VALUE_BYTES_TAG, sizeOf(value));
+  }
+
+  /**
+   * Returns the number of bytes {@code value} takes when stored: the UTF-8 length of a string, or
+   * the length of the serialized form of anything else.
+   */
+  static int sizeOf(Serializable value) {
+    if (value == null) {
+      return 0;
+    }
+    if (value instanceof String) {
+      return ((String) value).getBytes(StandardCharsets.UTF_8).length;
+    }
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    try (ObjectOutputStream out = new ObjectOutputStream(bos)) {
+      out.writeObject(value);
+    } catch (IOException e) {
+      // Unserializable values fail when they are persisted, the metric is best effort
+      return -1;
+    }
+    return bos.size();
+  }
+}
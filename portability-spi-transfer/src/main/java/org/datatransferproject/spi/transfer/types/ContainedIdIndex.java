@@ -0,0 +1,176 @@
+/*
+ * Copyright 2019 The Data Transfer Project Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.datatransferproject.spi.transfer.types;
+
+import com.google.common.hash.Hashing;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * An immutable set of item ids, such as the ids of all photos that belong to some album, held as
+ * a sorted array of 64-bit fingerprints.
+ *
+ * <p>This is meant for exporters that list a user's whole library up front and then need to ask
+ * "was this item already seen?" for every item of every later page. An index of 500,000 ids takes
+ * 4MB and answers in a binary search, instead of holding every id as a string. Two distinct ids
+ * share a fingerprint with probability around 2<sup>-64</sup>, so {@link #contains} may in theory
+ * report an id that was never added; callers use it to skip duplicates, where that is acceptable.
+ *
+ * <p>Indexes are stored in the temp store in a small binary format, see {@link #toInputStream}
+ * and {@link #readFrom}.
+ */
+public final class ContainedIdIndex {
+  private static final ContainedIdIndex EMPTY = new ContainedIdIndex(new long[0]);
+  // "DTPI", so a blob written by something else is rejected instead of misread
+  private static final int MAGIC = 0x44545049;
+  private static final byte VERSION = 1;
+
+  private final long[] fingerprints;
+
+  private ContainedIdIndex(long[] fingerprints) {
+    this.fingerprints = fingerprints;
+  }
+
+  /** Returns an index that contains no ids. */
+  public static ContainedIdIndex empty() {
+    return EMPTY;
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /** Returns an index of the ids contained in any of {@code indexes}. */
+  public static ContainedIdIndex union(Iterable<ContainedIdIndex> indexes) {
+    Builder builder = new Builder();
+    for (ContainedIdIndex index : indexes) {
+      for (long fingerprint : index.fingerprints) {
+        builder.addFingerprint(fingerprint);
+      }
+    }
+    return builder.build();
+  }
+
+  /**
+   * Reads an index in the format written by {@link #writeTo}. The stream is read to the end of
+   * the index but not closed.
+   */
+  public static ContainedIdIndex readFrom(InputStream stream) throws IOException {
+    DataInputStream in = new DataInputStream(new BufferedInputStream(stream));
+    int magic = in.readInt();
+    if (magic != MAGIC) {
+      throw new IOException("Not a contained id index, magic was " + Integer.toHexString(magic));
+    }
+    byte version = in.readByte();
+    if (version != VERSION) {
+      throw new IOException("Unsupported contained id index version " + version);
+    }
+    int size = in.readInt();
+    if (size < 0) {
+      throw new IOException("Corrupt contained id index, size was " + size);
+    }
+    long[] fingerprints = new long[size];
+    for (int i = 0; i < size; i++) {
+      fingerprints[i] = in.readLong();
+    }
+    return size == 0 ? EMPTY : new ContainedIdIndex(fingerprints);
+  }
+
+  /** Returns whether {@code id} was added to this index, subject to the caveat above. */
+  public boolean contains(String id) {
+    return Arrays.binarySearch(fingerprints, fingerprint(id)) >= 0;
+  }
+
+  /** Returns the number of distinct ids in this index. */
+  public int size() {
+    return fingerprints.length;
+  }
+
+  /** Writes this index to {@code stream}, without closing it. */
+  public void writeTo(OutputStream stream) throws IOException {
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+    out.writeInt(MAGIC);
+    out.writeByte(VERSION);
+    out.writeInt(fingerprints.length);
+    for (long fingerprint : fingerprints) {
+      out.writeLong(fingerprint);
+    }
+    out.flush();
+  }
+
+  /** Returns this index in its stored form, for handing to the temp store. */
+  public InputStream toInputStream() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(9 + fingerprints.length * 8);
+    writeTo(bytes);
+    return new ByteArrayInputStream(bytes.toByteArray());
+  }
+
+  private static long fingerprint(String id) {
+    return Hashing.murmur3_128().hashString(id, StandardCharsets.UTF_8).asLong();
+  }
+
+  /** Collects ids for an index. Adding the same id more than once is harmless. */
+  public static final class Builder {
+    private long[] fingerprints = new long[64];
+    private int size;
+
+    private Builder() {}
+
+    public Builder add(String id) {
+      addFingerprint(fingerprint(id));
+      return this;
+    }
+
+    public Builder addAll(Iterable<String> ids) {
+      for (String id : ids) {
+        add(id);
+      }
+      return this;
+    }
+
+    private void addFingerprint(long fingerprint) {
+      if (size == fingerprints.length) {
+        fingerprints = Arrays.copyOf(fingerprints, size * 2);
+      }
+      fingerprints[size++] = fingerprint;
+    }
+
+    public ContainedIdIndex build() {
+      if (size == 0) {
+        return EMPTY;
+      }
+      long[] sorted = Arrays.copyOf(fingerprints, size);
+      Arrays.sort(sorted);
+      int distinct = 1;
+      for (int i = 1; i < sorted.length; i++) {
+        if (sorted[i] != sorted[distinct - 1]) {
+          sorted[distinct++] = sorted[i];
+        }
+      }
+      return new ContainedIdIndex(
+          distinct == sorted.length ? sorted : Arrays.copyOf(sorted, distinct));
+    }
+  }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2019 The Data Transfer Project Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.datatransferproject.spi.transfer.idempotentexecutor;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.Test;
+
+public class IdempotentKeyTest {
+  @Test
+  public void sameParts_sameKey() {
+    assertThat(IdempotentKey.of("playlist", "track"))
+        .isEqualTo(IdempotentKey.of("playlist", "track"));
+    assertThat(IdempotentKey.of("playlist", "track").toString())
+        .isEqualTo(IdempotentKey.of("playlist", "track").toString());
+  }
+
+  @Test
+  public void partBoundaries_distinguishKeys() {
+    assertThat(IdempotentKey.of("ab", "c")).isNotEqualTo(IdempotentKey.of("a", "bc"));
+    assertThat(IdempotentKey.of("a", null)).isNotEqualTo(IdempotentKey.of("a", ""));
+  }
+
+  @Test
+  public void stringForm_roundTrips() {
+    IdempotentKey key = IdempotentKey.of("some very long serialized item");
+
+    assertThat(key.toString()).hasLength(22);
+    assertThat(IdempotentKey.fromString(key.toString())).isEqualTo(key);
+    assertThat(key.asBytes()).hasLength(16);
+  }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2019 The Data Transfer Project Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.datatransferproject.spi.transfer.idempotentexecutor;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import org.datatransferproject.api.launcher.MetricRecorder;
+import org.datatransferproject.api.launcher.Monitor;
+import org.junit.Test;
+
+public class StoredValueSizeRecorderTest {
+  @Test
+  public void sizeOf_string_isUtf8Length() {
+    assertThat(StoredValueSizeRecorder.sizeOf("abc")).isEqualTo(3);
+    assertThat(StoredValueSizeRecorder.sizeOf("é")).isEqualTo(2);
+    assertThat(StoredValueSizeRecorder.sizeOf(null)).isEqualTo(0);
+  }
+
+  @Test
+  public void projectedValue_isStoredAndRecorded() throws Exception {
+    List<Integer> sizes = new ArrayList<>();
+    MetricRecorder metricRecorder =
+        new MetricRecorder() {
+          @Override
+          public void recordMetric(String dataType, String tag) {}
+
+          @Override
+          public void recordMetric(String dataType, String tag, boolean bool) {}
+
+          @Override
+          public void recordMetric(String dataType, String tag, Duration duration) {}
+
+          @Override
+          public void recordMetric(String dataType, String tag, int value) {
+            assertThat(tag).isEqualTo(StoredValueSizeRecorder.STORED_VALUE_BYTES_TAG);
+            sizes.add(value);
+          }
+        };
+    InMemoryIdempotentImportExecutor executor =
+        new InMemoryIdempotentImportExecutor(
+            new Monitor() {}, new StoredValueSizeRecorder(metricRecorder));
+    executor.setJobId(UUID.randomUUID());
+
+    String id =
+        executor.executeAndSwallowIOExceptions(
+            "item",
+            "Item",
+            () -> "destination-id: a much longer response",
+            response -> response.substring(0, 14));
+
+    assertThat(id).isEqualTo("destination-id");
+    assertThat((String) executor.getCachedValue("item")).isEqualTo("destination-id");
+    assertThat(sizes).containsExactly(14);
+  }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2019 The Data Transfer Project Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.datatransferproject.spi.transfer.types;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import org.junit.Test;
+
+public class ContainedIdIndexTest {
+  @Test
+  public void containsAddedIds() {
+    ContainedIdIndex index = ContainedIdIndex.builder().add("a").add("b").add("a").build();
+
+    assertThat(index.size()).isEqualTo(2);
+    assertThat(index.contains("a")).isTrue();
+    assertThat(index.contains("b")).isTrue();
+    assertThat(index.contains("c")).isFalse();
+  }
+
+  @Test
+  public void emptyIndex_containsNothing() {
+    assertThat(ContainedIdIndex.builder().build().contains("a")).isFalse();
+    assertThat(ContainedIdIndex.empty().size()).isEqualTo(0);
+  }
+
+  @Test
+  public void union_containsIdsOfEveryIndex() {
+    ContainedIdIndex union =
+        ContainedIdIndex.union(
+            ImmutableList.of(
+                ContainedIdIndex.builder().add("a").add("b").build(),
+                ContainedIdIndex.builder().add("b").add("c").build(),
+                ContainedIdIndex.empty()));
+
+    assertThat(union.size()).isEqualTo(3);
+    assertThat(union.contains("a")).isTrue();
+    assertThat(union.contains("c")).isTrue();
+    assertThat(union.contains("d")).isFalse();
+  }
+
+  @Test
+  public void storedForm_roundTrips() throws IOException {
+    ContainedIdIndex.Builder builder = ContainedIdIndex.builder();
+    for (int i = 0; i < 1000; i += 2) {
+      builder.add("photo" + i);
+    }
+
+    ContainedIdIndex index = ContainedIdIndex.readFrom(builder.build().toInputStream());
+
+    assertThat(index.size()).isEqualTo(500);
+    for (int i = 0; i < 1000; i++) {
+      assertThat(index.contains("photo" + i)).isEqualTo(i % 2 == 0);
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void readFrom_rejectsOtherFormats() throws IOException {
+    ContainedIdIndex.readFrom(
+        new ByteArrayInputStream("{\"containedPhotoIds\":[]}".getBytes(StandardCharsets.UTF_8)));
+  }
+}
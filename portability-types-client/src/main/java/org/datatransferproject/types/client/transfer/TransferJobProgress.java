@@ -0,0 +1,85 @@
+/*
+ * Copyright 2018 The Data Transfer Project Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.datatransferproject.types.client.transfer;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+
+/** A point-in-time snapshot of the progress of a transfer job. */
+@ApiModel(description = "The progress of a data transfer job")
+public class TransferJobProgress {
+  private final String id;
+  private final String state;
+  private final Map<String, Integer> counts;
+  private final Long bytes;
+
+  @JsonCreator
+  public TransferJobProgress(
+      @JsonProperty(value = "id", required = true) String id,
+      @JsonProperty(value = "state", required = true) String state,
+      @JsonProperty(value = "counts") Map<String, Integer> counts,
+      @JsonProperty(value = "bytes") Long bytes) {
+    this.id = id;
+    this.state = state;
+    this.counts = counts == null ? Collections.emptyMap() : counts;
+    this.bytes = bytes;
+  }
+
+  @ApiModelProperty(value = "The id of the transfer job", dataType = "string", required = true)
+  public String getId() {
+    return id;
+  }
+
+  @ApiModelProperty(value = "The state of the transfer job", dataType = "string", required = true)
+  public String getState() {
+    return state;
+  }
+
+  @ApiModelProperty(value = "The number of items transferred so far, keyed by item type")
+  public Map<String, Integer> getCounts() {
+    return counts;
+  }
+
+  @ApiModelProperty(value = "The number of bytes transferred so far, if known")
+  public Long getBytes() {
+    return bytes;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    TransferJobProgress that = (TransferJobProgress) o;
+    return Objects.equals(id, that.id)
+        && Objects.equals(state, that.state)
+        && Objects.equals(counts, that.counts)
+        && Objects.equals(bytes, that.bytes);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(id, state, counts, bytes);
+  }
+}
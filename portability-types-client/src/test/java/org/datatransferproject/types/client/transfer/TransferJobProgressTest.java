@@ -0,0 +1,54 @@
+/*
+ * Copyright 2018 The Data Transfer Project Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.datatransferproject.types.client.transfer;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableMap;
+import org.junit.Test;
+
+import static com.google.common.truth.Truth.assertThat;
+
+/* Test for TransferJobProgress */
+public class TransferJobProgressTest {
+
+  @Test
+  public void verifySerializeDeserialize() throws Exception {
+    ObjectMapper objectMapper = new ObjectMapper();
+
+    TransferJobProgress progress =
+        new TransferJobProgress("1-2-3", "IN_PROGRESS", ImmutableMap.of("PHOTOS", 42), 1024L);
+    String serialized = objectMapper.writeValueAsString(progress);
+
+    TransferJobProgress deserialized =
+        objectMapper.readValue(serialized, TransferJobProgress.class);
+
+    assertThat(deserialized.getId()).isEqualTo("1-2-3");
+    assertThat(deserialized.getState()).isEqualTo("IN_PROGRESS");
+    assertThat(deserialized.getCounts()).containsExactly("PHOTOS", 42);
+    assertThat(deserialized.getBytes()).isEqualTo(1024L);
+    assertThat(deserialized).isEqualTo(progress);
+  }
+
+  @Test
+  public void verifyMissingCountsDeserializeAsEmpty() throws Exception {
+    TransferJobProgress deserialized =
+        new ObjectMapper()
+            .readValue("{\"id\":\"1-2-3\",\"state\":\"NEW\"}", TransferJobProgress.class);
+
+    assertThat(deserialized.getCounts()).isEmpty();
+    assertThat(deserialized.getBytes()).isNull();
+  }
+}
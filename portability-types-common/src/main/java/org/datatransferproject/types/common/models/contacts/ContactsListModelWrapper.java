@@ -0,0 +1,46 @@
+package org.datatransferproject.types.common.models.contacts;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.collect.ImmutableList;
+import java.util.List;
+
+/**
+ * A collection of contacts, each serialized as its own jCard.
+ *
+ * <p>Unlike the single jCard string of {@link ContactsModelWrapper}, each contact is serialized as
+ * a separate element, so importers can parse one contact at a time and a page is never held as
+ * one large string.
+ */
+public class ContactsListModelWrapper extends ContactsModelWrapper {
+  private final List<String> cards;
+
+  @JsonCreator
+  public ContactsListModelWrapper(@JsonProperty("cards") List<String> cards) {
+    super(null);
+    this.cards = cards == null ? ImmutableList.of() : ImmutableList.copyOf(cards);
+  }
+
+  /** Returns the contacts, each a single jCard. */
+  public List<String> getCards() {
+    return cards;
+  }
+
+  /**
+   * Returns all the contacts as a single jCard string, for importers that don't yet read {@link
+   * #getCards()}. The string is built on every call.
+   */
+  @JsonIgnore
+  @Override
+  public String getVCards() {
+    StringBuilder builder = new StringBuilder("[");
+    for (String card : cards) {
+      if (builder.length() > 1) {
+        builder.append(',');
+      }
+      builder.append(card);
+    }
+    return builder.append(']').toString();
+  }
+}
@@ -7,17 +7,43 @@ public class MusicPlaylist extends CreativeWork {
   // NOTE: only a subset of fields are used so far, feel free to add more fields from the spec as
   // needed.
   private ImmutableList<MusicRecording> track;
+  private final boolean tracksOnly;
 
   public MusicPlaylist(
       String identifier,
       String headline,
       Iterable<MusicRecording> tracks) {
+    this(identifier, headline, tracks, false);
+  }
+
+  private MusicPlaylist(
+      String identifier,
+      String headline,
+      Iterable<MusicRecording> tracks,
+      boolean tracksOnly) {
     super(identifier);
     setHeadline(headline);
     this.track = ImmutableList.copyOf(tracks);
+    this.tracksOnly = tracksOnly;
+  }
+
+  /**
+   * Returns further tracks of the playlist with the given identifier, for exporters that send a
+   * playlist's tracks over several pages after the playlist itself.
+   */
+  public static MusicPlaylist tracksOf(String identifier, Iterable<MusicRecording> tracks) {
+    return new MusicPlaylist(identifier, null, tracks, true);
   }
 
   public ImmutableList<MusicRecording> getTrack() {
     return track;
   }
+
+  /**
+   * Returns whether this only carries tracks of a playlist exported by an earlier page, which
+   * importers should add to that playlist rather than create a new one.
+   */
+  public boolean isTracksOnly() {
+    return tracksOnly;
+  }
 }
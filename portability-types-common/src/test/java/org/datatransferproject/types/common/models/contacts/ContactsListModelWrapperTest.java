@@ -0,0 +1,40 @@
+package org.datatransferproject.types.common.models.contacts;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableList;
+import com.google.common.truth.Truth;
+import org.datatransferproject.types.common.models.DataModel;
+import org.junit.Test;
+
+public class ContactsListModelWrapperTest {
+  private static final String CARD_1 = "[\"vcard\",[[\"version\",{},\"text\",\"4.0\"]]]";
+  private static final String CARD_2 = "[\"vcard\",[[\"fn\",{},\"text\",\"Jane\"]]]";
+
+  @Test
+  public void verifySerializeDeserialize() throws Exception {
+    ObjectMapper objectMapper = new ObjectMapper();
+    objectMapper.registerSubtypes(ContactsListModelWrapper.class);
+
+    DataModel data = new ContactsListModelWrapper(ImmutableList.of(CARD_1, CARD_2));
+
+    String serialized = objectMapper.writeValueAsString(data);
+    Truth.assertThat(serialized).doesNotContain("vCards");
+
+    DataModel deserializedModel = objectMapper.readValue(serialized, DataModel.class);
+
+    Truth.assertThat(deserializedModel).isInstanceOf(ContactsListModelWrapper.class);
+    Truth.assertThat(((ContactsListModelWrapper) deserializedModel).getCards())
+        .containsExactly(CARD_1, CARD_2)
+        .inOrder();
+  }
+
+  @Test
+  public void getVCards_joinsCardsIntoOneJCard() {
+    ContactsListModelWrapper wrapper =
+        new ContactsListModelWrapper(ImmutableList.of(CARD_1, CARD_2));
+
+    Truth.assertThat(wrapper.getVCards()).isEqualTo("[" + CARD_1 + "," + CARD_2 + "]");
+    Truth.assertThat(new ContactsListModelWrapper(ImmutableList.of()).getVCards())
+        .isEqualTo("[]");
+  }
+}